@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+import org.hornetq.api.core.HornetQException;
+import org.hornetq.api.core.client.ClientConsumer;
+import org.hornetq.api.core.client.ClientMessage;
+import org.hornetq.api.core.client.ClientSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BatchListenerWrapper - reads the queue of a BatchEventListener on its own thread.
+ * Whatever is waiting in the queue, up to the batch size, is handed to the listener at
+ * once, and the messages are acknowledged in a single commit of the session afterwards.
+ * When a batch fails, it is rolled back and its messages are handled again one at a time,
+ * each in its own commit, so that only a bad message is left to be redelivered.
+ */
+public class BatchListenerWrapper implements Runnable {
+    private static Logger log = LoggerFactory.getLogger(BatchListenerWrapper.class);
+
+    private static final long RECEIVE_TIMEOUT = 1000;
+    private static final long FAILURE_DELAY = 1000;
+
+    private final BatchEventListener listener;
+    private final EventCodec codec;
+    private final ClientSession session;
+    private final ClientConsumer consumer;
+    private final int batchSize;
+    private volatile boolean running = true;
+
+    // Messages of a failed batch still to be handled one at a time
+    private int singles;
+
+    /**
+     * @param listener the listener handed the events
+     * @param codec used to read the events
+     * @param session a session which does not commit acknowledgements by itself
+     * @param consumer a consumer of the listener's queue without a message handler
+     * @param batchSize the maximum number of events handed to the listener at once
+     */
+    public BatchListenerWrapper(BatchEventListener listener, EventCodec codec,
+        ClientSession session, ClientConsumer consumer, int batchSize) {
+        this.listener = listener;
+        this.codec = codec;
+        this.session = session;
+        this.consumer = consumer;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                List<ClientMessage> messages = receive(singles > 0 ? 1 : batchSize);
+                if (!messages.isEmpty()) {
+                    if (singles > 0) {
+                        singles--;
+                    }
+                    handle(messages);
+                }
+            }
+            catch (HornetQException e) {
+                if (running) {
+                    log.error("Unable to read events for listener: " + listener, e);
+                    pause();
+                }
+            }
+        }
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    /*
+     * Waits for a message, then takes whatever else is already waiting.
+     */
+    private List<ClientMessage> receive(int max) throws HornetQException {
+        List<ClientMessage> messages = new ArrayList<ClientMessage>();
+        ClientMessage msg = consumer.receive(RECEIVE_TIMEOUT);
+        while (msg != null) {
+            messages.add(msg);
+            msg = messages.size() < max ? consumer.receiveImmediate() : null;
+        }
+        return messages;
+    }
+
+    private void handle(List<ClientMessage> messages) throws HornetQException {
+        try {
+            List<Event> events = new ArrayList<Event>(messages.size());
+            for (ClientMessage msg : messages) {
+                events.add(codec.decode(msg));
+            }
+
+            listener.onEvents(events);
+
+            for (ClientMessage msg : messages) {
+                msg.acknowledge();
+            }
+            session.commit();
+            log.debug("Hornetq messages acknowledged for listener: {}", listener);
+        }
+        catch (IOException e) {
+            log.error("Unable to deserialize event objects, rolling back " + messages.size() +
+                " messages", e);
+            rollback(messages);
+        }
+        catch (RuntimeException e) {
+            // Exceptions thrown here will cause the events to remain in hornetq:
+            log.error("Listener " + listener + " failed, rolling back " + messages.size() +
+                " messages", e);
+            rollback(messages);
+        }
+    }
+
+    /*
+     * The rolled back messages are delivered again, in order. A failed batch is retried
+     * one message at a time, a single message that failed waits before it is retried.
+     */
+    private void rollback(List<ClientMessage> messages) throws HornetQException {
+        session.rollback();
+        if (messages.size() > 1) {
+            singles = messages.size();
+        }
+        else {
+            pause();
+        }
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(FAILURE_DELAY);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
@@ -24,10 +24,13 @@ import org.jboss.resteasy.spi.ResteasyProviderFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * DatabaseListener
  */
-public class DatabaseListener implements EventListener {
+public class DatabaseListener implements BatchEventListener {
 
     private EventCurator eventCurator;
     private static Logger log = LoggerFactory.getLogger(DatabaseListener.class);
@@ -51,4 +54,22 @@ public class DatabaseListener implements EventListener {
             eventCurator.create(event);
         }
     }
+
+    @Override
+    public void onEvents(List<Event> events) {
+        Principal systemPrincipal = new SystemPrincipal();
+        ResteasyProviderFactory.pushContext(Principal.class, systemPrincipal);
+        log.debug("Received {} events", events.size());
+
+        List<Event> received = new ArrayList<Event>(events.size());
+        for (Event event : events) {
+            if (event != null) {
+                received.add(event);
+            }
+        }
+
+        if (!received.isEmpty()) {
+            eventCurator.createAll(received);
+        }
+    }
 }
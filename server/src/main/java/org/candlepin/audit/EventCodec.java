@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import org.apache.commons.io.IOUtils;
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.api.core.client.ClientMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * EventCodec
+ *
+ * Writes events into HornetQ message bodies and reads them back. Events are written
+ * either as JSON text, which is what older versions wrote and read, or as Smile, a
+ * binary encoding of JSON that is smaller and faster to parse. Bodies above a
+ * configurable size can be deflated as well.
+ *
+ * Anything other than plain JSON text is recorded in a message property, so listeners
+ * read every message in whichever encoding it was written, including messages left in
+ * the journal from before the encoding was changed.
+ */
+public class EventCodec {
+    public static final String JSON = "json";
+    public static final String SMILE = "smile";
+
+    static final SimpleString ENCODING_PROPERTY = new SimpleString("cp_event_encoding");
+    private static final String DEFLATED = "+deflate";
+
+    private final ObjectMapper mapper;
+    private final ObjectMapper smileMapper;
+    private final String encoding;
+    private final int compressThreshold;
+
+    /**
+     * Creates a codec writing plain JSON text, which can read any encoding.
+     *
+     * @param mapper the mapper used for JSON
+     */
+    public EventCodec(ObjectMapper mapper) {
+        this(mapper, JSON, 0);
+    }
+
+    /**
+     * @param mapper the mapper used for JSON
+     * @param encoding the encoding events are written in, json or smile
+     * @param compressThreshold size in bytes from which bodies are deflated, 0 disables
+     */
+    public EventCodec(ObjectMapper mapper, String encoding, int compressThreshold) {
+        if (!JSON.equals(encoding) && !SMILE.equals(encoding)) {
+            throw new IllegalArgumentException("Unknown event encoding: " + encoding);
+        }
+
+        this.mapper = mapper;
+        this.smileMapper = new ObjectMapper(new SmileFactory());
+        this.encoding = encoding;
+        this.compressThreshold = compressThreshold;
+    }
+
+    public void encode(Event event, ClientMessage message) throws IOException {
+        if (JSON.equals(encoding) && compressThreshold <= 0) {
+            message.getBodyBuffer().writeString(mapper.writeValueAsString(event));
+            return;
+        }
+
+        String bodyEncoding = encoding;
+        byte[] body = SMILE.equals(encoding) ?
+            smileMapper.writeValueAsBytes(event) :
+            mapper.writeValueAsBytes(event);
+
+        if (compressThreshold > 0 && body.length >= compressThreshold) {
+            body = deflate(body);
+            bodyEncoding += DEFLATED;
+        }
+
+        message.putStringProperty(ENCODING_PROPERTY, new SimpleString(bodyEncoding));
+        HornetQBuffer buffer = message.getBodyBuffer();
+        buffer.writeInt(body.length);
+        buffer.writeBytes(body);
+    }
+
+    public Event decode(ClientMessage message) throws IOException {
+        SimpleString property = message.getSimpleStringProperty(ENCODING_PROPERTY);
+        if (property == null) {
+            return mapper.readValue(message.getBodyBuffer().readString(), Event.class);
+        }
+
+        String bodyEncoding = property.toString();
+        HornetQBuffer buffer = message.getBodyBuffer();
+        byte[] body = new byte[buffer.readInt()];
+        buffer.readBytes(body);
+
+        if (bodyEncoding.endsWith(DEFLATED)) {
+            body = inflate(body);
+            bodyEncoding = bodyEncoding.substring(0, bodyEncoding.length() - DEFLATED.length());
+        }
+
+        if (SMILE.equals(bodyEncoding)) {
+            return smileMapper.readValue(body, Event.class);
+        }
+        if (JSON.equals(bodyEncoding)) {
+            return mapper.readValue(body, Event.class);
+        }
+        throw new IOException("Unknown event encoding: " + property);
+    }
+
+    private static byte[] deflate(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            DeflaterOutputStream stream = new DeflaterOutputStream(out, deflater);
+            stream.write(data);
+            stream.close();
+        }
+        finally {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] data) throws IOException {
+        InflaterInputStream inflater = new InflaterInputStream(new ByteArrayInputStream(data));
+        try {
+            return IOUtils.toByteArray(inflater);
+        }
+        finally {
+            inflater.close();
+        }
+    }
+}
@@ -24,8 +24,10 @@ import org.candlepin.model.Rules;
 import org.candlepin.model.activationkeys.ActivationKey;
 import org.candlepin.model.dto.Subscription;
 import org.candlepin.policy.js.compliance.ComplianceStatus;
+import org.candlepin.util.Metrics;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Singleton;
 
 import org.hornetq.api.core.HornetQException;
@@ -41,33 +43,71 @@ import org.hornetq.core.remoting.impl.invm.InVMConnectorFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.inject.Inject;
 
 /**
  * EventSink - Queues events to be sent after request/job completes, and handles actual
  * sending of events on successful job or API request, as well as rollback if either fails.
+ *
+ * Events are held per thread until the request or job completes. The events of
+ * successful ones are then handed to a dispatcher, which serializes them and sends them
+ * to HornetQ in batches, one HornetQ transaction per batch. Once the dispatch queue is
+ * full, requests wait for room, and send their events themselves if none frees up.
+ * Events handed over after shutdown has started are sent by the request itself.
  */
 @Singleton
 public class EventSinkImpl implements EventSink {
 
     private static Logger log = LoggerFactory.getLogger(EventSinkImpl.class);
+
+    private static final Metrics.Timer DISPATCH_TIME = Metrics.timer("events.dispatch");
+    private static final Metrics.Counter DISPATCHED = Metrics.counter("events.dispatched");
+    private static final Metrics.Counter BLOCKED = Metrics.counter("events.dispatch.blocked");
+
+    private static final long DISPATCH_WAIT_SECONDS = 30;
+
     private EventFactory eventFactory;
     private ClientSessionFactory factory;
     private Configuration config;
-    private ObjectMapper mapper;
+    private EventCodec codec;
     private EventFilter eventFilter;
     private int largeMsgSize;
+    private int batchSize;
+    private BlockingQueue<Event> dispatchQueue;
+    private ExecutorService dispatcher;
+    private boolean dispatching;
+    // Held to hand events to the dispatcher, and exclusively to stop dispatching
+    private final ReadWriteLock dispatchLock = new ReentrantReadWriteLock();
+    private final AtomicBoolean draining = new AtomicBoolean();
 
     /*
-     * Important use of ThreadLocal here, each Tomcat/Quartz thread gets it's own session
-     * which is reused across invocations. Sessions must have commit or rollback called
-     * on them per request/job. This is handled in EventFilter for the API, and KingpinJob
+     * Important use of ThreadLocal here, each Tomcat/Quartz thread gets it's own list of
+     * pending events which is reused across invocations. sendEvents or rollback must be
+     * called per request/job. This is handled in EventFilter for the API, and KingpinJob
      * for quartz jobs.
+     *
+     * HornetQ sessions are per thread as well, they are used by the dispatcher thread and
+     * by requests sending their own events when the dispatch queue is full.
      */
+    private ThreadLocal<List<Event>> pending = new ThreadLocal<List<Event>>() {
+        @Override
+        protected List<Event> initialValue() {
+            return new ArrayList<Event>();
+        }
+    };
     private ThreadLocal<ClientSession> sessions = new ThreadLocal<ClientSession>();
     private ThreadLocal<ClientProducer> producers = new ThreadLocal<ClientProducer>();
 
@@ -77,10 +117,14 @@ public class EventSinkImpl implements EventSink {
     public EventSinkImpl(EventFilter eventFilter, EventFactory eventFactory,
         ObjectMapper mapper, Configuration config) {
         this.eventFactory = eventFactory;
-        this.mapper = mapper;
+        this.codec = new EventCodec(mapper, config.getString(ConfigProperties.HORNETQ_EVENT_ENCODING),
+            config.getInt(ConfigProperties.HORNETQ_EVENT_COMPRESS_THRESHOLD));
         this.config = config;
         this.eventFilter = eventFilter;
         largeMsgSize = config.getInt(ConfigProperties.HORNETQ_LARGE_MSG_SIZE);
+        batchSize = Math.max(1, config.getInt(ConfigProperties.HORNETQ_DISPATCH_BATCH_SIZE));
+        dispatchQueue = new LinkedBlockingQueue<Event>(
+            Math.max(1, config.getInt(ConfigProperties.HORNETQ_DISPATCH_QUEUE_SIZE)));
     }
 
     /**
@@ -90,6 +134,52 @@ public class EventSinkImpl implements EventSink {
     @Override
     public void initialize() throws Exception {
         factory =  createClientSessionFactory();
+
+        dispatcher = createDispatcher();
+        dispatching = true;
+
+        Metrics.gauge("events.dispatch.depth", new Metrics.Gauge() {
+            public Number getValue() {
+                return dispatchQueue.size();
+            }
+        });
+    }
+
+    protected ExecutorService createDispatcher() {
+        return Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("event-dispatcher-%d")
+            .build());
+    }
+
+    /**
+     * Stops the dispatcher once every event handed to it has been sent.
+     */
+    @Override
+    public void shutdown() {
+        // Once dispatching stops, no more events are handed to the dispatcher, so the
+        // drains already scheduled send all of them.
+        dispatchLock.writeLock().lock();
+        try {
+            dispatching = false;
+        }
+        finally {
+            dispatchLock.writeLock().unlock();
+        }
+
+        if (dispatcher == null) {
+            return;
+        }
+
+        dispatcher.shutdown();
+        try {
+            if (!dispatcher.awaitTermination(DISPATCH_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Timed out sending {} remaining events", dispatchQueue.size());
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     protected ClientSessionFactory createClientSessionFactory() throws Exception {
@@ -163,7 +253,7 @@ public class EventSinkImpl implements EventSink {
      * Events are filtered, meaning that some of them might not even get into HornetQ.
      * Details about the filtering are documented in EventFilter class
      *
-     * HornetQ transaction actually manages the queue of events to be sent.
+     * Events are serialized when they are sent, so they must not be modified once queued.
      */
     @Override
     public void queueEvent(Event event) {
@@ -173,19 +263,7 @@ public class EventSinkImpl implements EventSink {
         }
 
         log.debug("Queuing event: {}", event);
-
-        try {
-            ClientSession session = getClientSession();
-            ClientMessage message = session.createMessage(true);
-            String eventString = mapper.writeValueAsString(event);
-            message.getBodyBuffer().writeString(eventString);
-
-            // NOTE: not actually send until we commit the session.
-            getClientProducer().send(message);
-        }
-        catch (Exception e) {
-            log.error("Error while trying to send event: " + event, e);
-        }
+        pending.get().add(event);
     }
 
     /**
@@ -195,26 +273,126 @@ public class EventSinkImpl implements EventSink {
      */
     @Override
     public void sendEvents() {
+        List<Event> events = pending.get();
+        if (events.isEmpty()) {
+            return;
+        }
+        pending.remove();
+
+        dispatchLock.readLock().lock();
         try {
-            log.debug("Committing hornetq transaction.");
-            getClientSession().commit();
+            if (!dispatching) {
+                dispatch(events);
+                return;
+            }
+
+            for (int i = 0; i < events.size(); i++) {
+                if (!dispatchQueue.offer(events.get(i))) {
+                    BLOCKED.inc();
+                    if (!dispatchQueue.offer(events.get(i), DISPATCH_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                        log.warn("Event dispatch queue is full, sending {} events directly",
+                            events.size() - i);
+                        dispatch(events.subList(i, events.size()));
+                        return;
+                    }
+                }
+                scheduleDrain();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while queuing events for dispatch", e);
         }
         catch (Exception e) {
             // This would be pretty bad, but we always try not to let event errors
             // interfere with the operation of the overall application.
-            log.error("Error committing hornetq transaction", e);
+            log.error("Error dispatching events", e);
+        }
+        finally {
+            dispatchLock.readLock().unlock();
         }
     }
 
     @Override
     public void rollback() {
-        log.warn("Rolling back hornetq transaction.");
+        log.warn("Rolling back {} queued events.", pending.get().size());
+        pending.remove();
+    }
+
+    /*
+     * Hands the dispatcher a drain of the queue, unless one is already pending or running.
+     */
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            dispatcher.execute(new Runnable() {
+                public void run() {
+                    drain();
+                }
+            });
+        }
+    }
+
+    /*
+     * Runs on the dispatcher: sends queued events in batches until the queue is empty.
+     * Events queued while the last batch was being sent are picked up before returning.
+     */
+    private void drain() {
+        List<Event> batch = new ArrayList<Event>(batchSize);
+        do {
+            try {
+                while (dispatchQueue.drainTo(batch, batchSize) > 0) {
+                    try {
+                        dispatch(batch);
+                    }
+                    catch (Exception e) {
+                        log.error("Error dispatching events", e);
+                    }
+                    finally {
+                        batch.clear();
+                    }
+                }
+            }
+            finally {
+                draining.set(false);
+            }
+        } while (!dispatchQueue.isEmpty() && draining.compareAndSet(false, true));
+    }
+
+    /*
+     * Serializes and sends the given events in a single HornetQ transaction on the
+     * current thread's session.
+     */
+    private void dispatch(List<Event> events) {
+        long start = System.nanoTime();
+        ClientSession session = getClientSession();
         try {
-            ClientSession session = getClientSession();
-            session.rollback();
+            ClientProducer producer = getClientProducer();
+            for (Event event : events) {
+                try {
+                    ClientMessage message = session.createMessage(true);
+                    codec.encode(event, message);
+                    producer.send(message);
+                }
+                catch (Exception e) {
+                    log.error("Error while trying to send event: " + event, e);
+                }
+            }
+
+            log.debug("Committing hornetq transaction.");
+            session.commit();
+            DISPATCHED.add(events.size());
+        }
+        catch (Exception e) {
+            log.error("Error committing hornetq transaction", e);
+            try {
+                session.rollback();
+            }
+            catch (HornetQException re) {
+                log.error("Error rolling back hornetq transaction", re);
+            }
         }
-        catch (HornetQException e) {
-            log.error("Error rolling back hornetq transaction", e);
+        finally {
+            DISPATCH_TIME.updateSince(start);
         }
     }
 
@@ -14,6 +14,9 @@
  */
 package org.candlepin.audit;
 
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.Inject;
 
@@ -28,28 +31,52 @@ import org.hornetq.core.remoting.impl.invm.InVMConnectorFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * EventSource
+ *
+ * Each listener reads its own queue through one or more consumers. Consumers of plain
+ * listeners have messages pushed to them by HornetQ; extra consumers get sessions of
+ * their own so they run concurrently. Listeners able to handle batches are read on
+ * threads of their own, see BatchListenerWrapper.
  */
 public class EventSource {
     private static  Logger log = LoggerFactory.getLogger(EventSource.class);
     static final String QUEUE_ADDRESS = "event";
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
     private ClientSession session;
     private ClientSessionFactory factory;
     private ObjectMapper mapper;
+    private int ackBatchSize;
+    private int batchSize;
+    private List<ClientSession> listenerSessions = new ArrayList<ClientSession>();
+    private List<BatchListenerWrapper> batchWrappers = new ArrayList<BatchListenerWrapper>();
 
+    public EventSource(ObjectMapper mapper) {
+        this(mapper, 0, DEFAULT_BATCH_SIZE);
+    }
 
     @Inject
-    public EventSource(ObjectMapper mapper) {
+    public EventSource(ObjectMapper mapper, Configuration config) {
+        this(mapper, config.getInt(ConfigProperties.HORNETQ_ACK_BATCH_SIZE),
+            config.getInt(ConfigProperties.AUDIT_LISTENER_BATCH_SIZE));
+    }
+
+    protected EventSource(ObjectMapper mapper, int ackBatchSize, int batchSize) {
         this.mapper = mapper;
+        this.ackBatchSize = ackBatchSize;
+        this.batchSize = batchSize;
 
         try {
             factory =  createSessionFactory();
-            // Specify a message ack batch size of 0 to have hornetq immediately ack
-            // any message successfully received with the server. Not doing so can lead
+            // A message ack batch size of 0 (the default) has hornetq immediately ack
+            // any message successfully received with the server. Anything else can lead
             // to duplicate messages if the server goes down before the batch ack size is
             // reached.
-            session = factory.createSession(true, true, 0);
+            session = factory.createSession(true, true, ackBatchSize);
             session.start();
         }
         catch (Exception e) {
@@ -68,7 +95,14 @@ public class EventSource {
     }
 
     protected void shutDown() {
+        for (BatchListenerWrapper wrapper : batchWrappers) {
+            wrapper.stop();
+        }
+
         try {
+            for (ClientSession listenerSession : listenerSessions) {
+                listenerSession.close();
+            }
             session.stop();
             session.close();
             factory.close();
@@ -79,6 +113,14 @@ public class EventSource {
     }
 
     void registerListener(EventListener listener) {
+        registerListener(listener, 1);
+    }
+
+    /**
+     * @param listener the listener to register
+     * @param consumers the number of consumers reading the listener's queue concurrently
+     */
+    void registerListener(EventListener listener, int consumers) {
         String queueName = QUEUE_ADDRESS + "." + listener.getClass().getCanonicalName();
         log.debug("registering listener for " + queueName);
         try {
@@ -95,11 +137,41 @@ public class EventSource {
                 }
             }
 
-            ClientConsumer consumer = session.createConsumer(queueName);
-            consumer.setMessageHandler(new ListenerWrapper(listener, mapper));
+            for (int i = 0; i < Math.max(1, consumers); i++) {
+                if (listener instanceof BatchEventListener) {
+                    startBatchConsumer(queueName, (BatchEventListener) listener, i);
+                }
+                else {
+                    ClientSession consumerSession = i == 0 ? session : createListenerSession(true);
+                    ClientConsumer consumer = consumerSession.createConsumer(queueName);
+                    consumer.setMessageHandler(new ListenerWrapper(listener, mapper));
+                }
+            }
         }
         catch (HornetQException e) {
             log.error("Unable to register listener :" + listener, e);
         }
     }
+
+    private void startBatchConsumer(String queueName, BatchEventListener listener, int index)
+        throws HornetQException {
+        // acknowledgements are committed by the wrapper once per batch
+        ClientSession consumerSession = createListenerSession(false);
+        ClientConsumer consumer = consumerSession.createConsumer(queueName);
+        BatchListenerWrapper wrapper = new BatchListenerWrapper(listener,
+            new EventCodec(mapper), consumerSession, consumer, batchSize);
+        batchWrappers.add(wrapper);
+
+        Thread thread = new Thread(wrapper,
+            "event-" + listener.getClass().getSimpleName() + "-" + index);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private ClientSession createListenerSession(boolean autoCommitAcks) throws HornetQException {
+        ClientSession listenerSession = factory.createSession(true, autoCommitAcks, ackBatchSize);
+        listenerSessions.add(listenerSession);
+        listenerSession.start();
+        return listenerSession;
+    }
 }
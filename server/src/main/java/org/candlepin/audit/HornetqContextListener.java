@@ -54,9 +54,14 @@ public class HornetqContextListener {
 
     private EmbeddedHornetQ hornetqServer;
     private EventSource eventSource;
+    private EventSink eventSink;
 
     public void contextDestroyed() {
         if (hornetqServer != null) {
+            // send what is still waiting to be dispatched before the server goes away
+            if (eventSink != null) {
+                eventSink.shutdown();
+            }
             eventSource.shutDown();
             try {
                 hornetqServer.stop();
@@ -174,7 +179,8 @@ public class HornetqContextListener {
             try {
                 Class<?> clazz = this.getClass().getClassLoader().loadClass(
                     listeners.get(i));
-                eventSource.registerListener((EventListener) injector.getInstance(clazz));
+                eventSource.registerListener((EventListener) injector.getInstance(clazz),
+                    candlepinConfig.getInt(ConfigProperties.AUDIT_LISTENER_CONSUMERS + listeners.get(i), 1));
             }
             catch (Exception e) {
                 log.warn("Unable to register listener " + listeners.get(i), e);
@@ -183,9 +189,9 @@ public class HornetqContextListener {
 
         // Initialize the Event sink AFTER the internal server has been
         // created and started.
-        EventSink sink = injector.getInstance(EventSink.class);
+        eventSink = injector.getInstance(EventSink.class);
         try {
-            sink.initialize();
+            eventSink.initialize();
         }
         catch (Exception e) {
             log.error("Failed to initialize EventSink:", e);
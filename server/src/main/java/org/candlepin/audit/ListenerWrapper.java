@@ -14,8 +14,6 @@
  */
 package org.candlepin.audit;
 
-import com.fasterxml.jackson.core.JsonParseException;
-import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.hornetq.api.core.HornetQException;
@@ -33,37 +31,29 @@ public class ListenerWrapper implements MessageHandler {
 
     private EventListener listener;
     private static Logger log = LoggerFactory.getLogger(ListenerWrapper.class);
-    private ObjectMapper mapper;
+    private EventCodec codec;
     public ListenerWrapper(EventListener listener, ObjectMapper mapper) {
         this.listener = listener;
-        this.mapper = mapper;
+        this.codec = new EventCodec(mapper);
     }
 
     @Override
     public void onMessage(ClientMessage msg) {
-        String body = msg.getBodyBuffer().readString();
-        if (log.isDebugEnabled()) {
-            log.debug("Got event: {}", body);
-        }
-
         // Exceptions thrown here will cause the event to remain in hornetq:
+        Event event;
         try {
-            Event event = mapper.readValue(body, Event.class);
-            listener.onEvent(event);
-        }
-        catch (JsonMappingException e) {
-            log.error("Unable to deserialize event object from msg: " + body, e);
-            throw new RuntimeException("Error deserializing event", e);
-        }
-        catch (JsonParseException e) {
-            log.error("Unable to deserialize event object from msg: " + body, e);
-            throw new RuntimeException("Error deserializing event", e);
+            event = codec.decode(msg);
         }
         catch (IOException e) {
-            log.error("Unable to deserialize event object from msg: " + body, e);
+            log.error("Unable to deserialize event object from msg: " + msg, e);
             throw new RuntimeException("Error deserializing event", e);
         }
 
+        if (log.isDebugEnabled()) {
+            log.debug("Got event: {}", event);
+        }
+        listener.onEvent(event);
+
         try {
             msg.acknowledge();
             log.debug("Hornetq message acknowledged for listener: " + listener);
@@ -47,6 +47,10 @@ public class NoopEventSinkImpl implements EventSink {
         log.debug("NoopEventSinkImpl initialized!");
     }
 
+    @Override
+    public void shutdown() {
+    }
+
     @Override
     public void queueEvent(Event event) {
         log.debug("event enqueued, but performing noop:" + event);
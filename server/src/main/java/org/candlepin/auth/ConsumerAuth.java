@@ -54,8 +54,7 @@ public abstract class ConsumerAuth implements AuthProvider {
             // If this UUID has been deleted, return a 410.
             if (deletedConsumerCurator.countByConsumerUuid(consumerUuid) > 0) {
                 log.debug("Key {} is deleted, throwing GoneException", consumerUuid);
-                throw new GoneException(
-                    i18nProvider.get().tr("Unit {0} has been deleted", consumerUuid), consumerUuid);
+                throw consumerDeleted(consumerUuid);
             }
 
             Consumer consumer = this.consumerCurator.getConsumer(consumerUuid);
@@ -72,4 +71,9 @@ public abstract class ConsumerAuth implements AuthProvider {
         return principal;
     }
 
+    protected GoneException consumerDeleted(String consumerUuid) {
+        return new GoneException(
+            i18nProvider.get().tr("Unit {0} has been deleted", consumerUuid), consumerUuid);
+    }
+
 }
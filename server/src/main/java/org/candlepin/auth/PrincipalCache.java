@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.auth;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.util.Metrics;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PrincipalCache
+ *
+ * Short lived cache of the consumers established from identity certificates, keyed by
+ * consumer UUID and certificate serial. Consumers found to be deleted are remembered as
+ * well, so repeated calls from them are refused without a lookup.
+ *
+ * Only the consumer id is cached: the consumer itself is loaded again by id for every
+ * request, so no entity is shared across requests. Entries are dropped once changes to
+ * the consumer on this node are committed; changes made on other nodes are picked up
+ * once the entry expires.
+ */
+@Singleton
+public class PrincipalCache {
+
+    private static final Metrics.Counter HITS = Metrics.counter("auth.principal_cache.hit");
+    private static final Metrics.Counter MISSES = Metrics.counter("auth.principal_cache.miss");
+
+    /**
+     * A consumer id along with the serial of the certificate the consumer was
+     * established from, or a deleted consumer when the id is null.
+     */
+    private static class Entry {
+        private final BigInteger serial;
+        private final String consumerId;
+
+        Entry(BigInteger serial, String consumerId) {
+            this.serial = serial;
+            this.consumerId = consumerId;
+        }
+    }
+
+    private final Cache<String, Entry> cache;
+
+    @Inject
+    public PrincipalCache(Configuration config) {
+        this(config.getInt(ConfigProperties.PRINCIPAL_CACHE_TTL),
+            config.getInt(ConfigProperties.PRINCIPAL_CACHE_MAX));
+    }
+
+    /**
+     * @param ttl seconds an entry is kept for, 0 disables caching
+     * @param maxEntries the maximum number of consumers kept
+     */
+    public PrincipalCache(int ttl, int maxEntries) {
+        this.cache = ttl > 0 && maxEntries > 0 ?
+            CacheBuilder.newBuilder()
+                .expireAfterWrite(ttl, TimeUnit.SECONDS)
+                .maximumSize(maxEntries)
+                .<String, Entry>build() :
+            null;
+    }
+
+    /**
+     * @param consumerUuid the UUID found in the certificate
+     * @param serial the serial of the certificate
+     * @return the id of the consumer established from this certificate, or null if none
+     *  is cached
+     */
+    public String get(String consumerUuid, BigInteger serial) {
+        Entry entry = cache != null ? cache.getIfPresent(consumerUuid) : null;
+        if (entry != null && entry.consumerId != null && entry.serial.equals(serial)) {
+            HITS.inc();
+            return entry.consumerId;
+        }
+
+        MISSES.inc();
+        return null;
+    }
+
+    public void put(String consumerUuid, BigInteger serial, String consumerId) {
+        if (cache != null) {
+            cache.put(consumerUuid, new Entry(serial, consumerId));
+        }
+    }
+
+    /**
+     * @param consumerUuid the UUID found in the certificate
+     * @return true if the consumer was recently found to be deleted
+     */
+    public boolean isDeleted(String consumerUuid) {
+        Entry entry = cache != null ? cache.getIfPresent(consumerUuid) : null;
+        return entry != null && entry.consumerId == null;
+    }
+
+    public void putDeleted(String consumerUuid) {
+        if (cache != null) {
+            cache.put(consumerUuid, new Entry(null, null));
+        }
+    }
+
+    /**
+     * Drops anything cached for the given consumer, to be called once changes to it are
+     * committed: updates, deletion or a new identity certificate.
+     *
+     * @param consumerUuid the UUID of the consumer
+     */
+    public void invalidate(String consumerUuid) {
+        if (cache != null && consumerUuid != null) {
+            cache.invalidate(consumerUuid);
+        }
+    }
+}
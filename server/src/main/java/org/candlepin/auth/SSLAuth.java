@@ -14,6 +14,8 @@
  */
 package org.candlepin.auth;
 
+import org.candlepin.common.exceptions.GoneException;
+import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.DeletedConsumerCurator;
 
@@ -24,9 +26,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xnap.commons.i18n.I18n;
 
+import java.math.BigInteger;
 import java.security.cert.X509Certificate;
-import java.util.HashMap;
-import java.util.Map;
 
 import javax.inject.Provider;
 import javax.security.auth.x500.X500Principal;
@@ -41,11 +42,15 @@ public class SSLAuth extends ConsumerAuth {
 
     private static Logger log = LoggerFactory.getLogger(SSLAuth.class);
 
+    private PrincipalCache principalCache;
+
     @Inject
     SSLAuth(ConsumerCurator consumerCurator,
         DeletedConsumerCurator deletedConsumerCurator,
-        Provider<I18n> i18nProvider) {
+        Provider<I18n> i18nProvider,
+        PrincipalCache principalCache) {
         super(consumerCurator, deletedConsumerCurator, i18nProvider);
+        this.principalCache = principalCache;
     }
 
     public Principal getPrincipal(HttpRequest httpRequest) {
@@ -63,24 +68,55 @@ public class SSLAuth extends ConsumerAuth {
         // with the first one in the array being the certificate of the client
         // itself.
         X509Certificate identityCert = certs[0];
+        String uuid = parseUuid(identityCert);
+        if (uuid == null) {
+            return null;
+        }
+
+        BigInteger serial = identityCert.getSerialNumber();
+        String consumerId = principalCache.get(uuid, serial);
+        if (consumerId != null) {
+            Consumer consumer = consumerCurator.find(consumerId);
+            if (consumer != null && uuid.equals(consumer.getUuid())) {
+                return new ConsumerPrincipal(consumer);
+            }
+            principalCache.invalidate(uuid);
+        }
+
+        if (principalCache.isDeleted(uuid)) {
+            log.debug("Key {} is deleted, throwing GoneException", uuid);
+            throw consumerDeleted(uuid);
+        }
 
-        return createPrincipal(parseUuid(identityCert));
+        ConsumerPrincipal principal;
+        try {
+            principal = createPrincipal(uuid);
+        }
+        catch (GoneException e) {
+            principalCache.putDeleted(uuid);
+            throw e;
+        }
+
+        if (principal != null) {
+            principalCache.put(uuid, serial, principal.getConsumer().getId());
+        }
+
+        return principal;
     }
 
     // Pulls the consumer uuid off of the x509 cert.
     private String parseUuid(X509Certificate cert) {
         X500Principal x500 = cert.getSubjectX500Principal();
         String dn = x500.getName();
-        Map<String, String> dnAttributes = new HashMap<String, String>();
 
         for (String attribute : dn.split(",")) {
-            attribute = attribute.trim();
-            String[] pair = attribute.split("=");
-
-            dnAttributes.put(pair[0], pair[1]);
+            int separator = attribute.indexOf('=');
+            if (separator > 0 && UUID_DN_ATTRIBUTE.equals(attribute.substring(0, separator).trim())) {
+                return attribute.substring(separator + 1);
+            }
         }
 
-        return dnAttributes.get(UUID_DN_ATTRIBUTE);
+        return null;
     }
 
 }
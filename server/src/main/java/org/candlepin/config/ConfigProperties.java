@@ -100,8 +100,40 @@ public class ConfigProperties {
      * This is applicable only for PAGE setting of HORNETQ_ADDRESS_FULL_POLICY.
      */
     public static final String HORNETQ_MAX_PAGE_SIZE = "candlepin.audit.hornetq.max_page_size";
+    /**
+     * Events of successful requests and jobs are sent to HornetQ in the background.
+     * This is the number of events waiting to be sent before requests block, and the
+     * number of events sent in a single HornetQ transaction.
+     */
+    public static final String HORNETQ_DISPATCH_QUEUE_SIZE = "candlepin.audit.hornetq.dispatch.queue_size";
+    public static final String HORNETQ_DISPATCH_BATCH_SIZE = "candlepin.audit.hornetq.dispatch.batch_size";
+    /**
+     * Encoding of event message bodies, json or smile (binary JSON), and the size in
+     * bytes from which bodies are deflated. Set the threshold to 0 to never deflate.
+     * Listeners read messages in any encoding.
+     */
+    public static final String HORNETQ_EVENT_ENCODING = "candlepin.audit.hornetq.encoding";
+    public static final String HORNETQ_EVENT_COMPRESS_THRESHOLD =
+        "candlepin.audit.hornetq.compress_threshold";
+
+    /**
+     * Size in bytes of the acknowledgements listeners send to HornetQ in one go. Values
+     * above 0 save round trips, at the risk of events being handled twice if the server
+     * goes down before a batch of acknowledgements is sent.
+     */
+    public static final String HORNETQ_ACK_BATCH_SIZE = "candlepin.audit.hornetq.ack_batch_size";
 
     public static final String AUDIT_LISTENERS = "candlepin.audit.listeners";
+    /**
+     * Prefix of the number of consumers reading the queue of a listener, followed by the
+     * listener class name, e.g. candlepin.audit.listener_consumers.org.candlepin.audit.DatabaseListener.
+     * Defaults to 1, listeners must be thread safe to use more.
+     */
+    public static final String AUDIT_LISTENER_CONSUMERS = "candlepin.audit.listener_consumers.";
+    /**
+     * Maximum number of events handed at once to listeners able to handle batches.
+     */
+    public static final String AUDIT_LISTENER_BATCH_SIZE = "candlepin.audit.listener_batch_size";
     public static final String AUDIT_LOG_FILE = "candlepin.audit.log_file";
     /**
      * Enables audit event filtering. See documentation of EventFilter
@@ -199,6 +231,104 @@ public class ConfigProperties {
 
     public static final String PRODUCT_CACHE_MAX = "candlepin.cache.product_cache_max";
 
+    /**
+     * Hibernate second level cache for read-mostly reference entities (consumer types).
+     * Regions and their TTLs are declared in ehcache.xml. Hibernate statistics, which back
+     * the per-region cache metrics, are off by default.
+     */
+    public static final String SECOND_LEVEL_CACHE_ENABLED =
+        JPA_CONFIG_PREFIX + "hibernate.cache.use_second_level_cache";
+    public static final String SECOND_LEVEL_CACHE_FACTORY =
+        JPA_CONFIG_PREFIX + "hibernate.cache.region.factory_class";
+    public static final String HIBERNATE_STATISTICS = JPA_CONFIG_PREFIX + "hibernate.generate_statistics";
+
+    /**
+     * Maximum number of idle, pre-initialized rules scopes kept per rules namespace.
+     */
+    public static final String RULES_POOL_MAX_IDLE = "candlepin.rules.pool.max_idle";
+    /**
+     * Number of rules scopes created per namespace whenever the rules are compiled.
+     */
+    public static final String RULES_POOL_PREWARM = "candlepin.rules.pool.prewarm";
+
+    /**
+     * Engine used to calculate consumer compliance status: "js" (the rules), "java" (native
+     * implementation) or "differential" (runs both, logs mismatches and trusts the rules).
+     */
+    public static final String COMPLIANCE_ENGINE = "candlepin.compliance.engine";
+
+    /**
+     * Cache each consumer's current compliance status until its entitlements, facts,
+     * installed products or guests change, or the status could flip on a date boundary.
+     */
+    public static final String COMPLIANCE_CACHE_ENABLED = "candlepin.compliance.cache.enabled";
+    public static final String COMPLIANCE_CACHE_MAX = "candlepin.compliance.cache.max_entries";
+    public static final String COMPLIANCE_CACHE_TTL = "candlepin.compliance.cache.ttl_seconds";
+
+    /**
+     * Worker threads used to evaluate compliance for consumer batches, and the number of
+     * consumers loaded and evaluated together by the batch compliance endpoint and the
+     * active entitlement job.
+     */
+    public static final String COMPLIANCE_BATCH_THREADS = "candlepin.compliance.batch.threads";
+    public static final String COMPLIANCE_BATCH_SIZE = "candlepin.compliance.batch.size";
+
+    /**
+     * Run the common pre-entitlement attribute checks in Java when listing pools, only
+     * consulting the rules for pools they cannot handle. The Java checks mirror the bundled
+     * rules, so this is off by default: enable it only when running the bundled rules.
+     */
+    public static final String POOL_FILTER_JAVA_CHECKS = "candlepin.rules.pool_filter.java_checks";
+
+    /**
+     * Number of pools loaded and run through the rules at a time when filling a page of
+     * pools available to a consumer or activation key.
+     */
+    public static final String POOL_FILTER_BATCH_SIZE = "candlepin.rules.pool_filter.batch_size";
+
+    /**
+     * Worker threads used to build and sign entitlement certificates.
+     */
+    public static final String ENTCERT_GENERATION_THREADS = "candlepin.entcert.generation.threads";
+
+    /**
+     * Maximum size in bytes of the encoded v3 certificate content sections kept for reuse
+     * by entitlements sharing the same content paths. Set to 0 to disable.
+     */
+    public static final String ENTCERT_CONTENT_CACHE_MAX_BYTES =
+        "candlepin.entcert.content_cache.max_bytes";
+
+    /**
+     * Pre-generated RSA key pairs for consumer registration: the reservoir is refilled
+     * in the background once it drops below the low watermark, up to the high
+     * watermark. Set the high watermark to 0 to always generate key pairs inline.
+     */
+    public static final String KEYPAIR_RESERVOIR_LOW = "candlepin.pki.keypair_reservoir.low_watermark";
+    public static final String KEYPAIR_RESERVOIR_HIGH = "candlepin.pki.keypair_reservoir.high_watermark";
+    public static final String KEYPAIR_RESERVOIR_THREADS = "candlepin.pki.keypair_reservoir.threads";
+
+    /**
+     * Seconds principals established from consumer certificates are cached for, and the
+     * maximum number of consumers cached. Set the TTL to 0 to disable.
+     */
+    public static final String PRINCIPAL_CACHE_TTL = "candlepin.auth.ssl.principal_cache.ttl";
+    public static final String PRINCIPAL_CACHE_MAX = "candlepin.auth.ssl.principal_cache.max_entries";
+
+    /**
+     * Seconds between writes of buffered consumer check-in times, and the maximum number
+     * of consumers buffered in between. Set the interval to 0 to write every check-in
+     * as it happens.
+     */
+    public static final String CHECKIN_FLUSH_INTERVAL = "candlepin.consumer.checkin.flush_interval";
+    public static final String CHECKIN_BUFFER_MAX = "candlepin.consumer.checkin.max_buffered";
+
+    /**
+     * Worker threads healing the consumers of an org, and the number of consumers
+     * handed to a worker at a time. Progress is recorded once a chunk is done.
+     */
+    public static final String HEAL_ORG_THREADS = "candlepin.heal_org.threads";
+    public static final String HEAL_ORG_CHUNK_SIZE = "candlepin.heal_org.chunk_size";
+
     public static final String INTEGER_FACTS = "candlepin.integer_facts";
     private static final String INTEGER_FACT_LIST = "";
 
@@ -240,6 +370,13 @@ public class ConfigProperties {
      */
     public static final String CRL_NEXT_UPDATE_DELTA = "candlepin.crl.nextupdate.delta_days";
     public static final String CRL_FILE_PATH = "candlepin.crl.file";
+    /**
+     * Seconds a request for the CRL is served the snapshot held in memory before the
+     * CRL is synced with the database again. Newly revoked serials show up once the
+     * snapshot expires or the CRL job runs. With 0 every request brings the CRL up to
+     * date, at the cost of a sync with the database for nearly every request.
+     */
+    public static final String CRL_MAX_AGE = "candlepin.crl.max_age";
 
     public static final String IDENTITY_CERT_YEAR_ADDENDUM = "candlepin.identityCert.yr.addendum";
     /**
@@ -270,6 +407,12 @@ public class ConfigProperties {
             this.put(HORNETQ_ADDRESS_FULL_POLICY, "PAGE");
             this.put(HORNETQ_MAX_QUEUE_SIZE, "10");
             this.put(HORNETQ_MAX_PAGE_SIZE, "1");
+            this.put(HORNETQ_DISPATCH_QUEUE_SIZE, "10000");
+            this.put(HORNETQ_DISPATCH_BATCH_SIZE, "500");
+            this.put(HORNETQ_EVENT_ENCODING, "json");
+            this.put(HORNETQ_EVENT_COMPRESS_THRESHOLD, "0");
+            this.put(HORNETQ_ACK_BATCH_SIZE, "0");
+            this.put(AUDIT_LISTENER_BATCH_SIZE, "100");
             this.put(AUDIT_LISTENERS,
                 "org.candlepin.audit.DatabaseListener," +
                 "org.candlepin.audit.LoggingListener," +
@@ -299,6 +442,7 @@ public class ConfigProperties {
             this.put(REVOKE_ENTITLEMENT_IN_FIFO_ORDER, "true");
             this.put(CRL_FILE_PATH, "/var/lib/candlepin/candlepin-crl.crl");
             this.put(CRL_NEXT_UPDATE_DELTA, "1");
+            this.put(CRL_MAX_AGE, "60");
 
             this.put(SYNC_WORK_DIR, "/var/cache/candlepin/sync");
             this.put(CONSUMER_FACTS_MATCHER, ".*");
@@ -361,6 +505,32 @@ public class ConfigProperties {
              *  a larger memory footprint as the cache fills up.
              */
             this.put(PRODUCT_CACHE_MAX, "100");
+            this.put(SECOND_LEVEL_CACHE_ENABLED, "true");
+            this.put(SECOND_LEVEL_CACHE_FACTORY,
+                "org.hibernate.cache.ehcache.EhCacheRegionFactory");
+            this.put(HIBERNATE_STATISTICS, "false");
+
+            this.put(RULES_POOL_MAX_IDLE, "32");
+            this.put(RULES_POOL_PREWARM, "4");
+            this.put(COMPLIANCE_ENGINE, "js");
+            this.put(COMPLIANCE_CACHE_ENABLED, "true");
+            this.put(COMPLIANCE_CACHE_MAX, "10000");
+            this.put(COMPLIANCE_CACHE_TTL, "600");
+            this.put(COMPLIANCE_BATCH_THREADS, "4");
+            this.put(COMPLIANCE_BATCH_SIZE, "500");
+            this.put(POOL_FILTER_JAVA_CHECKS, "false");
+            this.put(POOL_FILTER_BATCH_SIZE, "100");
+            this.put(ENTCERT_GENERATION_THREADS, "4");
+            this.put(ENTCERT_CONTENT_CACHE_MAX_BYTES, "16777216");
+            this.put(KEYPAIR_RESERVOIR_LOW, "10");
+            this.put(KEYPAIR_RESERVOIR_HIGH, "50");
+            this.put(KEYPAIR_RESERVOIR_THREADS, "1");
+            this.put(PRINCIPAL_CACHE_TTL, "30");
+            this.put(PRINCIPAL_CACHE_MAX, "100000");
+            this.put(CHECKIN_FLUSH_INTERVAL, "15");
+            this.put(CHECKIN_BUFFER_MAX, "50000");
+            this.put(HEAL_ORG_THREADS, "4");
+            this.put(HEAL_ORG_CHUNK_SIZE, "100");
 
             /**
              * As we do math on some facts and attributes, we need to constrain
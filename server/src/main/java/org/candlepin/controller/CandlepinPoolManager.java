@@ -64,6 +64,7 @@ import org.candlepin.policy.js.pool.PoolUpdate;
 import org.candlepin.resource.dto.AutobindData;
 import org.candlepin.service.SubscriptionServiceAdapter;
 import org.candlepin.sync.SubscriptionReconciler;
+import org.candlepin.util.Metrics;
 import org.candlepin.util.Util;
 
 import com.google.inject.Inject;
@@ -72,6 +73,7 @@ import com.google.inject.persist.Transactional;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.collections.MapUtils;
 import org.apache.commons.lang.StringUtils;
+import org.hibernate.criterion.Criterion;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xnap.commons.i18n.I18n;
@@ -80,6 +82,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -103,6 +106,13 @@ public class CandlepinPoolManager implements PoolManager {
 
     private static final int MAX_ENTITLE_RETRIES = 3;
 
+    private static final Metrics.Timer RESERVATION_LOCK_WAIT = Metrics.timer("pool.reservation.lock_wait");
+    private static final Metrics.Counter RESERVATIONS_REFUSED = Metrics.counter("pool.reservation.refused");
+    private static final String LOCK_WAIT_PREFIX = "pool.reservation.lock_wait.";
+    private static final String REFUSED_PREFIX = "pool.reservation.refused.";
+    private static final Metrics.Counter EXPIRED_POOLS = Metrics.counter("pool.expired.deleted");
+    private static final Metrics.Timer EXPIRED_BLOCK_TIME = Metrics.timer("pool.expired.block");
+
     private EventSink sink;
     private EventFactory eventFactory;
     private Configuration config;
@@ -180,10 +190,12 @@ public class CandlepinPoolManager implements PoolManager {
 
     /*
      * We need to update/regen entitlements in the same transaction we update pools
-     * so we don't miss anything
+     * so we don't miss anything. Returns the ids of the subscriptions left unchanged
+     * since the last import.
      */
     @Transactional
-    void refreshPoolsWithRegeneration(SubscriptionServiceAdapter subAdapter, Owner owner, boolean lazy) {
+    Set<String> refreshPoolsWithRegeneration(SubscriptionServiceAdapter subAdapter, Owner owner,
+        boolean lazy) {
         long start = System.currentTimeMillis();
         owner = this.refreshOwner(owner);
         log.info("Refreshing pools for owner: {}", owner);
@@ -196,10 +208,19 @@ public class CandlepinPoolManager implements PoolManager {
 
         Set<String> subIds = Util.newSet();
 
-        refreshContent(owner, subs);
+        Set<Content> changedContent = refreshContent(owner, subs);
         Set<Product> changedProducts = refreshProducts(owner, subs);
 
+        // Changed content may be behind any product, only trust the hashes without it
+        Map<String, String> importHashes = changedContent.isEmpty() ?
+            poolCurator.getMasterPoolImportHashes(owner) : Collections.<String, String>emptyMap();
+        Set<String> changedProductIds = Util.newSet();
+        for (Product product : changedProducts) {
+            changedProductIds.add(product.getId());
+        }
+
         List<String> deletedSubs = new LinkedList<String>();
+        Set<String> unchangedSubs = Util.newSet();
         for (Subscription sub : subs) {
             String subId = sub.getId();
             subIds.add(subId);
@@ -213,9 +234,21 @@ public class CandlepinPoolManager implements PoolManager {
                 continue;
             }
 
+            if (isUnchangedImport(sub, importHashes.get(subId), changedProductIds)) {
+                log.debug("Subscription unchanged since the last import: {}", sub);
+                repairPoolsForMasterPool(convertToMasterPool(sub));
+                unchangedSubs.add(subId);
+                continue;
+            }
+
             refreshPoolsForMasterPool(convertToMasterPool(sub), false, lazy, changedProducts);
         }
 
+        if (!unchangedSubs.isEmpty()) {
+            log.info("Skipped updating {} of {} subscriptions unchanged since the last import",
+                unchangedSubs.size(), subs.size());
+        }
+
         Pool ueberPool = this.findUeberPool(owner);
         String ueberPoolId = ueberPool != null ? ueberPool.getId() : null;
 
@@ -239,6 +272,33 @@ public class CandlepinPoolManager implements PoolManager {
         updateFloatingPools(floatingPools, lazy, changedProducts);
         log.info("Refresh pools for owner: {} completed in: {}ms", owner.getKey(),
             System.currentTimeMillis() - start);
+        return unchangedSubs;
+    }
+
+    /*
+     * A subscription imported from the same entitlement as its master pool will not
+     * change the pools, unless one of its products has changed since.
+     */
+    private boolean isUnchangedImport(Subscription sub, String poolImportHash,
+        Set<String> changedProductIds) {
+
+        if (sub.getImportHash() == null || !sub.getImportHash().equals(poolImportHash)) {
+            return false;
+        }
+
+        List<ProductData> products = new LinkedList<ProductData>();
+        products.add(sub.getProduct());
+        products.add(sub.getDerivedProduct());
+        products.addAll(sub.getProvidedProducts());
+        products.addAll(sub.getDerivedProvidedProducts());
+
+        for (ProductData product : products) {
+            if (product != null && changedProductIds.contains(product.getId())) {
+                return false;
+            }
+        }
+
+        return true;
     }
 
     private Owner refreshOwner(Owner owner) {
@@ -494,6 +554,19 @@ public class CandlepinPoolManager implements PoolManager {
         regenerateCertificatesByEntIds(updatedMasterPools, lazy);
     }
 
+    /*
+     * The pools of a subscription unchanged since the last import need no update, and
+     * their entitlements no new certificates. Pools left on other owners are still
+     * removed, and missing pools recreated, as for any other subscription.
+     */
+    private void repairPoolsForMasterPool(Pool pool) {
+        List<Pool> subscriptionPools = poolCurator.getPoolsBySubscriptionId(pool.getSubscriptionId());
+        removeAndDeletePoolsOnOtherOwners(subscriptionPools, pool);
+
+        // BZ 1012386
+        createAndEnrichPools(pool, subscriptionPools);
+    }
+
     /**
      * Deletes all known expired pools. The deletion of expired pools also triggers entitlement
      * revocation and consumer compliance recalculation.
@@ -509,9 +582,17 @@ public class CandlepinPoolManager implements PoolManager {
 
         do {
             // This call is run within a new transaction if we're not already in a transaction
+            long start = System.nanoTime();
             int blockSize = this.cleanupExpiredPoolsImpl();
+            EXPIRED_BLOCK_TIME.updateSince(start);
+            EXPIRED_POOLS.add(blockSize);
             count += blockSize;
 
+            if (blockSize > 0) {
+                log.info("Cleaned up a block of {} expired pools in {}ms", blockSize,
+                    (System.nanoTime() - start) / 1000000);
+            }
+
             loop = blockSize >= PoolCurator.EXPIRED_POOL_BLOCK_SIZE;
         } while (loop);
 
@@ -922,6 +1003,7 @@ public class CandlepinPoolManager implements PoolManager {
         pool.setUpstreamConsumerId(sub.getUpstreamConsumerId());
         pool.setCdn(sub.getCdn());
         pool.setCertificate(sub.getCertificate());
+        pool.setImportHash(sub.getImportHash());
 
         // Add in branding
         for (Branding b : sub.getBranding()) {
@@ -970,7 +1052,6 @@ public class CandlepinPoolManager implements PoolManager {
     // NOTE: after calling this method both entitlement pool and consumer
     // parameters will most certainly be stale. beware!
     @Override
-    @Transactional
     public List<Entitlement> entitleByProducts(AutobindData data)
         throws EntitlementRefusedException {
         Consumer consumer = data.getConsumer();
@@ -1042,7 +1123,6 @@ public class CandlepinPoolManager implements PoolManager {
     // NOTE: after calling this method both entitlement pool and consumer
     // parameters will most certainly be stale. beware!
     @Override
-    @Transactional
     public List<Entitlement> entitleByProductsForHost(Consumer guest, Consumer host,
         Date entitleDate, Collection<String> possiblePools)
         throws EntitlementRefusedException {
@@ -1337,7 +1417,6 @@ public class CandlepinPoolManager implements PoolManager {
      * @throws EntitlementRefusedException if entitlement is refused
      */
     @Override
-    @Transactional
     public List<Entitlement> entitleByPools(Consumer consumer, Map<String, Integer> poolQuantities)
         throws EntitlementRefusedException {
         if (MapUtils.isNotEmpty(poolQuantities)) {
@@ -1385,6 +1464,34 @@ public class CandlepinPoolManager implements PoolManager {
         return null;
     }
 
+    /**
+     * Grants new entitlements, or updates the quantity of existing ones, in two
+     * transactions. The first runs the rules, locks the pools to check their quantity
+     * and persists the entitlements; the pool locks are released when it commits. The
+     * second generates the certificates, checks the bonus pools and updates the
+     * consumer's compliance, so that binds on a popular pool do not queue behind that
+     * work. When called within a transaction of the caller both simply join it.
+     *
+     * Should the second transaction fail, what the first one granted is undone again.
+     */
+    protected List<Entitlement> addOrUpdateEntitlements(Consumer consumer,
+        Map<String, Integer> poolQuantityMap, Map<String, Entitlement> entitlements,
+        boolean generateUeberCert, CallerType caller) throws EntitlementRefusedException {
+
+        Grant grant = grantEntitlements(consumer, poolQuantityMap, entitlements, caller);
+        try {
+            completeEntitlements(grant, generateUeberCert);
+        }
+        catch (RuntimeException e) {
+            log.error("Unable to complete entitlements for consumer {}, undoing them",
+                grant.consumer.getUuid(), e);
+            undoEntitlements(grant);
+            throw e;
+        }
+
+        return new ArrayList<Entitlement>(grant.entitlements.values());
+    }
+
     /**
      * This transaction used to update consumer's status hash and got dead
      * locked because:
@@ -1402,30 +1509,24 @@ public class CandlepinPoolManager implements PoolManager {
      * 5. Deadlock.  T2 is waiting for T1's shared lock to be released but
      *    T1 is waiting for T2's shared lock to be released.
      *
-     * The solution is to create a longer transaction and grab an exclusive lock
-     * on the cp_consumer row (using a select for update) at the start of the transaction.
-     * The other thread will then wait for the exclusive lock to be released instead of
-     * deadlocking.
+     * The solution is to grab an exclusive lock on the cp_consumer row (using a
+     * select for update) before inserting into cp_entitlement. The other thread will
+     * then wait for the exclusive lock to be released instead of deadlocking. The pools
+     * are locked before the consumer, in id order, for the same reason.
      *
      * See BZ #1274074 and git history for details
      */
     @Transactional
-    protected List<Entitlement> addOrUpdateEntitlements(Consumer consumer,
-        Map<String, Integer> poolQuantityMap, Map<String, Entitlement> entitlements,
-        boolean generateUeberCert, CallerType caller) throws EntitlementRefusedException {
-
-        // Because there are several paths to this one place where entitlements
-        // are granted, we cannot be positive the caller obtained a lock on the
-        // pool when it was read. As such we're going to reload it with a lock
-        // before starting this process.
-
-        log.debug("Locking pools: {}", poolQuantityMap.keySet());
+    Grant grantEntitlements(Consumer consumer, Map<String, Integer> poolQuantityMap,
+        Map<String, Entitlement> entitlements, CallerType caller) throws EntitlementRefusedException {
 
-        List<Pool> pools = poolCurator.lockAndLoadBatch(poolQuantityMap.keySet());
+        // The pools are only locked once the rules have passed, see reserveQuantities,
+        // so that popular pools are not locked while the rules run.
+        List<Pool> pools = poolCurator.loadBatch(poolQuantityMap.keySet());
 
         if (log.isDebugEnabled()) {
             for (Pool pool : pools) {
-                log.debug("Locked pool: {} consumed: {}", pool, pool.getConsumed());
+                log.debug("Loaded pool: {} consumed: {}", pool, pool.getConsumed());
             }
         }
 
@@ -1476,13 +1577,13 @@ public class CandlepinPoolManager implements PoolManager {
             handler = new UpdateHandler();
         }
 
-        boolean isDistributor = consumer.getType().isManifest();
+        poolQuantities = reserveQuantities(poolQuantities);
 
         /*
-         * Grab an exclusive lock on the consumer to prevent deadlock.
+         * Grab an exclusive lock on the consumer to prevent deadlock, see above.
          * No need to lock for distributors as we wont compute compliance for it.
          */
-        if (!isDistributor) {
+        if (!consumer.getType().isManifest()) {
             consumer = consumerCurator.lockAndLoad(consumer);
         }
 
@@ -1503,15 +1604,35 @@ public class CandlepinPoolManager implements PoolManager {
         }
 
         handler.handlePostEntitlement(this, consumer, entitlements);
-        handler.handleSelfCertificates(consumer, poolQuantities, entitlements, generateUeberCert);
+
+        poolCurator.flush();
+
+        return new Grant(consumer, poolQuantities, entitlements, handler);
+    }
+
+    /**
+     * Generates the certificates of the entitlements just granted, checks the bonus
+     * pools and updates the consumer's compliance. The pools the entitlements were
+     * granted from are no longer locked.
+     */
+    @Transactional
+    void completeEntitlements(Grant grant, boolean generateUeberCert) {
+        Consumer consumer = grant.consumer;
+        boolean isDistributor = consumer.getType().isManifest();
+        if (!isDistributor) {
+            consumer = consumerCurator.lockAndLoad(consumer);
+        }
+
+        grant.handler.handleSelfCertificates(consumer, grant.poolQuantities, grant.entitlements,
+            generateUeberCert);
 
         this.ecGenerator.regenerateCertificatesByEntitlementIds(
-            this.entitlementCurator.batchListModifying(entitlements.values()), generateUeberCert, true
+            this.entitlementCurator.batchListModifying(grant.entitlements.values()), generateUeberCert,
+            true
         );
 
         // we might have changed the bonus pool quantities, lets find out.
-        handler.handleBonusPools(poolQuantities, entitlements);
-
+        grant.handler.handleBonusPools(grant.poolQuantities, grant.entitlements);
 
         /*
          * If the consumer is not a distributor, check consumer's new compliance
@@ -1524,8 +1645,131 @@ public class CandlepinPoolManager implements PoolManager {
         }
 
         poolCurator.flush();
+    }
+
+    /**
+     * Undoes entitlements which were granted but could not be completed, logging
+     * rather than throwing should that fail too.
+     */
+    @Transactional
+    void undoEntitlements(Grant grant) {
+        try {
+            grant.handler.undoEntitlement(grant.consumer, grant.poolQuantities, grant.entitlements);
+        }
+        catch (RuntimeException e) {
+            log.error("Unable to undo entitlements {}", grant.entitlements.values(), e);
+        }
+    }
+
+    /**
+     * Locks the pools entitlements are about to be granted from, or updated in, in id
+     * order and checks they still have the quantity requested. The pools were loaded
+     * without a lock for the rules, so another bind may have taken the remaining
+     * quantity in the meantime. Nothing has been persisted yet, so the bind is simply
+     * refused as if the pool had been exhausted from the start.
+     *
+     * @return the requested quantities, holding the locked pools
+     */
+    private Map<String, PoolQuantity> reserveQuantities(Map<String, PoolQuantity> poolQuantities)
+        throws EntitlementRefusedException {
+        log.debug("Locking pools: {}", poolQuantities.keySet());
+        long start = System.nanoTime();
+        List<Pool> pools = poolCurator.lockAndLoadBatch(poolQuantities.keySet());
+        long waited = System.nanoTime() - start;
+        RESERVATION_LOCK_WAIT.update(waited);
+
+        Map<String, PoolQuantity> locked = new HashMap<String, PoolQuantity>();
+        Map<String, ValidationResult> refused = new HashMap<String, ValidationResult>();
+        for (Pool pool : pools) {
+            Integer quantity = poolQuantities.get(pool.getId()).getQuantity();
+            locked.put(pool.getId(), new PoolQuantity(pool, quantity));
 
-        return new ArrayList<Entitlement>(entitlements.values());
+            boolean exhausted = quantity > 0 && !pool.entitlementsAvailable(quantity);
+            if (exhausted) {
+                ValidationResult result = new ValidationResult();
+                result.addError("rulefailed.no.entitlements.available");
+                refused.put(pool.getId(), result);
+                RESERVATIONS_REFUSED.inc();
+            }
+            PoolContention.record(pool.getId(), waited, exhausted);
+        }
+
+        if (!refused.isEmpty()) {
+            log.warn("Pools exhausted by concurrent binds: {}", refused.keySet());
+            throw new EntitlementRefusedException(refused);
+        }
+        return locked;
+    }
+
+    /*
+     * The entitlements granted by the first transaction of a bind, along with what the
+     * second one needs to complete them.
+     */
+    private static class Grant {
+        private final Consumer consumer;
+        private final Map<String, PoolQuantity> poolQuantities;
+        private final Map<String, Entitlement> entitlements;
+        private final EntitlementHandler handler;
+
+        Grant(Consumer consumer, Map<String, PoolQuantity> poolQuantities,
+            Map<String, Entitlement> entitlements, EntitlementHandler handler) {
+            this.consumer = consumer;
+            this.poolQuantities = poolQuantities;
+            this.entitlements = entitlements;
+            this.handler = handler;
+        }
+    }
+
+    /*
+     * Lock waits and refusals of the pools binds contend for most. Only MAX_POOLS pools
+     * have metrics of their own at any one time, so the number of metric names stays
+     * bounded however many pools there are. Pools are ranked by the time binds waited
+     * for them; a pool not yet tracked takes over from the one ranked lowest, starting
+     * from its rank, so a pool that becomes popular late still makes it in. Every pool
+     * is counted in the aggregate metrics.
+     */
+    private static class PoolContention {
+        private static final int MAX_POOLS = 20;
+        private static final Map<String, PoolContention> POOLS = new HashMap<String, PoolContention>();
+
+        private final String poolId;
+        private final Metrics.Timer lockWait;
+        private final Metrics.Counter refused;
+        private long rank;
+
+        private PoolContention(String poolId, long rank) {
+            this.poolId = poolId;
+            this.rank = rank;
+            this.lockWait = Metrics.timer(LOCK_WAIT_PREFIX + poolId);
+            this.refused = Metrics.counter(REFUSED_PREFIX + poolId);
+        }
+
+        static synchronized void record(String poolId, long waited, boolean exhausted) {
+            PoolContention contention = POOLS.get(poolId);
+            if (contention == null) {
+                long rank = 0;
+                if (POOLS.size() >= MAX_POOLS) {
+                    PoolContention lowest = Collections.min(POOLS.values(),
+                        new Comparator<PoolContention>() {
+                            public int compare(PoolContention a, PoolContention b) {
+                                return a.rank < b.rank ? -1 : (a.rank == b.rank ? 0 : 1);
+                            }
+                        });
+                    POOLS.remove(lowest.poolId);
+                    Metrics.remove(LOCK_WAIT_PREFIX + lowest.poolId);
+                    Metrics.remove(REFUSED_PREFIX + lowest.poolId);
+                    rank = lowest.rank;
+                }
+                contention = new PoolContention(poolId, rank);
+                POOLS.put(poolId, contention);
+            }
+
+            contention.rank += waited;
+            contention.lockWait.update(waited);
+            if (exhausted) {
+                contention.refused.inc();
+            }
+        }
     }
 
     /**
@@ -1971,6 +2215,9 @@ public class CandlepinPoolManager implements PoolManager {
             Map<String, Entitlement> entitlements, boolean generateUeberCert);
 
         void handleBonusPools(Map<String, PoolQuantity> pools, Map<String, Entitlement> entitlements);
+
+        void undoEntitlement(Consumer consumer, Map<String, PoolQuantity> pools,
+            Map<String, Entitlement> entitlements);
     }
 
     /**
@@ -2050,6 +2297,12 @@ public class CandlepinPoolManager implements PoolManager {
         public void handleBonusPools(Map<String, PoolQuantity> pools, Map<String, Entitlement> entitlements) {
             checkBonusPoolQuantities(pools, entitlements);
         }
+
+        @Override
+        public void undoEntitlement(Consumer consumer, Map<String, PoolQuantity> pools,
+            Map<String, Entitlement> entitlements) {
+            revokeEntitlements(new ArrayList<Entitlement>(entitlements.values()));
+        }
     }
 
     /**
@@ -2087,6 +2340,18 @@ public class CandlepinPoolManager implements PoolManager {
             // rather than the older virt_limit * entitlement quantity:
             checkBonusPoolQuantities(pools, entitlements);
         }
+
+        @Override
+        public void undoEntitlement(Consumer consumer, Map<String, PoolQuantity> poolQuantities,
+            Map<String, Entitlement> entitlements) {
+            for (Entry<String, Entitlement> entry : entitlements.entrySet()) {
+                Entitlement entitlement = entry.getValue();
+                entitlement.setQuantity(entitlement.getQuantity() -
+                    poolQuantities.get(entry.getKey()).getQuantity());
+                regenerateCertificatesOf(entitlement, false, true);
+            }
+            entitlementCurator.mergeAll(new ArrayList<Entitlement>(entitlements.values()), false);
+        }
     }
 
     @Override
@@ -2100,6 +2365,17 @@ public class CandlepinPoolManager implements PoolManager {
         if (consumer != null && !consumer.isDev()) {
             filters.addAttributeFilter(Pool.Attributes.DEVELOPMENT_POOL, "!true");
         }
+        if (consumer != null) {
+            // Drop the pools the rules would certainly reject in the database
+            for (Criterion criterion : enforcer.filterCriteria(consumer, includeWarnings)) {
+                filters.addCriteria(criterion);
+            }
+        }
+
+        if (postFilter && pageRequest != null && pageRequest.isPaging()) {
+            return listFilteredPage(consumer, key, owner, productId, subscriptionId, activeOn,
+                activeOnly, includeWarnings, filters, pageRequest);
+        }
 
         Page<List<Pool>> page = this.poolCurator.listAvailableEntitlementPools(consumer,
             owner, productId, subscriptionId, activeOn, activeOnly, filters, pageRequest, postFilter);
@@ -2108,14 +2384,72 @@ public class CandlepinPoolManager implements PoolManager {
             return page;
         }
 
-        // If the consumer was specified, we need to filter out any
-        // pools that the consumer will not be able to attach.
-        // If querying for pools available to a specific consumer, we need
-        // to do a rules pass to verify the entitlement will be granted.
-        // Note that something could change between the time we list a pool as
-        // available, and the consumer requests the actual entitlement, and the
-        // request still could fail.
-        List<Pool> resultingPools = page.getPageData();
+        List<Pool> resultingPools = filterPools(consumer, key, page.getPageData(), includeWarnings);
+
+        // Set maxRecords once we are done filtering
+        page.setMaxRecords(resultingPools.size());
+        page.setPageData(resultingPools);
+        return page;
+    }
+
+    /*
+     * Fills the requested page of pools available to a consumer or activation key by
+     * loading and filtering the candidate pools a batch at a time, in page order, and
+     * stopping once enough pools have passed the rules to cover the page.
+     *
+     * Unless every candidate was filtered, the total number of records is an upper
+     * bound: the pools filtered so far plus the candidates not yet looked at.
+     */
+    private Page<List<Pool>> listFilteredPage(Consumer consumer, ActivationKey key, Owner owner,
+        String productId, String subscriptionId, Date activeOn, boolean activeOnly,
+        boolean includeWarnings, PoolFilterBuilder filters, PageRequest pageRequest) {
+
+        int wanted = pageRequest.getPage() * pageRequest.getPerPage();
+        PageRequest batchRequest = new PageRequest();
+        batchRequest.setOrder(pageRequest.getOrder());
+        batchRequest.setSortBy(pageRequest.getSortBy());
+        batchRequest.setPerPage(Math.max(pageRequest.getPerPage(),
+            config.getInt(ConfigProperties.POOL_FILTER_BATCH_SIZE)));
+
+        List<Pool> resultingPools = new ArrayList<Pool>();
+        int candidates = 0;
+        int scanned = 0;
+        boolean exhausted = false;
+
+        for (int batch = 1; !exhausted && resultingPools.size() < wanted; batch++) {
+            batchRequest.setPage(batch);
+            Page<List<Pool>> candidatePage = this.poolCurator.listAvailableEntitlementPools(consumer,
+                owner, productId, subscriptionId, activeOn, activeOnly, filters, batchRequest, false);
+
+            List<Pool> pools = candidatePage.getPageData();
+            candidates = candidatePage.getMaxRecords();
+            scanned += pools.size();
+            exhausted = pools.size() < batchRequest.getPerPage() || scanned >= candidates;
+            resultingPools.addAll(filterPools(consumer, key, pools, includeWarnings));
+        }
+
+        log.debug("Filtered {} of {} candidate pools to fill page {}", scanned, candidates,
+            pageRequest.getPage());
+
+        Page<List<Pool>> page = new Page<List<Pool>>();
+        page.setMaxRecords(resultingPools.size() + (exhausted ? 0 : candidates - scanned));
+        page.setPageData(poolCurator.takeSubList(pageRequest, resultingPools));
+        page.setPageRequest(pageRequest);
+        return page;
+    }
+
+    /*
+     * If the consumer was specified, we need to filter out any
+     * pools that the consumer will not be able to attach.
+     * If querying for pools available to a specific consumer, we need
+     * to do a rules pass to verify the entitlement will be granted.
+     * Note that something could change between the time we list a pool as
+     * available, and the consumer requests the actual entitlement, and the
+     * request still could fail.
+     */
+    private List<Pool> filterPools(Consumer consumer, ActivationKey key, List<Pool> pools,
+        boolean includeWarnings) {
+        List<Pool> resultingPools = pools;
         if (consumer != null) {
             resultingPools = enforcer.filterPools(
                 consumer, resultingPools, includeWarnings);
@@ -2124,16 +2458,7 @@ public class CandlepinPoolManager implements PoolManager {
             resultingPools = this.filterPoolsForActKey(
                 key, resultingPools, includeWarnings);
         }
-
-        // Set maxRecords once we are done filtering
-        page.setMaxRecords(resultingPools.size());
-
-        if (pageRequest != null && pageRequest.isPaging()) {
-            resultingPools = poolCurator.takeSubList(pageRequest, resultingPools);
-        }
-
-        page.setPageData(resultingPools);
-        return page;
+        return resultingPools;
     }
 
     /**
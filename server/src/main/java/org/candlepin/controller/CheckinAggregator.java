@@ -0,0 +1,215 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.controller;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerCurator;
+import org.candlepin.util.Metrics;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.persist.UnitOfWork;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * CheckinAggregator
+ *
+ * Buffers consumer check-in times and writes them in batches on an interval, instead
+ * of updating the consumer row on every authenticated request. Only the latest check-in
+ * of each consumer is kept. Once the buffer is full a flush is started early, and
+ * check-ins that do not fit are written directly until it has drained.
+ */
+@Singleton
+public class CheckinAggregator {
+    private static Logger log = LoggerFactory.getLogger(CheckinAggregator.class);
+
+    private static final Metrics.Timer FLUSH_TIME = Metrics.timer("consumer.checkin.flush");
+    private static final Metrics.Counter FLUSHED = Metrics.counter("consumer.checkin.flushed");
+    private static final Metrics.Counter OVERFLOWS = Metrics.counter("consumer.checkin.overflow");
+
+    private final ConsumerCurator consumerCurator;
+    private final UnitOfWork unitOfWork;
+    private final int maxBuffered;
+    private final ConcurrentHashMap<String, Date> pending;
+    private final ScheduledExecutorService executor;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    @Inject
+    public CheckinAggregator(ConsumerCurator consumerCurator, UnitOfWork unitOfWork,
+        Configuration config) {
+        this(consumerCurator, unitOfWork, config.getInt(ConfigProperties.CHECKIN_FLUSH_INTERVAL),
+            config.getInt(ConfigProperties.CHECKIN_BUFFER_MAX));
+    }
+
+    /**
+     * @param consumerCurator used to write the check-in times
+     * @param unitOfWork used to open a session for flushes outside of a request
+     * @param interval seconds between flushes, 0 writes every check-in directly
+     * @param maxBuffered the maximum number of consumers buffered between flushes
+     */
+    public CheckinAggregator(ConsumerCurator consumerCurator, UnitOfWork unitOfWork,
+        int interval, int maxBuffered) {
+        this.consumerCurator = consumerCurator;
+        this.unitOfWork = unitOfWork;
+        this.maxBuffered = Math.max(1, maxBuffered);
+        this.pending = new ConcurrentHashMap<String, Date>();
+
+        if (interval > 0) {
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat("checkin-aggregator-%d")
+                    .build());
+            scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+            scheduler.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    flush();
+                }
+            }, interval, interval, TimeUnit.SECONDS);
+            this.executor = scheduler;
+        }
+        else {
+            this.executor = null;
+        }
+
+        Metrics.gauge("consumer.checkin.buffered", new Metrics.Gauge() {
+            public Number getValue() {
+                return pending.size();
+            }
+        });
+    }
+
+    public void checkin(Consumer consumer) {
+        this.checkin(consumer, new Date());
+    }
+
+    /**
+     * Records a check-in, to be written with the next flush.
+     *
+     * @param consumer the consumer checking in
+     * @param checkinDate the time of the check-in
+     */
+    public void checkin(Consumer consumer, Date checkinDate) {
+        if (executor == null || executor.isShutdown()) {
+            consumerCurator.updateLastCheckin(consumer, checkinDate);
+            return;
+        }
+
+        if (pending.size() >= maxBuffered && !pending.containsKey(consumer.getId())) {
+            OVERFLOWS.inc();
+            requestFlush();
+            consumerCurator.updateLastCheckin(consumer, checkinDate);
+            return;
+        }
+
+        pending.put(consumer.getId(), checkinDate);
+        if (pending.size() >= maxBuffered) {
+            requestFlush();
+        }
+    }
+
+    public int getBuffered() {
+        return pending.size();
+    }
+
+    /**
+     * Writes all buffered check-ins. Check-ins recorded while the flush is running are
+     * left for the next one.
+     */
+    public synchronized void flush() {
+        flushRequested.set(false);
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        Map<String, Date> batch = new HashMap<String, Date>();
+        for (Map.Entry<String, Date> entry : pending.entrySet()) {
+            // a newer check-in replacing this one stays buffered
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                batch.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        long start = System.nanoTime();
+        boolean startedUow = startUnitOfWork();
+        try {
+            consumerCurator.updateLastCheckins(batch);
+            FLUSHED.add(batch.size());
+            log.debug("Wrote {} consumer check-ins", batch.size());
+        }
+        catch (RuntimeException e) {
+            // check-in times are advisory, never let a failed flush pile up
+            log.error("Unable to write " + batch.size() + " consumer check-ins", e);
+        }
+        finally {
+            if (startedUow) {
+                unitOfWork.end();
+            }
+            FLUSH_TIME.updateSince(start);
+        }
+    }
+
+    /**
+     * Stops the periodic flushes and writes what is left in the buffer. Check-ins
+     * recorded afterwards are written directly.
+     */
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+            flush();
+        }
+    }
+
+    private void requestFlush() {
+        if (flushRequested.compareAndSet(false, true)) {
+            try {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        flush();
+                    }
+                });
+            }
+            catch (RejectedExecutionException e) {
+                log.debug("Check-in aggregator is shut down, not flushing");
+            }
+        }
+    }
+
+    private boolean startUnitOfWork() {
+        try {
+            unitOfWork.begin();
+            return true;
+        }
+        catch (IllegalStateException e) {
+            log.debug("Already have an open unit of work");
+            return false;
+        }
+    }
+}
@@ -26,10 +26,12 @@ import org.candlepin.model.Owner;
 import org.candlepin.model.Pool;
 import org.candlepin.model.PoolCurator;
 import org.candlepin.model.Product;
+import org.candlepin.service.BaseEntitlementCertServiceAdapter;
 import org.candlepin.service.EntitlementCertServiceAdapter;
 import org.candlepin.util.CertificateSizeException;
 import org.candlepin.version.CertVersionConflictException;
 
+import com.google.common.collect.Iterables;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 
@@ -60,6 +62,9 @@ import java.util.Set;
 public class EntitlementCertificateGenerator {
     private static Logger log = LoggerFactory.getLogger(EntitlementCertificateGenerator.class);
 
+    /** Number of entitlements whose certificates are generated together in bulk regeneration */
+    private static final int REGEN_BATCH_SIZE = 100;
+
     private EntitlementCertificateCurator entitlementCertificateCurator;
     private EntitlementCertServiceAdapter entCertServiceAdapter;
     private EntitlementCurator entitlementCurator;
@@ -203,8 +208,8 @@ public class EntitlementCertificateGenerator {
     }
 
     /**
-     * Regenerates the certificates for the specified entitlements. This method is a utility method
-     * which individually regenerates certificates for each entitlement in the provided collection.
+     * Regenerates the certificates for the specified entitlements. Certificates are generated in
+     * batches, which may span several consumers, so they can be built and signed in parallel.
      *
      * @param entitlements
      *  An iterable collection of entitlements for which to regenerate certificates
@@ -215,14 +220,93 @@ public class EntitlementCertificateGenerator {
      */
     @Transactional
     public void regenerateCertificatesOf(Iterable<Entitlement> entitlements, boolean lazy) {
+        if (lazy) {
+            for (Entitlement entitlement : entitlements) {
+                this.regenerateCertificatesOf(entitlement, false, true);
+            }
+            return;
+        }
+
+        for (List<Entitlement> batch : Iterables.partition(entitlements, REGEN_BATCH_SIZE)) {
+            this.regenerateCertificates(batch);
+        }
+    }
+
+    /*
+     * Regenerates the certificates of a batch of entitlements, possibly belonging to several
+     * consumers, in a single call to the cert service adapter. If any of the certificates is
+     * too large, the batch is regenerated one entitlement at a time so only that one keeps
+     * its current certificate.
+     */
+    private void regenerateCertificates(List<Entitlement> entitlements) {
+        Map<String, Entitlement> entMap = new HashMap<String, Entitlement>();
+        Map<String, Product> productMap = new HashMap<String, Product>();
+        Map<String, Set<EntitlementCertificate>> previous =
+            new HashMap<String, Set<EntitlementCertificate>>();
+
         for (Entitlement entitlement : entitlements) {
-            this.regenerateCertificatesOf(entitlement, false, lazy);
+            log.debug("Revoking entitlementCertificates of: {}", entitlement);
+            entMap.put(entitlement.getId(), entitlement);
+            productMap.put(entitlement.getId(), entitlement.getPool().getProduct());
+            previous.put(entitlement.getId(),
+                new HashSet<EntitlementCertificate>(entitlement.getCertificates()));
+            entitlement.setCertificates(null);
+        }
+
+        try {
+            this.generateEntitlementCerts(entMap, productMap);
+        }
+        catch (CertificateSizeException cse) {
+            for (Entitlement entitlement : entitlements) {
+                entitlement.setCertificates(previous.get(entitlement.getId()));
+            }
+
+            log.info("Regenerating {} certificates individually: {}", entitlements.size(),
+                cse.getMessage());
+            for (Entitlement entitlement : entitlements) {
+                this.regenerateCertificatesOf(entitlement, false, false);
+            }
+            return;
+        }
+        catch (CertVersionConflictException cvce) {
+            throw cvce;
+        }
+        catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+
+        for (Entitlement entitlement : entitlements) {
+            entitlement.setDirty(false);
+            this.entitlementCurator.merge(entitlement);
+            for (EntitlementCertificate ec : previous.get(entitlement.getId())) {
+                log.debug("Deleting entitlementCertificate: #{}", ec.getId());
+                this.entitlementCertificateCurator.delete(ec);
+            }
+
+            // send entitlement changed event.
+            this.eventSink.queueEvent(this.eventFactory.entitlementChanged(entitlement));
         }
     }
 
+    /*
+     * Only adapters extending BaseEntitlementCertServiceAdapter can generate certificates
+     * for several consumers in one call, others are called once per consumer.
+     */
+    private Map<String, EntitlementCertificate> generateEntitlementCerts(
+        Map<String, Entitlement> entitlements, Map<String, Product> products) throws Exception {
+
+        if (this.entCertServiceAdapter instanceof BaseEntitlementCertServiceAdapter) {
+            return ((BaseEntitlementCertServiceAdapter) this.entCertServiceAdapter)
+                .generateEntitlementCerts(entitlements, products);
+        }
+
+        return BaseEntitlementCertServiceAdapter.generateByConsumer(this.entCertServiceAdapter,
+            entitlements, products);
+    }
+
     /**
-     * Regenerates the certificates for the specified entitlements. This method is a utility method
-     * which individually regenerates certificates for each entitlement in the provided collection.
+     * Regenerates the certificates for the specified entitlements. Ueber certificates are
+     * regenerated individually, others in batches as with regenerateCertificatesOf.
      *
      * @param entitlementIds
      *  An iterable collection of entitlement IDs for which to regenerate certificates
@@ -244,6 +328,22 @@ public class EntitlementCertificateGenerator {
         if (lazy) {
             this.entitlementCurator.markEntitlementsDirty(entitlementIds);
         }
+        else if (!ueberCertificate) {
+            List<Entitlement> entitlements = new LinkedList<Entitlement>();
+            for (String entitlementId : entitlementIds) {
+                Entitlement entitlement = entitlementCurator.find(entitlementId);
+
+                if (entitlement == null) {
+                    // If it has been deleted, that's fine; one less to regenerate
+                    log.info("Unable to load entitlement for regeneration: {}", entitlementId);
+                    continue;
+                }
+
+                entitlements.add(entitlement);
+            }
+
+            this.regenerateCertificatesOf(entitlements, false);
+        }
         else {
             for (String entitlementId : entitlementIds) {
                 Entitlement entitlement = entitlementCurator.find(entitlementId);
@@ -40,8 +40,10 @@ import org.candlepin.policy.ValidationResult;
 import org.candlepin.policy.js.entitlement.EntitlementRulesTranslator;
 import org.candlepin.resource.dto.AutobindData;
 import org.candlepin.service.ProductServiceAdapter;
+import org.candlepin.util.Metrics;
 
 import com.google.inject.Inject;
+import com.google.inject.persist.Transactional;
 
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
@@ -68,6 +70,10 @@ import java.util.Set;
 public class Entitler {
     private static Logger log = LoggerFactory.getLogger(Entitler.class);
 
+    private static final Metrics.Counter UNMAPPED_REVOKED =
+        Metrics.counter("unmapped_guest.entitlements.revoked");
+    private static final Metrics.Timer UNMAPPED_BLOCK_TIME = Metrics.timer("unmapped_guest.revoke_block");
+
     private PoolManager poolManager;
     private I18n i18n;
     private EventFactory evtFactory;
@@ -446,31 +452,72 @@ public class Entitler {
         return result;
     }
 
+    /**
+     * Revokes the unmapped guest entitlements of the given consumer which are no longer valid.
+     *
+     * @param consumer the consumer, or null to revoke those of every consumer
+     * @return the number of entitlements revoked
+     */
     public int revokeUnmappedGuestEntitlements(Consumer consumer) {
-        int total = 0;
-
-        List<Entitlement> unmappedGuestEntitlements;
-
         if (consumer == null) {
-            unmappedGuestEntitlements = entitlementCurator.findByPoolAttribute(
-                "unmapped_guests_only", "true");
-        }
-        else {
-            unmappedGuestEntitlements = entitlementCurator.findByPoolAttribute(
-                consumer, "unmapped_guests_only", "true");
+            return revokeUnmappedGuestEntitlements();
         }
 
-        for (Entitlement e : unmappedGuestEntitlements) {
-            if (!e.isValid()) {
-                poolManager.revokeEntitlement(e);
-                total++;
+        List<Entitlement> unmappedGuestEntitlements = entitlementCurator.findInvalidByPoolAttribute(
+            consumer, "unmapped_guests_only", "true", new Date(), -1);
+
+        poolManager.revokeEntitlements(unmappedGuestEntitlements);
+        return unmappedGuestEntitlements.size();
+    }
+
+    /**
+     * Revokes every unmapped guest entitlement which is no longer valid. Entitlements are
+     * revoked in blocks, using a new transaction for each block unless a transaction was
+     * already started before this method is called. Each block starts after the last
+     * entitlement of the previous one, so entitlements which could not be revoked are
+     * not fetched again.
+     *
+     * @return the number of entitlements revoked
+     */
+    public int revokeUnmappedGuestEntitlements() {
+        int total = 0;
+        String lastId = null;
+        List<Entitlement> block;
+
+        do {
+            long start = System.nanoTime();
+            block = this.revokeUnmappedGuestEntitlementsBlock(lastId);
+            UNMAPPED_BLOCK_TIME.updateSince(start);
+            UNMAPPED_REVOKED.add(block.size());
+            total += block.size();
+
+            if (!block.isEmpty()) {
+                lastId = block.get(block.size() - 1).getId();
+                log.info("Revoked a block of {} unmapped guest entitlements in {}ms", block.size(),
+                    (System.nanoTime() - start) / 1000000);
             }
-        }
+        } while (block.size() >= EntitlementCurator.INVALID_ENTITLEMENT_BLOCK_SIZE);
+
         return total;
     }
 
-    public int revokeUnmappedGuestEntitlements() {
-        return revokeUnmappedGuestEntitlements(null);
+    /**
+     * Revokes a block of unmapped guest entitlements which are no longer valid.
+     *
+     * @param afterId the id the entitlements of the block must follow, or null to start
+     * with the first one
+     * @return the entitlements revoked, in id order
+     */
+    @Transactional
+    protected List<Entitlement> revokeUnmappedGuestEntitlementsBlock(String afterId) {
+        List<Entitlement> unmappedGuestEntitlements = entitlementCurator.findInvalidByPoolAttribute(
+            null, "unmapped_guests_only", "true", new Date(), afterId,
+            EntitlementCurator.INVALID_ENTITLEMENT_BLOCK_SIZE);
+
+        poolManager.revokeEntitlements(unmappedGuestEntitlements);
+        entitlementCurator.flush();
+
+        return unmappedGuestEntitlements;
     }
 
     public void sendEvents(List<Entitlement> entitlements) {
@@ -46,6 +46,7 @@ public class Refresher {
 
     private Map<String, Owner> owners = Util.newMap();
     private Set<Product> products = Util.newSet();
+    private Set<String> unchangedSubscriptionIds = Util.newSet();
 
     Refresher(CandlepinPoolManager poolManager, SubscriptionServiceAdapter subAdapter,
         boolean lazy) {
@@ -149,8 +150,17 @@ public class Refresher {
         }
 
         for (Owner owner : this.owners.values()) {
-            poolManager.refreshPoolsWithRegeneration(subAdapter, owner, lazy);
+            unchangedSubscriptionIds.addAll(
+                poolManager.refreshPoolsWithRegeneration(subAdapter, owner, lazy));
         }
     }
 
+    /**
+     * @return the ids of the subscriptions whose pools were left as they were, being
+     * unchanged since the last import
+     */
+    public Set<String> getUnchangedSubscriptionIds() {
+        return unchangedSubscriptionIds;
+    }
+
 }
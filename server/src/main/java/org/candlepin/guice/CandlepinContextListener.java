@@ -26,8 +26,12 @@ import org.candlepin.common.config.EncryptedConfiguration;
 import org.candlepin.common.config.MapConfiguration;
 import org.candlepin.common.logging.LoggingConfigurator;
 import org.candlepin.config.ConfigProperties;
+import org.candlepin.controller.CheckinAggregator;
+import org.candlepin.hibernate.SecondLevelCache;
 import org.candlepin.logging.LoggerContextListener;
 import org.candlepin.pinsetter.core.PinsetterContextListener;
+import org.candlepin.pki.KeyPairReservoir;
+import org.candlepin.policy.js.JsRunnerProvider;
 import org.candlepin.resteasy.ResourceLocatorMap;
 import org.candlepin.swagger.CandlepinSwaggerModelConverter;
 import org.candlepin.util.Util;
@@ -129,6 +133,9 @@ public class CandlepinContextListener extends GuiceResteasyBootstrapServletConte
     public void withInjector(Injector injector) {
         // Must call super.contextInitialized() before accessing injector
         insertValidationEventListeners(injector);
+        SecondLevelCache.init(getSessionFactory(injector));
+        injector.getInstance(JsRunnerProvider.class).registerMetrics();
+        injector.getInstance(KeyPairReservoir.class).registerMetrics();
         ResourceLocatorMap map = injector.getInstance(ResourceLocatorMap.class);
         map.init();
 
@@ -153,6 +160,8 @@ public class CandlepinContextListener extends GuiceResteasyBootstrapServletConte
 
     @Override
     public void contextDestroyed(ServletContextEvent event) {
+        // write buffered check-ins while persistence is still available
+        injector.getInstance(CheckinAggregator.class).shutdown();
         super.contextDestroyed(event);
         if (config.getBoolean(HORNETQ_ENABLED)) {
             hornetqListener.contextDestroyed();
@@ -232,12 +241,7 @@ public class CandlepinContextListener extends GuiceResteasyBootstrapServletConte
      * @param injector
      */
     private void insertValidationEventListeners(Injector injector) {
-        javax.inject.Provider<EntityManagerFactory> emfProvider =
-            injector.getProvider(EntityManagerFactory.class);
-        HibernateEntityManagerFactory hibernateEntityManagerFactory =
-            (HibernateEntityManagerFactory) emfProvider.get();
-        SessionFactoryImpl sessionFactoryImpl =
-            (SessionFactoryImpl) hibernateEntityManagerFactory.getSessionFactory();
+        SessionFactoryImpl sessionFactoryImpl = getSessionFactory(injector);
         EventListenerRegistry registry =
             sessionFactoryImpl.getServiceRegistry().getService(EventListenerRegistry.class);
 
@@ -247,4 +251,12 @@ public class CandlepinContextListener extends GuiceResteasyBootstrapServletConte
         registry.getEventListenerGroup(EventType.PRE_UPDATE).appendListener(listenerProvider.get());
         registry.getEventListenerGroup(EventType.PRE_DELETE).appendListener(listenerProvider.get());
     }
+
+    private SessionFactoryImpl getSessionFactory(Injector injector) {
+        javax.inject.Provider<EntityManagerFactory> emfProvider =
+            injector.getProvider(EntityManagerFactory.class);
+        HibernateEntityManagerFactory hibernateEntityManagerFactory =
+            (HibernateEntityManagerFactory) emfProvider.get();
+        return (SessionFactoryImpl) hibernateEntityManagerFactory.getSessionFactory();
+    }
 }
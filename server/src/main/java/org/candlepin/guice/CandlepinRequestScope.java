@@ -38,8 +38,25 @@ public class CandlepinRequestScope implements Scope {
             new CandlepinRequestScopeData());
     }
 
+    /**
+     * Leaves the scope, notifying the objects created within it which implement
+     * {@link RequestScopeExitListener}.
+     */
     public void exit() {
-        ResteasyProviderFactory.popContextData(CandlepinRequestScopeData.class);
+        CandlepinRequestScopeData scopeData = ResteasyProviderFactory.getContextData(
+            CandlepinRequestScopeData.class);
+        try {
+            if (scopeData != null) {
+                for (Object scoped : scopeData.get().values()) {
+                    if (scoped instanceof RequestScopeExitListener) {
+                        ((RequestScopeExitListener) scoped).onScopeExit();
+                    }
+                }
+            }
+        }
+        finally {
+            ResteasyProviderFactory.popContextData(CandlepinRequestScopeData.class);
+        }
     }
 
     public <T> Provider<T> scope(final Key<T> key, final Provider<T> unscoped) {
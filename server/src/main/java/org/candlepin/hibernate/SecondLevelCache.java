@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.hibernate;
+
+import org.candlepin.util.Metrics;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * SecondLevelCache
+ *
+ * Publishes hit, miss and size statistics for every region of the Hibernate second
+ * level cache once the session factory exists, when Hibernate statistics are enabled.
+ * The regions, their sizes and TTLs are declared in ehcache.xml.
+ */
+public class SecondLevelCache {
+    private static Logger log = LoggerFactory.getLogger(SecondLevelCache.class);
+
+    private SecondLevelCache() {
+    }
+
+    public static void init(SessionFactoryImplementor factory) {
+        if (!factory.getSettings().isSecondLevelCacheEnabled()) {
+            log.info("Hibernate second level cache is disabled");
+            return;
+        }
+
+        final Statistics statistics = factory.getStatistics();
+        if (!statistics.isStatisticsEnabled()) {
+            log.info("Hibernate second level cache enabled, statistics are disabled");
+            return;
+        }
+
+        for (final String region : statistics.getSecondLevelCacheRegionNames()) {
+            String prefix = "hibernate.cache." + region;
+
+            Metrics.gauge(prefix + ".hit", new Metrics.Gauge() {
+                public Number getValue() {
+                    SecondLevelCacheStatistics stats = statistics.getSecondLevelCacheStatistics(region);
+                    return stats != null ? stats.getHitCount() : 0;
+                }
+            });
+            Metrics.gauge(prefix + ".miss", new Metrics.Gauge() {
+                public Number getValue() {
+                    SecondLevelCacheStatistics stats = statistics.getSecondLevelCacheStatistics(region);
+                    return stats != null ? stats.getMissCount() : 0;
+                }
+            });
+            Metrics.gauge(prefix + ".size", new Metrics.Gauge() {
+                public Number getValue() {
+                    SecondLevelCacheStatistics stats = statistics.getSecondLevelCacheStatistics(region);
+                    return stats != null ? stats.getElementCountInMemory() : 0;
+                }
+            });
+        }
+
+        log.info("Hibernate second level cache enabled, publishing statistics");
+    }
+}
@@ -29,6 +29,8 @@ import com.google.inject.persist.Transactional;
 import org.apache.commons.collections.CollectionUtils;
 import org.hibernate.Criteria;
 import org.hibernate.SQLQuery;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.criterion.Criterion;
@@ -38,6 +40,7 @@ import org.hibernate.criterion.Projection;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import org.hibernate.internal.CriteriaImpl;
+import org.hibernate.metadata.ClassMetadata;
 import org.hibernate.transform.ResultTransformer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -49,8 +52,11 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
 import javax.persistence.LockModeType;
 import javax.persistence.OptimisticLockException;
 import javax.persistence.Query;
@@ -191,12 +197,26 @@ public abstract class AbstractHibernateCurator<E extends Persisted> {
     private List<E> loadPageData(Criteria c, PageRequest pageRequest) {
         c.addOrder(createPagingOrder(pageRequest));
         if (pageRequest.isPaging()) {
+            // The sort field need not be unique; without a tie breaker rows sharing a value
+            // could be skipped or repeated from one page to the next.
+            String idName = getIdentifierName();
+            String sortBy = (pageRequest.getSortBy() == null) ?
+                AbstractHibernateObject.DEFAULT_SORT_FIELD : pageRequest.getSortBy();
+            if (idName != null && !idName.equals(sortBy)) {
+                c.addOrder(Order.asc(idName));
+            }
+
             c.setFirstResult((pageRequest.getPage() - 1) * pageRequest.getPerPage());
             c.setMaxResults(pageRequest.getPerPage());
         }
         return c.list();
     }
 
+    private String getIdentifierName() {
+        ClassMetadata metadata = currentSession().getSessionFactory().getClassMetadata(entityType);
+        return metadata == null ? null : metadata.getIdentifierPropertyName();
+    }
+
     private Order createPagingOrder(PageRequest p) {
         String sortBy = (p.getSortBy() == null) ?
             AbstractHibernateObject.DEFAULT_SORT_FIELD : p.getSortBy();
@@ -223,6 +243,42 @@ public abstract class AbstractHibernateCurator<E extends Persisted> {
         return query.list();
     }
 
+    /**
+     * Runs the query as a forward-only, read-only cursor instead of loading every result
+     * up front. Each entity is evicted from the session once the next one is read, see
+     * {@link ResultIterator}. The iterator must be exhausted or closed by the caller.
+     *
+     * Outside of a transaction the JDBC driver ignores the fetch size and reads the whole
+     * result set at once, so a read-only transaction is opened when none is active. It is
+     * left open, past the end of the calling method, until the iterator is released.
+     *
+     * @param query the criteria to run, must return a single root entity per row
+     * @return an iterator over the query results
+     */
+    public ResultIterator<E> iterateByCriteria(Criteria query) {
+        EntityTransaction transaction = getEntityManager().getTransaction();
+        if (transaction.isActive()) {
+            transaction = null;
+        }
+        else {
+            transaction.begin();
+        }
+
+        try {
+            ScrollableResults results = query
+                .setReadOnly(true)
+                .setFetchSize(batchSize)
+                .scroll(ScrollMode.FORWARD_ONLY);
+            return new ResultIterator<E>(currentSession(), results, transaction);
+        }
+        catch (RuntimeException e) {
+            if (transaction != null) {
+                transaction.rollback();
+            }
+            throw e;
+        }
+    }
+
     @SuppressWarnings("unchecked")
     @Transactional
     public Page<List<E>> listByCriteria(Criteria query,
@@ -664,7 +720,38 @@ public abstract class AbstractHibernateCurator<E extends Persisted> {
         return criterion;
     }
 
+    /**
+     * Locks and loads the entities with the given keys. The rows are always locked in
+     * key order, so that two transactions locking overlapping sets cannot deadlock.
+     */
     public List<E> lockAndLoadBatch(Iterable<String> ids, String entityName, String keyName) {
+        SortedSet<String> sorted = new TreeSet<String>();
+        if (ids != null) {
+            Iterables.addAll(sorted, ids);
+        }
+        List<E> result = loadBatch(sorted, entityName, keyName, LockModeType.PESSIMISTIC_WRITE);
+
+        //In some situations, even after locking the entity we
+        //got stale in the entity e.g. Pool.consumed
+        //This refresh reloads the entity after the lock has
+        //been issued.
+        for (E e : result) {
+            getEntityManager().refresh(e);
+        }
+
+        return result;
+    }
+
+    /**
+     * Loads the entities with the given keys without locking them, and without applying
+     * the permission checks of {@link #listAllByIds(Collection)}.
+     */
+    public List<E> loadBatch(Iterable<String> ids, String entityName, String keyName) {
+        return loadBatch(ids, entityName, keyName, LockModeType.NONE);
+    }
+
+    private List<E> loadBatch(Iterable<String> ids, String entityName, String keyName,
+        LockModeType lockMode) {
         List<E> result = new LinkedList<E>();
 
         if (ids != null && ids.iterator().hasNext()) {
@@ -672,23 +759,17 @@ public abstract class AbstractHibernateCurator<E extends Persisted> {
                 .append(entityName)
                 .append(" obj WHERE ")
                 .append(keyName)
-                .append(" IN (:ids)");
+                .append(" IN (:ids) ORDER BY ")
+                .append(keyName);
 
             Query query = this.getEntityManager()
                 .createQuery(hql.toString())
-                .setLockMode(LockModeType.PESSIMISTIC_WRITE);
+                .setLockMode(lockMode);
 
             for (List<String> block : Iterables.partition(ids, IN_OPERATOR_BLOCK_SIZE)) {
                 query.setParameter("ids", block);
                 result.addAll((List<E>) query.getResultList());
             }
-            //In some situations, even after locking the entity we
-            //got stale in the entity e.g. Pool.consumed
-            //This refresh reloads the entity after the lock has
-            //been issued.
-            for (E e : result) {
-                getEntityManager().refresh(e);
-            }
         }
 
         return result;
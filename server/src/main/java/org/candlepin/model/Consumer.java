@@ -180,6 +180,9 @@ public class Consumer extends AbstractHibernateObject implements Linkable, Owned
     @OneToOne(cascade = CascadeType.ALL)
     private KeyPair keyPair;
 
+    // Written only by ConsumerCurator's check-in updates, so merging a stale
+    // consumer can never move the check-in time backwards.
+    @Column(updatable = false)
     private Date lastCheckin;
 
     @OneToMany(mappedBy = "consumer", orphanRemoval = true, cascade = { CascadeType.ALL })
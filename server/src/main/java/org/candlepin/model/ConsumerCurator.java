@@ -14,6 +14,7 @@
  */
 package org.candlepin.model;
 
+import org.candlepin.auth.PrincipalCache;
 import org.candlepin.common.config.Configuration;
 import org.candlepin.common.exceptions.BadRequestException;
 import org.candlepin.common.exceptions.NotFoundException;
@@ -32,6 +33,7 @@ import org.hibernate.Criteria;
 import org.hibernate.Hibernate;
 import org.hibernate.Query;
 import org.hibernate.ReplicationMode;
+import org.hibernate.Transaction;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.DetachedCriteria;
 import org.hibernate.criterion.Disjunction;
@@ -39,22 +41,31 @@ import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import org.hibernate.criterion.Subqueries;
+import org.hibernate.jdbc.Work;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
 
 import javax.persistence.LockModeType;
+import javax.transaction.Synchronization;
 
 /**
  * ConsumerCurator
@@ -65,6 +76,7 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
     @Inject private ConsumerTypeCurator consumerTypeCurator;
     @Inject private DeletedConsumerCurator deletedConsumerCurator;
     @Inject private Configuration config;
+    @Inject private PrincipalCache principalCache;
 
     private static final int MAX_FACT_STR_LENGTH = 255;
     private static final int NAME_LENGTH = 250;
@@ -93,6 +105,7 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
             entity.getOwner().getKey(), entity.getOwner().getDisplayName());
 
         super.delete(entity);
+        invalidatePrincipalOnCompletion(entity.getUuid());
 
         DeletedConsumer existing = deletedConsumerCurator.findByConsumerUuid(dc.getConsumerUuid());
         if (existing != null) {
@@ -309,6 +322,68 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
             createSecureCriteria().add(Restrictions.in("uuid", uuids)));
     }
 
+    /**
+     * Looks up consumers like {@link #findByUuids(Collection)}, and loads everything a
+     * compliance check reads up front: entitlements with their pools and products,
+     * facts and installed products, then the provided products and attributes of those
+     * pools and products, are fetched in a handful of queries per block of consumers
+     * rather than a few per consumer or pool.
+     *
+     * @param uuids the consumer UUIDs
+     * @return the consumers found
+     */
+    @Transactional
+    public List<Consumer> findByUuidsForCompliance(Collection<String> uuids) {
+        List<Consumer> consumers = findByUuids(uuids);
+        fetchInto("Consumer", consumers,
+            "left join fetch x.entitlements e left join fetch e.pool p left join fetch p.product " +
+            "left join fetch p.derivedProduct",
+            "left join fetch x.installedProducts",
+            "left join fetch x.facts");
+
+        Set<Pool> pools = Collections.newSetFromMap(new IdentityHashMap<Pool, Boolean>());
+        for (Consumer consumer : consumers) {
+            for (Entitlement entitlement : consumer.getEntitlements()) {
+                if (entitlement.getPool() != null) {
+                    pools.add(entitlement.getPool());
+                }
+            }
+        }
+        fetchInto("Pool", pools,
+            "left join fetch x.providedProducts",
+            "left join fetch x.derivedProvidedProducts",
+            "left join fetch x.attributes");
+
+        Set<Product> products = Collections.newSetFromMap(new IdentityHashMap<Product, Boolean>());
+        for (Pool pool : pools) {
+            products.add(pool.getProduct());
+            if (pool.getDerivedProduct() != null) {
+                products.add(pool.getDerivedProduct());
+            }
+            products.addAll(pool.getProvidedProducts());
+            products.addAll(pool.getDerivedProvidedProducts());
+        }
+        fetchInto("Product", products, "left join fetch x.attributes");
+
+        return consumers;
+    }
+
+    /*
+     * Populates the lazy collections of entities already in the session, one query
+     * per fetch and block of entities.
+     */
+    private void fetchInto(String entity, Collection<?> entities, String... fetches) {
+        for (List<?> block : Iterables.partition(entities, IN_OPERATOR_BLOCK_SIZE)) {
+            for (String fetch : fetches) {
+                currentSession()
+                    .createQuery("select distinct x from " + entity + " x " + fetch +
+                        " where x in (:entities)")
+                    .setParameterList("entities", block)
+                    .list();
+            }
+        }
+    }
+
     @Transactional
     public List<Consumer> findByUuidsAndOwner(Collection<String> uuids, Owner owner) {
         Criteria criteria = currentSession().createCriteria(Consumer.class);
@@ -390,6 +465,8 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
         if (factsChanged(newFacts, existingConsumer.getFacts())) {
             existingConsumer.setFacts(newFacts);
         }
+        // Covers identity certificate regeneration as well as ownership or type changes
+        invalidatePrincipalOnCompletion(existingConsumer.getUuid(), updatedConsumer.getUuid());
         existingConsumer.setName(updatedConsumer.getName());
         existingConsumer.setOwner(updatedConsumer.getOwner());
         existingConsumer.setType(updatedConsumer.getType());
@@ -401,6 +478,32 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
 
         return existingConsumer;
     }
+
+    /*
+     * Drops the cached principals of the given consumers once the current transaction
+     * completes. Dropping them earlier would let a concurrent request cache them again
+     * from the rows as they were before this transaction.
+     */
+    private void invalidatePrincipalOnCompletion(final String ... uuids) {
+        Transaction transaction = currentSession().getTransaction();
+        if (transaction == null || !transaction.isActive()) {
+            for (String uuid : uuids) {
+                principalCache.invalidate(uuid);
+            }
+            return;
+        }
+
+        transaction.registerSynchronization(new Synchronization() {
+            public void beforeCompletion() {
+            }
+
+            public void afterCompletion(int status) {
+                for (String uuid : uuids) {
+                    principalCache.invalidate(uuid);
+                }
+            }
+        });
+    }
     /**
      * Modifies the last check in and persists the entity. Make sure that the data
      * is refreshed before using this method.
@@ -421,6 +524,55 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
                 .executeUpdate();
     }
 
+    /**
+     * Writes the check-in times of many consumers in JDBC batches. Rows are updated in
+     * ID order, so concurrent writers lock them in a consistent order. A check-in never
+     * replaces a later one already stored, and the consumer's updated time is left alone.
+     *
+     * @param checkins check-in times keyed by consumer ID
+     * @return the number of consumers updated, as reported by the driver
+     */
+    @Transactional
+    public int updateLastCheckins(Map<String, Date> checkins) {
+        final List<Entry<String, Date>> sorted =
+            new ArrayList<Entry<String, Date>>(new TreeMap<String, Date>(checkins).entrySet());
+        final int[] updated = new int[1];
+
+        currentSession().doWork(new Work() {
+            @Override
+            public void execute(Connection connection) throws SQLException {
+                PreparedStatement statement = connection.prepareStatement(
+                    "UPDATE cp_consumer SET lastcheckin = ? " +
+                    "WHERE id = ? AND (lastcheckin IS NULL OR lastcheckin < ?)");
+
+                try {
+                    for (List<Entry<String, Date>> block :
+                        Iterables.partition(sorted, IN_OPERATOR_BLOCK_SIZE)) {
+
+                        for (Entry<String, Date> checkin : block) {
+                            Timestamp date = new Timestamp(checkin.getValue().getTime());
+                            statement.setTimestamp(1, date);
+                            statement.setString(2, checkin.getKey());
+                            statement.setTimestamp(3, date);
+                            statement.addBatch();
+                        }
+
+                        for (int count : statement.executeBatch()) {
+                            if (count > 0) {
+                                updated[0] += count;
+                            }
+                        }
+                    }
+                }
+                finally {
+                    statement.close();
+                }
+            }
+        });
+
+        return updated[0];
+    }
+
     private boolean factsChanged(Map<String, String> updatedFacts,
         Map<String, String> existingFacts) {
         return !existingFacts.equals(updatedFacts);
@@ -676,11 +828,31 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
         return consumer;
     }
 
-    @SuppressWarnings("checkstyle:indentation")
     public Page<List<Consumer>> searchOwnerConsumers(Owner owner, String userName,
         Collection<ConsumerType> types, List<String> uuids, List<String> hypervisorIds,
         List<KeyValueParameter> factFilters, List<String> skus,
         List<String> subscriptionIds, List<String> contracts, PageRequest pageRequest) {
+        return listByCriteria(createOwnerConsumerCriteria(owner, userName, types, uuids,
+            hypervisorIds, factFilters, skus, subscriptionIds, contracts), pageRequest);
+    }
+
+    /**
+     * Same search as {@link #searchOwnerConsumers}, without paging, returning a list
+     * streamed from a cursor once it is first read. See {@link ResultList}.
+     */
+    public ResultList<Consumer> listStreamedOwnerConsumers(Owner owner, String userName,
+        Collection<ConsumerType> types, List<String> uuids, List<String> hypervisorIds,
+        List<KeyValueParameter> factFilters, List<String> skus,
+        List<String> subscriptionIds, List<String> contracts) {
+        return new ResultList<Consumer>(this, createOwnerConsumerCriteria(owner, userName, types,
+            uuids, hypervisorIds, factFilters, skus, subscriptionIds, contracts));
+    }
+
+    @SuppressWarnings("checkstyle:indentation")
+    private Criteria createOwnerConsumerCriteria(Owner owner, String userName,
+        Collection<ConsumerType> types, List<String> uuids, List<String> hypervisorIds,
+        List<KeyValueParameter> factFilters, List<String> skus,
+        List<String> subscriptionIds, List<String> contracts) {
         Criteria crit = super.createSecureCriteria();
         if (owner != null) {
             crit.add(Restrictions.eq("owner", owner));
@@ -778,7 +950,7 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
             }
         }
 
-        return listByCriteria(crit, pageRequest);
+        return crit;
     }
 
     /**
@@ -807,16 +979,36 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
         return result == null ? 0 : result.intValue();
     }
 
+    /**
+     * Retrieves the UUIDs of consumers with entitlements which have become active up to
+     * the given date. Without a starting point these are the entitlements still flagged
+     * as not updated on start; otherwise, those whose pool started in between.
+     *
+     * @param since
+     *  The last time entitlements were checked, or null to check the flagged entitlements
+     *
+     * @param until
+     *  The date up to which entitlements have become active
+     *
+     * @return
+     *  the UUIDs of the consumers holding the entitlements
+     */
     @SuppressWarnings("unchecked")
-    public List<String> getConsumerIdsWithStartedEnts() {
-        Date now = new Date();
-        return currentSession().createCriteria(Entitlement.class)
+    public List<String> getConsumerUuidsWithStartedEnts(Date since, Date until) {
+        Criteria criteria = currentSession().createCriteria(Entitlement.class)
             .createAlias("pool", "p")
-            .add(Restrictions.eq("updatedOnStart", false))
-            .add(Restrictions.lt("p.startDate", now))
-            .setProjection(Projections.property("consumer.id"))
-            .setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY)
-            .list();
+            .createAlias("consumer", "c")
+            .add(Restrictions.le("p.startDate", until))
+            .setProjection(Projections.distinct(Projections.property("c.uuid")));
+
+        if (since == null) {
+            criteria.add(Restrictions.eq("updatedOnStart", false));
+        }
+        else {
+            criteria.add(Restrictions.gt("p.startDate", since));
+        }
+
+        return criteria.list();
     }
 
 
@@ -52,6 +52,10 @@ import javax.persistence.Query;
  * EntitlementCurator
  */
 public class EntitlementCurator extends AbstractHibernateCurator<Entitlement> {
+
+    /** The recommended number of entitlements to fetch in a single call to findInvalidByPoolAttribute */
+    public static final int INVALID_ENTITLEMENT_BLOCK_SIZE = 1000;
+
     private static Logger log = LoggerFactory.getLogger(EntitlementCurator.class);
 
     private OwnerProductCurator ownerProductCurator;
@@ -139,6 +143,26 @@ public class EntitlementCurator extends AbstractHibernateCurator<Entitlement> {
         return listFilteredPages(owner, "owner", productId, filters, pageRequest);
     }
 
+    /**
+     * Returns the owner's unexpired entitlements as a list streamed from a cursor once it
+     * is first read, see {@link ResultList}. Match filters join
+     * in collections and are not supported here, use
+     * {@link #listByOwner(Owner, String, EntitlementFilterBuilder, PageRequest)} for those.
+     *
+     * @param owner the owner whose entitlements are wanted
+     * @param filters attribute and id filters to apply
+     * @return a list of the matching entitlements, read when first accessed
+     */
+    public ResultList<Entitlement> listStreamedByOwner(Owner owner, EntitlementFilterBuilder filters) {
+        if (filters.hasMatchFilters()) {
+            throw new IllegalArgumentException("match filters cannot be iterated");
+        }
+
+        Criteria criteria = createCriteriaFromFilters(filters);
+        criteria.add(Restrictions.eq("owner", owner));
+        return new ResultList<Entitlement>(this, criteria);
+    }
+
     public Page<List<Entitlement>> listAll(EntitlementFilterBuilder filters, PageRequest pageRequest) {
         return listFilteredPages(null, null, null, filters, pageRequest);
     }
@@ -521,6 +545,72 @@ public class EntitlementCurator extends AbstractHibernateCurator<Entitlement> {
         return findByPoolAttribute(null, attributeName, value);
     }
 
+    /**
+     * Fetches a block of entitlements from pools with the given attribute which are not valid
+     * on the given date, either because they have ended or because they have yet to start. The
+     * end date considered is the entitlement's own end date override, if any.
+     *
+     * @param consumer the consumer to limit the entitlements to, or null for all consumers
+     * @param attributeName the name of the pool attribute
+     * @param value the value of the pool attribute
+     * @param date the date the entitlements must not be valid on
+     * @param blockSize the maximum number of entitlements to fetch; if less than 1, no limit
+     * will be applied
+     * @return a list of invalid entitlements no larger than the specified block size
+     */
+    public List<Entitlement> findInvalidByPoolAttribute(Consumer consumer, String attributeName,
+        String value, Date date, int blockSize) {
+        return this.findInvalidByPoolAttribute(consumer, attributeName, value, date, null, blockSize);
+    }
+
+    /**
+     * Fetches a block of entitlements from pools with the given attribute which are not valid
+     * on the given date, ordered by id and starting after the given id. Passing the id of the
+     * last entitlement of a block fetches the next block, whether or not the entitlements of
+     * the previous block were revoked.
+     *
+     * @param consumer the consumer to limit the entitlements to, or null for all consumers
+     * @param attributeName the name of the pool attribute
+     * @param value the value of the pool attribute
+     * @param date the date the entitlements must not be valid on
+     * @param afterId the id the entitlements must follow, or null to start with the first one
+     * @param blockSize the maximum number of entitlements to fetch; if less than 1, no limit
+     * will be applied
+     * @return a list of invalid entitlements no larger than the specified block size
+     */
+    @SuppressWarnings({"unchecked", "checkstyle:indentation"})
+    public List<Entitlement> findInvalidByPoolAttribute(Consumer consumer, String attributeName,
+        String value, Date date, String afterId, int blockSize) {
+        Criteria criteria = currentSession().createCriteria(Entitlement.class)
+            .createAlias("pool", "ent_pool")
+            .createAlias("ent_pool.attributes", "attrs")
+            .add(Restrictions.eq("attrs.name", attributeName))
+            .add(Restrictions.eq("attrs.value", value))
+            .add(Restrictions.or(
+                Restrictions.gt("ent_pool.startDate", date),
+                Restrictions.lt("endDateOverride", date),
+                Restrictions.and(
+                    Restrictions.isNull("endDateOverride"),
+                    Restrictions.lt("ent_pool.endDate", date)
+                )
+            ))
+            .addOrder(Order.asc("id"));
+
+        if (consumer != null) {
+            criteria.add(Restrictions.eq("consumer", consumer));
+        }
+
+        if (afterId != null) {
+            criteria.add(Restrictions.gt("id", afterId));
+        }
+
+        if (blockSize > 0) {
+            criteria.setMaxResults(blockSize);
+        }
+
+        return criteria.list();
+    }
+
     /**
      * For a given stack, find the eldest active entitlement with a subscription ID.
      * This is used to look up the upstream subscription certificate to use to talk to
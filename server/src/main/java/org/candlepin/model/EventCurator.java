@@ -17,11 +17,21 @@ package org.candlepin.model;
 
 import org.candlepin.audit.Event;
 
+import com.google.common.collect.Iterables;
+import com.google.inject.persist.Transactional;
+
 import org.hibernate.Criteria;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.jdbc.Work;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.List;
+import java.util.UUID;
 
 /**
  * AttributeCurator
@@ -67,4 +77,56 @@ public class EventCurator extends AbstractHibernateCurator<Event> {
             Restrictions.eq("consumerId", consumer.getId())).list();
     }
 
+    /**
+     * Inserts the given events in JDBC batches, assigning IDs to those without one.
+     * Unlike create, the events are not validated or attached to the session.
+     *
+     * @param events the events to insert
+     */
+    @Transactional
+    public void createAll(final List<Event> events) {
+        currentSession().doWork(new Work() {
+            @Override
+            public void execute(Connection connection) throws SQLException {
+                PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO cp_event (id, type, target, targetname, principal, timestamp, " +
+                    "entityid, ownerid, consumerid, referenceid, referencetype) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+
+                try {
+                    for (List<Event> block : Iterables.partition(events, batchSize)) {
+                        for (Event event : block) {
+                            if (event.getId() == null) {
+                                event.setId(UUID.randomUUID().toString().replace("-", ""));
+                            }
+
+                            statement.setString(1, event.getId());
+                            statement.setString(2, event.getType().name());
+                            statement.setString(3, event.getTarget().name());
+                            statement.setString(4, event.getTargetName());
+                            statement.setString(5, event.getPrincipalStore());
+                            statement.setTimestamp(6, new Timestamp(event.getTimestamp().getTime()));
+                            statement.setString(7, event.getEntityId());
+                            statement.setString(8, event.getOwnerId());
+                            statement.setString(9, event.getConsumerId());
+                            statement.setString(10, event.getReferenceId());
+                            if (event.getReferenceType() != null) {
+                                statement.setString(11, event.getReferenceType().name());
+                            }
+                            else {
+                                statement.setNull(11, Types.VARCHAR);
+                            }
+                            statement.addBatch();
+                        }
+
+                        statement.executeBatch();
+                    }
+                }
+                finally {
+                    statement.close();
+                }
+            }
+        });
+    }
+
 }
@@ -65,6 +65,11 @@ public abstract class FilterBuilder {
         return this;
     }
 
+    public FilterBuilder addCriteria(Criterion criterion) {
+        otherCriteria.add(criterion);
+        return this;
+    }
+
     public void addAttributeFilter(String attrName, String attrValue) {
         if (!attributeFilters.containsKey(attrName)) {
             attributeFilters.put(attrName, new LinkedList<String>());
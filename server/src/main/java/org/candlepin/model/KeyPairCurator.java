@@ -14,7 +14,7 @@
  */
 package org.candlepin.model;
 
-import org.candlepin.pki.PKIUtility;
+import org.candlepin.pki.KeyPairReservoir;
 
 import com.google.inject.Inject;
 
@@ -26,12 +26,12 @@ import java.security.NoSuchAlgorithmException;
 public class KeyPairCurator extends
     AbstractHibernateCurator<KeyPair> {
 
-    private PKIUtility pki;
+    private KeyPairReservoir reservoir;
 
     @Inject
-    public KeyPairCurator(PKIUtility pki) {
+    public KeyPairCurator(KeyPairReservoir reservoir) {
         super(KeyPair.class);
-        this.pki = pki;
+        this.reservoir = reservoir;
     }
 
     /**
@@ -45,7 +45,7 @@ public class KeyPairCurator extends
         KeyPair cpKeyPair = c.getKeyPair();
         if (cpKeyPair == null) {
             try {
-                java.security.KeyPair newPair = pki.generateNewKeyPair();
+                java.security.KeyPair newPair = reservoir.take();
                 cpKeyPair = new KeyPair(newPair.getPrivate(), newPair.getPublic());
                 create(cpKeyPair);
                 c.setKeyPair(cpKeyPair);
@@ -364,6 +364,14 @@ public class Pool extends AbstractHibernateObject implements Persisted, Owned, N
     @Size(max = 255)
     private String upstreamConsumerId;
 
+    /*
+     * Set on master pools created from a manifest, so a later import of the same
+     * entitlement can tell the pools are already up to date.
+     */
+    @Column(name = "import_hash")
+    @Size(max = 64)
+    private String importHash;
+
     @OneToOne(cascade = CascadeType.ALL)
     @JoinColumn(name = "certificate_id")
     private SubscriptionsCertificate cert;
@@ -1308,4 +1316,13 @@ public class Pool extends AbstractHibernateObject implements Persisted, Owned, N
         this.cert = cert;
     }
 
+    @XmlTransient
+    public String getImportHash() {
+        return importHash;
+    }
+
+    public void setImportHash(String importHash) {
+        this.importHash = importHash;
+    }
+
 }
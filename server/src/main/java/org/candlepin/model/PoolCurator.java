@@ -50,6 +50,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -606,6 +607,10 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
         return lockAndLoadBatch(ids, "Pool", "id");
     }
 
+    public List<Pool> loadBatch(Collection<String> ids) {
+        return loadBatch(ids, "Pool", "id");
+    }
+
     public void lock(List<Pool> poolsToLock) {
         if (poolsToLock.isEmpty()) {
             log.debug("Nothing to lock");
@@ -834,6 +839,36 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
             .uniqueResult();
     }
 
+    /**
+     * Retrieves the import hashes of the owner's master pools, mapped by subscription ID.
+     * Master pools not created from a manifest have no hash and are left out.
+     *
+     * @param owner
+     *  The owner of the master pools
+     *
+     * @return
+     *  a map of subscription IDs to the import hashes of their master pools
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, String> getMasterPoolImportHashes(Owner owner) {
+        List<Object[]> rows = this.currentSession().createCriteria(Pool.class)
+            .add(Restrictions.eq("owner", owner))
+            .createAlias("sourceSubscription", "srcsub")
+            .add(Restrictions.eq("srcsub.subscriptionSubKey", "master"))
+            .add(Restrictions.isNotNull("importHash"))
+            .setProjection(Projections.projectionList()
+                .add(Projections.property("srcsub.subscriptionId"))
+                .add(Projections.property("importHash")))
+            .list();
+
+        Map<String, String> hashes = new HashMap<String, String>();
+        for (Object[] row : rows) {
+            hashes.put((String) row[0], (String) row[1]);
+        }
+
+        return hashes;
+    }
+
     @SuppressWarnings("unchecked")
     public List<Pool> listMasterPools() {
         return this.currentSession().createCriteria(Pool.class)
@@ -67,8 +67,9 @@ public class PoolFilterBuilder extends FilterBuilder {
             applySubscriptionIdFilter(parentCriteria);
         }
 
+        // Match filters are added directly, so the builder can be applied more than once
         for (String matches : matchFilters) {
-            applyMatchFilter(matches);
+            parentCriteria.add(buildMatchFilter(matches));
         }
         super.applyTo(parentCriteria);
     }
@@ -142,7 +143,7 @@ public class PoolFilterBuilder extends FilterBuilder {
     }
 
     @SuppressWarnings("checkstyle:indentation")
-    private void applyMatchFilter(String matches) {
+    private Criterion buildMatchFilter(String matches) {
         String originalPoolAlias = this.alias.isEmpty() ? "this." : alias;
 
         Disjunction textOr = Restrictions.disjunction();
@@ -167,7 +168,7 @@ public class PoolFilterBuilder extends FilterBuilder {
         textOr.add(Subqueries.exists(
             this.createProductAttributeCriteria("support_level", Arrays.asList(matches))));
 
-        this.otherCriteria.add(textOr);
+        return textOr;
     }
 
     @Override
@@ -14,6 +14,7 @@
  */
 package org.candlepin.model;
 
+import org.candlepin.pki.KeyPairReservoir;
 import org.candlepin.pki.PKIUtility;
 import org.candlepin.pki.X509ExtensionWrapper;
 import org.candlepin.util.X509ExtensionUtil;
@@ -45,14 +46,21 @@ public class ProductCertificateCurator extends AbstractHibernateCurator<ProductC
 
     private PKIUtility pki;
     private X509ExtensionUtil extensionUtil;
+    private KeyPairReservoir reservoir;
 
 
-    @Inject
     public ProductCertificateCurator(PKIUtility pki, X509ExtensionUtil extensionUtil) {
+        this(pki, extensionUtil, new KeyPairReservoir(pki, 0, 0, 1));
+    }
+
+    @Inject
+    public ProductCertificateCurator(PKIUtility pki, X509ExtensionUtil extensionUtil,
+        KeyPairReservoir reservoir) {
         super(ProductCertificate.class);
 
         this.pki = pki;
         this.extensionUtil = extensionUtil;
+        this.reservoir = reservoir;
     }
 
     public ProductCertificate findForProduct(Product product) {
@@ -95,7 +103,7 @@ public class ProductCertificateCurator extends AbstractHibernateCurator<ProductC
         throws GeneralSecurityException, IOException {
         log.debug("Generating cert for product: {}", product);
 
-        KeyPair keyPair = this.pki.generateNewKeyPair();
+        KeyPair keyPair = this.reservoir.take();
         Set<X509ExtensionWrapper> extensions = this.extensionUtil.productExtensions(product);
 
         // TODO: Should this use the RH product ID, or the object's UUID?
@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.model;
+
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.persistence.EntityTransaction;
+
+/**
+ * The ResultIterator walks the entities of a ScrollableResults one row at a time,
+ * evicting each entity from the session once the caller moves on to the next one,
+ * so iterating over a large query does not fill the session with every row. The
+ * underlying results are closed when the iterator is exhausted or closed.
+ *
+ * Entities handed out by this iterator are detached once the next entity is
+ * requested, and must be fully used (serialized, copied...) before then.
+ *
+ * A transaction opened for the results, without which the JDBC driver may read the
+ * whole result set up front, is ended when the results are released.
+ *
+ * @param <E>
+ *  The entity type returned by the query
+ */
+public class ResultIterator<E> implements Iterator<E>, Closeable {
+
+    private Session session;
+    private ScrollableResults results;
+    private EntityTransaction transaction;
+
+    private E prev;
+    private boolean cache;
+    private boolean useCache;
+    private boolean closed;
+
+    /**
+     * Creates a new ResultIterator over the first column of the given results.
+     *
+     * @param session
+     *  The Session from which returned entities are evicted.
+     *
+     * @param results
+     *  The ScrollableResults instance over which to iterate.
+     */
+    public ResultIterator(Session session, ScrollableResults results) {
+        this(session, results, null);
+    }
+
+    /**
+     * Creates a new ResultIterator over the first column of the given results, which owns
+     * the transaction the results were read in.
+     *
+     * @param session
+     *  The Session from which returned entities are evicted.
+     *
+     * @param results
+     *  The ScrollableResults instance over which to iterate.
+     *
+     * @param transaction
+     *  The transaction to end once the results are released, or null if the caller
+     *  manages the transaction.
+     */
+    public ResultIterator(Session session, ScrollableResults results, EntityTransaction transaction) {
+        if (session == null) {
+            throw new IllegalArgumentException("session is null");
+        }
+
+        if (results == null) {
+            throw new IllegalArgumentException("results is null");
+        }
+
+        this.session = session;
+        this.results = results;
+        this.transaction = transaction;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (this.closed) {
+            return false;
+        }
+
+        if (!this.useCache) {
+            this.useCache = true;
+            this.cache = this.results.next();
+
+            if (!this.cache) {
+                this.close();
+            }
+        }
+
+        return this.cache;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        this.evictPrevious();
+        this.useCache = false;
+        this.prev = (E) this.results.get(0);
+        return this.prev;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException(
+            "The remove operation is not supported on ResultIterator instances."
+        );
+    }
+
+    /**
+     * Evicts the last entity returned, releases the underlying results and ends the
+     * transaction they were read in, if this iterator owns it. Safe to call more than
+     * once.
+     */
+    @Override
+    public void close() {
+        if (!this.closed) {
+            this.closed = true;
+            this.evictPrevious();
+
+            try {
+                this.results.close();
+            }
+            finally {
+                // The results are read only, but anything else that joined the
+                // transaction in the meantime is kept
+                if (this.transaction != null && this.transaction.isActive()) {
+                    this.transaction.commit();
+                }
+            }
+        }
+    }
+
+    private void evictPrevious() {
+        if (this.prev != null) {
+            this.session.evict(this.prev);
+            this.prev = null;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.model;
+
+import org.hibernate.Criteria;
+
+import java.io.Closeable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The ResultList is a read-only List backed by a {@link ResultIterator}, letting
+ * resources keep their typed List signatures while the rows are only read when the
+ * response is written. The JsonProvider walks it once through {@link #rows()};
+ * any other access, such as size() or get(), reads the remaining rows into memory
+ * first.
+ *
+ * The query is not run until the rows are first accessed, so a list which is never
+ * written, as for a HEAD request or a response dropped by a filter, leaves no cursor
+ * or transaction behind.
+ *
+ * As with the ResultIterator, the entities are detached from the session as the
+ * rows are read.
+ *
+ * @param <E>
+ *  The entity type returned by the query
+ */
+public class ResultList<E extends Persisted> extends AbstractList<E> implements Closeable {
+
+    private AbstractHibernateCurator<E> curator;
+    private Criteria query;
+    private ResultIterator<E> results;
+    private List<E> loaded;
+    private boolean streamed;
+    private boolean closed;
+
+    /**
+     * Creates a new ResultList over the given query, which is run through
+     * {@link AbstractHibernateCurator#iterateByCriteria(Criteria)} once the rows are
+     * first accessed.
+     *
+     * @param curator
+     *  The curator to run the query with
+     *
+     * @param query
+     *  The criteria to run, must return a single root entity per row
+     */
+    public ResultList(AbstractHibernateCurator<E> curator, Criteria query) {
+        if (curator == null) {
+            throw new IllegalArgumentException("curator is null");
+        }
+
+        if (query == null) {
+            throw new IllegalArgumentException("query is null");
+        }
+
+        this.curator = curator;
+        this.query = query;
+    }
+
+    /**
+     * Hands out the rows for a single pass. If the rows have not been loaded yet, they
+     * are read straight from the query and the list cannot be read again afterwards.
+     * The caller should close the list once done.
+     *
+     * @return an iterator over the rows of this list
+     */
+    public Iterator<E> rows() {
+        if (this.loaded != null) {
+            return this.loaded.iterator();
+        }
+
+        this.checkNotStreamed();
+        this.streamed = true;
+        return this.open();
+    }
+
+    @Override
+    public E get(int index) {
+        return this.load().get(index);
+    }
+
+    @Override
+    public int size() {
+        return this.load().size();
+    }
+
+    /**
+     * Releases the underlying results if they have been opened and not read to the end.
+     * A list closed before its rows were accessed never runs its query. Safe to call
+     * more than once.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        if (this.results != null) {
+            this.results.close();
+        }
+    }
+
+    private ResultIterator<E> open() {
+        if (this.closed) {
+            throw new IllegalStateException("The results have already been closed");
+        }
+
+        this.results = this.curator.iterateByCriteria(this.query);
+        return this.results;
+    }
+
+    private List<E> load() {
+        if (this.loaded == null) {
+            this.checkNotStreamed();
+
+            ResultIterator<E> iterator = this.open();
+            List<E> rows = new ArrayList<E>();
+            try {
+                while (iterator.hasNext()) {
+                    rows.add(iterator.next());
+                }
+            }
+            finally {
+                iterator.close();
+            }
+
+            this.loaded = rows;
+        }
+
+        return this.loaded;
+    }
+
+    private void checkNotStreamed() {
+        if (this.streamed) {
+            throw new IllegalStateException("The results have already been streamed");
+        }
+    }
+}
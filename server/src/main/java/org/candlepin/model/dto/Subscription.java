@@ -72,6 +72,7 @@ public class Subscription extends CandlepinDTO implements Owned, Named, Eventful
     private String upstreamConsumerId;
     private SubscriptionsCertificate cert;
     private Cdn cdn;
+    private String importHash;
 
 
     public Subscription() {
@@ -375,6 +376,19 @@ public class Subscription extends CandlepinDTO implements Owned, Named, Eventful
         this.cdn = cdn;
     }
 
+    /**
+     * @return a hash of everything the subscription was imported from, if it came
+     *  from a manifest
+     */
+    @XmlTransient
+    public String getImportHash() {
+        return importHash;
+    }
+
+    public void setImportHash(String importHash) {
+        this.importHash = importHash;
+    }
+
     public Set<Branding> getBranding() {
         return branding;
     }
@@ -540,6 +554,7 @@ public class Subscription extends CandlepinDTO implements Owned, Named, Eventful
         this.setCdn(source.getCdn());
         this.setCertificate(source.getCertificate());
         this.setBranding(source.getBranding());
+        this.setImportHash(source.getImportHash());
 
         return this;
     }
@@ -14,41 +14,138 @@
  */
 package org.candlepin.pinsetter.tasks;
 
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.guice.CandlepinRequestScope;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.Pool;
+import org.candlepin.model.PoolCurator;
 import org.candlepin.policy.js.compliance.ComplianceRules;
+import org.candlepin.util.Metrics;
 
+import com.google.common.collect.Iterables;
 import com.google.inject.Inject;
+import com.google.inject.persist.Transactional;
 
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.JobDataMap;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
+import org.quartz.PersistJobDataAfterExecution;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Job to recalculate compliance for consumers when entitlements become active
+ *
+ * Each run remembers when it started. The next run only looks at entitlements whose
+ * pool started since then; a run with nothing to go by, such as the first one, looks
+ * at every entitlement still flagged as not updated on start. Consumers are checked
+ * in batches, loaded along with their entitlements and evaluated in parallel.
+ *
+ * The job runs after the request scope it was created in has been left, so each batch
+ * is checked within a scope of its own. Leaving it hands back the rules runners the
+ * batch borrowed.
  */
+@DisallowConcurrentExecution
+@PersistJobDataAfterExecution
 public class ActiveEntitlementJob extends KingpinJob {
+    private static Logger log = LoggerFactory.getLogger(ActiveEntitlementJob.class);
 
     // Every hour:
     public static final String DEFAULT_SCHEDULE = "0 0 0/1 * * ?";
 
+    static final String LAST_RUN = "last_run";
+
+    private static final Metrics.Counter CHECKED = Metrics.counter("active_entitlement.consumers");
+    private static final Metrics.Timer BATCH_TIME = Metrics.timer("active_entitlement.batch");
+    private static final AtomicInteger BACKLOG = new AtomicInteger();
+
+    static {
+        Metrics.gauge("active_entitlement.backlog", new Metrics.Gauge() {
+            public Number getValue() {
+                return BACKLOG.get();
+            }
+        });
+    }
+
     private ConsumerCurator consumerCurator;
+    private PoolCurator poolCurator;
     private ComplianceRules complianceRules;
+    private CandlepinRequestScope requestScope;
 
     @Inject
-    public ActiveEntitlementJob(ConsumerCurator consumerCurator, ComplianceRules complianceRules) {
+    public ActiveEntitlementJob(ConsumerCurator consumerCurator, PoolCurator poolCurator,
+        ComplianceRules complianceRules, CandlepinRequestScope requestScope) {
         this.consumerCurator = consumerCurator;
+        this.poolCurator = poolCurator;
         this.complianceRules = complianceRules;
+        this.requestScope = requestScope;
     }
 
     @Override
     public void toExecute(JobExecutionContext ctx) throws JobExecutionException {
-        // not uuids
-        List<String> ids = consumerCurator.getConsumerIdsWithStartedEnts();
-        for (String id : ids) {
-            Consumer c = consumerCurator.find(id);
-            complianceRules.getStatus(c);
+        // Only the job detail's own data map is kept for the next run
+        JobDataMap data = ctx.getJobDetail().getJobDataMap();
+        Date since = (Date) data.get(LAST_RUN);
+        Date now = new Date();
+
+        List<String> uuids = consumerCurator.getConsumerUuidsWithStartedEnts(since, now);
+        log.info("Checking compliance of {} consumers with entitlements started since {}",
+            uuids.size(), since);
+
+        long start = System.currentTimeMillis();
+        int batchSize = Math.max(1, config.getInt(ConfigProperties.COMPLIANCE_BATCH_SIZE));
+        BACKLOG.set(uuids.size());
+        try {
+            for (List<String> batch : Iterables.partition(uuids, batchSize)) {
+                long batchStart = System.nanoTime();
+                requestScope.enter();
+                try {
+                    checkBatch(batch);
+                }
+                finally {
+                    requestScope.exit();
+                }
+                BATCH_TIME.updateSince(batchStart);
+                CHECKED.add(batch.size());
+                BACKLOG.addAndGet(-batch.size());
+            }
+        }
+        finally {
+            BACKLOG.set(0);
+        }
+
+        data.put(LAST_RUN, now);
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        log.info("Checked compliance of {} consumers in {}ms, {} per second", uuids.size(), elapsed,
+            uuids.size() * 1000L / elapsed);
+    }
+
+    /*
+     * Each batch is a transaction of its own, and leaves the session once done
+     */
+    @Transactional
+    protected void checkBatch(List<String> uuids) {
+        List<Consumer> consumers = consumerCurator.findByUuidsForCompliance(uuids);
+        complianceRules.getStatuses(consumers, false);
+        consumerCurator.flush();
+
+        // Pools cascade to the entitlements evicted along with their consumers
+        Set<Pool> pools = new HashSet<Pool>();
+        for (Consumer consumer : consumers) {
+            for (Entitlement entitlement : consumer.getEntitlements()) {
+                pools.add(entitlement.getPool());
+            }
         }
+        poolCurator.evictAll(pools);
+        consumerCurator.evictAll(consumers);
     }
 }
@@ -16,7 +16,7 @@ package org.candlepin.pinsetter.tasks;
 
 import org.candlepin.common.config.Configuration;
 import org.candlepin.config.ConfigProperties;
-import org.candlepin.util.CrlFileUtil;
+import org.candlepin.util.CrlCache;
 
 import com.google.inject.Inject;
 
@@ -25,7 +25,6 @@ import org.quartz.JobExecutionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
 import java.io.IOException;
 
 
@@ -33,14 +32,14 @@ import java.io.IOException;
 /**
  * CertificateRevocationListTask synchronizes the CRL with the DB, we add newly
  * revoked certificates, and remove expired certificates from the file. The job
- * then writes the CRL file.
+ * then writes the CRL file and replaces the snapshot served to clients.
  */
 public class CertificateRevocationListTask extends KingpinJob {
 
     public static final String DEFAULT_SCHEDULE = "0 0 12 * * ?";
 
     private Configuration config;
-    private CrlFileUtil crlFileUtil;
+    private CrlCache crlCache;
 
     private static Logger log =
         LoggerFactory.getLogger(CertificateRevocationListTask.class);
@@ -48,13 +47,13 @@ public class CertificateRevocationListTask extends KingpinJob {
     /**
      * Instantiates a new certificate revocation list task.
      *
-     * @param crlFileUtil file util
+     * @param crlCache the CRL snapshot cache
      * @param conf the conf
      */
     @Inject
-    public CertificateRevocationListTask(Configuration conf, CrlFileUtil crlFileUtil) {
+    public CertificateRevocationListTask(Configuration conf, CrlCache crlCache) {
         this.config = conf;
-        this.crlFileUtil = crlFileUtil;
+        this.crlCache = crlCache;
     }
 
     public void toExecute(JobExecutionContext ctx) throws JobExecutionException {
@@ -65,8 +64,7 @@ public class CertificateRevocationListTask extends KingpinJob {
             throw new JobExecutionException("Invalid " + ConfigProperties.CRL_FILE_PATH, false);
         }
         try {
-            File crlFile = new File(filePath);
-            this.crlFileUtil.syncCRLWithDB(crlFile);
+            this.crlCache.refresh();
         }
         catch (IOException e) {
             log.error("IOException:", e);
@@ -16,43 +16,88 @@ package org.candlepin.pinsetter.tasks;
 
 import static org.quartz.JobBuilder.*;
 
+import org.candlepin.audit.EventSink;
+import org.candlepin.auth.Principal;
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.controller.Entitler;
+import org.candlepin.guice.CandlepinRequestScope;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.Entitlement;
+import org.candlepin.model.JobCurator;
 import org.candlepin.model.OwnerCurator;
 import org.candlepin.pinsetter.core.model.JobStatus;
 import org.candlepin.resource.dto.AutobindData;
+import org.candlepin.util.Metrics;
 import org.candlepin.util.Util;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
+import com.google.inject.Provider;
 import com.google.inject.persist.Transactional;
 
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
 import org.quartz.JobDataMap;
 import org.quartz.JobDetail;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * HealEntireOrgJob
+ *
+ * Heals the consumers of an org in chunks spread over a bounded pool of workers, each
+ * consumer in its own transaction. Progress is recorded on the job status as chunks
+ * complete, so a job recovered after a restart carries on where it left off.
+ *
+ * The rules runners behind an Entitler must not be shared between threads, so each
+ * chunk is healed within a request scope of its own, by an Entitler obtained in it.
+ * Leaving the scope hands the runners back once the chunk is done.
  */
 public class HealEntireOrgJob extends UniqueByEntityJob {
     private static Logger log = LoggerFactory.getLogger(HealEntireOrgJob.class);
+
+    private static final Metrics.Counter HEALED = Metrics.counter("heal_org.consumers.healed");
+    private static final Metrics.Counter FAILED = Metrics.counter("heal_org.consumers.failed");
+    private static final Metrics.Timer HEAL_TIME = Metrics.timer("heal_org.consumer");
+
+    static final String CONSUMERS = "consumers";
+    static final String HEALED_CONSUMERS = "healed";
+    static final String FAILED_CONSUMERS = "failed";
+    static final String RESUME_AFTER = "resume_after";
+
     protected OwnerCurator ownerCurator;
-    protected Entitler entitler;
+    protected Provider<Entitler> entitlerProvider;
     protected ConsumerCurator consumerCurator;
+    protected JobCurator jobCurator;
+    protected EventSink sink;
+    protected CandlepinRequestScope requestScope;
     protected static String prefix = "heal_entire_org_";
 
     @Inject
-    public HealEntireOrgJob(Entitler e, ConsumerCurator c, OwnerCurator o) {
-        this.entitler = e;
+    public HealEntireOrgJob(Provider<Entitler> e, ConsumerCurator c, OwnerCurator o, JobCurator j,
+        EventSink sink, Configuration config, CandlepinRequestScope requestScope) {
+        this.entitlerProvider = e;
         this.consumerCurator = c;
         this.ownerCurator = o;
+        this.jobCurator = j;
+        this.sink = sink;
+        this.config = config;
+        this.requestScope = requestScope;
     }
 
     @Override
@@ -61,21 +106,25 @@ public class HealEntireOrgJob extends UniqueByEntityJob {
             JobDataMap map = ctx.getMergedJobDataMap();
             String ownerId = (String) map.get("ownerId");
             Date entitleDate = (Date) map.get("entitle_date");
-            List<String> uuids = ownerCurator.getConsumerUuids(ownerId);
-            for (String uuid : uuids) {
-                // Do not send in product IDs.  CandlepinPoolManager will take care
-                // of looking up the non or partially compliant products to bind.
-                try {
-                    Consumer consumer = consumerCurator.getConsumer(uuid);
-                    healSingleConsumer(consumer, entitleDate);
-                }
-                // We want to catch everything and continue.
-                // Perhaps add something to surface errors later
-                catch (Exception e) {
-                    log.debug("Healing failed for UUID " + uuid +
-                        " with message: " + e.getMessage());
-                }
+            String jobId = ctx.getJobDetail().getKey().getName();
+
+            // Sorted, so the progress recorded can say where to resume
+            List<String> uuids = new ArrayList<String>(ownerCurator.getConsumerUuids(ownerId));
+            Collections.sort(uuids);
+
+            Progress progress = new Progress(jobId, uuids.size(),
+                Math.max(1, config.getInt(ConfigProperties.HEAL_ORG_CHUNK_SIZE)));
+            if (ctx.isRecovering()) {
+                uuids = progress.resume(uuids);
             }
+
+            long start = System.currentTimeMillis();
+            heal(uuids, entitleDate, progress);
+            long elapsed = Math.max(1, System.currentTimeMillis() - start);
+
+            log.info("Healed {} consumers of org {} in {}ms, {} per second; {} failed",
+                progress.healed, ownerId, elapsed, uuids.size() * 1000L / elapsed, progress.failed);
+            ctx.setResult(progress.toString());
         }
         catch (Exception e) {
             log.error("EntitlerJob encountered a problem.", e);
@@ -84,15 +133,116 @@ public class HealEntireOrgJob extends UniqueByEntityJob {
         }
     }
 
+    private void heal(List<String> uuids, final Date entitleDate, final Progress progress)
+        throws InterruptedException, ExecutionException {
+
+        // Workers bind on behalf of whoever started the job, and log as part of it
+        final Principal principal = ResteasyProviderFactory.getContextData(Principal.class);
+        final String requestUuid = MDC.get("requestUuid");
+        int threads = Math.max(1, config.getInt(ConfigProperties.HEAL_ORG_THREADS));
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("heal-org-%d")
+            .build());
+
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int from = 0; from < uuids.size(); from += progress.chunkSize) {
+                final List<String> chunk =
+                    uuids.subList(from, Math.min(from + progress.chunkSize, uuids.size()));
+                final int index = progress.addChunk(chunk);
+
+                futures.add(executor.submit(new Runnable() {
+                    public void run() {
+                        MDC.put("requestType", "job");
+                        if (requestUuid != null) {
+                            MDC.put("requestUuid", requestUuid);
+                        }
+                        ResteasyProviderFactory.pushContext(Principal.class, principal);
+                        requestScope.enter();
+                        try {
+                            healChunk(entitlerProvider.get(), chunk, index, entitleDate, progress);
+                            progress.chunkDone(index);
+                        }
+                        finally {
+                            requestScope.exit();
+                            ResteasyProviderFactory.popContextData(Principal.class);
+                            MDC.clear();
+                        }
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void healChunk(Entitler entitler, List<String> uuids, int index, Date entitleDate,
+        Progress progress) {
+        for (String uuid : uuids) {
+            long start = System.nanoTime();
+
+            // A fresh session for each consumer, one that failed may leave its session unusable
+            boolean startedUow = startUnitOfWork();
+            try {
+                healSingleConsumer(entitler, uuid, entitleDate);
+                sink.sendEvents();
+                progress.consumerHealed(index);
+                HEALED.inc();
+            }
+            // We want to catch everything and continue.
+            // Perhaps add something to surface errors later
+            catch (Exception e) {
+                sink.rollback();
+                progress.consumerFailed(index);
+                FAILED.inc();
+                log.debug("Healing failed for UUID " + uuid +
+                    " with message: " + e.getMessage());
+            }
+            finally {
+                if (startedUow) {
+                    endUnitOfWork();
+                }
+                HEAL_TIME.updateSince(start);
+            }
+        }
+    }
+
     /*
      * Each consumer heal should be a separate transaction
      */
     @Transactional
-    private void healSingleConsumer(Consumer consumer, Date date) {
+    protected void healSingleConsumer(Entitler entitler, String uuid, Date date) {
+        // Do not send in product IDs.  CandlepinPoolManager will take care
+        // of looking up the non or partially compliant products to bind.
+        Consumer consumer = consumerCurator.getConsumer(uuid);
         List<Entitlement> ents = entitler.bindByProducts(AutobindData.create(consumer).on(date), true);
         entitler.sendEvents(ents);
     }
 
+    @SuppressWarnings("unchecked")
+    @Transactional
+    protected Map<String, Object> loadProgress(String jobId) {
+        JobStatus status = jobCurator.find(jobId);
+        Object data = status != null ? status.getResultData() : null;
+        return data instanceof Map ? (Map<String, Object>) data : null;
+    }
+
+    @Transactional
+    protected void saveProgress(String jobId, String result, Map<String, Object> data) {
+        JobStatus status = jobCurator.find(jobId);
+        if (status != null) {
+            status.setResult(result);
+            status.setResultData(data);
+            jobCurator.merge(status);
+        }
+    }
+
     public static JobDetail healEntireOrg(String ownerId, Date entitleDate) {
         JobDataMap map = new JobDataMap();
         map.put("ownerId", ownerId);
@@ -104,8 +254,121 @@ public class HealEntireOrgJob extends UniqueByEntityJob {
             .withIdentity("heal_entire_org_" + Util.generateUUID())
             .usingJobData(map)
             .storeDurably(true) //required if we have to postpone the job
+            .requestRecovery(true) // recover the job upon restarts
             .build();
 
         return detail;
     }
+
+    /*
+     * Counts the consumers healed and tracks which chunks are done. Chunks complete out
+     * of order, so a recovered job resumes after the last consumer of the last chunk
+     * with no unfinished chunk before it. Only the counts of the chunks up to there are
+     * recorded with it, those of any later chunk are counted again when it is healed again.
+     */
+    private class Progress {
+        private final String jobId;
+        private final int chunkSize;
+        private final List<String> lastUuids = new ArrayList<String>();
+        private final List<Boolean> done = new ArrayList<Boolean>();
+        private final List<int[]> chunkCounts = new ArrayList<int[]>();
+        private int consumers;
+        private int healed;
+        private int failed;
+        private int doneChunks;
+        private int doneHealed;
+        private int doneFailed;
+        private String resumeAfter;
+        private int snapshots;
+        private final Object saveLock = new Object();
+        private int savedSnapshot;
+
+        Progress(String jobId, int consumers, int chunkSize) {
+            this.jobId = jobId;
+            this.consumers = consumers;
+            this.chunkSize = chunkSize;
+        }
+
+        List<String> resume(List<String> uuids) {
+            Map<String, Object> previous = loadProgress(jobId);
+            if (previous == null || previous.get(RESUME_AFTER) == null) {
+                return uuids;
+            }
+
+            resumeAfter = (String) previous.get(RESUME_AFTER);
+            healed = doneHealed = (Integer) previous.get(HEALED_CONSUMERS);
+            failed = doneFailed = (Integer) previous.get(FAILED_CONSUMERS);
+
+            int from = Collections.binarySearch(uuids, resumeAfter);
+            from = from >= 0 ? from + 1 : -from - 1;
+            consumers = healed + failed + uuids.size() - from;
+            log.info("Resuming heal of {} consumers after {}", uuids.size() - from, resumeAfter);
+            return uuids.subList(from, uuids.size());
+        }
+
+        synchronized int addChunk(List<String> uuids) {
+            lastUuids.add(uuids.get(uuids.size() - 1));
+            done.add(false);
+            chunkCounts.add(new int[2]);
+            return done.size() - 1;
+        }
+
+        synchronized void consumerHealed(int index) {
+            chunkCounts.get(index)[0]++;
+            healed++;
+        }
+
+        synchronized void consumerFailed(int index) {
+            chunkCounts.get(index)[1]++;
+            failed++;
+        }
+
+        void chunkDone(int index) {
+            Map<String, Object> data = new HashMap<String, Object>();
+            String result;
+            int snapshot;
+            synchronized (this) {
+                done.set(index, true);
+                while (doneChunks < done.size() && done.get(doneChunks)) {
+                    doneHealed += chunkCounts.get(doneChunks)[0];
+                    doneFailed += chunkCounts.get(doneChunks)[1];
+                    resumeAfter = lastUuids.get(doneChunks++);
+                }
+
+                data.put(CONSUMERS, consumers);
+                data.put(HEALED_CONSUMERS, doneHealed);
+                data.put(FAILED_CONSUMERS, doneFailed);
+                data.put(RESUME_AFTER, resumeAfter);
+                result = toString();
+                snapshot = ++snapshots;
+            }
+
+            // Saved without holding up the workers counting, but one at a time so that
+            // an older snapshot never replaces a newer one
+            synchronized (saveLock) {
+                if (snapshot < savedSnapshot) {
+                    return;
+                }
+                savedSnapshot = snapshot;
+
+                boolean startedUow = startUnitOfWork();
+                try {
+                    saveProgress(jobId, result, data);
+                }
+                catch (Exception e) {
+                    log.warn("Unable to record progress of job {}", jobId, e);
+                }
+                finally {
+                    if (startedUow) {
+                        endUnitOfWork();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "Healed " + healed + " of " + consumers + " consumers, " + failed + " failed";
+        }
+    }
 }
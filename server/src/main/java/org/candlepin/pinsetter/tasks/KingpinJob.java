@@ -23,6 +23,7 @@ import org.candlepin.model.JobCurator;
 import org.candlepin.pinsetter.core.PinsetterJobListener;
 import org.candlepin.pinsetter.core.RetryJobException;
 import org.candlepin.pinsetter.core.model.JobStatus;
+import org.candlepin.policy.js.JsRunnerRequestCache;
 
 import com.google.inject.Inject;
 import com.google.inject.persist.UnitOfWork;
@@ -53,6 +54,9 @@ public abstract class KingpinJob implements Job {
     @Inject protected UnitOfWork unitOfWork;
     @Inject protected Configuration config;
     @Inject private EventSink eventSink;
+    // The job is created within a request scope which has already been left by the time it
+    // runs; rules scopes borrowed while running are handed back once the job is done.
+    @Inject private JsRunnerRequestCache jsRunnerCache;
 
     protected static String prefix = "job";
 
@@ -113,6 +117,9 @@ public abstract class KingpinJob implements Job {
             }
         }
         finally {
+            if (jsRunnerCache != null) {
+                jsRunnerCache.releaseRunners();
+            }
             if (startedUow) {
                 endUnitOfWork();
             }
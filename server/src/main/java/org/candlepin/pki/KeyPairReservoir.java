@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pki;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.util.Metrics;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * KeyPairReservoir
+ *
+ * Keeps a supply of pre-generated RSA key pairs, so registering a consumer does not
+ * have to generate one on the request thread. Background workers fill the reservoir up
+ * to its high watermark whenever it drops below its low watermark. When it is empty,
+ * key pairs are generated inline as before.
+ */
+@Singleton
+public class KeyPairReservoir {
+    private static Logger log = LoggerFactory.getLogger(KeyPairReservoir.class);
+
+    private static final Metrics.Counter FALLBACKS = Metrics.counter("pki.keypair_reservoir.fallback");
+    private static final Metrics.Counter GENERATED = Metrics.counter("pki.keypair_reservoir.generated");
+
+    private final PKIUtility pki;
+    private final int lowWatermark;
+    private final int highWatermark;
+    private final int threads;
+    private final BlockingQueue<KeyPair> reservoir;
+    private final ExecutorService executor;
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+
+    @Inject
+    public KeyPairReservoir(PKIUtility pki, Configuration config) {
+        this(pki, config.getInt(ConfigProperties.KEYPAIR_RESERVOIR_LOW),
+            config.getInt(ConfigProperties.KEYPAIR_RESERVOIR_HIGH),
+            config.getInt(ConfigProperties.KEYPAIR_RESERVOIR_THREADS));
+    }
+
+    /**
+     * @param pki used to generate the key pairs
+     * @param lowWatermark depth below which the reservoir is refilled
+     * @param highWatermark depth up to which the reservoir is filled, 0 disables it
+     * @param threads number of background workers generating key pairs
+     */
+    public KeyPairReservoir(PKIUtility pki, int lowWatermark, int highWatermark, int threads) {
+        this.pki = pki;
+        this.highWatermark = Math.max(0, highWatermark);
+        this.lowWatermark = Math.min(Math.max(0, lowWatermark), this.highWatermark);
+        this.threads = Math.max(1, threads);
+        this.reservoir = new LinkedBlockingQueue<KeyPair>();
+        this.executor = this.highWatermark == 0 ? null : Executors.newFixedThreadPool(this.threads,
+            new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setPriority(Thread.MIN_PRIORITY)
+                .setNameFormat("keypair-reservoir-%d")
+                .build());
+    }
+
+    /**
+     * Publishes the reservoir depth. Called once, for the reservoir Guice manages,
+     * when the application starts.
+     */
+    public void registerMetrics() {
+        Metrics.gauge("pki.keypair_reservoir.depth", new Metrics.Gauge() {
+            public Number getValue() {
+                return reservoir.size();
+            }
+        });
+    }
+
+    /**
+     * Takes a key pair from the reservoir, or generates one inline if it is empty.
+     *
+     * @return a new key pair, never handed out twice
+     * @throws NoSuchAlgorithmException if RSA key generation is not available
+     */
+    public KeyPair take() throws NoSuchAlgorithmException {
+        if (executor == null) {
+            return pki.generateNewKeyPair();
+        }
+
+        KeyPair keyPair = reservoir.poll();
+        if (reservoir.size() < lowWatermark || keyPair == null) {
+            refill();
+        }
+
+        if (keyPair == null) {
+            FALLBACKS.inc();
+            log.debug("Key pair reservoir is empty, generating a key pair inline");
+            keyPair = pki.generateNewKeyPair();
+        }
+        return keyPair;
+    }
+
+    public int getDepth() {
+        return reservoir.size();
+    }
+
+    /*
+     * Starts workers until there are as many running as configured. Each worker keeps
+     * generating until the high watermark is reached.
+     */
+    private void refill() {
+        while (true) {
+            int active = activeWorkers.get();
+            if (active >= threads) {
+                return;
+            }
+            if (activeWorkers.compareAndSet(active, active + 1)) {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        fill();
+                    }
+                });
+            }
+        }
+    }
+
+    private void fill() {
+        try {
+            while (reservoir.size() < highWatermark) {
+                reservoir.add(pki.generateNewKeyPair());
+                GENERATED.inc();
+            }
+        }
+        catch (Exception e) {
+            log.error("Unable to pre-generate key pairs", e);
+        }
+        finally {
+            activeWorkers.decrementAndGet();
+        }
+    }
+}
@@ -20,8 +20,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -44,6 +42,7 @@ import java.security.cert.X509Certificate;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
@@ -184,21 +183,40 @@ public abstract class PKIUtility {
         }
     }
 
-    public boolean verifySHA256WithRSAHashAgainstCACerts(
-        File input, byte[] signedHash) throws CertificateException, IOException {
-        log.debug("Verify against: " + reader.getCACert().getSerialNumber());
-        if (verifySHA256WithRSAHash(new FileInputStream(input), signedHash,
-            reader.getCACert())) {
-            return true;
+    /**
+     * Creates a generator for SHA256withRSA signatures made with the CA key, to be
+     * fed the data to sign as it is written.
+     *
+     * @return a new signature generator
+     */
+    public SignatureGenerator createCASignatureGenerator() {
+        try {
+            return new SignatureGenerator(reader.getCaKey());
         }
-        for (X509Certificate cert : reader.getUpstreamCACerts()) {
-            log.debug("Verify against: " + cert.getSerialNumber());
-            if (verifySHA256WithRSAHash(new FileInputStream(input), signedHash,
-                cert)) {
-                return true;
-            }
+        catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Creates a verifier for SHA256withRSA signatures made by the CA or any of the
+     * upstream CAs, to be fed the signed data as it is read.
+     *
+     * @return a new signature verifier
+     */
+    public SignatureVerifier createCASignatureVerifier()
+        throws CertificateException, IOException {
+
+        List<X509Certificate> certs = new ArrayList<X509Certificate>();
+        certs.add(reader.getCACert());
+        certs.addAll(reader.getUpstreamCACerts());
+
+        try {
+            return new SignatureVerifier(certs);
+        }
+        catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
         }
-        return false;
     }
 
     public boolean verifySHA256WithRSAHash(InputStream input,
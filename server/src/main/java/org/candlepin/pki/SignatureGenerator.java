@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pki;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.SignatureException;
+
+/**
+ * SignatureGenerator
+ *
+ * Makes a SHA256withRSA signature of everything written to it, so data can be signed
+ * on the thread writing it out without being kept around or read back.
+ */
+public class SignatureGenerator extends OutputStream {
+    private final Signature signature;
+
+    public SignatureGenerator(PrivateKey key) throws GeneralSecurityException {
+        signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(key);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        try {
+            signature.update((byte) b);
+        }
+        catch (SignatureException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        try {
+            signature.update(b, off, len);
+        }
+        catch (SignatureException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * @return the signature of everything written
+     * @throws IOException if the signature could not be made
+     */
+    public byte[] sign() throws IOException {
+        try {
+            return signature.sign();
+        }
+        catch (SignatureException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pki;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * SignatureVerifier
+ *
+ * Checks a SHA256withRSA signature against several certificates at once. The signed
+ * data is written to the verifier as it is read, so it neither has to be kept around
+ * nor read again for every certificate.
+ */
+public class SignatureVerifier extends OutputStream {
+    private final List<Signature> signatures = new ArrayList<Signature>();
+
+    public SignatureVerifier(Collection<? extends Certificate> certificates)
+        throws GeneralSecurityException {
+        for (Certificate certificate : certificates) {
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initVerify(certificate);
+            signatures.add(signature);
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        try {
+            for (Signature signature : signatures) {
+                signature.update((byte) b);
+            }
+        }
+        catch (SignatureException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        try {
+            for (Signature signature : signatures) {
+                signature.update(b, off, len);
+            }
+        }
+        catch (SignatureException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * @param signedHash the signature of everything written
+     * @return true if the signature was made by the key of any of the certificates
+     */
+    public boolean verify(byte[] signedHash) {
+        for (Signature signature : signatures) {
+            try {
+                if (signature.verify(signedHash)) {
+                    return true;
+                }
+            }
+            catch (SignatureException e) {
+                // Not a signature this certificate could have made
+            }
+        }
+        return false;
+    }
+}
@@ -17,6 +17,7 @@ package org.candlepin.policy.criteria;
 import org.candlepin.common.config.Configuration;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
+import org.candlepin.model.Pool;
 import org.candlepin.model.PoolAttribute;
 import org.candlepin.model.PoolFilterBuilder;
 
@@ -29,6 +30,7 @@ import org.hibernate.criterion.Property;
 import org.hibernate.criterion.Restrictions;
 import org.hibernate.criterion.Subqueries;
 
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -42,6 +44,14 @@ import java.util.List;
  */
 public class CriteriaRules  {
 
+    private static final String REQUIRES_CONSUMER_TYPE = "requires_consumer_type";
+    private static final String SYSTEM_TYPE = "system";
+    private static final String HYPERVISOR_TYPE = "hypervisor";
+    private static final String UEBERCERT_TYPE = "uebercert";
+
+    // Attribute values the rules treat as not being set at all
+    private static final List<String> UNSET_VALUES = Arrays.asList("", "0");
+
     protected Configuration config;
     protected ConsumerCurator consumerCurator;
 
@@ -113,6 +123,96 @@ public class CriteriaRules  {
         return criteriaFilters;
     }
 
+    /**
+     * Create a List of criterion matching the pre-entitlement rules checks that always
+     * fail for the consumer, whatever the caller: consumer type and user restrictions,
+     * host restricted pools for non-guests and derived pools for distributors. A pool
+     * is only filtered out when the rules would certainly reject it, anything else is
+     * left to the rules, so the pools remaining must still be run through them.
+     *
+     * @param consumer The consumer we are filtering pools for
+     * @return List of Criterion
+     */
+    public static List<Criterion> preEntitlementCriteria(Consumer consumer) {
+        List<Criterion> criteriaFilters = new LinkedList<Criterion>();
+        String type = consumer.getType().getLabel();
+
+        if (consumer.getType().isManifest()) {
+            // Derived virt_only pools are never available to distributors
+            criteriaFilters.add(Restrictions.not(Restrictions.and(
+                Subqueries.exists(poolAttribute("virt_only").add(Restrictions.ilike("value", "true"))),
+                Subqueries.exists(poolAttribute("pool_derived").add(Restrictions.ilike("value", "true"))))));
+            return criteriaFilters;
+        }
+
+        // Pools restricted to another user
+        criteriaFilters.add(consumer.getUsername() == null ?
+            Restrictions.isNull("restrictedToUsername") :
+            Restrictions.or(Restrictions.isNull("restrictedToUsername"),
+                Restrictions.eq("restrictedToUsername", consumer.getUsername())));
+
+        // requires_consumer_type mismatches, the pool attribute taking precedence
+        if (!UEBERCERT_TYPE.equals(type)) {
+            List<String> allowed = new LinkedList<String>(UNSET_VALUES);
+            allowed.add(type);
+            if (HYPERVISOR_TYPE.equals(type)) {
+                allowed.add(SYSTEM_TYPE);
+            }
+
+            criteriaFilters.add(Subqueries.notExists(poolAttribute(REQUIRES_CONSUMER_TYPE)
+                .add(Restrictions.isNotNull("value"))
+                .add(Restrictions.not(Restrictions.in("value", allowed)))));
+            criteriaFilters.add(Restrictions.or(
+                Subqueries.exists(poolAttribute(REQUIRES_CONSUMER_TYPE)),
+                Subqueries.notExists(productAttribute(REQUIRES_CONSUMER_TYPE)
+                    .add(Restrictions.isNotNull("ProdAttr.value"))
+                    .add(Restrictions.not(Restrictions.in("ProdAttr.value", allowed))))));
+        }
+
+        // Products without a required type are restricted to systems
+        if (!SYSTEM_TYPE.equals(type) && !HYPERVISOR_TYPE.equals(type) && !UEBERCERT_TYPE.equals(type)) {
+            criteriaFilters.add(Restrictions.or(
+                Subqueries.exists(poolAttribute(REQUIRES_CONSUMER_TYPE)),
+                Subqueries.exists(productAttribute(REQUIRES_CONSUMER_TYPE))));
+        }
+
+        // Host restricted pools are never available to consumers with no virt.uuid
+        String virtUuid = consumer.getFact("virt.uuid");
+        if (virtUuid == null || virtUuid.isEmpty()) {
+            criteriaFilters.add(Subqueries.notExists(poolAttribute("requires_host")
+                .add(Restrictions.isNotNull("value"))
+                .add(Restrictions.not(Restrictions.in("value", UNSET_VALUES)))));
+        }
+
+        return criteriaFilters;
+    }
+
+    /**
+     * Excludes pools marked physical only by a pool attribute. Pools which are physical
+     * only through their product are left to the rules pass, as the pool may override it.
+     *
+     * @return a criterion excluding pools with a physical_only pool attribute set to true
+     */
+    public static Criterion notPhysicalOnlyPool() {
+        return Subqueries.notExists(poolAttribute("physical_only").add(Restrictions.ilike("value", "true")));
+    }
+
+    private static DetachedCriteria poolAttribute(String name) {
+        return DetachedCriteria.forClass(PoolAttribute.class, "attr")
+            .add(Restrictions.eq("name", name))
+            .add(Property.forName("this.id").eqProperty("attr.pool.id"))
+            .setProjection(Projections.property("attr.id"));
+    }
+
+    private static DetachedCriteria productAttribute(String name) {
+        return DetachedCriteria.forClass(Pool.class, "ProdPool")
+            .createAlias("ProdPool.product", "Prod")
+            .createAlias("Prod.attributes", "ProdAttr")
+            .add(Restrictions.eq("ProdAttr.name", name))
+            .add(Property.forName("this.id").eqProperty("ProdPool.id"))
+            .setProjection(Projections.property("ProdPool.id"));
+    }
+
 
 
 }
@@ -37,12 +37,30 @@ public class JsRunner {
     private String namespace;
     private Scriptable scope;
 
+    private JsRunnerPool pool;
+    private JsRunnerPool.PooledScope pooledScope;
+    private JsRunnerRequestCache cache;
+
     private boolean initialized = false;
 
     public JsRunner(Scriptable scope) {
         this.scope = scope;
     }
 
+    /**
+     * Creates a runner which borrows its pre-initialized scope from the given
+     * pool when {@link #init(String)} is called. The runner registers with the
+     * given request cache every time it borrows a scope, so that the scope is
+     * handed back with {@link #release()} once the request completes.
+     *
+     * @param pool the pool to borrow rules scopes from
+     * @param cache the request cache releasing borrowed scopes
+     */
+    public JsRunner(JsRunnerPool pool, JsRunnerRequestCache cache) {
+        this.pool = pool;
+        this.cache = cache;
+    }
+
     /**
      * initialize the javascript rules for the provided namespace. you must run
      * this
@@ -54,7 +72,16 @@ public class JsRunner {
     public void init(String namespace) {
         this.namespace = namespace;
 
-        if (!initialized) {
+        if (!initialized && pool != null) {
+            this.pooledScope = pool.borrow(namespace);
+            this.scope = pooledScope.getScope();
+            this.rulesNameSpace = pooledScope.getNamespaceObject();
+            this.initialized = true;
+            if (cache != null) {
+                cache.addRunner(this);
+            }
+        }
+        else if (!initialized) {
 
             Context context = Context.enter();
             try {
@@ -74,11 +101,45 @@ public class JsRunner {
         }
     }
 
+    /**
+     * @return the version of the rules this runner evaluates, or null if unknown
+     */
+    public String getRulesVersion() {
+        return pool == null ? null : pool.getRulesVersion();
+    }
+
     public void reinitTo(String namespace) {
+        release();
         initialized = false;
         init(namespace);
     }
 
+    /**
+     * Hands a pooled scope back to the pool it was borrowed from and stops the
+     * request cache from tracking this runner. Runners that are used again after
+     * being released transparently borrow a new scope.
+     */
+    public void release() {
+        if (pooledScope != null) {
+            JsRunnerPool.PooledScope released = pooledScope;
+            pooledScope = null;
+            scope = null;
+            rulesNameSpace = null;
+            initialized = false;
+            if (cache != null) {
+                cache.removeRunner(this);
+            }
+            released.getPool().release(released);
+        }
+    }
+
+    private Scriptable getScope() {
+        if (!initialized && pool != null && namespace != null) {
+            init(namespace);
+        }
+        return scope;
+    }
+
     Object unwrapReturnValue(Object result) {
         if (result instanceof Wrapper) {
             result = ((Wrapper) result).unwrap();
@@ -90,7 +151,8 @@ public class JsRunner {
     @SuppressWarnings("unchecked")
     public <T> T invokeMethod(String method)
         throws NoSuchMethodException, RhinoException {
-        Scriptable localScope = Context.toObject(this.rulesNameSpace, scope);
+        Scriptable rulesScope = getScope();
+        Scriptable localScope = Context.toObject(this.rulesNameSpace, rulesScope);
         Object func = ScriptableObject.getProperty(localScope, method);
         if (!(func instanceof Function)) {
             throw new NoSuchMethodException(
@@ -98,7 +160,7 @@ public class JsRunner {
         }
         Context context = Context.enter();
         try {
-            return (T) unwrapReturnValue(((Function) func).call(context, scope,
+            return (T) unwrapReturnValue(((Function) func).call(context, rulesScope,
                 localScope, Context.emptyArgs));
         }
         finally {
@@ -109,7 +171,7 @@ public class JsRunner {
     @SuppressWarnings("unchecked")
     public <T> T invokeMethod(String method, JsContext context)
         throws NoSuchMethodException, RhinoException {
-        context.applyTo(scope);
+        context.applyTo(getScope());
         return (T) invokeMethod(method);
     }
 
@@ -130,7 +192,7 @@ public class JsRunner {
     }
 
     public <T> T invokeRule(String ruleName, JsContext context) {
-        context.applyTo(scope);
+        context.applyTo(getScope());
         return invokeRule(ruleName);
     }
 
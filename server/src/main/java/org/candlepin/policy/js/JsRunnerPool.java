@@ -0,0 +1,252 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js;
+
+import org.candlepin.util.Metrics;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.RhinoException;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Undefined;
+import org.mozilla.javascript.Wrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * JsRunnerPool
+ *
+ * A bounded pool of pre-initialized, per namespace rules scopes for a single
+ * compiled version of the rules. Creating a scope requires entering a Rhino
+ * context, deriving a child scope from the sealed global one and running the
+ * namespace init function, so scopes are borrowed by {@link JsRunner}s and
+ * handed back once they are done instead of being thrown away.
+ *
+ * Note that setting up a scope is cheap next to running the rules themselves;
+ * with the current rules a warm compliance scope takes about a microsecond to
+ * create while a single get_status call takes a few hundred. The hit and miss
+ * counters show what the pool saves on a given deployment.
+ *
+ * A pool is tied to the rules it was built from; when the rules are recompiled
+ * {@link JsRunnerProvider} replaces the pool and scopes returned to the old one
+ * are simply dropped.
+ */
+public class JsRunnerPool {
+    private static Logger log = LoggerFactory.getLogger(JsRunnerPool.class);
+
+    private static final Metrics.Counter HITS = Metrics.counter("jsrunner.pool.hit");
+    private static final Metrics.Counter MISSES = Metrics.counter("jsrunner.pool.miss");
+    private static final Metrics.Counter DISCARDED = Metrics.counter("jsrunner.pool.discarded");
+    private static final Metrics.Timer BORROW_TIME = Metrics.timer("jsrunner.pool.borrow");
+
+    private final Scriptable globalScope;
+    private final String rulesVersion;
+    private final int maxIdle;
+    private final ConcurrentMap<String, BlockingQueue<PooledScope>> idle;
+
+    /**
+     * PooledScope - a request local rules scope along with the namespace object
+     * its rules are invoked on.
+     */
+    public static class PooledScope {
+        private final JsRunnerPool pool;
+        private final String namespace;
+        private final Scriptable scope;
+        private final Object namespaceObject;
+
+        PooledScope(JsRunnerPool pool, String namespace, Scriptable scope,
+            Object namespaceObject) {
+            this.pool = pool;
+            this.namespace = namespace;
+            this.scope = scope;
+            this.namespaceObject = namespaceObject;
+        }
+
+        public String getNamespace() {
+            return namespace;
+        }
+
+        public Scriptable getScope() {
+            return scope;
+        }
+
+        public Object getNamespaceObject() {
+            return namespaceObject;
+        }
+
+        JsRunnerPool getPool() {
+            return pool;
+        }
+    }
+
+    public JsRunnerPool(Scriptable globalScope, String rulesVersion, int maxIdle) {
+        this.globalScope = globalScope;
+        this.rulesVersion = rulesVersion;
+        this.maxIdle = maxIdle;
+        this.idle = new ConcurrentHashMap<String, BlockingQueue<PooledScope>>();
+    }
+
+    /**
+     * Fills the pool with up to count scopes for each of the given namespaces.
+     * Namespaces which are not defined by the current rules are skipped.
+     *
+     * @param namespaces the namespaces to warm up
+     * @param count the number of scopes to create per namespace
+     */
+    public void prewarm(Collection<String> namespaces, int count) {
+        int size = Math.min(count, maxIdle);
+        for (String namespace : namespaces) {
+            try {
+                BlockingQueue<PooledScope> queue = getQueue(namespace);
+                while (queue.size() < size) {
+                    if (!queue.offer(createScope(namespace))) {
+                        break;
+                    }
+                }
+            }
+            catch (RuleParseException e) {
+                log.warn("Unable to prewarm rules namespace {}: {}", namespace, e.getMessage());
+            }
+        }
+        log.debug("Prewarmed {} rules namespaces for rules version {}", namespaces.size(), rulesVersion);
+    }
+
+    /**
+     * Borrows an initialized scope for the given namespace, creating a new one
+     * if none are idle.
+     *
+     * @param namespace the rules namespace to borrow a scope for
+     * @return an initialized scope
+     */
+    public PooledScope borrow(String namespace) {
+        long start = System.nanoTime();
+        try {
+            PooledScope pooled = getQueue(namespace).poll();
+            if (pooled != null) {
+                HITS.inc();
+                return pooled;
+            }
+
+            MISSES.inc();
+            return createScope(namespace);
+        }
+        finally {
+            BORROW_TIME.updateSince(start);
+        }
+    }
+
+    /**
+     * Hands a borrowed scope back to the pool it was borrowed from. Any request
+     * arguments left in the scope are removed first. Scopes belonging to an
+     * outdated pool, or returned while the pool is full, are discarded.
+     *
+     * @param pooled the scope to return
+     */
+    public void release(PooledScope pooled) {
+        if (pooled == null) {
+            return;
+        }
+
+        if (pooled.getPool() != this) {
+            DISCARDED.inc();
+            return;
+        }
+
+        clearScope(pooled.getScope());
+        BlockingQueue<PooledScope> queue = getQueue(pooled.getNamespace());
+        if (!queue.offer(pooled)) {
+            DISCARDED.inc();
+        }
+    }
+
+    public Set<String> getNamespaces() {
+        return idle.keySet();
+    }
+
+    public String getRulesVersion() {
+        return rulesVersion;
+    }
+
+    public int getIdleCount() {
+        int count = 0;
+        for (BlockingQueue<PooledScope> queue : idle.values()) {
+            count += queue.size();
+        }
+        return count;
+    }
+
+    private BlockingQueue<PooledScope> getQueue(String namespace) {
+        BlockingQueue<PooledScope> queue = idle.get(namespace);
+        if (queue == null) {
+            BlockingQueue<PooledScope> created = new LinkedBlockingQueue<PooledScope>(maxIdle);
+            queue = idle.putIfAbsent(namespace, created);
+            if (queue == null) {
+                queue = created;
+            }
+        }
+        return queue;
+    }
+
+    private PooledScope createScope(String namespace) {
+        Context context = Context.enter();
+        try {
+            Scriptable rulesScope = context.newObject(globalScope);
+            rulesScope.setPrototype(globalScope);
+            rulesScope.setParentScope(null);
+
+            Object func = ScriptableObject.getProperty(rulesScope, namespace);
+            if (!(func instanceof Function)) {
+                throw new RuleParseException("No such rules namespace: " + namespace);
+            }
+
+            Object namespaceObject = unwrap(((Function) func).call(context, rulesScope,
+                rulesScope, Context.emptyArgs));
+            return new PooledScope(this, namespace, rulesScope, namespaceObject);
+        }
+        catch (RhinoException e) {
+            throw new RuleParseException(e);
+        }
+        finally {
+            Context.exit();
+        }
+    }
+
+    private void clearScope(Scriptable scope) {
+        for (Object id : scope.getIds()) {
+            if (id instanceof String) {
+                scope.delete((String) id);
+            }
+            else if (id instanceof Integer) {
+                scope.delete((Integer) id);
+            }
+        }
+    }
+
+    private Object unwrap(Object result) {
+        if (result instanceof Wrapper) {
+            result = ((Wrapper) result).unwrap();
+        }
+
+        return result instanceof Undefined ? null : result;
+    }
+}
@@ -14,9 +14,12 @@
  */
 package org.candlepin.policy.js;
 
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.model.Rules;
 import org.candlepin.model.Rules.RulesSourceEnum;
 import org.candlepin.model.RulesCurator;
+import org.candlepin.util.Metrics;
 
 import com.google.inject.Inject;
 import com.google.inject.Provider;
@@ -29,7 +32,11 @@ import org.mozilla.javascript.ScriptableObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -37,10 +44,22 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * Reads/compiles our javascript rules and the standard js objects only
  * once across the JVM lifetime (and whenever the rules require a recompile), and creates
  * lightweight execution scopes per thread/request.
+ *
+ * Execution scopes are kept in a {@link JsRunnerPool} built for the currently compiled
+ * rules. Runners borrow an already initialized scope for their namespace and return
+ * it when the request finishes, the pool is replaced whenever the rules are recompiled.
  */
 public class JsRunnerProvider implements Provider<JsRunner> {
     private static Logger log = LoggerFactory.getLogger(JsRunnerProvider.class);
 
+    /**
+     * Namespaces used by our rules classes, these are warmed up in the scope pool
+     * every time the rules are compiled.
+     */
+    private static final List<String> DEFAULT_NAMESPACES = Arrays.asList(
+        "entitlement_name_space", "activation_key_name_space", "compliance_name_space",
+        "autobind_name_space", "quantity_name_space", "override_name_space");
+
     private RulesCurator rulesCurator;
     private Provider<JsRunnerRequestCache> cacheProvider;
     private Script script;
@@ -61,6 +80,10 @@ public class JsRunnerProvider implements Provider<JsRunner> {
     // Use this lock to access script, scope and updated
     private ReadWriteLock scriptLock = new ReentrantReadWriteLock();
 
+    private volatile JsRunnerPool pool;
+    private int poolMaxIdle;
+    private int poolPrewarm;
+
     /**
      * DynamicScopeContextFactory - replace the standard rhino context factory with one that
      * enables dynamic scopes. Dynamic scopes allow us to define a global var (ie pools) in
@@ -81,16 +104,44 @@ public class JsRunnerProvider implements Provider<JsRunner> {
         ContextFactory.initGlobal(new DynamicScopeContextFactory());
     }
 
-    @Inject
     public JsRunnerProvider(RulesCurator rulesCurator, Provider<JsRunnerRequestCache> cacheProvider) {
+        this(rulesCurator, cacheProvider,
+            Integer.parseInt(ConfigProperties.DEFAULT_PROPERTIES.get(ConfigProperties.RULES_POOL_MAX_IDLE)),
+            Integer.parseInt(ConfigProperties.DEFAULT_PROPERTIES.get(ConfigProperties.RULES_POOL_PREWARM)));
+    }
+
+    @Inject
+    public JsRunnerProvider(RulesCurator rulesCurator, Provider<JsRunnerRequestCache> cacheProvider,
+        Configuration config) {
+        this(rulesCurator, cacheProvider, config.getInt(ConfigProperties.RULES_POOL_MAX_IDLE),
+            config.getInt(ConfigProperties.RULES_POOL_PREWARM));
+    }
+
+    private JsRunnerProvider(RulesCurator rulesCurator, Provider<JsRunnerRequestCache> cacheProvider,
+        int poolMaxIdle, int poolPrewarm) {
         this.rulesCurator = rulesCurator;
         this.cacheProvider = cacheProvider;
+        this.poolMaxIdle = Math.max(1, poolMaxIdle);
+        this.poolPrewarm = Math.max(0, poolPrewarm);
 
         log.debug("Compiling rules for initial load");
         this.rulesCurator.updateDbRules();
         this.compileRules();
     }
 
+    /**
+     * Publishes the number of idle pooled scopes. Called once, for the provider
+     * Guice manages, when the application starts.
+     */
+    public void registerMetrics() {
+        Metrics.gauge("jsrunner.pool.idle", new Metrics.Gauge() {
+            public Number getValue() {
+                JsRunnerPool current = pool;
+                return current == null ? 0 : current.getIdleCount();
+            }
+        });
+    }
+
     /**
      * These are the expensive operations (initStandardObjects and compileReader/exec).
      *  We do them once here, and define this provider as a singleton, so it's only
@@ -130,6 +181,16 @@ public class JsRunnerProvider implements Provider<JsRunner> {
             finally {
                 Context.exit();
             }
+
+            // Scopes pooled for the previous rules are no longer valid. Warm the new
+            // pool with the namespaces that were in use before the recompile.
+            Set<String> namespaces = new HashSet<String>(DEFAULT_NAMESPACES);
+            if (pool != null) {
+                namespaces.addAll(pool.getNamespaces());
+            }
+            JsRunnerPool newPool = new JsRunnerPool(scope, rulesVersion, poolMaxIdle);
+            newPool.prewarm(namespaces, poolPrewarm);
+            this.pool = newPool;
         }
         finally {
             scriptLock.writeLock().unlock();
@@ -156,20 +217,17 @@ public class JsRunnerProvider implements Provider<JsRunner> {
         if (!updated.equals(this.currentRulesUpdated)) {
             compileRules();
         }
-        Scriptable rulesScope;
+        JsRunner runner;
         scriptLock.readLock().lock();
         try {
-            Context context = Context.enter();
-            rulesScope = context.newObject(scope);
-            rulesScope.setPrototype(scope);
-            rulesScope.setParentScope(null);
-            Context.exit();
+            // The request cache hands the runner's scope back to the pool
+            // once the request is complete.
+            runner = new JsRunner(pool, cache);
         }
         finally {
             scriptLock.readLock().unlock();
         }
-
-        return new JsRunner(rulesScope);
+        return runner;
     }
 
     public String getRulesVersion() {
@@ -14,20 +14,30 @@
  */
 package org.candlepin.policy.js;
 
-import java.util.Date;
-
 import org.candlepin.guice.CandlepinRequestScoped;
+import org.candlepin.guice.RequestScopeExitListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 
 /**
  * A request scoped cache that is used to mitigate repeated
- * DB requests for cp_rules.updated column.
+ * DB requests for cp_rules.updated column. It also keeps track
+ * of the JsRunners which borrowed a pooled scope during the request
+ * so their scopes can be returned to the pool once the request completes.
  * @author fnguyen
  *
  */
 @CandlepinRequestScoped
-public class JsRunnerRequestCache {
+public class JsRunnerRequestCache implements RequestScopeExitListener {
 
     private Date updated = null;
+    private Set<JsRunner> runners =
+        Collections.newSetFromMap(new IdentityHashMap<JsRunner, Boolean>());
 
     public void setUpdated(Date updated) {
         this.updated = updated;
@@ -36,4 +46,38 @@ public class JsRunnerRequestCache {
     public Date getUpdated() {
         return updated;
     }
+
+    /**
+     * Tracks a runner holding a pooled scope. Runners borrow their scope on the
+     * thread evaluating the rules, which is not always the request thread.
+     */
+    public synchronized void addRunner(JsRunner runner) {
+        runners.add(runner);
+    }
+
+    /**
+     * Stops tracking a runner which has already handed its scope back.
+     */
+    public synchronized void removeRunner(JsRunner runner) {
+        runners.remove(runner);
+    }
+
+    /**
+     * Returns the scopes of the runners tracked by this cache to their pool and
+     * stops tracking them. Objects created within the request may outlive it and
+     * use their runners again; those runners borrow a new scope and are tracked
+     * again until the next release.
+     */
+    public synchronized void releaseRunners() {
+        List<JsRunner> released = new ArrayList<JsRunner>(runners);
+        runners.clear();
+        for (JsRunner runner : released) {
+            runner.release();
+        }
+    }
+
+    @Override
+    public void onScopeExit() {
+        releaseRunners();
+    }
 }
@@ -28,6 +28,7 @@ public class JsonJsContext extends JsContext {
 
     private final RulesObjectMapper rulesObjectMapper;
     private ArgumentJsContext nonSerializableContext;
+    private String json;
 
     public JsonJsContext(RulesObjectMapper rulesObjectMapper) {
         this.rulesObjectMapper = rulesObjectMapper;
@@ -36,10 +37,23 @@ public class JsonJsContext extends JsContext {
 
     @Override
     public void applyTo(Scriptable scope) {
-        scope.put("json_context", scope, this.rulesObjectMapper.toJsonString(contextArgs));
+        String value = json != null ? json : this.rulesObjectMapper.toJsonString(contextArgs);
+        scope.put("json_context", scope, value);
         nonSerializableContext.applyTo(scope);
     }
 
+    /**
+     * Serializes the context args now rather than when the context is applied. A
+     * prepared context no longer reads the objects it was given, so it can be applied
+     * on another thread than the one owning them (and their hibernate session).
+     *
+     * @return this context
+     */
+    public JsonJsContext prepare() {
+        this.json = this.rulesObjectMapper.toJsonString(contextArgs);
+        return this;
+    }
+
     public void put(String contextKey, Object contextVal, boolean serializable) {
         if (!serializable) {
             nonSerializableContext.put(contextKey, contextVal);
@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js;
+
+import org.candlepin.model.Attribute;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.Pool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * RulesUtil
+ *
+ * Java versions of the rules.js helpers shared by the native rule implementations,
+ * behaving exactly as their javascript counterparts do.
+ */
+public class RulesUtil {
+
+    static final String IS_VIRT_GUEST_FACT = "virt.is_guest";
+
+    private static final Pattern JS_INT = Pattern.compile("^\\s*([+-]?)(0[xX][0-9a-fA-F]+|[0-9]+)");
+
+    private RulesUtil() {
+    }
+
+    public static boolean architectureMatches(String productArchStr, String consumerArch,
+        String consumerType) {
+        // Non-system consumers without an architecture fact can pass this rule
+        // regardless what arch the product requires.
+        if ((consumerArch == null || consumerArch.isEmpty()) && !"system".equals(consumerType)) {
+            return true;
+        }
+
+        if (productArchStr != null) {
+            List<String> supportedArches = new ArrayList<String>(Arrays.asList(
+                productArchStr.toUpperCase(Locale.ENGLISH).split(",", -1)));
+
+            // If X86 is supported, add all variants to this list:
+            if (supportedArches.contains("X86")) {
+                supportedArches.add("I386");
+                supportedArches.add("I586");
+                supportedArches.add("I686");
+            }
+
+            if (!supportedArches.contains("ALL") && (consumerArch == null || consumerArch.isEmpty() ||
+                !supportedArches.contains(consumerArch.toUpperCase(Locale.ENGLISH)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static boolean isGuest(Consumer consumer) {
+        if (consumer == null || consumer.getFacts() == null) {
+            return false;
+        }
+        return "true".equalsIgnoreCase(consumer.getFacts().get(IS_VIRT_GUEST_FACT));
+    }
+
+    /*
+     * pool.getProductAttribute: product attributes first, then pool attributes.
+     */
+    public static String getProductAttribute(Pool pool, String name) {
+        String value = findAttributeIn(name, pool.getProductAttributes());
+        return value != null ? value : findAttributeIn(name, pool.getAttributes());
+    }
+
+    /*
+     * pool.getAttribute: pool attributes first, then product attributes.
+     */
+    public static String getAttribute(Pool pool, String name) {
+        String value = findAttributeIn(name, pool.getAttributes());
+        return value != null ? value : findAttributeIn(name, pool.getProductAttributes());
+    }
+
+    /*
+     * An attribute is considered not set if it has a value of 0.
+     */
+    private static String findAttributeIn(String name, Collection<? extends Attribute> attributes) {
+        if (attributes == null) {
+            return null;
+        }
+
+        for (Attribute attr : attributes) {
+            if (name.equals(attr.getName())) {
+                String value = attr.getValue();
+                return "0".equals(value) ? null : value;
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Javascript parseInt(value)
+     */
+    public static double parseInt(Object value) {
+        if (value == null) {
+            return Double.NaN;
+        }
+
+        if (value instanceof Number) {
+            double number = ((Number) value).doubleValue();
+            if (Double.isNaN(number) || Double.isInfinite(number)) {
+                return Double.NaN;
+            }
+            return number < 0 ? Math.ceil(number) : Math.floor(number);
+        }
+
+        Matcher matcher = JS_INT.matcher(value.toString());
+        if (!matcher.find()) {
+            return Double.NaN;
+        }
+
+        String digits = matcher.group(2);
+        double number = digits.length() > 2 && (digits.charAt(1) == 'x' || digits.charAt(1) == 'X') ?
+            Long.parseLong(digits.substring(2), 16) : Double.parseDouble(digits);
+        return "-".equals(matcher.group(1)) ? -number : number;
+    }
+}
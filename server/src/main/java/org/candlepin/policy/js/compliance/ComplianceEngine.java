@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.compliance;
+
+import org.candlepin.model.Consumer;
+import org.candlepin.model.Entitlement;
+
+import java.util.Collection;
+import java.util.Date;
+
+/**
+ * ComplianceEngine
+ *
+ * Calculates the raw compliance status of a consumer. Engines only evaluate
+ * coverage, {@link ComplianceRules} takes care of reason messages, status hashes
+ * and events.
+ */
+public interface ComplianceEngine {
+
+    /**
+     * Configuration values for {@link org.candlepin.config.ConfigProperties#COMPLIANCE_ENGINE}.
+     */
+    final class Type {
+        /** Evaluate compliance with the javascript rules */
+        public static final String JS = "js";
+
+        /** Evaluate compliance with the native Java implementation */
+        public static final String JAVA = "java";
+
+        /** Evaluate with both engines, log any mismatch and trust the javascript result */
+        public static final String DIFFERENTIAL = "differential";
+
+        private Type() {
+        }
+    }
+
+    /**
+     * Calculates the compliance status of a consumer on the given date.
+     *
+     * @param consumer the consumer to check
+     * @param entitlements the consumer's entitlements
+     * @param onDate the date to check compliance on
+     * @param calculateCompliantUntil whether to calculate how long the consumer remains compliant
+     * @return the compliance status
+     */
+    ComplianceStatus getStatus(Consumer consumer, Collection<Entitlement> entitlements, Date onDate,
+        boolean calculateCompliantUntil);
+
+    boolean isStackCompliant(Consumer consumer, String stackId, Collection<Entitlement> entitlements);
+
+    boolean isEntitlementCompliant(Consumer consumer, Entitlement entitlement,
+        Collection<Entitlement> entitlements);
+}
@@ -15,6 +15,8 @@
 package org.candlepin.policy.js.compliance;
 
 import org.candlepin.audit.EventSink;
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.Entitlement;
@@ -30,8 +32,12 @@ import com.google.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * ComplianceRules
@@ -41,26 +47,68 @@ import java.util.List;
 public class ComplianceRules {
 
     private EntitlementCurator entCurator;
-    private JsRunner jsRules;
-    private RulesObjectMapper mapper;
+    private ComplianceEngine engine;
+    private ComplianceStatusCache statusCache;
+    private ParallelComplianceEvaluator evaluator;
+    private String rulesVersion;
     private static Logger log = LoggerFactory.getLogger(ComplianceRules.class);
     private StatusReasonMessageGenerator generator;
     private EventSink eventSink;
     // Use the curator to update consumer entitlement status every time we run compliance (with null date)
     private ConsumerCurator consumerCurator;
 
-    @Inject
     public ComplianceRules(JsRunner jsRules, EntitlementCurator entCurator,
         StatusReasonMessageGenerator generator, EventSink eventSink,
         ConsumerCurator consumerCurator) {
+        this(jsRules, entCurator, generator, eventSink, consumerCurator, ComplianceEngine.Type.JS,
+            null, null);
+    }
+
+    public ComplianceRules(JsRunner jsRules, EntitlementCurator entCurator,
+        StatusReasonMessageGenerator generator, EventSink eventSink,
+        ConsumerCurator consumerCurator, Configuration config) {
+        this(jsRules, entCurator, generator, eventSink, consumerCurator, config, null, null);
+    }
+
+    @Inject
+    public ComplianceRules(JsRunner jsRules, EntitlementCurator entCurator,
+        StatusReasonMessageGenerator generator, EventSink eventSink,
+        ConsumerCurator consumerCurator, Configuration config, ComplianceStatusCache statusCache,
+        ParallelComplianceEvaluator evaluator) {
+        this(jsRules, entCurator, generator, eventSink, consumerCurator,
+            config.getString(ConfigProperties.COMPLIANCE_ENGINE, ComplianceEngine.Type.JS), statusCache,
+            evaluator);
+    }
+
+    private ComplianceRules(JsRunner jsRules, EntitlementCurator entCurator,
+        StatusReasonMessageGenerator generator, EventSink eventSink,
+        ConsumerCurator consumerCurator, String engineType, ComplianceStatusCache statusCache,
+        ParallelComplianceEvaluator evaluator) {
         this.entCurator = entCurator;
-        this.jsRules = jsRules;
         this.generator = generator;
         this.eventSink = eventSink;
         this.consumerCurator = consumerCurator;
+        this.engine = createEngine(jsRules, engineType);
+        this.statusCache = statusCache != null && statusCache.isEnabled() ? statusCache : null;
+        this.rulesVersion = jsRules.getRulesVersion();
+        this.evaluator = evaluator;
+    }
+
+    private static ComplianceEngine createEngine(JsRunner jsRules, String engineType) {
+        if (ComplianceEngine.Type.JAVA.equalsIgnoreCase(engineType)) {
+            return new JavaComplianceEngine();
+        }
 
-        mapper = RulesObjectMapper.instance();
         jsRules.init("compliance_name_space");
+        ComplianceEngine jsEngine = new JsComplianceEngine(jsRules, RulesObjectMapper.instance());
+        if (ComplianceEngine.Type.DIFFERENTIAL.equalsIgnoreCase(engineType)) {
+            return new DifferentialComplianceEngine(jsEngine, new JavaComplianceEngine());
+        }
+
+        if (!ComplianceEngine.Type.JS.equalsIgnoreCase(engineType)) {
+            log.warn("Unknown compliance engine \"{}\", using the javascript rules", engineType);
+        }
+        return jsEngine;
     }
 
     /**
@@ -117,12 +165,7 @@ public class ComplianceRules {
 
         }
         if (currentCompliance) {
-            for (Entitlement ent : c.getEntitlements()) {
-                if (!ent.isUpdatedOnStart() && ent.isValid()) {
-                    ent.setUpdatedOnStart(true);
-                    entCurator.merge(ent);
-                }
-            }
+            markStartedEntitlements(c);
         }
 
         /*
@@ -133,17 +176,95 @@ public class ComplianceRules {
             return new ComplianceStatus(new Date());
         }
 
-        JsonJsContext args = new JsonJsContext(mapper);
-        args.put("consumer", c);
-        args.put("entitlements", c.getEntitlements());
-        args.put("ondate", date);
-        args.put("calculateCompliantUntil", calculateCompliantUntil);
-        args.put("log", log, false);
+        ComplianceStatus result = calculateStatus(c, date, calculateCompliantUntil, currentCompliance);
+        return finishStatus(c, result, currentCompliance, updateConsumer);
+    }
+
+    /**
+     * Check the current compliance status of many consumers at once. When the
+     * javascript engine is in use, the consumers missing from the status cache are
+     * evaluated in parallel; everything else (messages, events and consumer updates)
+     * happens on the calling thread exactly as in {@link #getStatus(Consumer, Date)}.
+     *
+     * @param consumers Consumers to check.
+     * @return Compliance status of each consumer, keyed by consumer UUID.
+     */
+    public Map<String, ComplianceStatus> getStatuses(Collection<Consumer> consumers) {
+        return getStatuses(consumers, true);
+    }
+
+    /**
+     * Check the current compliance status of many consumers at once.
+     *
+     * @param consumers Consumers to check.
+     * @param calculateCompliantUntil calculate how long the systems will remain compliant (expensive)
+     * @return Compliance status of each consumer, keyed by consumer UUID.
+     * @see #getStatuses(Collection)
+     */
+    public Map<String, ComplianceStatus> getStatuses(Collection<Consumer> consumers,
+        boolean calculateCompliantUntil) {
+        Date date = new Date();
+        Map<String, ComplianceStatus> results = new LinkedHashMap<String, ComplianceStatus>();
+        List<Consumer> pending = new ArrayList<Consumer>();
+        List<String> pendingHashes = new ArrayList<String>();
+        List<JsonJsContext> contexts = new ArrayList<JsonJsContext>();
+        boolean parallel = evaluator != null && engine instanceof JsComplianceEngine;
+
+        for (Consumer c : consumers) {
+            markStartedEntitlements(c);
+            if (c.getType().isManifest()) {
+                results.put(c.getUuid(), new ComplianceStatus(new Date()));
+                continue;
+            }
+
+            if (!parallel) {
+                results.put(c.getUuid(), finishStatus(c,
+                    calculateStatus(c, date, calculateCompliantUntil, true), true, true));
+                continue;
+            }
+
+            String inputHash = statusCache == null ? null : statusCache.getInputHash(c);
+            ComplianceStatus cached = statusCache == null ? null :
+                statusCache.get(c, inputHash, rulesVersion, date, calculateCompliantUntil);
+            if (cached != null) {
+                results.put(c.getUuid(), finishStatus(c, cached, true, true));
+                continue;
+            }
+
+            // Serialize here, the evaluator's workers must not touch the consumer
+            pending.add(c);
+            pendingHashes.add(inputHash);
+            contexts.add(JsComplianceEngine.createStatusContext(RulesObjectMapper.instance(), c,
+                c.getEntitlements(), date, calculateCompliantUntil).prepare());
+        }
+
+        if (!contexts.isEmpty()) {
+            List<ComplianceStatus> statuses = evaluator.evaluate(contexts);
+            for (int i = 0; i < pending.size(); i++) {
+                Consumer c = pending.get(i);
+                ComplianceStatus status = statuses.get(i);
+                if (statusCache != null) {
+                    statusCache.put(c, pendingHashes.get(i), rulesVersion, date, calculateCompliantUntil,
+                        status);
+                }
+                results.put(c.getUuid(), finishStatus(c, status, true, true));
+            }
+        }
+        return results;
+    }
+
+    private void markStartedEntitlements(Consumer c) {
+        for (Entitlement ent : c.getEntitlements()) {
+            if (!ent.isUpdatedOnStart() && ent.isValid()) {
+                ent.setUpdatedOnStart(true);
+                entCurator.merge(ent);
+            }
+        }
+    }
 
-        // Convert the JSON returned into a ComplianceStatus object:
-        String json = jsRules.runJsFunction(String.class, "get_status", args);
+    private ComplianceStatus finishStatus(Consumer c, ComplianceStatus result, boolean currentCompliance,
+        boolean updateConsumer) {
         try {
-            ComplianceStatus result = mapper.toObject(json, ComplianceStatus.class);
             for (ComplianceReason reason : result.getReasons()) {
                 generator.setMessage(c, reason, result.getDate());
             }
@@ -173,25 +294,34 @@ public class ComplianceRules {
         }
     }
 
+    /*
+     * Only statuses for the current date are cached, checks for a specific date go
+     * straight to the engine.
+     */
+    private ComplianceStatus calculateStatus(Consumer c, Date date, boolean calculateCompliantUntil,
+        boolean currentCompliance) {
+        if (statusCache == null || !currentCompliance) {
+            return engine.getStatus(c, c.getEntitlements(), date, calculateCompliantUntil);
+        }
+
+        String inputHash = statusCache.getInputHash(c);
+        ComplianceStatus result = statusCache.get(c, inputHash, rulesVersion, date,
+            calculateCompliantUntil);
+        if (result == null) {
+            result = engine.getStatus(c, c.getEntitlements(), date, calculateCompliantUntil);
+            statusCache.put(c, inputHash, rulesVersion, date, calculateCompliantUntil, result);
+        }
+        return result;
+    }
+
     public boolean isStackCompliant(Consumer consumer, String stackId,
         List<Entitlement> entsToConsider) {
-        JsonJsContext args = new JsonJsContext(mapper);
-        args.put("stack_id", stackId);
-        args.put("consumer", consumer);
-        args.put("entitlements", entsToConsider);
-        args.put("log", log, false);
-        return jsRules.runJsFunction(Boolean.class, "is_stack_compliant", args);
+        return engine.isStackCompliant(consumer, stackId, entsToConsider);
     }
 
     public boolean isEntitlementCompliant(Consumer consumer, Entitlement ent, Date onDate) {
         List<Entitlement> ents = entCurator.listByConsumerAndDate(consumer, onDate);
-
-        JsonJsContext args = new JsonJsContext(mapper);
-        args.put("consumer", consumer);
-        args.put("entitlement", ent);
-        args.put("entitlements", ents);
-        args.put("log", log, false);
-        return jsRules.runJsFunction(Boolean.class, "is_ent_compliant", args);
+        return engine.isEntitlementCompliant(consumer, ent, ents);
     }
 
     private String getComplianceStatusHash(ComplianceStatus status, Consumer consumer) {
@@ -0,0 +1,267 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.compliance;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.Entitlement;
+import org.candlepin.policy.js.compliance.hash.ComplianceInputHasher;
+import org.candlepin.util.Metrics;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ComplianceStatusCache
+ *
+ * Caches the current compliance status calculated for each consumer. An entry is
+ * only reused while the consumer's compliance inputs (type, facts, installed products,
+ * guests, entitlements and their products' attributes, see {@link ComplianceInputHasher})
+ * and the rules version
+ * are unchanged, and until the next date at which the status could flip on its own:
+ * compliantUntil, or the start or end of any of the consumer's entitlements.
+ */
+@Singleton
+public class ComplianceStatusCache {
+    private static Logger log = LoggerFactory.getLogger(ComplianceStatusCache.class);
+
+    private static final Metrics.Counter HITS = Metrics.counter("compliance.cache.hit");
+    private static final Metrics.Counter MISSES = Metrics.counter("compliance.cache.miss");
+    private static final Metrics.Counter STALE = Metrics.counter("compliance.cache.stale");
+
+    private final boolean enabled;
+    private final Cache<String, CachedStatus> cache;
+
+    /**
+     * A cached status along with what it was calculated from.
+     */
+    private static class CachedStatus {
+        private final String inputHash;
+        private final String rulesVersion;
+        private final Date validUntil;
+        private final ComplianceStatus status;
+
+        CachedStatus(String inputHash, String rulesVersion, Date validUntil, ComplianceStatus status) {
+            this.inputHash = inputHash;
+            this.rulesVersion = rulesVersion;
+            this.validUntil = validUntil;
+            this.status = status;
+        }
+
+        boolean isValid(String inputHash, String rulesVersion, Date onDate) {
+            return this.inputHash.equals(inputHash) &&
+                (this.rulesVersion == null ? rulesVersion == null : this.rulesVersion.equals(rulesVersion)) &&
+                (validUntil == null || onDate.before(validUntil));
+        }
+    }
+
+    @Inject
+    public ComplianceStatusCache(Configuration config) {
+        this(config.getBoolean(ConfigProperties.COMPLIANCE_CACHE_ENABLED, true),
+            config.getInt(ConfigProperties.COMPLIANCE_CACHE_MAX),
+            config.getInt(ConfigProperties.COMPLIANCE_CACHE_TTL));
+    }
+
+    public ComplianceStatusCache(boolean enabled, int maxEntries, int ttlSeconds) {
+        this.enabled = enabled;
+        this.cache = CacheBuilder.newBuilder()
+            .maximumSize(Math.max(0, maxEntries))
+            .expireAfterWrite(Math.max(0, ttlSeconds), TimeUnit.SECONDS)
+            .build();
+
+        Metrics.gauge("compliance.cache.size", new Metrics.Gauge() {
+            public Number getValue() {
+                return cache.size();
+            }
+        });
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Computes the hash of the consumer's compliance inputs, to be passed to
+     * {@link #get} and {@link #put}.
+     *
+     * @param consumer the consumer
+     * @return the hash of everything the consumer's compliance status depends on
+     */
+    public String getInputHash(Consumer consumer) {
+        return new ComplianceInputHasher(consumer).hash();
+    }
+
+    /**
+     * Looks up the status cached for the consumer.
+     *
+     * @param consumer the consumer
+     * @param inputHash the consumer's current input hash
+     * @param rulesVersion version of the rules in use
+     * @param onDate date the status is wanted for
+     * @param calculateCompliantUntil whether compliantUntil is wanted
+     * @return a copy of the cached status dated onDate, or null on a miss
+     */
+    public ComplianceStatus get(Consumer consumer, String inputHash, String rulesVersion,
+        Date onDate, boolean calculateCompliantUntil) {
+        if (!enabled || consumer.getId() == null) {
+            return null;
+        }
+
+        String key = key(consumer, calculateCompliantUntil);
+        CachedStatus cached = cache.getIfPresent(key);
+        if (cached == null) {
+            MISSES.inc();
+            return null;
+        }
+        if (!cached.isValid(inputHash, rulesVersion, onDate)) {
+            STALE.inc();
+            MISSES.inc();
+            cache.invalidate(key);
+            return null;
+        }
+
+        HITS.inc();
+        log.debug("Using cached compliance status for consumer {}", consumer.getUuid());
+        return copy(cached.status, onDate, consumer.getEntitlements());
+    }
+
+    /**
+     * Caches a freshly calculated status for the consumer.
+     *
+     * @param consumer the consumer
+     * @param inputHash the input hash the status was calculated from
+     * @param rulesVersion version of the rules the status was calculated with
+     * @param onDate date the status was calculated for
+     * @param calculateCompliantUntil whether compliantUntil was calculated
+     * @param status the calculated status
+     */
+    public void put(Consumer consumer, String inputHash, String rulesVersion, Date onDate,
+        boolean calculateCompliantUntil, ComplianceStatus status) {
+        if (!enabled || consumer.getId() == null) {
+            return;
+        }
+
+        Date validUntil = getNextChange(consumer.getEntitlements(), status.getCompliantUntil(), onDate);
+        cache.put(key(consumer, calculateCompliantUntil), new CachedStatus(inputHash, rulesVersion,
+            validUntil, copy(status, status.getDate(), null)));
+    }
+
+    /**
+     * Drops any status cached for the consumer.
+     *
+     * @param consumer the consumer
+     */
+    public void invalidate(Consumer consumer) {
+        if (consumer.getId() != null) {
+            cache.invalidate(key(consumer, true));
+            cache.invalidate(key(consumer, false));
+        }
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private String key(Consumer consumer, boolean calculateCompliantUntil) {
+        return consumer.getId() + (calculateCompliantUntil ? ":until" : ":status");
+    }
+
+    /*
+     * The earliest date after onDate at which the status may change without any of
+     * its inputs changing.
+     */
+    static Date getNextChange(Collection<Entitlement> entitlements, Date compliantUntil, Date onDate) {
+        Date next = compliantUntil != null && compliantUntil.after(onDate) ? compliantUntil : null;
+        for (Entitlement ent : entitlements) {
+            next = earliestAfter(next, ent.getStartDate(), onDate);
+            next = earliestAfter(next, ent.getEndDate(), onDate);
+        }
+        return next;
+    }
+
+    private static Date earliestAfter(Date current, Date candidate, Date onDate) {
+        if (candidate == null || !candidate.after(onDate)) {
+            return current;
+        }
+        return current == null || candidate.before(current) ? candidate : current;
+    }
+
+    /*
+     * Statuses are copied on the way in and out, as ComplianceRules sets reason
+     * messages on the status it hands out. Entitlements are swapped for the
+     * consumer's current instances where possible, so cached entries never leak
+     * entities from an earlier session.
+     */
+    static ComplianceStatus copy(ComplianceStatus status, Date date, Collection<Entitlement> current) {
+        Map<String, Entitlement> entsById = new HashMap<String, Entitlement>();
+        if (current != null) {
+            for (Entitlement ent : current) {
+                entsById.put(ent.getId(), ent);
+            }
+        }
+
+        ComplianceStatus copy = new ComplianceStatus(date);
+        copy.setCompliantUntil(status.getCompliantUntil());
+        for (String productId : status.getNonCompliantProducts()) {
+            copy.addNonCompliantProduct(productId);
+        }
+        for (Map.Entry<String, Set<Entitlement>> entry : status.getCompliantProducts().entrySet()) {
+            for (Entitlement ent : entry.getValue()) {
+                copy.addCompliantProduct(entry.getKey(), lookup(entsById, ent));
+            }
+        }
+        for (Map.Entry<String, Set<Entitlement>> entry :
+            status.getPartiallyCompliantProducts().entrySet()) {
+            for (Entitlement ent : entry.getValue()) {
+                copy.addPartiallyCompliantProduct(entry.getKey(), lookup(entsById, ent));
+            }
+        }
+        for (Map.Entry<String, Set<Entitlement>> entry : status.getPartialStacks().entrySet()) {
+            for (Entitlement ent : entry.getValue()) {
+                copy.addPartialStack(entry.getKey(), lookup(entsById, ent));
+            }
+        }
+
+        Set<ComplianceReason> reasons = new HashSet<ComplianceReason>();
+        for (ComplianceReason reason : status.getReasons()) {
+            ComplianceReason reasonCopy = new ComplianceReason();
+            reasonCopy.setKey(reason.getKey());
+            reasonCopy.setMessage(reason.getMessage());
+            reasonCopy.setAttributes(new HashMap<String, String>(reason.getAttributes()));
+            reasons.add(reasonCopy);
+        }
+        copy.setReasons(reasons);
+        return copy;
+    }
+
+    private static Entitlement lookup(Map<String, Entitlement> entsById, Entitlement ent) {
+        Entitlement current = entsById.get(ent.getId());
+        return current != null ? current : ent;
+    }
+}
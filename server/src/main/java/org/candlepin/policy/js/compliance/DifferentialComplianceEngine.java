@@ -0,0 +1,179 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.compliance;
+
+import org.candlepin.model.Consumer;
+import org.candlepin.model.Entitlement;
+import org.candlepin.util.Metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * DifferentialComplianceEngine
+ *
+ * Runs a trusted engine and a candidate engine side by side, logging every
+ * difference between their results. The trusted engine's result is always the
+ * one returned, so this can safely be enabled in production to validate the
+ * native compliance engine against the javascript rules.
+ */
+public class DifferentialComplianceEngine implements ComplianceEngine {
+    private static Logger log = LoggerFactory.getLogger(DifferentialComplianceEngine.class);
+
+    private static final Metrics.Counter CHECKS = Metrics.counter("compliance.differential.checks");
+    private static final Metrics.Counter MISMATCHES = Metrics.counter("compliance.differential.mismatches");
+    private static final Metrics.Counter FAILURES = Metrics.counter("compliance.differential.failures");
+    private static final Metrics.Timer TRUSTED_TIME = Metrics.timer("compliance.differential.trusted");
+    private static final Metrics.Timer CANDIDATE_TIME = Metrics.timer("compliance.differential.candidate");
+
+    private ComplianceEngine trusted;
+    private ComplianceEngine candidate;
+
+    public DifferentialComplianceEngine(ComplianceEngine trusted, ComplianceEngine candidate) {
+        this.trusted = trusted;
+        this.candidate = candidate;
+    }
+
+    @Override
+    public ComplianceStatus getStatus(Consumer consumer, Collection<Entitlement> entitlements,
+        Date onDate, boolean calculateCompliantUntil) {
+        long start = System.nanoTime();
+        ComplianceStatus expected = trusted.getStatus(consumer, entitlements, onDate,
+            calculateCompliantUntil);
+        TRUSTED_TIME.updateSince(start);
+
+        start = System.nanoTime();
+        try {
+            ComplianceStatus actual = candidate.getStatus(consumer, entitlements, onDate,
+                calculateCompliantUntil);
+            CANDIDATE_TIME.updateSince(start);
+            CHECKS.inc();
+
+            List<String> differences = compare(expected, actual);
+            if (!differences.isEmpty()) {
+                MISMATCHES.inc();
+                log.warn("Compliance engines disagree for consumer {} on {}: {}",
+                    consumer.getUuid(), onDate, differences);
+            }
+        }
+        catch (RuntimeException e) {
+            FAILURES.inc();
+            log.warn("Candidate compliance engine failed for consumer " + consumer.getUuid(), e);
+        }
+        return expected;
+    }
+
+    @Override
+    public boolean isStackCompliant(Consumer consumer, String stackId,
+        Collection<Entitlement> entitlements) {
+        boolean expected = trusted.isStackCompliant(consumer, stackId, entitlements);
+        try {
+            CHECKS.inc();
+            if (expected != candidate.isStackCompliant(consumer, stackId, entitlements)) {
+                MISMATCHES.inc();
+                log.warn("Compliance engines disagree on stack {} for consumer {}: expected {}",
+                    stackId, consumer.getUuid(), expected);
+            }
+        }
+        catch (RuntimeException e) {
+            FAILURES.inc();
+            log.warn("Candidate compliance engine failed for consumer " + consumer.getUuid(), e);
+        }
+        return expected;
+    }
+
+    @Override
+    public boolean isEntitlementCompliant(Consumer consumer, Entitlement entitlement,
+        Collection<Entitlement> entitlements) {
+        boolean expected = trusted.isEntitlementCompliant(consumer, entitlement, entitlements);
+        try {
+            CHECKS.inc();
+            if (expected != candidate.isEntitlementCompliant(consumer, entitlement, entitlements)) {
+                MISMATCHES.inc();
+                log.warn("Compliance engines disagree on entitlement {} for consumer {}: expected {}",
+                    entitlement.getId(), consumer.getUuid(), expected);
+            }
+        }
+        catch (RuntimeException e) {
+            FAILURES.inc();
+            log.warn("Candidate compliance engine failed for consumer " + consumer.getUuid(), e);
+        }
+        return expected;
+    }
+
+    /**
+     * Compares two statuses, returning a description of every difference found.
+     * Entitlements are compared by ID and reasons by key and attributes, as the
+     * javascript engine hands back deserialized copies rather than the entities.
+     *
+     * @param expected the trusted status
+     * @param actual the candidate status
+     * @return the list of differences, empty if the statuses match
+     */
+    static List<String> compare(ComplianceStatus expected, ComplianceStatus actual) {
+        List<String> differences = new ArrayList<String>();
+        compare(differences, "status", expected.getStatus(), actual.getStatus());
+        compare(differences, "compliantUntil", expected.getCompliantUntil(), actual.getCompliantUntil());
+        compare(differences, "nonCompliantProducts",
+            new TreeSet<String>(expected.getNonCompliantProducts()),
+            new TreeSet<String>(actual.getNonCompliantProducts()));
+        compare(differences, "compliantProducts", entitlementIds(expected.getCompliantProducts()),
+            entitlementIds(actual.getCompliantProducts()));
+        compare(differences, "partiallyCompliantProducts",
+            entitlementIds(expected.getPartiallyCompliantProducts()),
+            entitlementIds(actual.getPartiallyCompliantProducts()));
+        compare(differences, "partialStacks", entitlementIds(expected.getPartialStacks()),
+            entitlementIds(actual.getPartialStacks()));
+        compare(differences, "reasons", reasons(expected.getReasons()), reasons(actual.getReasons()));
+        return differences;
+    }
+
+    private static void compare(List<String> differences, String field, Object expected, Object actual) {
+        if (expected == null ? actual != null : !expected.equals(actual)) {
+            differences.add(field + ": expected " + expected + " but was " + actual);
+        }
+    }
+
+    private static Map<String, TreeSet<String>> entitlementIds(
+        Map<String, ? extends Collection<Entitlement>> map) {
+        Map<String, TreeSet<String>> ids = new TreeMap<String, TreeSet<String>>();
+        for (Map.Entry<String, ? extends Collection<Entitlement>> entry : map.entrySet()) {
+            TreeSet<String> entIds = new TreeSet<String>();
+            for (Entitlement ent : entry.getValue()) {
+                entIds.add(String.valueOf(ent.getId()));
+            }
+            ids.put(entry.getKey(), entIds);
+        }
+        return ids;
+    }
+
+    private static List<String> reasons(Collection<ComplianceReason> reasons) {
+        List<String> result = new ArrayList<String>();
+        for (ComplianceReason reason : reasons) {
+            result.add(reason.getKey() + new TreeMap<String, String>(reason.getAttributes()));
+        }
+        Collections.sort(result);
+        return result;
+    }
+}
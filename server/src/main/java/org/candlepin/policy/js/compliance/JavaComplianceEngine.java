@@ -0,0 +1,693 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.compliance;
+
+import static org.candlepin.policy.js.RulesUtil.architectureMatches;
+import static org.candlepin.policy.js.RulesUtil.getAttribute;
+import static org.candlepin.policy.js.RulesUtil.getProductAttribute;
+import static org.candlepin.policy.js.RulesUtil.isGuest;
+import static org.candlepin.policy.js.RulesUtil.parseInt;
+
+import org.candlepin.model.Attribute;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerInstalledProduct;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.GuestId;
+import org.candlepin.model.Pool;
+import org.candlepin.model.Product;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * JavaComplianceEngine
+ *
+ * A native implementation of the compliance namespace of rules.js (get_status,
+ * is_stack_compliant and is_ent_compliant). It mirrors the javascript
+ * step by step, including its number handling, so that both engines produce the
+ * same statuses; the differential engine can be used to verify this against
+ * production data.
+ *
+ * Unlike the javascript engine this works directly on the entities, avoiding
+ * serializing the consumer and all of its entitlements to JSON and back.
+ */
+public class JavaComplianceEngine implements ComplianceEngine {
+    private static Logger log = LoggerFactory.getLogger(JavaComplianceEngine.class);
+
+    static final String SOCKET_FACT = "cpu.cpu_socket(s)";
+    static final String RAM_FACT = "memory.memtotal";
+    static final String CORES_FACT = "cpu.core(s)_per_socket";
+    static final String ARCH_FACT = "uname.machine";
+    static final String STORAGE_BAND_USAGE = "band.storage.usage";
+
+    static final String SOCKETS_ATTRIBUTE = "sockets";
+    static final String CORES_ATTRIBUTE = "cores";
+    static final String ARCH_ATTRIBUTE = "arch";
+    static final String RAM_ATTRIBUTE = "ram";
+    static final String VCPU_ATTRIBUTE = "vcpu";
+    static final String GUEST_LIMIT_ATTRIBUTE = "guest_limit";
+    static final String STORAGE_BAND_ATTRIBUTE = "storage_band";
+    static final String INSTANCE_ATTRIBUTE = "instance_multiplier";
+    static final String REQUIRES_HOST_ATTRIBUTE = "requires_host";
+    static final String UNMAPPED_GUESTS_ONLY = "unmapped_guests_only";
+    static final String STACKING_ID_ATTRIBUTE = "stacking_id";
+
+    private static final String STACK = "STACK";
+    private static final String ENTITLEMENT = "ENTITLEMENT";
+
+    private static final Map<String, String> ATTRIBUTES_TO_CONSUMER_FACTS = new HashMap<String, String>();
+    static {
+        ATTRIBUTES_TO_CONSUMER_FACTS.put(SOCKETS_ATTRIBUTE, SOCKET_FACT);
+        ATTRIBUTES_TO_CONSUMER_FACTS.put(CORES_ATTRIBUTE, CORES_FACT);
+        ATTRIBUTES_TO_CONSUMER_FACTS.put(ARCH_ATTRIBUTE, ARCH_FACT);
+        ATTRIBUTES_TO_CONSUMER_FACTS.put(RAM_ATTRIBUTE, RAM_FACT);
+        ATTRIBUTES_TO_CONSUMER_FACTS.put(VCPU_ATTRIBUTE, CORES_FACT);
+        ATTRIBUTES_TO_CONSUMER_FACTS.put(STORAGE_BAND_ATTRIBUTE, STORAGE_BAND_USAGE);
+    }
+
+    private static final List<String> PHYSICAL_ATTRIBUTES = Arrays.asList(SOCKETS_ATTRIBUTE,
+        CORES_ATTRIBUTE, RAM_ATTRIBUTE, ARCH_ATTRIBUTE, GUEST_LIMIT_ATTRIBUTE, STORAGE_BAND_ATTRIBUTE);
+
+    private static final List<String> VIRT_ATTRIBUTES = Arrays.asList(VCPU_ATTRIBUTE,
+        RAM_ATTRIBUTE, ARCH_ATTRIBUTE, GUEST_LIMIT_ATTRIBUTE, STORAGE_BAND_ATTRIBUTE);
+
+    private static final List<String> UNCHECKED_WHEN_HOST_RESTRICTED = Arrays.asList(RAM_ATTRIBUTE,
+        VCPU_ATTRIBUTE);
+
+    private static final Pattern JS_NUMBER =
+        Pattern.compile("^[+-]?(\\d+\\.?\\d*([eE][+-]?\\d+)?|\\.\\d+([eE][+-]?\\d+)?)$");
+
+    @Override
+    public ComplianceStatus getStatus(Consumer consumer, Collection<Entitlement> entitlements,
+        Date onDate, boolean calculateCompliantUntil) {
+
+        StatusResult result = getStatusOnDate(consumer, entitlements, onDate);
+        Date compliantUntil = null;
+        if (result.isCompliant() && calculateCompliantUntil && !entitlements.isEmpty()) {
+            compliantUntil = determineCompliantUntilDate(consumer, entitlements, onDate);
+        }
+        result.status.setCompliantUntil(compliantUntil);
+        return result.status;
+    }
+
+    @Override
+    public boolean isStackCompliant(Consumer consumer, String stackId,
+        Collection<Entitlement> entitlements) {
+        return getStackCoverage(consumer, stackId, entitlements).covered;
+    }
+
+    @Override
+    public boolean isEntitlementCompliant(Consumer consumer, Entitlement entitlement,
+        Collection<Entitlement> entitlements) {
+        return getEntitlementCoverage(consumer, entitlement, entitlements).covered;
+    }
+
+    /**
+     * Wraps a status along with the javascript notion of compliance, which is based
+     * on products rather than on reasons.
+     */
+    private static class StatusResult {
+        private final ComplianceStatus status;
+
+        StatusResult(ComplianceStatus status) {
+            this.status = status;
+        }
+
+        boolean isCompliant() {
+            return status.getNonCompliantProducts().isEmpty() &&
+                status.getPartiallyCompliantProducts().isEmpty();
+        }
+    }
+
+    private StatusResult getStatusOnDate(Consumer consumer, Collection<Entitlement> entitlements,
+        Date onDate) {
+        ComplianceStatus status = new ComplianceStatus(onDate);
+        List<ComplianceReason> reasons = new ArrayList<ComplianceReason>();
+
+        Set<String> compliantStackIds = new HashSet<String>();
+        Set<String> nonCompliantStackIds = new HashSet<String>();
+
+        log.debug("Checking compliance status for consumer: {} on date: {}", consumer.getUuid(), onDate);
+
+        List<Entitlement> entitlementsOnDate = filterEntitlementsByDate(entitlements, onDate);
+        for (Entitlement ent : entitlementsOnDate) {
+            List<String> relevantPids = findRelevantPids(ent, consumer);
+            boolean partiallyStacked = false;
+            boolean entIsStacked = isStacked(ent.getPool());
+
+            if (entIsStacked) {
+                String stackId = getProductAttribute(ent.getPool(), STACKING_ID_ATTRIBUTE);
+
+                if (nonCompliantStackIds.contains(stackId)) {
+                    partiallyStacked = true;
+                    status.addPartialStack(stackId, ent);
+                }
+                else if (!compliantStackIds.contains(stackId)) {
+                    Coverage stackCoverage = getStackCoverage(consumer, stackId, entitlementsOnDate);
+                    if (!stackCoverage.covered) {
+                        partiallyStacked = true;
+                        status.addPartialStack(stackId, ent);
+                        nonCompliantStackIds.add(stackId);
+                        reasons.addAll(stackCoverage.reasons);
+                    }
+                    else {
+                        compliantStackIds.add(stackId);
+                    }
+                }
+            }
+
+            // If we have no installed products and the entitlement
+            // is partially covered, we want the system to be partial.
+            if (relevantPids.isEmpty() && !entIsStacked) {
+                Coverage entCoverage = getEntitlementCoverage(consumer, ent, entitlementsOnDate);
+                if (!entCoverage.covered) {
+                    reasons.addAll(entCoverage.reasons);
+                }
+            }
+
+            // If the consumer has an entitlement from a pool marked
+            // unmapped_guests_only it can only hope to be yellow
+            if ("true".equalsIgnoreCase(getAttribute(ent.getPool(), UNMAPPED_GUESTS_ONLY))) {
+                reasons.add(buildUnmappedEntitlementReason(ent.getId()));
+            }
+
+            Coverage entCoverage = null;
+            for (String pid : relevantPids) {
+                if (partiallyStacked) {
+                    status.addPartiallyCompliantProduct(pid, ent);
+                    continue;
+                }
+
+                // Coverage does not depend on the product, so only calculate it once.
+                // Reasons are still added once per product, as the rules do.
+                if (entCoverage == null) {
+                    entCoverage = getEntitlementCoverage(consumer, ent, entitlementsOnDate);
+                }
+
+                if (!entCoverage.covered && !entIsStacked) {
+                    status.addPartiallyCompliantProduct(pid, ent);
+                    reasons.addAll(copyReasons(entCoverage.reasons));
+                }
+                else {
+                    status.addCompliantProduct(pid, ent);
+                }
+            }
+        }
+
+        // A product provided by a regular entitlement is not partially compliant, even
+        // if a partial stack also provides it. The stack stays in the partial stacks.
+        status.getPartiallyCompliantProducts().keySet().removeAll(status.getCompliantProducts().keySet());
+
+        if (consumer.getInstalledProducts() != null) {
+            for (ConsumerInstalledProduct installed : consumer.getInstalledProducts()) {
+                String pid = installed.getProductId();
+                if (!status.getCompliantProducts().containsKey(pid) &&
+                    !status.getPartiallyCompliantProducts().containsKey(pid)) {
+                    status.addNonCompliantProduct(pid);
+                    reasons.add(buildInstalledProductReason(pid));
+                }
+            }
+        }
+
+        status.getReasons().addAll(reasons);
+        return new StatusResult(status);
+    }
+
+    private Date determineCompliantUntilDate(Consumer consumer, Collection<Entitlement> entitlements,
+        Date startDate) {
+        if (consumer.getInstalledProducts() == null || consumer.getInstalledProducts().isEmpty()) {
+            return null;
+        }
+
+        List<Date> dates = new ArrayList<Date>();
+        for (Entitlement ent : entitlements) {
+            for (ConsumerInstalledProduct installed : consumer.getInstalledProducts()) {
+                if (provides(ent.getPool(), installed.getProductId())) {
+                    dates.add(ent.getEndDate());
+                    break;
+                }
+            }
+        }
+        Collections.sort(dates);
+
+        long lastDate = startDate.getTime();
+        for (Date endDate : dates) {
+            // Ignore past dates and duplicates
+            if (endDate.getTime() <= lastDate) {
+                continue;
+            }
+
+            // Need to check if we are still compliant after the end date,
+            // so we add one second.
+            Date dateToCheck = new Date(endDate.getTime() + 1000);
+            lastDate = dateToCheck.getTime();
+
+            if (!getStatusOnDate(consumer, entitlements, dateToCheck).isCompliant()) {
+                return dateToCheck;
+            }
+        }
+        return null;
+    }
+
+    private List<Entitlement> filterEntitlementsByDate(Collection<Entitlement> entitlements, Date date) {
+        List<Entitlement> filtered = new ArrayList<Entitlement>();
+        for (Entitlement ent : entitlements) {
+            if (!ent.getStartDate().after(date) && !ent.getEndDate().before(date)) {
+                filtered.add(ent);
+            }
+        }
+        return filtered;
+    }
+
+    private List<String> findRelevantPids(Entitlement ent, Consumer consumer) {
+        List<String> pids = new ArrayList<String>();
+        if (consumer.getInstalledProducts() == null) {
+            return pids;
+        }
+
+        for (ConsumerInstalledProduct installed : consumer.getInstalledProducts()) {
+            if (provides(ent.getPool(), installed.getProductId())) {
+                pids.add(installed.getProductId());
+            }
+        }
+        return pids;
+    }
+
+    private Coverage getStackCoverage(Consumer consumer, String stackId,
+        Collection<Entitlement> entitlements) {
+        log.debug("Checking stack compliance for: {}", stackId);
+        ComplianceTracker tracker = new ComplianceTracker(consumer, stackId);
+        for (Entitlement ent : entitlements) {
+            if (isStacked(ent.getPool()) &&
+                jsEquals(getProductAttribute(ent.getPool(), STACKING_ID_ATTRIBUTE), stackId)) {
+                tracker.updateAccumulatedFromEnt(ent);
+            }
+        }
+        return getCoverage(tracker, consumer, entitlements);
+    }
+
+    private Coverage getEntitlementCoverage(Consumer consumer, Entitlement ent,
+        Collection<Entitlement> entitlements) {
+        ComplianceTracker tracker = new ComplianceTracker(consumer, null);
+        tracker.updateAccumulatedFromEnt(ent);
+        return getCoverage(tracker, consumer, entitlements);
+    }
+
+    /*
+     * CoverageCalculator.getStackCoverage
+     */
+    private Coverage getCoverage(ComplianceTracker tracker, Consumer consumer,
+        Collection<Entitlement> entitlements) {
+        List<String> attributes = getComplianceAttributes(consumer);
+
+        // Global attributes are accumulated over every entitlement on the system
+        if (tracker.enforces(GUEST_LIMIT_ATTRIBUTE) && attributes.contains(GUEST_LIMIT_ATTRIBUTE)) {
+            tracker.accumulated.put(GUEST_LIMIT_ATTRIBUTE, getGlobalGuestLimit(entitlements));
+        }
+
+        int coverageCount = 0;
+        Coverage coverage = new Coverage();
+        for (String attr : attributes) {
+            if (!tracker.enforces(attr)) {
+                coverageCount++;
+                continue;
+            }
+
+            ComplianceReason reason;
+            if (ARCH_ATTRIBUTE.equals(attr)) {
+                reason = checkArch(tracker, consumer);
+            }
+            else if (GUEST_LIMIT_ATTRIBUTE.equals(attr)) {
+                reason = checkGuestLimit(tracker, consumer);
+            }
+            else {
+                reason = checkQuantity(tracker, attr, consumer);
+            }
+
+            if (reason == null) {
+                coverageCount++;
+            }
+            else {
+                coverage.reasons.add(reason);
+            }
+        }
+
+        coverage.covered = coverageCount == attributes.size();
+        return coverage;
+    }
+
+    private ComplianceReason checkArch(ComplianceTracker tracker, Consumer consumer) {
+        @SuppressWarnings("unchecked")
+        List<String> supportedArchs = (List<String>) tracker.accumulated.get(ARCH_ATTRIBUTE);
+        String consumerArch = consumer.getFacts() != null ? consumer.getFacts().get(ARCH_FACT) : null;
+        String typeLabel = consumer.getType() != null ? consumer.getType().getLabel() : null;
+
+        if (supportedArchs != null) {
+            for (String archString : supportedArchs) {
+                if (!architectureMatches(archString, consumerArch, typeLabel)) {
+                    return buildReason(ARCH_ATTRIBUTE, tracker, consumerArch, archString);
+                }
+            }
+        }
+        return null;
+    }
+
+    private ComplianceReason checkGuestLimit(ComplianceTracker tracker, Consumer consumer) {
+        double consumerQuantity = getActiveGuestCount(consumer);
+        Object sourceValue = tracker.accumulated.get(GUEST_LIMIT_ATTRIBUTE);
+
+        boolean covered = (sourceValue != null && toNumber(sourceValue) == -1) ||
+            parseInt(sourceValue) >= consumerQuantity;
+        return covered ? null :
+            buildReason(GUEST_LIMIT_ATTRIBUTE, tracker, consumerQuantity, sourceValue);
+    }
+
+    private ComplianceReason checkQuantity(ComplianceTracker tracker, String attr, Consumer consumer) {
+        Object consumerQuantity = getFact(attr, consumer);
+        Object sourceValue = tracker.accumulated.get(attr);
+
+        boolean covered = parseInt(sourceValue) >= toNumber(consumerQuantity);
+        return covered ? null : buildReason(attr, tracker, consumerQuantity, sourceValue);
+    }
+
+    /*
+     * FactValueCalculator.getFact, returns either the raw fact string or a number.
+     */
+    private Object getFact(String attr, Consumer consumer) {
+        if (RAM_ATTRIBUTE.equals(attr)) {
+            double ramGb = parseInt(getRawFact(attr, consumer)) / 1024 / 1024;
+            return Double.isNaN(ramGb) ? ramGb : Math.floor(ramGb + 0.5);
+        }
+        else if (CORES_ATTRIBUTE.equals(attr)) {
+            Object sockets = getFact(SOCKETS_ATTRIBUTE, consumer);
+            return toNumber(getRawFact(attr, consumer)) * toNumber(sockets);
+        }
+        else if (VCPU_ATTRIBUTE.equals(attr)) {
+            return getFact(CORES_ATTRIBUTE, consumer);
+        }
+        else if (GUEST_LIMIT_ATTRIBUTE.equals(attr)) {
+            return getActiveGuestCount(consumer);
+        }
+        return getRawFact(attr, consumer);
+    }
+
+    private Object getRawFact(String attr, Consumer consumer) {
+        String value = consumer.getFacts() != null ?
+            consumer.getFacts().get(ATTRIBUTES_TO_CONSUMER_FACTS.get(attr)) : null;
+        return value == null || value.isEmpty() ? (Object) 1.0 : value;
+    }
+
+    private double getActiveGuestCount(Consumer consumer) {
+        if (consumer.getGuestIds() == null) {
+            return 0;
+        }
+
+        int active = 0;
+        for (GuestId guest : consumer.getGuestIds()) {
+            Map<String, String> attrs = guest.getAttributes();
+            if (attrs != null && "libvirt".equals(attrs.get("virtWhoType")) &&
+                attrs.containsKey("active") && "1".equals(attrs.get("active"))) {
+                active++;
+            }
+        }
+        return active;
+    }
+
+    /*
+     * GlobalAttributeCalculator guest_limit: the largest limit of any entitlement, with
+     * -1 (unlimited) winning outright. Null if no entitlement carries the attribute.
+     */
+    private Double getGlobalGuestLimit(Collection<Entitlement> entitlements) {
+        Double total = null;
+        for (Entitlement ent : entitlements) {
+            String value = getProductAttribute(ent.getPool(), GUEST_LIMIT_ATTRIBUTE);
+            if (value != null) {
+                if (total == null) {
+                    total = 0.0;
+                }
+                double poolValue = parseInt(value);
+                if (poolValue == -1) {
+                    return poolValue;
+                }
+                if (poolValue > total) {
+                    total = poolValue;
+                }
+            }
+        }
+        return total;
+    }
+
+    private List<String> getComplianceAttributes(Consumer consumer) {
+        return isGuest(consumer) ? VIRT_ATTRIBUTES : PHYSICAL_ATTRIBUTES;
+    }
+
+    private boolean provides(Pool pool, String productId) {
+        if (jsEquals(pool.getProductId(), productId)) {
+            return true;
+        }
+        for (Product provided : pool.getProvidedProducts()) {
+            if (jsEquals(provided.getId(), productId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * A pool is stacked if its product carries a stacking_id attribute with any value.
+     */
+    static boolean isStacked(Pool pool) {
+        for (Attribute attr : pool.getProductAttributes()) {
+            if (STACKING_ID_ATTRIBUTE.equals(attr.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ComplianceReason buildReason(String attr, ComplianceTracker tracker, Object has,
+        Object covered) {
+        ComplianceReason reason = new ComplianceReason();
+        String key = attr.toUpperCase(Locale.ENGLISH);
+        reason.setKey(key);
+        reason.setMessage(key);
+        reason.getAttributes().put(ComplianceReason.Attributes.PRESENT, toJsonString(has));
+        reason.getAttributes().put(ComplianceReason.Attributes.COVERED, toJsonString(covered));
+        reason.getAttributes().put(STACK.equals(tracker.type) ?
+            ComplianceReason.Attributes.STACKING_ID : ComplianceReason.Attributes.ENTITLEMENT_ID,
+            tracker.id);
+        return reason;
+    }
+
+    private ComplianceReason buildInstalledProductReason(String pid) {
+        ComplianceReason reason = new ComplianceReason();
+        reason.setKey(ComplianceReason.ReasonKeys.NOT_COVERED);
+        reason.setMessage(ComplianceReason.ReasonKeys.NOT_COVERED);
+        reason.getAttributes().put(ComplianceReason.Attributes.PRODUCT_ID, pid);
+        return reason;
+    }
+
+    private ComplianceReason buildUnmappedEntitlementReason(String entId) {
+        ComplianceReason reason = new ComplianceReason();
+        reason.setKey(ComplianceReason.ReasonKeys.UNMAPPED_GUEST);
+        reason.setMessage(ComplianceReason.ReasonKeys.UNMAPPED_GUEST);
+        reason.getAttributes().put(ComplianceReason.Attributes.ENTITLEMENT_ID, entId);
+        return reason;
+    }
+
+    private List<ComplianceReason> copyReasons(List<ComplianceReason> reasons) {
+        List<ComplianceReason> copies = new ArrayList<ComplianceReason>(reasons.size());
+        for (ComplianceReason reason : reasons) {
+            ComplianceReason copy = new ComplianceReason();
+            copy.setKey(reason.getKey());
+            copy.setMessage(reason.getMessage());
+            copy.setAttributes(new HashMap<String, String>(reason.getAttributes()));
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    /**
+     * Coverage of a consumer by a single entitlement or a stack.
+     */
+    private static class Coverage {
+        private boolean covered;
+        private List<ComplianceReason> reasons = new ArrayList<ComplianceReason>();
+    }
+
+    /**
+     * Tracks the values accumulated by an entitlement or a stack of entitlements.
+     * Numeric values are kept as doubles to follow javascript arithmetic, arch
+     * values as the list of supported arch strings of each entitlement.
+     */
+    private static class ComplianceTracker {
+        private final Consumer consumer;
+        private final String type;
+        private String id;
+        private boolean hostRestricted = false;
+        private final Map<String, Object> accumulated = new HashMap<String, Object>();
+        private final Set<String> entitlementIds = new LinkedHashSet<String>();
+
+        ComplianceTracker(Consumer consumer, String stackId) {
+            this.consumer = consumer;
+            this.id = stackId;
+            this.type = stackId == null ? ENTITLEMENT : STACK;
+        }
+
+        boolean enforces(String attr) {
+            // Guests are not subjected to Sockets/RAM/Cores/Vcpus limitations if
+            // using a host-restricted sub-pool.
+            if (hostRestricted && isGuest(consumer) && UNCHECKED_WHEN_HOST_RESTRICTED.contains(attr)) {
+                return false;
+            }
+            return accumulated.containsKey(attr);
+        }
+
+        void updateAccumulatedFromEnt(Entitlement ent) {
+            if (ENTITLEMENT.equals(type) && entitlementIds.isEmpty()) {
+                this.id = ent.getId();
+            }
+            entitlementIds.add(ent.getId());
+
+            // If quantity is > 1 but the entitlement is not stacked
+            // only calculate compliance for quantity 1
+            int quantity = ent.getQuantity() == null ? 0 : ent.getQuantity();
+            if (!isStacked(ent.getPool()) && quantity > 1) {
+                quantity = 1;
+            }
+            updateAccumulatedFromPool(ent.getPool(), quantity);
+        }
+
+        void updateAccumulatedFromPool(Pool pool, int quantity) {
+            String requiresHost = getAttribute(pool, REQUIRES_HOST_ATTRIBUTE);
+            if (requiresHost != null && !requiresHost.isEmpty()) {
+                hostRestricted = true;
+            }
+
+            List<String> attributes = isGuest(consumer) ? VIRT_ATTRIBUTES : PHYSICAL_ATTRIBUTES;
+            for (String attr : attributes) {
+                String poolValue = getProductAttribute(pool, attr);
+                if (poolValue == null) {
+                    continue;
+                }
+
+                Object stackValue = enforces(attr) ? accumulated.get(attr) : null;
+                accumulated.put(attr, accumulate(attr, stackValue, poolValue, pool, quantity));
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private Object accumulate(String attr, Object stackValue, String poolValue, Pool pool,
+            int quantity) {
+            if (ARCH_ATTRIBUTE.equals(attr)) {
+                List<String> archs = stackValue instanceof List ?
+                    (List<String>) stackValue : new ArrayList<String>();
+                archs.add(poolValue);
+                return archs;
+            }
+            else if (GUEST_LIMIT_ATTRIBUTE.equals(attr)) {
+                // Value doesn't matter, just need it to be enforced
+                return -1.0;
+            }
+            else if (SOCKETS_ATTRIBUTE.equals(attr)) {
+                double increment = parseInt(getProductAttribute(pool, INSTANCE_ATTRIBUTE));
+                if (Double.isNaN(increment) || increment == 0) {
+                    increment = 1;
+                }
+                // use lowest quantity evenly divisible by the instance multiplier
+                double adjustedQuantity = quantity - (quantity % increment);
+                return toInt32(stackValue) + ((parseInt(poolValue) * adjustedQuantity) / increment);
+            }
+            return toInt32(stackValue) + (parseInt(poolValue) * quantity);
+        }
+    }
+
+    /*
+     * Javascript "value | 0"
+     */
+    static double toInt32(Object value) {
+        double number = toNumber(value);
+        if (Double.isNaN(number) || Double.isInfinite(number)) {
+            return 0;
+        }
+        return (int) (long) number;
+    }
+
+    /*
+     * Javascript Number(value)
+     */
+    static double toNumber(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+
+        String str = value.toString().trim();
+        if (str.isEmpty()) {
+            return 0;
+        }
+        if (JS_NUMBER.matcher(str).matches()) {
+            return Double.parseDouble(str);
+        }
+        return Double.NaN;
+    }
+
+    /*
+     * Javascript ==, for the string/null comparisons done by the rules.
+     */
+    private static boolean jsEquals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /*
+     * The string a value ends up as once serialized by JSON.stringify and read back
+     * into the reason attributes.
+     */
+    static String toJsonString(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof List) {
+            return value.toString();
+        }
+        if (value instanceof Number) {
+            double number = ((Number) value).doubleValue();
+            if (Double.isNaN(number) || Double.isInfinite(number)) {
+                return null;
+            }
+            if (number == Math.rint(number) && Math.abs(number) < 1e15) {
+                return Long.toString((long) number);
+            }
+            return Double.toString(number);
+        }
+        return value.toString();
+    }
+}
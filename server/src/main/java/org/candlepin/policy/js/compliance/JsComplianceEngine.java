@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.compliance;
+
+import org.candlepin.model.Consumer;
+import org.candlepin.model.Entitlement;
+import org.candlepin.policy.js.JsRunner;
+import org.candlepin.policy.js.JsonJsContext;
+import org.candlepin.policy.js.RuleExecutionException;
+import org.candlepin.policy.js.RulesObjectMapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Date;
+
+/**
+ * JsComplianceEngine
+ *
+ * Evaluates compliance by running the compliance namespace of the javascript rules.
+ */
+public class JsComplianceEngine implements ComplianceEngine {
+    private static Logger log = LoggerFactory.getLogger(ComplianceRules.class);
+
+    private JsRunner jsRules;
+    private RulesObjectMapper mapper;
+
+    public JsComplianceEngine(JsRunner jsRules, RulesObjectMapper mapper) {
+        this.jsRules = jsRules;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public ComplianceStatus getStatus(Consumer consumer, Collection<Entitlement> entitlements,
+        Date onDate, boolean calculateCompliantUntil) {
+        return getStatus(createStatusContext(mapper, consumer, entitlements, onDate,
+            calculateCompliantUntil));
+    }
+
+    /**
+     * Builds the get_status arguments for a consumer.
+     *
+     * @return the context to pass to {@link #getStatus(JsonJsContext)}
+     */
+    public static JsonJsContext createStatusContext(RulesObjectMapper mapper, Consumer consumer,
+        Collection<Entitlement> entitlements, Date onDate, boolean calculateCompliantUntil) {
+        JsonJsContext args = new JsonJsContext(mapper);
+        args.put("consumer", consumer);
+        args.put("entitlements", entitlements);
+        args.put("ondate", onDate);
+        args.put("calculateCompliantUntil", calculateCompliantUntil);
+        args.put("log", log, false);
+        return args;
+    }
+
+    /**
+     * Runs get_status with arguments built by
+     * {@link #createStatusContext(RulesObjectMapper, Consumer, Collection, Date, boolean)}.
+     *
+     * @param args the get_status arguments
+     * @return the compliance status
+     */
+    public ComplianceStatus getStatus(JsonJsContext args) {
+        // Convert the JSON returned into a ComplianceStatus object:
+        String json = jsRules.runJsFunction(String.class, "get_status", args);
+        try {
+            return mapper.toObject(json, ComplianceStatus.class);
+        }
+        catch (Exception e) {
+            throw new RuleExecutionException(e);
+        }
+    }
+
+    @Override
+    public boolean isStackCompliant(Consumer consumer, String stackId,
+        Collection<Entitlement> entitlements) {
+        JsonJsContext args = new JsonJsContext(mapper);
+        args.put("stack_id", stackId);
+        args.put("consumer", consumer);
+        args.put("entitlements", entitlements);
+        args.put("log", log, false);
+        return jsRules.runJsFunction(Boolean.class, "is_stack_compliant", args);
+    }
+
+    @Override
+    public boolean isEntitlementCompliant(Consumer consumer, Entitlement entitlement,
+        Collection<Entitlement> entitlements) {
+        JsonJsContext args = new JsonJsContext(mapper);
+        args.put("consumer", consumer);
+        args.put("entitlement", entitlement);
+        args.put("entitlements", entitlements);
+        args.put("log", log, false);
+        return jsRules.runJsFunction(Boolean.class, "is_ent_compliant", args);
+    }
+}
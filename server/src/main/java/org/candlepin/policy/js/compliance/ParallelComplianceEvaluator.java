@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.compliance;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.policy.js.JsRunner;
+import org.candlepin.policy.js.JsonJsContext;
+import org.candlepin.policy.js.RuleExecutionException;
+import org.candlepin.policy.js.RulesObjectMapper;
+import org.candlepin.util.Metrics;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * ParallelComplianceEvaluator
+ *
+ * Runs the javascript get_status rule for many consumers across a bounded pool of
+ * worker threads. Workers are only handed prepared contexts (see
+ * {@link JsonJsContext#prepare()}), so they never touch the caller's entities or
+ * hibernate session. Each worker slice uses its own rules runner, obtained on the
+ * calling thread and released as soon as the batch has been evaluated.
+ */
+@Singleton
+public class ParallelComplianceEvaluator {
+    private static Logger log = LoggerFactory.getLogger(ParallelComplianceEvaluator.class);
+
+    private static final Metrics.Counter EVALUATED = Metrics.counter("compliance.batch.evaluated");
+    private static final Metrics.Timer BATCH_TIME = Metrics.timer("compliance.batch");
+
+    private final Provider<JsRunner> jsProvider;
+    private final int threads;
+    private final ExecutorService executor;
+
+    @Inject
+    public ParallelComplianceEvaluator(Provider<JsRunner> jsProvider, Configuration config) {
+        this(jsProvider, config.getInt(ConfigProperties.COMPLIANCE_BATCH_THREADS));
+    }
+
+    public ParallelComplianceEvaluator(Provider<JsRunner> jsProvider, int threads) {
+        this.jsProvider = jsProvider;
+        this.threads = Math.max(1, threads);
+        this.executor = Executors.newFixedThreadPool(this.threads, new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("compliance-%d")
+            .build());
+    }
+
+    /**
+     * Evaluates the prepared get_status contexts.
+     *
+     * @param contexts get_status contexts, already prepared
+     * @return the compliance status for each context, in the same order
+     */
+    public List<ComplianceStatus> evaluate(final List<JsonJsContext> contexts) {
+        long start = System.nanoTime();
+        final ComplianceStatus[] results = new ComplianceStatus[contexts.size()];
+        final int slices = Math.min(threads, contexts.size());
+
+        List<JsRunner> runners = new ArrayList<JsRunner>(slices);
+        try {
+            if (slices <= 1) {
+                JsRunner runner = jsProvider.get();
+                runners.add(runner);
+                evaluateSlice(runner, contexts, results, 0, 1);
+            }
+            else {
+                List<Future<?>> futures = new ArrayList<Future<?>>(slices);
+                for (int slice = 0; slice < slices; slice++) {
+                    final JsRunner runner = jsProvider.get();
+                    final int first = slice;
+                    runners.add(runner);
+                    futures.add(executor.submit(new Runnable() {
+                        public void run() {
+                            evaluateSlice(runner, contexts, results, first, slices);
+                        }
+                    }));
+                }
+                waitFor(futures);
+            }
+        }
+        finally {
+            // A streamed request evaluates many batches, hand the scopes back
+            // after each one rather than holding them until the request ends.
+            for (JsRunner runner : runners) {
+                runner.release();
+            }
+        }
+
+        EVALUATED.add(contexts.size());
+        BATCH_TIME.updateSince(start);
+        log.debug("Evaluated compliance for {} consumers on {} threads", contexts.size(), slices);
+        return Arrays.asList(results);
+    }
+
+    private static void evaluateSlice(JsRunner runner, List<JsonJsContext> contexts,
+        ComplianceStatus[] results, int first, int step) {
+        runner.init("compliance_name_space");
+        JsComplianceEngine engine = new JsComplianceEngine(runner, RulesObjectMapper.instance());
+        for (int i = first; i < contexts.size(); i += step) {
+            results[i] = engine.getStatus(contexts.get(i));
+        }
+    }
+
+    /*
+     * Every slice is waited for before reporting a failure, the runners must not
+     * be released while a worker may still be using them.
+     */
+    private void waitFor(List<Future<?>> futures) {
+        RuntimeException failure = null;
+        boolean interrupted = false;
+
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;
+                }
+                catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof RuntimeException ?
+                            (RuntimeException) e.getCause() : new RuleExecutionException(e.getCause());
+                    }
+                    break;
+                }
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
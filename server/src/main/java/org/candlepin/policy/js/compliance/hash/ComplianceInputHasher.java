@@ -0,0 +1,38 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.compliance.hash;
+
+import org.candlepin.model.Consumer;
+
+/**
+ * Creates an SHA256 hash of the consumer data a compliance calculation depends on:
+ * type, facts, installed products, guests and entitlements. Entitlements are hashed with
+ * their quantity, effective dates, their pool's id, last update and attributes, and the
+ * attributes of their pool's products. Consumers with the same hash get the same
+ * compliance status on any given date.
+ */
+public class ComplianceInputHasher extends Hasher {
+
+    public ComplianceInputHasher(Consumer consumer) {
+        putObject(consumer, HashableStringGenerators.CONSUMER);
+        putObject(consumer.getType(), HashableStringGenerators.CONSUMER_TYPE);
+        putCollection(consumer.getEntitlements(), HashableStringGenerators.ENTITLEMENT);
+        putCollection(consumer.getEntitlements(), HashableStringGenerators.ENTITLEMENT_DATES);
+        putCollection(consumer.getEntitlements(), HashableStringGenerators.ENTITLEMENT_POOL_ATTRIBUTES);
+        putCollection(consumer.getEntitlements(), HashableStringGenerators.ENTITLEMENT_PRODUCTS);
+        putCollection(consumer.getGuestIds(), HashableStringGenerators.GUEST_ID);
+    }
+
+}
@@ -17,8 +17,13 @@ package org.candlepin.policy.js.compliance.hash;
 
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerInstalledProduct;
+import org.candlepin.model.ConsumerType;
 import org.candlepin.model.Entitlement;
+import org.candlepin.model.GuestId;
 import org.candlepin.model.Pool;
+import org.candlepin.model.PoolAttribute;
+import org.candlepin.model.Product;
+import org.candlepin.model.ProductAttribute;
 import org.candlepin.policy.js.compliance.ComplianceReason;
 
 import java.util.Collection;
@@ -45,6 +50,16 @@ public class HashableStringGenerators {
     public static final ConsumerGenerator CONSUMER = new ConsumerGenerator();
     public static final ConsumerInstalledProductGenerator INSTALLED_PRODUCT =
         new ConsumerInstalledProductGenerator();
+    public static final GuestIdGenerator GUEST_ID = new GuestIdGenerator();
+    public static final EntitlementDatesGenerator ENTITLEMENT_DATES = new EntitlementDatesGenerator();
+    public static final EntitlementProductsGenerator ENTITLEMENT_PRODUCTS =
+        new EntitlementProductsGenerator();
+    public static final ProductGenerator PRODUCT = new ProductGenerator();
+    public static final ProductAttributeGenerator PRODUCT_ATTRIBUTE = new ProductAttributeGenerator();
+    public static final EntitlementPoolAttributesGenerator ENTITLEMENT_POOL_ATTRIBUTES =
+        new EntitlementPoolAttributesGenerator();
+    public static final PoolAttributeGenerator POOL_ATTRIBUTE = new PoolAttributeGenerator();
+    public static final ConsumerTypeGenerator CONSUMER_TYPE = new ConsumerTypeGenerator();
 
 
     private HashableStringGenerators() {
@@ -239,4 +254,142 @@ public class HashableStringGenerators {
 
     }
 
+    /**
+     * Generates a string from a {@link GuestId} intended for use in a hash.
+     */
+    private static class GuestIdGenerator implements HashableStringGenerator<GuestId> {
+
+        @Override
+        public String generate(GuestId target) {
+            if (target == null) {
+                return null;
+            }
+
+            String generated = target.getGuestId();
+            generated += generateFromCollection(target.getAttributes().entrySet(), STRING_ENTRY);
+            return generated;
+        }
+
+    }
+
+    /**
+     * Generates a string from the effective dates of an {@link Entitlement} intended
+     * for use in a hash.
+     */
+    private static class EntitlementDatesGenerator implements HashableStringGenerator<Entitlement> {
+
+        @Override
+        public String generate(Entitlement target) {
+            if (target == null) {
+                return null;
+            }
+
+            return target.getId() + getTime(target.getStartDate()) + getTime(target.getEndDate());
+        }
+
+        private Long getTime(Date date) {
+            return date == null ? null : date.getTime();
+        }
+
+    }
+
+    /**
+     * Generates a string from the products of an {@link Entitlement}'s pool intended
+     * for use in a hash.
+     */
+    private static class EntitlementProductsGenerator implements HashableStringGenerator<Entitlement> {
+
+        @Override
+        public String generate(Entitlement target) {
+            if (target == null) {
+                return null;
+            }
+
+            String generated = target.getId();
+            Pool pool = target.getPool();
+            if (pool != null) {
+                generated += generateFromObject(pool.getProduct(), PRODUCT);
+                generated += generateFromCollection(pool.getProvidedProducts(), PRODUCT);
+            }
+            return generated;
+        }
+
+    }
+
+    /**
+     * Generates a string from the attributes of an {@link Entitlement}'s pool intended
+     * for use in a hash.
+     */
+    private static class EntitlementPoolAttributesGenerator implements HashableStringGenerator<Entitlement> {
+
+        @Override
+        public String generate(Entitlement target) {
+            if (target == null) {
+                return null;
+            }
+
+            String generated = target.getId();
+            Pool pool = target.getPool();
+            if (pool != null) {
+                generated += generateFromCollection(pool.getAttributes(), POOL_ATTRIBUTE);
+            }
+            return generated;
+        }
+
+    }
+
+    /**
+     * Generates a string from a {@link Product} and its attributes intended for use in a hash.
+     */
+    private static class ProductGenerator implements HashableStringGenerator<Product> {
+
+        @Override
+        public String generate(Product target) {
+            if (target == null) {
+                return null;
+            }
+
+            String generated = target.getId() + target.getMultiplier();
+            generated += generateFromCollection(target.getAttributes(), PRODUCT_ATTRIBUTE);
+            return generated;
+        }
+
+    }
+
+    /**
+     * Generates a string from a {@link ProductAttribute} intended for use in a hash.
+     */
+    private static class ProductAttributeGenerator implements HashableStringGenerator<ProductAttribute> {
+
+        @Override
+        public String generate(ProductAttribute target) {
+            return target == null ? null : target.getName() + "=" + target.getValue() + ";";
+        }
+
+    }
+
+    /**
+     * Generates a string from a {@link PoolAttribute} intended for use in a hash.
+     */
+    private static class PoolAttributeGenerator implements HashableStringGenerator<PoolAttribute> {
+
+        @Override
+        public String generate(PoolAttribute target) {
+            return target == null ? null : target.getName() + "=" + target.getValue() + ";";
+        }
+
+    }
+
+    /**
+     * Generates a string from a {@link ConsumerType} intended for use in a hash.
+     */
+    private static class ConsumerTypeGenerator implements HashableStringGenerator<ConsumerType> {
+
+        @Override
+        public String generate(ConsumerType target) {
+            return target == null ? null : target.getLabel() + target.isManifest();
+        }
+
+    }
+
 }
@@ -21,6 +21,8 @@ import org.candlepin.model.Pool;
 import org.candlepin.model.PoolQuantity;
 import org.candlepin.policy.ValidationResult;
 
+import org.hibernate.criterion.Criterion;
+
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -133,6 +135,16 @@ public interface Enforcer {
      */
     List<Pool> filterPools(Consumer consumer, List<Pool> pools, boolean showAll);
 
+    /**
+     * Database criteria excluding the pools {@link #filterPools} would certainly reject.
+     * Pools matching them must still be passed through filterPools.
+     *
+     * @param consumer Consumer who wishes to consume an entitlement.
+     * @param showAll if true, allows pools with warnings
+     * @return list of criteria to apply when looking up candidate pools
+     */
+    List<Criterion> filterCriteria(Consumer consumer, boolean showAll);
+
     /**
      * Run post-entitlement actions.
      *
@@ -23,19 +23,23 @@ import org.candlepin.model.PoolCurator;
 import org.candlepin.model.PoolQuantity;
 import org.candlepin.policy.ValidationError;
 import org.candlepin.policy.ValidationResult;
+import org.candlepin.policy.criteria.CriteriaRules;
 import org.candlepin.policy.js.JsRunner;
 import org.candlepin.policy.js.JsonJsContext;
 import org.candlepin.policy.js.RuleExecutionException;
 import org.candlepin.util.DateSource;
+import org.candlepin.util.Metrics;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.google.inject.Inject;
 
+import org.hibernate.criterion.Criterion;
 import org.slf4j.LoggerFactory;
 import org.xnap.commons.i18n.I18n;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -45,6 +49,10 @@ import java.util.Map;
  */
 public class EntitlementRules extends AbstractEntitlementRules implements Enforcer {
 
+    private static final Metrics.Counter JAVA_FILTERED = Metrics.counter("rules.pool_filter.java");
+    private static final Metrics.Counter JS_FILTERED = Metrics.counter("rules.pool_filter.js");
+    private static final Metrics.Timer FILTER_TIME = Metrics.timer("rules.pool_filter");
+
     @Inject
     public EntitlementRules(DateSource dateSource,
         JsRunner jsRules,
@@ -123,25 +131,40 @@ public class EntitlementRules extends AbstractEntitlementRules implements Enforc
     }
 
     @Override
-    public List<Pool> filterPools(Consumer consumer, List<Pool> pools, boolean showAll) {
-        JsonJsContext args = new JsonJsContext(objectMapper);
-        args.put("consumer", consumer);
-        args.put("hostConsumer", getHost(consumer));
-        args.put("consumerEntitlements", consumer.getEntitlements());
-        args.put("standalone", config.getBoolean(ConfigProperties.STANDALONE));
-        args.put("pools", pools);
-        args.put("caller", CallerType.LIST_POOLS.getLabel());
-        args.put("log", log, false);
+    public List<Criterion> filterCriteria(Consumer consumer, boolean showAll) {
+        List<Criterion> criteria = CriteriaRules.preEntitlementCriteria(consumer);
+        if (!showAll && !consumer.getType().isManifest() &&
+            "true".equalsIgnoreCase(consumer.getFact("virt.is_guest"))) {
+            // The rules always warn guests about physical only pools
+            criteria.add(CriteriaRules.notPhysicalOnlyPool());
+        }
+        return criteria;
+    }
 
-        String json = jsRules.runJsFunction(String.class, "validate_pools_list", args);
-        Map<String, ValidationResult> resultMap;
-        TypeReference<Map<String, ValidationResult>> typeref =
-            new TypeReference<Map<String, ValidationResult>>() {};
-        try {
-            resultMap = objectMapper.toObject(json, typeref);
+    @Override
+    public List<Pool> filterPools(Consumer consumer, List<Pool> pools, boolean showAll) {
+        long start = System.nanoTime();
+        Consumer host = getHost(consumer);
+        Map<String, ValidationResult> resultMap = new HashMap<String, ValidationResult>();
+        List<Pool> jsPools = pools;
+
+        if (config.getBoolean(ConfigProperties.POOL_FILTER_JAVA_CHECKS, false)) {
+            PoolPreFilter preFilter = new PoolPreFilter(consumer, host);
+            jsPools = new ArrayList<Pool>();
+            for (Pool pool : pools) {
+                if (preFilter.canValidate(pool)) {
+                    resultMap.put(pool.getId(), preFilter.validate(pool));
+                }
+                else {
+                    jsPools.add(pool);
+                }
+            }
+            JAVA_FILTERED.add(pools.size() - jsPools.size());
         }
-        catch (Exception e) {
-            throw new RuleExecutionException(e);
+
+        if (!jsPools.isEmpty()) {
+            JS_FILTERED.add(jsPools.size());
+            resultMap.putAll(runJsFilter(consumer, host, jsPools));
         }
 
         List<Pool> filteredPools = new LinkedList<Pool>();
@@ -162,9 +185,32 @@ public class EntitlementRules extends AbstractEntitlementRules implements Enforc
                 }
             }
         }
+        FILTER_TIME.updateSince(start);
         return filteredPools;
     }
 
+    private Map<String, ValidationResult> runJsFilter(Consumer consumer, Consumer host,
+        List<Pool> pools) {
+        JsonJsContext args = new JsonJsContext(objectMapper);
+        args.put("consumer", consumer);
+        args.put("hostConsumer", host);
+        args.put("consumerEntitlements", consumer.getEntitlements());
+        args.put("standalone", config.getBoolean(ConfigProperties.STANDALONE));
+        args.put("pools", pools);
+        args.put("caller", CallerType.LIST_POOLS.getLabel());
+        args.put("log", log, false);
+
+        String json = jsRules.runJsFunction(String.class, "validate_pools_list", args);
+        TypeReference<Map<String, ValidationResult>> typeref =
+            new TypeReference<Map<String, ValidationResult>>() {};
+        try {
+            return objectMapper.toObject(json, typeref);
+        }
+        catch (Exception e) {
+            throw new RuleExecutionException(e);
+        }
+    }
+
     private Consumer getHost(Consumer consumer) {
         Consumer host = consumer.hasFact("virt.uuid") ? consumerCurator.getHost(
             consumer.getFact("virt.uuid"), consumer.getOwner()) : null;
@@ -0,0 +1,267 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.entitlement;
+
+import static org.candlepin.policy.js.RulesUtil.architectureMatches;
+import static org.candlepin.policy.js.RulesUtil.getAttribute;
+import static org.candlepin.policy.js.RulesUtil.getProductAttribute;
+import static org.candlepin.policy.js.RulesUtil.isGuest;
+import static org.candlepin.policy.js.RulesUtil.parseInt;
+
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerCapability;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.Pool;
+import org.candlepin.policy.ValidationResult;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * PoolPreFilter
+ *
+ * Native implementation of the pre-entitlement checks the rules run when listing
+ * pools (rules.js Entitlement.validate_pools_list). Everything that depends only on
+ * the consumer is worked out once up front, so a whole pool list can be checked in
+ * a single pass. Pools carrying an attribute whose check is not implemented here
+ * must still be validated by the javascript rules, see {@link #canValidate(Pool)}.
+ */
+public class PoolPreFilter {
+
+    static final String ARCH_FACT = "uname.machine";
+    static final String SOCKET_FACT = "cpu.cpu_socket(s)";
+    static final String VIRT_UUID_FACT = "virt.uuid";
+
+    static final String ARCH_ATTRIBUTE = "arch";
+    static final String SOCKETS_ATTRIBUTE = "sockets";
+    static final String REQUIRES_CONSUMER_TYPE_ATTRIBUTE = "requires_consumer_type";
+    static final String VIRT_ONLY = "virt_only";
+    static final String REQUIRES_HOST_ATTRIBUTE = "requires_host";
+    static final String INSTANCE_ATTRIBUTE = "instance_multiplier";
+    static final String PHYSICAL_ONLY = "physical_only";
+    static final String POOL_DERIVED = "pool_derived";
+    static final String STACKING_ID_ATTRIBUTE = "stacking_id";
+    static final String MULTI_ENTITLEMENT_ATTRIBUTE = "multi-entitlement";
+
+    static final String SYSTEM_TYPE = "system";
+    static final String HYPERVISOR_TYPE = "hypervisor";
+    static final String UEBERCERT_TYPE = "uebercert";
+
+    /*
+     * Attributes mapped to a pre_* rule in rules.js which are not checked natively.
+     * A pool carrying any of them is handed to the rules.
+     */
+    private static final List<String> JS_ONLY_ATTRIBUTES = Arrays.asList("ram", "cores", "vcpu",
+        "unmapped_guests_only", "storage_band", "requires_consumer");
+
+    private final Consumer consumer;
+    private final Consumer host;
+    private final boolean manifest;
+    private final boolean guest;
+    private final String typeLabel;
+    private final String consumerArch;
+    private final String consumerSockets;
+    private final boolean hasVirtUuid;
+    private final Set<String> capabilities = new HashSet<String>();
+    private final Set<String> entitledPoolIds = new HashSet<String>();
+
+    public PoolPreFilter(Consumer consumer, Consumer host) {
+        this.consumer = consumer;
+        this.host = host;
+        this.manifest = consumer.getType().isManifest();
+        this.guest = isGuest(consumer);
+        this.typeLabel = consumer.getType().getLabel();
+        this.consumerArch = consumer.getFact(ARCH_FACT);
+        this.consumerSockets = consumer.getFact(SOCKET_FACT);
+        this.hasVirtUuid = truthy(consumer.getFact(VIRT_UUID_FACT));
+
+        if (consumer.getCapabilities() != null) {
+            for (ConsumerCapability capability : consumer.getCapabilities()) {
+                capabilities.add(capability.getName());
+            }
+        }
+        for (Entitlement ent : consumer.getEntitlements()) {
+            entitledPoolIds.add(ent.getPool().getId());
+        }
+    }
+
+    /**
+     * @param pool pool to check
+     * @return true if every rule that applies to the pool is implemented natively
+     */
+    public boolean canValidate(Pool pool) {
+        for (String attribute : JS_ONLY_ATTRIBUTES) {
+            if (getAttribute(pool, attribute) != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Runs the list pools pre-entitlement checks against the pool, in the same order
+     * the rules would. Only valid for pools accepted by {@link #canValidate(Pool)}.
+     *
+     * @param pool pool to check
+     * @return the validation result, before quantity and expiry checks
+     */
+    public ValidationResult validate(Pool pool) {
+        ValidationResult result = new ValidationResult();
+        checkGlobal(pool, result);
+
+        if (getAttribute(pool, ARCH_ATTRIBUTE) != null) {
+            checkArchitecture(pool, result);
+        }
+        if (getAttribute(pool, SOCKETS_ATTRIBUTE) != null) {
+            checkSockets(pool, result);
+        }
+        if (getAttribute(pool, REQUIRES_CONSUMER_TYPE_ATTRIBUTE) != null) {
+            checkRequiresConsumerType(pool, result);
+        }
+        if (getAttribute(pool, VIRT_ONLY) != null) {
+            checkVirtOnly(pool, result);
+        }
+        if (getAttribute(pool, REQUIRES_HOST_ATTRIBUTE) != null) {
+            checkRequiresHost(pool, result);
+        }
+        if (getAttribute(pool, INSTANCE_ATTRIBUTE) != null) {
+            checkInstanceMultiplier(result);
+        }
+        if (getAttribute(pool, PHYSICAL_ONLY) != null) {
+            checkPhysicalOnly(pool, result);
+        }
+        return result;
+    }
+
+    private void checkGlobal(Pool pool, ValidationResult result) {
+        if (manifest) {
+            if (truthy(pool.getDerivedProductId()) && !capabilities.contains("derived_product")) {
+                result.addWarning("rulewarning.derivedproduct.unsupported.by.consumer");
+            }
+            return;
+        }
+
+        if (entitledPoolIds.contains(pool.getId()) &&
+            !"yes".equalsIgnoreCase(getProductAttribute(pool, MULTI_ENTITLEMENT_ATTRIBUTE))) {
+            result.addError("rulefailed.consumer.already.has.product");
+        }
+
+        // If the product has no required consumer type, assume it is restricted to "system".
+        if (!truthy(getProductAttribute(pool, REQUIRES_CONSUMER_TYPE_ATTRIBUTE)) &&
+            !SYSTEM_TYPE.equals(typeLabel) && !HYPERVISOR_TYPE.equals(typeLabel) &&
+            !UEBERCERT_TYPE.equals(typeLabel)) {
+            result.addError("rulefailed.consumer.type.mismatch");
+        }
+
+        String restrictedTo = pool.getRestrictedToUsername();
+        if (restrictedTo != null && !restrictedTo.equals(consumer.getUsername())) {
+            result.addError("pool.not.available.to.user, pool= '" + restrictedTo +
+                "', actual username='" + consumer.getUsername() + "'");
+        }
+    }
+
+    private void checkArchitecture(Pool pool, ValidationResult result) {
+        if (!manifest &&
+            !architectureMatches(getProductAttribute(pool, ARCH_ATTRIBUTE), consumerArch, typeLabel)) {
+            result.addWarning("rulewarning.architecture.mismatch");
+        }
+    }
+
+    private void checkSockets(Pool pool, ValidationResult result) {
+        if (manifest || guest) {
+            return;
+        }
+
+        // An undefined socket fact skips the comparison
+        if (truthy(consumerSockets) && !truthy(getProductAttribute(pool, STACKING_ID_ATTRIBUTE))) {
+            double poolSockets = parseInt(getProductAttribute(pool, SOCKETS_ATTRIBUTE));
+            if (poolSockets > 0 && poolSockets < parseInt(consumerSockets)) {
+                result.addWarning("rulewarning.unsupported.number.of.sockets");
+            }
+        }
+    }
+
+    private void checkRequiresConsumerType(Pool pool, ValidationResult result) {
+        // Distributors can access everything
+        if (manifest) {
+            return;
+        }
+
+        String requiresType = getContextAttribute(pool, REQUIRES_CONSUMER_TYPE_ATTRIBUTE);
+        if (requiresType != null && !UEBERCERT_TYPE.equals(typeLabel) &&
+            !requiresType.equals(typeLabel) &&
+            // Allow hypervisors to be like systems
+            !(SYSTEM_TYPE.equals(requiresType) && HYPERVISOR_TYPE.equals(typeLabel))) {
+            result.addError("rulefailed.consumer.type.mismatch");
+        }
+    }
+
+    private void checkVirtOnly(Pool pool, ValidationResult result) {
+        if (!"true".equalsIgnoreCase(getContextAttribute(pool, VIRT_ONLY))) {
+            return;
+        }
+
+        if (manifest) {
+            if ("true".equalsIgnoreCase(getContextAttribute(pool, POOL_DERIVED))) {
+                result.addError("pool.not.available.to.manifest.consumers");
+            }
+        }
+        else if (!guest) {
+            result.addWarning("rulewarning.virt.only");
+        }
+    }
+
+    private void checkRequiresHost(Pool pool, ValidationResult result) {
+        // requires_host derived pools not available to manifest
+        if (manifest) {
+            result.addError("pool.not.available.to.manifest.consumers");
+        }
+        else if (!hasVirtUuid) {
+            result.addError("rulefailed.virt.only");
+        }
+        else if (host == null ||
+            !host.getUuid().equals(getContextAttribute(pool, REQUIRES_HOST_ATTRIBUTE))) {
+            result.addError("virt.guest.host.does.not.match.pool.owner");
+        }
+    }
+
+    private void checkInstanceMultiplier(ValidationResult result) {
+        // Quantities are only enforced on bind, listing only checks distributor capability
+        if (manifest && !capabilities.contains(INSTANCE_ATTRIBUTE)) {
+            result.addWarning("rulewarning.instance.unsupported.by.consumer");
+        }
+    }
+
+    private void checkPhysicalOnly(Pool pool, ValidationResult result) {
+        if ("true".equalsIgnoreCase(getContextAttribute(pool, PHYSICAL_ONLY)) && !manifest && guest) {
+            result.addWarning("rulewarning.physical.only");
+        }
+    }
+
+    /*
+     * context.getAttribute: the pool attribute, falling back to the product
+     * attribute when the former is empty.
+     */
+    private static String getContextAttribute(Pool pool, String name) {
+        String value = getAttribute(pool, name);
+        return truthy(value) ? value : getProductAttribute(pool, name);
+    }
+
+    private static boolean truthy(String value) {
+        return value != null && !value.isEmpty();
+    }
+}
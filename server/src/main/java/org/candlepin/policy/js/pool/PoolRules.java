@@ -280,6 +280,7 @@ public class PoolRules {
 
                 existingPool.setCdn(masterPool.getCdn());
                 existingPool.setCertificate(masterPool.getCertificate());
+                existingPool.setImportHash(masterPool.getImportHash());
             }
 
             // Used to track if anything has changed:
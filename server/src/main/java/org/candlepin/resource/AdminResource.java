@@ -24,6 +24,7 @@ import org.candlepin.model.User;
 import org.candlepin.model.UserCurator;
 import org.candlepin.service.UserServiceAdapter;
 import org.candlepin.service.impl.DefaultUserServiceAdapter;
+import org.candlepin.util.Metrics;
 
 import com.google.inject.Inject;
 
@@ -32,6 +33,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
+import java.util.Map;
 
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
@@ -108,4 +110,14 @@ public class AdminResource {
         return sink.getQueueInfo();
     }
 
+    @GET
+    @Produces({MediaType.APPLICATION_JSON})
+    @Path("metrics")
+    @ApiOperation(
+        notes = "Internal performance counters, timers and gauges collected since startup.",
+        value = "Get Metrics")
+    public Map<String, Object> getMetrics() {
+        return Metrics.snapshot();
+    }
+
 }
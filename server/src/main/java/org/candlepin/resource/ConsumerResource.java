@@ -89,6 +89,7 @@ import org.candlepin.resource.util.ConsumerBindUtil;
 import org.candlepin.resource.util.ConsumerInstalledProductEnricher;
 import org.candlepin.resource.util.EntitlementFinderUtil;
 import org.candlepin.resource.util.ResourceDateParser;
+import org.candlepin.resteasy.JsonProvider;
 import org.candlepin.resteasy.parameter.CandlepinParam;
 import org.candlepin.resteasy.parameter.KeyValueParameter;
 import org.candlepin.service.EntitlementCertServiceAdapter;
@@ -99,6 +100,9 @@ import org.candlepin.sync.ExportCreationException;
 import org.candlepin.sync.Exporter;
 import org.candlepin.util.Util;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Iterables;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 
@@ -115,12 +119,14 @@ import org.xnap.commons.i18n.I18n;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -140,9 +146,11 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -922,6 +930,7 @@ public class ConsumerResource {
         if (updated.getLastCheckin() != null) {
             log.info("Updating to specific last checkin time: {}", updated.getLastCheckin());
             toUpdate.setLastCheckin(updated.getLastCheckin());
+            consumerCurator.updateLastCheckin(toUpdate, updated.getLastCheckin());
             changesMade = true;
         }
 
@@ -1227,6 +1236,8 @@ public class ConsumerResource {
 
         Set<Long> serialSet = this.extractSerials(serials);
 
+        // Not streamed: the certificates come through the EntitlementCertServiceAdapter,
+        // whose list API returns a full List.
         List<EntitlementCertificate> returnCerts = new LinkedList<EntitlementCertificate>();
         List<EntitlementCertificate> allCerts = entCertService
             .listForConsumer(consumer);
@@ -1950,19 +1961,62 @@ public class ConsumerResource {
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/compliance")
-    @Transactional
-    public Map<String, ComplianceStatus> getComplianceStatusList(
+    public Response getComplianceStatusList(
         @QueryParam("uuid") @Verify(value = Consumer.class, nullable = true) List<String> uuids) {
-        List<Consumer> consumers = uuids == null ? new LinkedList<Consumer>() :
-            consumerCurator.findByUuids(uuids);
-        Map<String, ComplianceStatus> results = new HashMap<String, ComplianceStatus>();
+        // Each consumer is reported once, however many times it was asked for
+        List<String> consumerUuids = uuids == null ? new LinkedList<String>() :
+            new ArrayList<String>(new LinkedHashSet<String>(uuids));
+        int batchSize = Math.max(1, config.getInt(ConfigProperties.COMPLIANCE_BATCH_SIZE));
+        final ObjectMapper mapper = new JsonProvider(true)
+            .locateMapper(Object.class, MediaType.APPLICATION_JSON_TYPE);
+        final Iterator<List<String>> batches = Iterables.partition(consumerUuids, batchSize).iterator();
+
+        /*
+         * The first batch is evaluated before the response is committed, so that the
+         * errors most requests run into still map to a proper status code.
+         */
+        final List<Consumer> firstConsumers = batches.hasNext() ?
+            consumerCurator.findByUuidsForCompliance(batches.next()) : new LinkedList<Consumer>();
+        final Map<String, ComplianceStatus> firstStatuses = getComplianceStatuses(firstConsumers);
+
+        /*
+         * Consumers are loaded, evaluated and written out a batch at a time, and evicted
+         * once written, so neither the session nor the response grows with the list.
+         */
+        StreamingOutput output = new StreamingOutput() {
+            @Override
+            public void write(OutputStream stream) throws IOException, WebApplicationException {
+                JsonGenerator generator = mapper.getJsonFactory().createGenerator(stream);
+                generator.writeStartObject();
+                writeStatuses(generator, firstConsumers, firstStatuses);
+
+                while (batches.hasNext()) {
+                    List<Consumer> consumers = consumerCurator.findByUuidsForCompliance(batches.next());
+                    writeStatuses(generator, consumers, getComplianceStatuses(consumers));
+                }
 
-        for (Consumer consumer : consumers) {
-            ComplianceStatus status = complianceRules.getStatus(consumer, null);
-            results.put(consumer.getUuid(), status);
-        }
+                generator.writeEndObject();
+                generator.flush();
+            }
+
+            private void writeStatuses(JsonGenerator generator, List<Consumer> consumers,
+                Map<String, ComplianceStatus> statuses) throws IOException {
+                for (Map.Entry<String, ComplianceStatus> entry : statuses.entrySet()) {
+                    generator.writeFieldName(entry.getKey());
+                    mapper.writeValue(generator, entry.getValue());
+                }
 
-        return results;
+                generator.flush();
+                consumerCurator.evictAll(consumers);
+            }
+        };
+
+        return Response.ok(output).build();
+    }
+
+    @Transactional
+    protected Map<String, ComplianceStatus> getComplianceStatuses(List<Consumer> consumers) {
+        return complianceRules.getStatuses(consumers);
     }
 
     private void addDataToInstalledProducts(Consumer consumer) {
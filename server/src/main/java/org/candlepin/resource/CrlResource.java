@@ -15,23 +15,17 @@
 package org.candlepin.resource;
 
 import org.candlepin.auth.Principal;
-import org.candlepin.common.config.Configuration;
 import org.candlepin.common.exceptions.IseException;
-import org.candlepin.config.ConfigProperties;
 import org.candlepin.model.CertificateSerial;
 import org.candlepin.model.CertificateSerialCurator;
-import org.candlepin.pki.PKIUtility;
-import org.candlepin.pki.X509CRLEntryWrapper;
-import org.candlepin.util.CrlFileUtil;
+import org.candlepin.util.CrlCache;
 
 import com.google.inject.Inject;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.security.cert.CRLException;
+import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -41,8 +35,11 @@ import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -56,41 +53,35 @@ import io.swagger.annotations.ApiOperation;
 @Api("crl")
 public class CrlResource {
 
-    private Configuration config;
-    private CrlFileUtil crlFileUtil;
-    private PKIUtility pkiUtility;
+    private CrlCache crlCache;
     private CertificateSerialCurator certificateSerialCurator;
 
 
     @Inject
-    public CrlResource(Configuration config, CrlFileUtil crlFileUtil, PKIUtility pkiUtility,
-        CertificateSerialCurator certificateSerialCurator) {
-
-        this.config = config;
-        this.crlFileUtil = crlFileUtil;
-        this.pkiUtility = pkiUtility;
+    public CrlResource(CrlCache crlCache, CertificateSerialCurator certificateSerialCurator) {
+        this.crlCache = crlCache;
         this.certificateSerialCurator = certificateSerialCurator;
     }
 
     @ApiOperation(notes = "Retrieves the Certificate Revocation List", value = "getCurrentCrl")
     @GET
     @Produces(MediaType.TEXT_PLAIN)
-    public Response getCurrentCrl(@Context Principal principal) throws CRLException {
-        String filePath = getCrlFilePath();
-        File crlFile = new File(filePath);
+    public Response getCurrentCrl(@Context Principal principal, @Context Request request)
+        throws CRLException {
 
         try {
-            this.crlFileUtil.syncCRLWithDB(crlFile);
-
-            // Create an empty CRL if we didn't have anything to write
-            if (!crlFile.exists() || crlFile.length() < 1) {
-                pkiUtility.writePemEncoded(
-                    pkiUtility.createX509CRL(new LinkedList<X509CRLEntryWrapper>(), BigInteger.ZERO),
-                    new FileOutputStream(crlFile)
-                );
+            CrlCache.Snapshot crl = this.crlCache.get();
+            EntityTag tag = new EntityTag(crl.getETag());
+            Date lastModified = crl.getLastModified();
+
+            ResponseBuilder builder = lastModified == null ?
+                request.evaluatePreconditions(tag) :
+                request.evaluatePreconditions(lastModified, tag);
+            if (builder == null) {
+                builder = Response.ok().entity(crl.openStream());
             }
 
-            return Response.ok().entity(new FileInputStream(crlFile)).build();
+            return builder.tag(tag).lastModified(lastModified).build();
         }
         catch (IOException e) {
             throw new IseException(e.getMessage(), e);
@@ -103,9 +94,6 @@ public class CrlResource {
     public void unrevoke(@QueryParam("serial") String[] serialIds)
         throws CRLException, IOException {
 
-        String filePath = getCrlFilePath();
-        File crlFile = new File(filePath);
-
         try {
             List<BigInteger> serials = new LinkedList<BigInteger>();
             for (CertificateSerial serial : certificateSerialCurator.listBySerialIds(serialIds)) {
@@ -113,21 +101,11 @@ public class CrlResource {
             }
 
             if (serials.size() > 0) {
-                this.crlFileUtil.updateCRLFile(crlFile, null, serials);
+                this.crlCache.unrevoke(serials);
             }
         }
         catch (IOException e) {
             throw new IseException(e.getMessage(), e);
         }
     }
-
-    private String getCrlFilePath() {
-        String filePath = config.getString(ConfigProperties.CRL_FILE_PATH);
-
-        if (filePath == null) {
-            throw new IseException("CRL file path not defined in config file");
-        }
-
-        return filePath;
-    }
 }
@@ -403,6 +403,12 @@ public class OwnerResource {
         Owner owner = findOwner(ownerKey);
 
         EntitlementFilterBuilder filters = EntitlementFinderUtil.createFilter(matches, attrFilters);
+        if (pageRequest == null && productId == null && !filters.hasMatchFilters()) {
+            // Unpaged lists can be huge, stream them rather than loading them all at once
+            ResteasyProviderFactory.pushContext(Page.class, new Page<List<Entitlement>>());
+            return entitlementCurator.listStreamedByOwner(owner, filters);
+        }
+
         Page<List<Entitlement>> entitlementsPage = entitlementCurator
             .listByOwner(owner, productId, filters, pageRequest);
 
@@ -689,6 +695,13 @@ public class OwnerResource {
             types = consumerTypeCurator.lookupConsumerTypes(typeLabels);
         }
 
+        if (pageRequest == null) {
+            // Unpaged lists can be huge, stream them rather than loading them all at once
+            ResteasyProviderFactory.pushContext(Page.class, new Page<List<Consumer>>());
+            return consumerCurator.listStreamedOwnerConsumers(owner, userName, types, uuids,
+                hypervisorIds, attrFilters, skus, subscriptionIds, contracts);
+        }
+
         Page<List<Consumer>> page = consumerCurator.searchOwnerConsumers(
             owner, userName, types, uuids, hypervisorIds, attrFilters, skus,
             subscriptionIds, contracts, pageRequest);
@@ -779,6 +792,9 @@ public class OwnerResource {
             poolFilters.addMatchesFilter(matches);
         }
 
+        // Unlike consumers and entitlements, unpaged pools are not streamed: the rules
+        // filter the pools and calculated attributes are set on them in a batch, both of
+        // which need the full list. Callers with many pools should page.
         Page<List<Pool>> page = poolManager.listAvailableEntitlementPools(
             c, key, owner, productId, subscriptionId, activeOnDate, true, listAll, poolFilters, pageRequest
         );
@@ -1447,6 +1463,12 @@ public class OwnerResource {
         record.setUpstreamConsumer(createImportUpstreamConsumer(owner, null));
         record.setFileName(filename);
 
+        Set<String> unchangedSubs = (Set<String>) data.get("unchangedSubscriptions");
+        if (unchangedSubs != null && !unchangedSubs.isEmpty()) {
+            log.info("Import for owner {} left the pools of {} unchanged subscriptions as they were: {}",
+                owner.getKey(), unchangedSubs.size(), unchangedSubs);
+        }
+
         List<Subscription> subscriptions = (List<Subscription>) data.get("subscriptions");
         boolean activeSubscriptionFound = false, expiredSubscriptionFound = false;
         Date currentDate = new Date();
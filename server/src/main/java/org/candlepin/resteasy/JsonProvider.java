@@ -20,10 +20,13 @@ import org.candlepin.common.jackson.HateoasBeanPropertyFilter;
 import org.candlepin.common.jackson.MultiFilter;
 import org.candlepin.config.ConfigProperties;
 import org.candlepin.jackson.DateSerializer;
+import org.candlepin.model.ResultList;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.Version;
 import com.fasterxml.jackson.databind.AnnotationIntrospector;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.introspect.AnnotationIntrospectorPair;
 import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
@@ -38,10 +41,17 @@ import com.google.inject.Inject;
 import org.jboss.resteasy.plugins.providers.RegisterBuiltin;
 import org.jboss.resteasy.spi.ResteasyProviderFactory;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
 import java.util.Date;
+import java.util.Iterator;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.ext.Provider;
 
 /**
@@ -85,6 +95,50 @@ public class JsonProvider extends JacksonJsonProvider {
         setMapper(mapper);
     }
 
+    @Override
+    public void writeTo(Object value, Class<?> type, Type genericType, Annotation[] annotations,
+        MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream)
+        throws IOException {
+
+        if (value instanceof ResultList) {
+            writeResultList((ResultList<?>) value, locateMapper(type, mediaType), entityStream);
+        }
+        else {
+            super.writeTo(value, type, genericType, annotations, mediaType, httpHeaders, entityStream);
+        }
+    }
+
+    /*
+     * Serializing a ResultList as its declared List type would read every row before
+     * writing the first one. Write the rows out one at a time instead, so the full
+     * result set is never held in memory.
+     */
+    private void writeResultList(ResultList<?> list, ObjectMapper mapper, OutputStream stream)
+        throws IOException {
+
+        try {
+            JsonGenerator generator = mapper.getJsonFactory().createGenerator(stream);
+            if (mapper.isEnabled(SerializationFeature.INDENT_OUTPUT)) {
+                generator.useDefaultPrettyPrinter();
+            }
+
+            // Leave flushing to the generator's buffer rather than once per entity
+            ObjectWriter writer = mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+            generator.writeStartArray();
+
+            Iterator<?> rows = list.rows();
+            while (rows.hasNext()) {
+                writer.writeValue(generator, rows.next());
+            }
+
+            generator.writeEndArray();
+            generator.flush();
+        }
+        finally {
+            list.close();
+        }
+    }
+
     private void configureHateoasObjectMapper(ObjectMapper mapper, boolean indentJson) {
         mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
 
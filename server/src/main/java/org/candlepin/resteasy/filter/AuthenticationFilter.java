@@ -28,8 +28,7 @@ import org.candlepin.common.config.Configuration;
 import org.candlepin.common.exceptions.BadRequestException;
 import org.candlepin.common.exceptions.NotAuthorizedException;
 import org.candlepin.config.ConfigProperties;
-import org.candlepin.model.ConsumerCurator;
-import org.candlepin.model.DeletedConsumerCurator;
+import org.candlepin.controller.CheckinAggregator;
 
 import com.google.inject.Inject;
 import com.google.inject.Injector;
@@ -66,16 +65,15 @@ public class AuthenticationFilter implements ContainerRequestFilter {
     @Context
     private HttpServletRequest request;
 
-    private ConsumerCurator consumerCurator;
+    private CheckinAggregator checkinAggregator;
     private Injector injector;
     private Configuration config;
     private List<AuthProvider> providers = new ArrayList<AuthProvider>();
 
     @Inject
     public AuthenticationFilter(Configuration config,
-        ConsumerCurator consumerCurator,
-        DeletedConsumerCurator deletedConsumerCurator, Injector injector) {
-        this.consumerCurator = consumerCurator;
+        CheckinAggregator checkinAggregator, Injector injector) {
+        this.checkinAggregator = checkinAggregator;
         this.injector = injector;
         this.config = config;
 
@@ -155,7 +153,7 @@ public class AuthenticationFilter implements ContainerRequestFilter {
             // lest our security settings start getting upset when we try to
             // update a consumer without any roles:
             ConsumerPrincipal p = (ConsumerPrincipal) principal;
-            consumerCurator.updateLastCheckin(p.getConsumer());
+            checkinAggregator.checkin(p.getConsumer());
         }
 
         SecurityContext securityContext = new CandlepinSecurityContext(principal);
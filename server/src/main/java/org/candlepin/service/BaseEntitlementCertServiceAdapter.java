@@ -15,10 +15,17 @@
 package org.candlepin.service;
 
 import org.candlepin.model.Consumer;
+import org.candlepin.model.Entitlement;
 import org.candlepin.model.EntitlementCertificate;
 import org.candlepin.model.EntitlementCertificateCurator;
+import org.candlepin.model.Product;
 
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 
 /**
  * BaseEntitlementCertServiceAdapter
@@ -36,4 +43,64 @@ public abstract class BaseEntitlementCertServiceAdapter implements
         return entCertCurator.listForConsumer(consumer);
     }
 
+    /**
+     * Generate entitlement certificates for entitlements which may belong to
+     * different consumers. Each certificate uses the key pair of its
+     * entitlement's consumer. The Map keys are used to associate the
+     * entitlement with its product and cert generated, and must be unique
+     * across consumers (entitlement ids for instance).
+     *
+     * This is not part of EntitlementCertServiceAdapter, so adapters which do not
+     * extend this class keep working; callers fall back to
+     * {@link #generateByConsumer} for them. By default the certificates are
+     * generated one consumer at a time, adapters able to handle several consumers
+     * at once should override this.
+     *
+     * @param entitlements entitlements which granted the certs.
+     * @param products The Products being consumed.
+     * @return Client entitlement certificates.
+     * @throws IOException thrown if there's a problem reading the cert.
+     * @throws GeneralSecurityException thrown security problem
+     */
+    public Map<String, EntitlementCertificate> generateEntitlementCerts(
+        Map<String, Entitlement> entitlements, Map<String, Product> products)
+        throws GeneralSecurityException, IOException {
+
+        return generateByConsumer(this, entitlements, products);
+    }
+
+    /**
+     * Generates entitlement certificates for entitlements which may belong to
+     * different consumers, calling the given adapter once per consumer.
+     *
+     * @param adapter the adapter generating the certificates.
+     * @param entitlements entitlements which granted the certs.
+     * @param products The Products being consumed.
+     * @return Client entitlement certificates.
+     * @throws IOException thrown if there's a problem reading the cert.
+     * @throws GeneralSecurityException thrown security problem
+     */
+    public static Map<String, EntitlementCertificate> generateByConsumer(
+        EntitlementCertServiceAdapter adapter, Map<String, Entitlement> entitlements,
+        Map<String, Product> products)
+        throws GeneralSecurityException, IOException {
+
+        Map<Consumer, Map<String, Entitlement>> byConsumer =
+            new HashMap<Consumer, Map<String, Entitlement>>();
+        for (Entry<String, Entitlement> entry : entitlements.entrySet()) {
+            Map<String, Entitlement> consumerEnts = byConsumer.get(entry.getValue().getConsumer());
+            if (consumerEnts == null) {
+                consumerEnts = new HashMap<String, Entitlement>();
+                byConsumer.put(entry.getValue().getConsumer(), consumerEnts);
+            }
+            consumerEnts.put(entry.getKey(), entry.getValue());
+        }
+
+        Map<String, EntitlementCertificate> result = new HashMap<String, EntitlementCertificate>();
+        for (Entry<Consumer, Map<String, Entitlement>> entry : byConsumer.entrySet()) {
+            result.putAll(adapter.generateEntitlementCerts(entry.getKey(), entry.getValue(), products));
+        }
+        return result;
+    }
+
 }
@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.service.impl;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.util.Metrics;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * CertificateWorkerPool
+ *
+ * Runs the CPU bound part of certificate generation (encoding, signing) across a
+ * bounded pool of worker threads. Tasks must be fully prepared by the caller, they
+ * are expected not to touch any entity or the hibernate session.
+ */
+@Singleton
+public class CertificateWorkerPool {
+    private static Logger log = LoggerFactory.getLogger(CertificateWorkerPool.class);
+
+    private static final Metrics.Counter BUILT = Metrics.counter("entcert.built");
+    private static final Metrics.Timer BATCH_TIME = Metrics.timer("entcert.batch");
+
+    private final int threads;
+    private final ExecutorService executor;
+
+    @Inject
+    public CertificateWorkerPool(Configuration config) {
+        this(config.getInt(ConfigProperties.ENTCERT_GENERATION_THREADS));
+    }
+
+    public CertificateWorkerPool(int threads) {
+        this.threads = Math.max(1, threads);
+        this.executor = this.threads == 1 ? null : Executors.newFixedThreadPool(this.threads,
+            new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("entcert-%d")
+                .build());
+    }
+
+    /**
+     * Runs the given tasks, on the calling thread if there is only one of them.
+     *
+     * @param tasks prepared certificate building tasks
+     * @return the result of each task, in the same order
+     * @throws GeneralSecurityException if any task failed to sign its certificate
+     * @throws IOException if any task failed to encode its certificate
+     */
+    public <T> List<T> invokeAll(List<? extends Callable<T>> tasks)
+        throws GeneralSecurityException, IOException {
+        long start = System.nanoTime();
+        List<T> results = new ArrayList<T>(tasks.size());
+
+        if (executor == null || tasks.size() <= 1) {
+            for (Callable<T> task : tasks) {
+                results.add(call(task));
+            }
+        }
+        else {
+            List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+            for (Callable<T> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            waitFor(futures, results);
+        }
+
+        BUILT.add(tasks.size());
+        BATCH_TIME.updateSince(start);
+        log.debug("Built {} certificates on up to {} threads", tasks.size(), threads);
+        return results;
+    }
+
+    private <T> T call(Callable<T> task) throws GeneralSecurityException, IOException {
+        try {
+            return task.call();
+        }
+        catch (Exception e) {
+            throw rethrow(e);
+        }
+    }
+
+    /*
+     * Every task is waited for before reporting a failure, so no worker is still using
+     * the caller's data once we return.
+     */
+    private <T> void waitFor(List<Future<T>> futures, List<T> results)
+        throws GeneralSecurityException, IOException {
+        Throwable failure = null;
+        boolean interrupted = false;
+
+        for (Future<T> future : futures) {
+            while (true) {
+                try {
+                    results.add(future.get());
+                    break;
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;
+                }
+                catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                    results.add(null);
+                    break;
+                }
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw rethrow(failure);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable t)
+        throws GeneralSecurityException, IOException {
+        if (t instanceof GeneralSecurityException) {
+            throw (GeneralSecurityException) t;
+        }
+        if (t instanceof IOException) {
+            throw (IOException) t;
+        }
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new RuntimeException(t);
+    }
+}
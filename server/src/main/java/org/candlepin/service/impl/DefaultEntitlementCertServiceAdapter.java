@@ -29,6 +29,7 @@ import org.candlepin.model.KeyPairCurator;
 import org.candlepin.model.Pool;
 import org.candlepin.model.Product;
 import org.candlepin.model.ProductContent;
+import org.candlepin.model.dto.EntitlementBody;
 import org.candlepin.pki.PKIUtility;
 import org.candlepin.pki.X509ByteExtensionWrapper;
 import org.candlepin.pki.X509ExtensionWrapper;
@@ -54,6 +55,7 @@ import java.net.URLEncoder;
 import java.security.GeneralSecurityException;
 import java.security.KeyPair;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -62,6 +64,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
  * DefaultEntitlementCertServiceAdapter
@@ -76,11 +79,11 @@ public class DefaultEntitlementCertServiceAdapter extends BaseEntitlementCertSer
     private EntitlementCurator entCurator;
     private I18n i18n;
     private Configuration config;
+    private CertificateWorkerPool workerPool;
 
     private static Logger log =
         LoggerFactory.getLogger(DefaultEntitlementCertServiceAdapter.class);
 
-    @Inject
     public DefaultEntitlementCertServiceAdapter(PKIUtility pki,
         X509ExtensionUtil extensionUtil,
         X509V3ExtensionUtil v3extensionUtil,
@@ -90,6 +93,20 @@ public class DefaultEntitlementCertServiceAdapter extends BaseEntitlementCertSer
         EntitlementCurator entCurator, I18n i18n,
         Configuration config) {
 
+        this(pki, extensionUtil, v3extensionUtil, entCertCurator, keyPairCurator, serialCurator,
+            entCurator, i18n, config, new CertificateWorkerPool(1));
+    }
+
+    @Inject
+    public DefaultEntitlementCertServiceAdapter(PKIUtility pki,
+        X509ExtensionUtil extensionUtil,
+        X509V3ExtensionUtil v3extensionUtil,
+        EntitlementCertificateCurator entCertCurator,
+        KeyPairCurator keyPairCurator,
+        CertificateSerialCurator serialCurator,
+        EntitlementCurator entCurator, I18n i18n,
+        Configuration config, CertificateWorkerPool workerPool) {
+
         this.pki = pki;
         this.extensionUtil = extensionUtil;
         this.v3extensionUtil = v3extensionUtil;
@@ -99,6 +116,7 @@ public class DefaultEntitlementCertServiceAdapter extends BaseEntitlementCertSer
         this.entCurator = entCurator;
         this.i18n = i18n;
         this.config = config;
+        this.workerPool = workerPool;
     }
 
 
@@ -142,6 +160,13 @@ public class DefaultEntitlementCertServiceAdapter extends BaseEntitlementCertSer
         return generateEntitlementCerts(consumer, entitlements, products, true);
     }
 
+    @Override
+    public Map<String, EntitlementCertificate> generateEntitlementCerts(
+        Map<String, Entitlement> entitlements, Map<String, Product> products)
+        throws GeneralSecurityException, IOException {
+        return generateEntitlementCerts(null, entitlements, products, false);
+    }
+
     private Set<Product> getDerivedProductsForDistributor(Entitlement ent) {
         Set<Product> derivedProducts = new HashSet<Product>();
         boolean derived = ent.getPool().hasAttribute(Pool.Attributes.DERIVED_POOL);
@@ -348,6 +373,8 @@ public class DefaultEntitlementCertServiceAdapter extends BaseEntitlementCertSer
     }
 
     /**
+     * @param consumer the consumer whose key pair is used, or null to use the key pair
+     *        of each entitlement's own consumer
      * @param entitlements a map of entitlements indexed by pool ids to generate
      *        the certs of
      * @param productMap a map of respective products indexed by pool id
@@ -359,89 +386,172 @@ public class DefaultEntitlementCertServiceAdapter extends BaseEntitlementCertSer
     private Map<String, EntitlementCertificate> generateEntitlementCerts(Consumer consumer,
         Map<String, Entitlement> entitlements, Map<String, Product> productMap, boolean thisIsUeberCert)
         throws GeneralSecurityException, IOException {
-        log.info("Generating entitlement cert for entitlements");
-        KeyPair keyPair = keyPairCurator.getConsumerKeyPair(consumer);
-        byte[] pemEncodedKeyPair = pki.getPemEncoded(keyPair.getPrivate());
+        log.info("Generating entitlement certs for {} entitlements", entitlements.size());
 
         Map<String, CertificateSerial> serialMap = new HashMap<String, CertificateSerial>();
         for (Entry<String, Entitlement> entry : entitlements.entrySet()) {
             serialMap.put(entry.getKey(), new CertificateSerial(entry.getValue().getEndDate()));
         }
 
+        // Everything touching the entitlements happens here, on the transaction's
+        // thread. The builders only encode and sign what was prepared for them.
+        Map<Consumer, KeyPair> keyPairs = new HashMap<Consumer, KeyPair>();
+        List<String> keys = new ArrayList<String>(entitlements.size());
+        List<CertificateBuilder> builders = new ArrayList<CertificateBuilder>(entitlements.size());
+
+        for (Entry<String, Entitlement> entry : entitlements.entrySet()) {
+            Entitlement entitlement = entry.getValue();
+            Consumer keyConsumer = consumer != null ? consumer : entitlement.getConsumer();
+            KeyPair keyPair = keyPairs.get(keyConsumer);
+            if (keyPair == null) {
+                keyPair = keyPairCurator.getConsumerKeyPair(keyConsumer);
+                keyPairs.put(keyConsumer, keyPair);
+            }
+
+            keys.add(entry.getKey());
+            builders.add(prepareCertificate(entitlement, productMap.get(entry.getKey()),
+                serialMap.get(entry.getKey()), keyPair, thisIsUeberCert));
+        }
+
         // We need the sequence generated id before we create the
-        // EntitlementCertificate, otherwise we could have used cascading create
+        // EntitlementCertificate, otherwise we could have used cascading create.
+        // Serials are only stored once every certificate has been prepared, so a
+        // certificate found to be too large does not leave them behind.
         serialCurator.saveOrUpdateAll(serialMap);
+        for (int i = 0; i < keys.size(); i++) {
+            builders.get(i).serial = serialMap.get(keys.get(i));
+        }
 
+        List<String> pems = workerPool.invokeAll(builders);
+
+        Map<KeyPair, byte[]> pemEncodedKeyPairs = new HashMap<KeyPair, byte[]>();
         Map<String, EntitlementCertificate> entitlementCerts = new HashMap<String, EntitlementCertificate>();
 
-        for (Entry<String, Entitlement> entry : entitlements.entrySet()) {
-            Entitlement entitlement = entry.getValue();
-            CertificateSerial serial = serialMap.get(entry.getKey());
-            Product product = productMap.get(entry.getKey());
+        for (int i = 0; i < keys.size(); i++) {
+            CertificateBuilder builder = builders.get(i);
+            byte[] pemEncodedKeyPair = pemEncodedKeyPairs.get(builder.keyPair);
+            if (pemEncodedKeyPair == null) {
+                pemEncodedKeyPair = pki.getPemEncoded(builder.keyPair.getPrivate());
+                pemEncodedKeyPairs.put(builder.keyPair, pemEncodedKeyPair);
+            }
 
-            log.info("Generating entitlement cert for entitlement: {}", entitlement);
+            EntitlementCertificate cert = new EntitlementCertificate();
+            cert.setSerial(builder.serial);
+            cert.setKeyAsBytes(pemEncodedKeyPair);
+            cert.setCert(pems.get(i));
+            cert.setEntitlement(builder.entitlement);
 
-            Set<Product> products = new HashSet<Product>(entitlement.getPool().getProvidedProducts());
+            if (log.isDebugEnabled()) {
+                log.debug("Generated cert serial number: {}", builder.serial.getId());
+                log.debug("Key: {}", cert.getKey());
+                log.debug("Cert: {}", cert.getCert());
+            }
 
-            // If creating a certificate for a distributor, we need
-            // to add any derived products as well so that their content
-            // is available in the upstream certificate.
-            products.addAll(getDerivedProductsForDistributor(entitlement));
-            products.add(product);
+            builder.entitlement.getCertificates().add(cert);
+            entitlementCerts.put(keys.get(i), cert);
+        }
 
-            Map<String, EnvironmentContent> promotedContent = getPromotedContent(entitlement);
-            String contentPrefix = getContentPrefix(entitlement, !thisIsUeberCert);
+        log.info("Persisting certs.");
+        entCertCurator.saveOrUpdateAll(entitlementCerts.values(), false);
 
-            log.info("Creating X509 cert for product: {}", product);
-            log.debug("Provided products: {}", products);
-            List<org.candlepin.model.dto.Product> productModels = v3extensionUtil.createProducts(product,
-                products, contentPrefix, promotedContent, entitlement.getConsumer(), entitlement);
+        return entitlementCerts;
+    }
 
-            X509Certificate x509Cert = createX509Certificate(entitlement, product, products, productModels,
-                BigInteger.valueOf(serial.getId()), keyPair, !thisIsUeberCert);
+    /*
+     * Gathers everything needed to build the certificate of one entitlement, so the
+     * returned builder can run on any thread.
+     */
+    private CertificateBuilder prepareCertificate(Entitlement entitlement, Product product,
+        CertificateSerial serial, KeyPair keyPair, boolean thisIsUeberCert) throws IOException {
 
-            EntitlementCertificate cert = new EntitlementCertificate();
-            cert.setSerial(serial);
-            cert.setKeyAsBytes(pemEncodedKeyPair);
+        log.info("Generating entitlement cert for entitlement: {}", entitlement);
 
-            log.info("Getting PEM encoded cert.");
-            String pem = new String(this.pki.getPemEncoded(x509Cert));
+        Set<Product> products = new HashSet<Product>(entitlement.getPool().getProvidedProducts());
 
-            if (shouldGenerateV3(entitlement)) {
-                log.debug("Generating v3 entitlement data");
+        // If creating a certificate for a distributor, we need
+        // to add any derived products as well so that their content
+        // is available in the upstream certificate.
+        products.addAll(getDerivedProductsForDistributor(entitlement));
+        products.add(product);
 
-                byte[] payloadBytes = v3extensionUtil.createEntitlementDataPayload(product, productModels,
-                        entitlement, contentPrefix, promotedContent);
+        Map<String, EnvironmentContent> promotedContent = getPromotedContent(entitlement);
+        String contentPrefix = getContentPrefix(entitlement, !thisIsUeberCert);
 
-                String payload = "-----BEGIN ENTITLEMENT DATA-----\n";
-                payload += Util.toBase64(payloadBytes);
-                payload += "-----END ENTITLEMENT DATA-----\n";
+        log.info("Creating X509 cert for product: {}", product);
+        log.debug("Provided products: {}", products);
+        List<org.candlepin.model.dto.Product> productModels = v3extensionUtil.createProducts(product,
+            products, contentPrefix, promotedContent, entitlement.getConsumer(), entitlement);
+
+        CertificateBuilder builder = new CertificateBuilder();
+        builder.entitlement = entitlement;
+        builder.serial = serial;
+        builder.keyPair = keyPair;
+
+        boolean v3 = shouldGenerateV3(entitlement);
+        if (v3) {
+            builder.extensions = prepareV3Extensions(entitlement, contentPrefix, promotedContent);
+            builder.content = v3extensionUtil.createEntitlementBodyContent(product, productModels,
+                entitlement, contentPrefix, promotedContent);
+        }
+        else {
+            builder.extensions = prepareV1Extensions(products, entitlement, contentPrefix,
+                promotedContent);
+        }
+
+        setupEntitlementEndDate(entitlement);
+        if (v3) {
+            builder.payload = v3extensionUtil.createEntitlementBody(product, productModels,
+                entitlement, contentPrefix, promotedContent);
+        }
+        builder.dn = createDN(entitlement);
+        builder.startDate = entitlement.getStartDate();
+        builder.endDate = entitlement.getEndDate();
+
+        return builder;
+    }
+
+    /**
+     * Builds, signs and PEM encodes one entitlement certificate from prepared data.
+     */
+    private class CertificateBuilder implements Callable<String> {
+        private Entitlement entitlement;
+        private CertificateSerial serial;
+        private KeyPair keyPair;
+        private String dn;
+        private Date startDate;
+        private Date endDate;
+        private Set<X509ExtensionWrapper> extensions;
+        private EntitlementBody content;
+        private EntitlementBody payload;
+
+        @Override
+        public String call() throws GeneralSecurityException, IOException {
+            Set<X509ByteExtensionWrapper> byteExtensions = content != null ?
+                v3extensionUtil.getByteExtensions(content) : new LinkedHashSet<X509ByteExtensionWrapper>();
+
+            X509Certificate x509Cert = pki.createX509Certificate(dn, extensions, byteExtensions,
+                startDate, endDate, keyPair, BigInteger.valueOf(serial.getId()), null);
+
+            String pem = new String(pki.getPemEncoded(x509Cert));
+
+            if (payload != null) {
+                log.debug("Generating v3 entitlement data");
+                byte[] payloadBytes = v3extensionUtil.createEntitlementDataPayload(payload);
+
+                String payloadPem = "-----BEGIN ENTITLEMENT DATA-----\n";
+                payloadPem += Util.toBase64(payloadBytes);
+                payloadPem += "-----END ENTITLEMENT DATA-----\n";
 
                 byte[] bytes = pki.getSHA256WithRSAHash(new ByteArrayInputStream(payloadBytes));
                 String signature = "-----BEGIN RSA SIGNATURE-----\n";
                 signature += Util.toBase64(bytes);
                 signature += "-----END RSA SIGNATURE-----\n";
 
-                pem += payload + signature;
+                pem += payloadPem + signature;
             }
 
-            cert.setCert(pem);
-            cert.setEntitlement(entitlement);
-
-            if (log.isDebugEnabled()) {
-                log.debug("Generated cert serial number: {}", serial.getId());
-                log.debug("Key: {}", cert.getKey());
-                log.debug("Cert: {}", cert.getCert());
-            }
-
-            entitlement.getCertificates().add(cert);
-            entitlementCerts.put(entry.getKey(), cert);
+            return pem;
         }
-
-        log.info("Persisting certs.");
-        entCertCurator.saveOrUpdateAll(entitlementCerts.values(), false);
-
-        return entitlementCerts;
     }
 
     private String createDN(Entitlement ent) {
@@ -16,6 +16,7 @@ package org.candlepin.sync;
 
 import org.candlepin.audit.EventSink;
 import org.candlepin.common.config.Configuration;
+import org.candlepin.common.util.VersionUtil;
 import org.candlepin.controller.PoolManager;
 import org.candlepin.controller.Refresher;
 import org.candlepin.model.Cdn;
@@ -36,6 +37,7 @@ import org.candlepin.model.Product;
 import org.candlepin.model.ProductCurator;
 import org.candlepin.model.dto.Subscription;
 import org.candlepin.pki.PKIUtility;
+import org.candlepin.pki.SignatureVerifier;
 import org.candlepin.service.SubscriptionServiceAdapter;
 import org.candlepin.service.impl.ImportSubscriptionServiceAdapter;
 
@@ -43,20 +45,28 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.NullOutputStream;
 import org.apache.commons.lang.StringUtils;
 import org.hibernate.exception.ConstraintViolationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xnap.commons.i18n.I18n;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -77,6 +87,8 @@ import javax.persistence.PersistenceException;
 public class Importer {
     private static Logger log = LoggerFactory.getLogger(Importer.class);
 
+    private static final int BUFFER_SIZE = 8192;
+
     /**
      *
      * files we use to perform import
@@ -238,17 +250,19 @@ public class Importer {
         Map<String, Object> result = new HashMap<String, Object>();
         try {
             tmpDir = new SyncUtils(config).makeTempDir("import");
-            extractArchive(tmpDir, exportFile);
+            ExtractedArchive extracted = extractExport(tmpDir, exportFile);
 
-            File signature = new File(tmpDir, "signature");
-            if (signature.length() == 0) {
+            if (extracted.signature == null || extracted.signature.length == 0) {
                 throw new ImportExtractionException(i18n.tr("The archive does not " +
                                           "contain the required signature file"));
             }
 
-            boolean verifiedSignature = pki.verifySHA256WithRSAHashAgainstCACerts(
-                new File(tmpDir, "consumer_export.zip"),
-                loadSignature(new File(tmpDir, "signature")));
+            if (extracted.verifier == null) {
+                throw new ImportExtractionException(i18n.tr("The archive does not contain " +
+                                           "the required consumer_export.zip file"));
+            }
+
+            boolean verifiedSignature = extracted.verifier.verify(extracted.signature);
             if (!verifiedSignature) {
                 log.warn("Archive signature check failed.");
                 if (!overrides
@@ -270,9 +284,15 @@ public class Importer {
                 }
             }
 
-            File consumerExport = new File(tmpDir, "consumer_export.zip");
-            File exportDir = extractArchive(tmpDir, consumerExport);
+            // Problems with the content are only worth reporting once we know who made it
+            if (extracted.error instanceof ImportExtractionException) {
+                throw (ImportExtractionException) extracted.error;
+            }
+            else if (extracted.error != null) {
+                throw (IOException) extracted.error;
+            }
 
+            File exportDir = new File(tmpDir, "export");
             Map<String, File> importFiles = new HashMap<String, File>();
             File[] listFiles = exportDir.listFiles();
             if (listFiles == null || listFiles.length == 0) {
@@ -287,18 +307,16 @@ public class Importer {
             File rulesFile = new File(exportDir, ImportFile.RULES_FILE.fileName());
             importFiles.put(ImportFile.RULES_FILE.fileName(), rulesFile);
 
-            List<Subscription> importSubs = importObjects(owner, importFiles, overrides);
+            Set<String> unchangedSubs = new HashSet<String>();
+            List<Subscription> importSubs = importObjects(owner, importFiles, overrides,
+                unchangedSubs);
             Meta m = mapper.readValue(importFiles.get(ImportFile.META.fileName()),
                 Meta.class);
             result.put("subscriptions", importSubs);
+            result.put("unchangedSubscriptions", unchangedSubs);
             result.put("meta", m);
             return result;
         }
-        catch (FileNotFoundException fnfe) {
-            log.error("Archive file does not contain consumer_export.zip", fnfe);
-            throw new ImportExtractionException(i18n.tr("The archive does not contain " +
-                                           "the required consumer_export.zip file"));
-        }
         catch (ConstraintViolationException cve) {
             log.error("Failed to import archive", cve);
             throw new ImporterException(i18n.tr("Failed to import archive"),
@@ -335,7 +353,7 @@ public class Importer {
         RuntimeException.class, ImportConflictException.class})
     // WARNING: Keep this method public, otherwise @Transactional is ignored:
     List<Subscription> importObjects(Owner owner, Map<String, File> importFiles,
-        ConflictOverrides overrides)
+        ConflictOverrides overrides, Set<String> unchangedSubs)
         throws IOException, ImporterException {
 
         log.debug("Importing objects for owner: {}", owner);
@@ -451,6 +469,7 @@ public class Importer {
         Refresher refresher = poolManager.getRefresher(adapter);
         refresher.add(owner);
         refresher.run();
+        unchangedSubs.addAll(refresher.getUnchangedSubscriptionIds());
 
         return importSubs;
     }
@@ -595,14 +614,17 @@ public class Importer {
             productsById.put(product.getId(), product);
         }
 
+        String version = VersionUtil.getVersionString();
         List<Subscription> subscriptionsToImport = new ArrayList<Subscription>();
         for (File entitlement : entitlements) {
             Reader reader = null;
             try {
                 log.debug("Import entitlement: " + entitlement.getName());
                 reader = new FileReader(entitlement);
-                subscriptionsToImport.add(importer.importObject(mapper, reader, owner,
-                    productsById, consumer, meta));
+                Subscription subscription = importer.importObject(mapper, reader, owner,
+                    productsById, consumer, meta);
+                subscription.setImportHash(importHash(entitlement, consumer, meta, version));
+                subscriptionsToImport.add(subscription);
             }
             finally {
                 if (reader != null) {
@@ -614,96 +636,146 @@ public class Importer {
         return subscriptionsToImport;
     }
 
+    /*
+     * Everything a subscription is built from, apart from the products it references:
+     * those are compared on their own when the pools are refreshed. The version of
+     * this server is part of it, so pools are rebuilt once after an upgrade.
+     */
+    private String importHash(File entitlement, ConsumerDto consumer, Meta meta, String version)
+        throws IOException {
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        digest.update(FileUtils.readFileToByteArray(entitlement));
+        for (String value : new String[] { consumer.getUuid(), meta.getCdnLabel(), version }) {
+            digest.update((byte) 0);
+            if (value != null) {
+                digest.update(value.getBytes("UTF-8"));
+            }
+        }
+
+        return new String(Hex.encodeHex(digest.digest()));
+    }
+
     /**
-     * Create a tar.gz archive of the exported directory.
-     *
-     * @param exportDir Directory where Candlepin data was exported.
-     * @return File reference to the new archive tar.gz.
+     * Reads the export archive in a single pass. The consumer_export.zip it carries is
+     * extracted into the temporary directory straight from the archive, while the
+     * signature over it is checked as it goes by. Problems extracting the
+     * consumer_export.zip are held back, so the signature can be reported first.
      */
-    private File extractArchive(File tempDir, File exportFile)
-        throws IOException, ImportExtractionException {
-        log.debug("Extracting archive to: " + tempDir.getAbsolutePath());
-        byte[] buf = new byte[1024];
+    private ExtractedArchive extractExport(File tempDir, File exportFile)
+        throws IOException, ImportExtractionException, CertificateException {
 
-        ZipInputStream zipinputstream = null;
+        ExtractedArchive extracted = new ExtractedArchive();
+        ZipInputStream archive = new ZipInputStream(
+            new BufferedInputStream(new FileInputStream(exportFile)));
 
         try {
-            zipinputstream = new ZipInputStream(new FileInputStream(exportFile));
-            ZipEntry zipentry = zipinputstream.getNextEntry();
-
-            if (zipentry == null) {
+            ZipEntry entry = archive.getNextEntry();
+            if (entry == null) {
                 throw new ImportExtractionException(i18n.tr("The archive {0} is not " +
                     "a properly compressed file or is empty", exportFile.getName()));
             }
 
-            while (zipentry != null) {
-                //for each entry to be extracted
-                String entryName = zipentry.getName();
-                if (log.isDebugEnabled()) {
-                    log.debug("entryname " + entryName);
-                }
-                File newFile = new File(entryName);
-                String directory = newFile.getParent();
-                if (directory != null) {
-                    new File(tempDir, directory).mkdirs();
+            while (entry != null) {
+                if (SignedArchiveWriter.SIGNATURE.equals(entry.getName())) {
+                    extracted.signature = IOUtils.toByteArray(archive);
                 }
+                else if (SignedArchiveWriter.CONSUMER_EXPORT.equals(entry.getName())) {
+                    extracted.verifier = pki.createCASignatureVerifier();
+                    InputStream signed = new TeeInputStream(archive, extracted.verifier);
 
-                FileOutputStream fileoutputstream = null;
-                try {
-                    fileoutputstream = new FileOutputStream(new File(tempDir, entryName));
-                    int n;
-                    while ((n = zipinputstream.read(buf, 0, 1024)) > -1) {
-                        fileoutputstream.write(buf, 0, n);
+                    try {
+                        extractArchive(tempDir, SignedArchiveWriter.CONSUMER_EXPORT, signed);
                     }
-                }
-                finally {
-                    if (fileoutputstream != null) {
-                        fileoutputstream.close();
+                    catch (ImportExtractionException e) {
+                        extracted.error = e;
                     }
+                    catch (IOException e) {
+                        extracted.error = e;
+                    }
+
+                    // The verifier has to see the rest of the zip as well
+                    IOUtils.copy(signed, new NullOutputStream());
+                }
+                else {
+                    log.debug("Skipping extra file in archive: {}", entry.getName());
                 }
 
-                zipinputstream.closeEntry();
-                zipentry = zipinputstream.getNextEntry();
+                archive.closeEntry();
+                entry = archive.getNextEntry();
             }
         }
         finally {
-            if (zipinputstream != null) {
-                zipinputstream.close();
-            }
+            archive.close();
         }
 
-        return new File(tempDir.getAbsolutePath(), "export");
+        return extracted;
     }
 
-    private byte[] loadSignature(File signatureFile) throws IOException {
-        FileInputStream signature = null;
-        // signature is never going to be a huge file, therefore cast is a-okay
-        byte[] signatureBytes = new byte[(int) signatureFile.length()];
+    /**
+     * Extracts a zip read from the given stream into the temporary directory. The
+     * stream is left open.
+     */
+    private void extractArchive(File tempDir, String name, InputStream input)
+        throws IOException, ImportExtractionException {
+        log.debug("Extracting archive to: " + tempDir.getAbsolutePath());
+        byte[] buf = new byte[BUFFER_SIZE];
 
-        try {
-            signature = new FileInputStream(signatureFile);
+        ZipInputStream zipinputstream = new ZipInputStream(input);
+        ZipEntry zipentry = zipinputstream.getNextEntry();
 
-            int offset = 0;
-            int numRead = 0;
-            while (offset < signatureBytes.length && numRead >= 0) {
-                numRead = signature.read(signatureBytes, offset,
-                    signatureBytes.length - offset);
-                offset += numRead;
-            }
-            return signatureBytes;
+        if (zipentry == null) {
+            throw new ImportExtractionException(i18n.tr("The archive {0} is not " +
+                "a properly compressed file or is empty", name));
         }
-        finally {
-            if (signature != null) {
-                try {
-                    signature.close();
+
+        while (zipentry != null) {
+            //for each entry to be extracted
+            String entryName = zipentry.getName();
+            if (log.isDebugEnabled()) {
+                log.debug("entryname " + entryName);
+            }
+            File newFile = new File(entryName);
+            String directory = newFile.getParent();
+            if (directory != null) {
+                new File(tempDir, directory).mkdirs();
+            }
+
+            FileOutputStream fileoutputstream = null;
+            try {
+                fileoutputstream = new FileOutputStream(new File(tempDir, entryName));
+                int n;
+                while ((n = zipinputstream.read(buf, 0, BUFFER_SIZE)) > -1) {
+                    fileoutputstream.write(buf, 0, n);
                 }
-                catch (IOException e) {
-                    // nothing we can do about this
+            }
+            finally {
+                if (fileoutputstream != null) {
+                    fileoutputstream.close();
                 }
             }
+
+            zipinputstream.closeEntry();
+            zipentry = zipinputstream.getNextEntry();
         }
     }
 
+    /**
+     * What was found reading an export archive.
+     */
+    private static class ExtractedArchive {
+        private byte[] signature;
+        private SignatureVerifier verifier;
+        private Exception error;
+    }
+
     public void importDistributorVersions(File[] versionFiles) throws IOException {
         DistributorVersionImporter importer =
             new DistributorVersionImporter(distVerCurator);
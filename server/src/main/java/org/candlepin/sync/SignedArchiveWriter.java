@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.sync;
+
+import org.candlepin.pki.PKIUtility;
+import org.candlepin.pki.SignatureGenerator;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.io.output.TeeOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * SignedArchiveWriter
+ *
+ * Writes an export archive in a single pass. Entries go straight into the inner
+ * consumer_export.zip, which is itself written straight into the outer archive and
+ * signed as it is written. Once the inner zip is complete its signature follows it
+ * into the outer archive, which is the layout the importer has always read.
+ */
+class SignedArchiveWriter {
+    private static Logger log = LoggerFactory.getLogger(SignedArchiveWriter.class);
+
+    static final String CONSUMER_EXPORT = "consumer_export.zip";
+    static final String SIGNATURE = "signature";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String ENCODING = "UTF-8";
+
+    private final File file;
+    private final ZipOutputStream outer;
+    private final SignatureGenerator signature;
+    private final ZipOutputStream inner;
+
+    /**
+     * @param pki used to sign the inner zip
+     * @param file the archive to write
+     * @param comment the comment of the outer archive
+     * @param innerComment the comment of the inner zip
+     * @throws IOException if the archive could not be created
+     */
+    SignedArchiveWriter(PKIUtility pki, File file, String comment, String innerComment)
+        throws IOException {
+
+        this.file = file;
+        this.signature = pki.createCASignatureGenerator();
+        this.outer = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        this.outer.setComment(comment);
+        this.outer.putNextEntry(new ZipEntry(CONSUMER_EXPORT));
+
+        this.inner = new ZipOutputStream(new BufferedOutputStream(
+            new TeeOutputStream(new CloseShieldOutputStream(this.outer), this.signature),
+            BUFFER_SIZE));
+        this.inner.setComment(innerComment);
+    }
+
+    /**
+     * Starts a new entry in the inner zip. The entry is complete once the returned
+     * writer is closed, which has to happen before the next entry is started.
+     *
+     * @param name the path of the entry
+     * @return a writer for the content of the entry
+     * @throws IOException if the entry could not be started
+     */
+    Writer newEntry(String name) throws IOException {
+        log.debug("Adding file to archive: {}", name);
+        inner.putNextEntry(new ZipEntry(name));
+        return new OutputStreamWriter(new CloseShieldOutputStream(inner), ENCODING) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                inner.closeEntry();
+            }
+        };
+    }
+
+    void addEntry(String name, InputStream content) throws IOException {
+        log.debug("Adding file to archive: {}", name);
+        inner.putNextEntry(new ZipEntry(name));
+        IOUtils.copy(content, inner);
+        inner.closeEntry();
+    }
+
+    /**
+     * Completes the inner zip, signs it and completes the archive.
+     *
+     * @return the archive written
+     * @throws IOException if the archive could not be written or signed
+     */
+    File finish() throws IOException {
+        try {
+            inner.close();
+
+            byte[] hash = signature.sign();
+            log.debug("Adding signature to archive.");
+            outer.closeEntry();
+            outer.putNextEntry(new ZipEntry(SIGNATURE));
+            outer.write(hash, 0, hash.length);
+            outer.closeEntry();
+            outer.close();
+            return file;
+        }
+        finally {
+            abort();
+        }
+    }
+
+    /**
+     * Releases the archive, leaving it incomplete if it has not been finished.
+     */
+    void abort() {
+        IOUtils.closeQuietly(outer);
+    }
+}
@@ -0,0 +1,246 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.util;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.common.exceptions.IseException;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.pki.PKIUtility;
+import org.candlepin.pki.X509CRLEntryWrapper;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * CrlCache
+ *
+ * Holds the last CRL written to disk as an immutable snapshot in memory, so requests
+ * for the CRL neither read the file nor race with a sync rewriting it. Every change
+ * to the CRL file goes through here and replaces the snapshot once the file is
+ * written. Requests sync the file with the database only once the snapshot is older
+ * than the configured maximum age, and only one of them at a time; the others are
+ * served the previous snapshot in the meantime.
+ *
+ * A snapshot is last modified as of the thisUpdate of its CRL, so every node serving
+ * the same CRL hands out the same validators.
+ */
+@Singleton
+public class CrlCache {
+    private static Logger log = LoggerFactory.getLogger(CrlCache.class);
+
+    private final Configuration config;
+    private final CrlFileUtil crlFileUtil;
+    private final PKIUtility pkiUtility;
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile Snapshot snapshot;
+
+    @Inject
+    public CrlCache(Configuration config, CrlFileUtil crlFileUtil, PKIUtility pkiUtility) {
+        this.config = config;
+        this.crlFileUtil = crlFileUtil;
+        this.pkiUtility = pkiUtility;
+    }
+
+    /**
+     * Returns the current CRL, syncing it with the database first if the snapshot held
+     * is older than the configured maximum age and no other sync is under way.
+     *
+     * @return the current CRL snapshot
+     * @throws IOException if the CRL file could not be written or read
+     */
+    public Snapshot get() throws IOException {
+        Snapshot current = this.snapshot;
+        if (current != null && !isStale(current)) {
+            return current;
+        }
+
+        if (current == null) {
+            this.lock.lock();
+        }
+        else if (!this.lock.tryLock()) {
+            return current;
+        }
+
+        try {
+            current = this.snapshot;
+            return current != null && !isStale(current) ? current : refresh();
+        }
+        finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Syncs the CRL file with the database and takes a new snapshot of it.
+     *
+     * @return the new CRL snapshot
+     * @throws IOException if the CRL file could not be written or read
+     */
+    public Snapshot refresh() throws IOException {
+        this.lock.lock();
+        try {
+            File file = getCrlFile();
+            this.crlFileUtil.syncCRLWithDB(file);
+            return load(file);
+        }
+        finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the given serials from the CRL file and takes a new snapshot of it.
+     *
+     * @param serials the serials to remove
+     * @return the new CRL snapshot
+     * @throws IOException if the CRL file could not be written or read
+     */
+    public Snapshot unrevoke(Collection<BigInteger> serials) throws IOException {
+        this.lock.lock();
+        try {
+            File file = getCrlFile();
+            this.crlFileUtil.updateCRLFile(file, null, serials);
+            return load(file);
+        }
+        finally {
+            this.lock.unlock();
+        }
+    }
+
+    private Snapshot load(File file) throws IOException {
+        // Create an empty CRL if we didn't have anything to write
+        if (!file.exists() || file.length() < 1) {
+            FileOutputStream output = new FileOutputStream(file);
+            try {
+                pkiUtility.writePemEncoded(
+                    pkiUtility.createX509CRL(new LinkedList<X509CRLEntryWrapper>(), BigInteger.ZERO),
+                    output
+                );
+            }
+            finally {
+                IOUtils.closeQuietly(output);
+            }
+        }
+
+        byte[] content = FileUtils.readFileToByteArray(file);
+        Snapshot previous = this.snapshot;
+
+        if (previous != null && Arrays.equals(previous.content, content)) {
+            // Unchanged, keep the validators clients already hold
+            this.snapshot = new Snapshot(previous.content, previous.lastModified, previous.etag);
+        }
+        else {
+            this.snapshot = new Snapshot(content, thisUpdate(content), etag(content));
+            log.debug("New CRL snapshot {} of {} bytes", this.snapshot.etag, content.length);
+        }
+
+        return this.snapshot;
+    }
+
+    private boolean isStale(Snapshot current) {
+        long maxAge = TimeUnit.SECONDS.toMillis(config.getInt(ConfigProperties.CRL_MAX_AGE));
+        return System.currentTimeMillis() - current.taken >= maxAge;
+    }
+
+    private File getCrlFile() {
+        String filePath = config.getString(ConfigProperties.CRL_FILE_PATH);
+
+        if (filePath == null) {
+            throw new IseException("CRL file path not defined in config file");
+        }
+
+        return new File(filePath);
+    }
+
+    /*
+     * The thisUpdate of the CRL, or null if the CRL cannot be read, in which case only
+     * the entity tag validates it.
+     */
+    private static Date thisUpdate(byte[] content) {
+        try {
+            X509CRL crl = (X509CRL) CertificateFactory.getInstance("X.509")
+                .generateCRL(new ByteArrayInputStream(content));
+            // HTTP dates carry whole seconds only
+            return new Date(crl.getThisUpdate().getTime() / 1000 * 1000);
+        }
+        catch (GeneralSecurityException e) {
+            log.warn("Unable to read thisUpdate from the CRL", e);
+            return null;
+        }
+    }
+
+    /*
+     * Derived from the content alone, so nodes sharing a CRL hand out the same tag.
+     */
+    private static String etag(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(content.length);
+    }
+
+    /**
+     * An immutable copy of the CRL file as it was at one point in time.
+     */
+    public static final class Snapshot {
+        private final byte[] content;
+        private final Date lastModified;
+        private final String etag;
+        private final long taken;
+
+        private Snapshot(byte[] content, Date lastModified, String etag) {
+            this.content = content;
+            this.lastModified = lastModified;
+            this.etag = etag;
+            this.taken = System.currentTimeMillis();
+        }
+
+        public InputStream openStream() {
+            return new ByteArrayInputStream(content);
+        }
+
+        /**
+         * @return the thisUpdate of the CRL, or null if it could not be read
+         */
+        public Date getLastModified() {
+            return lastModified == null ? null : new Date(lastModified.getTime());
+        }
+
+        public String getETag() {
+            return etag;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics
+ *
+ * A very small, JVM wide registry of named counters, timers and gauges used to
+ * expose internal performance statistics (cache hit rates, pool depths, batch
+ * sizes...). Metrics are looked up by name in the same way loggers are, so they
+ * can be held in static fields without having to be injected:
+ *
+ * <pre>
+ *     private static final Metrics.Counter HITS = Metrics.counter("jsrunner.pool.hit");
+ * </pre>
+ *
+ * A snapshot of every registered metric is available through
+ * {@link #snapshot()} and is published by the admin resource.
+ */
+public final class Metrics {
+
+    private static final ConcurrentMap<String, Object> REGISTRY =
+        new ConcurrentHashMap<String, Object>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Gauge - a metric whose value is computed on demand.
+     */
+    public interface Gauge {
+        Number getValue();
+    }
+
+    /**
+     * Counter - a monotonically increasing (or explicitly adjusted) count.
+     */
+    public static class Counter {
+        private final AtomicLong count = new AtomicLong();
+
+        public void inc() {
+            count.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            count.addAndGet(delta);
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        Object snapshot() {
+            return count.get();
+        }
+    }
+
+    /**
+     * Timer - records the number of timed events along with their total and
+     * maximum duration. Durations are recorded in nanoseconds and reported in
+     * milliseconds.
+     */
+    public static class Timer {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        public void update(long nanos) {
+            count.incrementAndGet();
+            total.addAndGet(nanos);
+
+            long current = max.get();
+            while (nanos > current && !max.compareAndSet(current, nanos)) {
+                current = max.get();
+            }
+        }
+
+        /**
+         * Records the time elapsed since the given {@link System#nanoTime()} value.
+         *
+         * @param startNanos the value of System.nanoTime() when the event started
+         */
+        public void updateSince(long startNanos) {
+            update(System.nanoTime() - startNanos);
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getTotalNanos() {
+            return total.get();
+        }
+
+        public long getMaxNanos() {
+            return max.get();
+        }
+
+        Object snapshot() {
+            Map<String, Object> values = new TreeMap<String, Object>();
+            long events = count.get();
+            long nanos = total.get();
+
+            values.put("count", events);
+            values.put("total_ms", TimeUnit.NANOSECONDS.toMillis(nanos));
+            values.put("mean_ms", events > 0 ? (nanos / events) / 1000000.0 : 0.0);
+            values.put("max_ms", max.get() / 1000000.0);
+            return values;
+        }
+    }
+
+    public static Counter counter(String name) {
+        return register(name, new Counter(), Counter.class);
+    }
+
+    public static Timer timer(String name) {
+        return register(name, new Timer(), Timer.class);
+    }
+
+    /**
+     * Registers a gauge under the given name. Registering a gauge replaces any
+     * gauge previously registered with the same name, so components which are
+     * recreated (for instance on rules recompilation) always report their
+     * current state.
+     *
+     * @param name the name of the gauge
+     * @param gauge the gauge to register
+     * @return the registered gauge
+     */
+    public static Gauge gauge(String name, Gauge gauge) {
+        Object existing = REGISTRY.put(name, gauge);
+        if (existing != null && !(existing instanceof Gauge)) {
+            REGISTRY.put(name, existing);
+            throw new IllegalArgumentException("Metric " + name + " is not a gauge");
+        }
+        return gauge;
+    }
+
+    /**
+     * Removes the metric registered under the given name, if there is one. A metric
+     * registered under that name afterwards starts afresh.
+     *
+     * @param name the name of the metric
+     */
+    public static void remove(String name) {
+        REGISTRY.remove(name);
+    }
+
+    /**
+     * Returns a point in time view of every registered metric, keyed and sorted
+     * by metric name.
+     *
+     * @return a map of metric names to their current values
+     */
+    public static Map<String, Object> snapshot() {
+        Map<String, Object> values = new TreeMap<String, Object>();
+        for (Map.Entry<String, Object> entry : REGISTRY.entrySet()) {
+            Object metric = entry.getValue();
+            if (metric instanceof Counter) {
+                values.put(entry.getKey(), ((Counter) metric).snapshot());
+            }
+            else if (metric instanceof Timer) {
+                values.put(entry.getKey(), ((Timer) metric).snapshot());
+            }
+            else if (metric instanceof Gauge) {
+                values.put(entry.getKey(), ((Gauge) metric).getValue());
+            }
+        }
+        return values;
+    }
+
+    private static <T> T register(String name, T metric, Class<T> type) {
+        Object existing = REGISTRY.putIfAbsent(name, metric);
+        if (existing == null) {
+            return metric;
+        }
+        if (!type.isInstance(existing)) {
+            throw new IllegalArgumentException("Metric " + name + " is not a " +
+                type.getSimpleName().toLowerCase());
+        }
+        return type.cast(existing);
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.util;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.dto.Content;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.util.List;
+
+/**
+ * V3ContentCache
+ *
+ * Caches the encoded content section of v3 entitlement certificates (the path tree
+ * and its Huffman dictionaries). The encoding only depends on the ordered content
+ * paths, so entitlements to the same products with the same prefix and environment
+ * share a single entry, whatever consumer or pool they belong to. Cached values are
+ * shared and must not be modified.
+ */
+@Singleton
+public class V3ContentCache {
+
+    private static final Metrics.Counter HITS = Metrics.counter("entcert.content_cache.hit");
+    private static final Metrics.Counter MISSES = Metrics.counter("entcert.content_cache.miss");
+
+    private final Cache<String, byte[]> cache;
+
+    @Inject
+    public V3ContentCache(Configuration config) {
+        this(config.getLong(ConfigProperties.ENTCERT_CONTENT_CACHE_MAX_BYTES));
+    }
+
+    /**
+     * @param maxBytes the maximum size of the encoded sections kept, 0 disables caching
+     */
+    public V3ContentCache(long maxBytes) {
+        this.cache = maxBytes > 0 ?
+            CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher(new Weigher<String, byte[]>() {
+                    public int weigh(String key, byte[] value) {
+                        // Sections range from a few bytes to tens of kilobytes, so
+                        // weigh them by size rather than counting entries
+                        return key.length() + value.length;
+                    }
+                })
+                .<String, byte[]>build() : null;
+    }
+
+    /**
+     * Computes the key of the content section built from the given content.
+     *
+     * @param contents the content sets, in certificate order
+     * @return the key identifying the encoded section
+     */
+    public String getKey(List<Content> contents) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        for (Content content : contents) {
+            hasher.putString(content.getPath());
+            hasher.putChar('\n');
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * @param key the key of the section, see {@link #getKey(List)}
+     * @return the encoded section, or null if it is not cached
+     */
+    public byte[] get(String key) {
+        if (cache == null) {
+            return null;
+        }
+
+        byte[] value = cache.getIfPresent(key);
+        if (value != null) {
+            HITS.inc();
+        }
+        else {
+            MISSES.inc();
+        }
+        return value;
+    }
+
+    public void put(String key, byte[] value) {
+        if (cache != null) {
+            cache.put(key, value);
+        }
+    }
+}
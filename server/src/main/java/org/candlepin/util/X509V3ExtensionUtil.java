@@ -55,8 +55,10 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.Inflater;
@@ -70,18 +72,26 @@ public class X509V3ExtensionUtil extends X509Util {
     private static Logger log = LoggerFactory.getLogger(X509V3ExtensionUtil.class);
     private Configuration config;
     private EntitlementCurator entCurator;
+    private V3ContentCache contentCache;
     private String thisVersion = "3.2";
 
-    private long pathNodeId = 0;
-    private long huffNodeId = 0;
+    // Shared by every tree this instance builds, certificates may be built concurrently
+    private final AtomicLong pathNodeId = new AtomicLong();
+    private final AtomicLong huffNodeId = new AtomicLong();
     private static final Object END_NODE = new Object();
     private static boolean treeDebug = false;
 
-    @Inject
     public X509V3ExtensionUtil(Configuration config, EntitlementCurator entCurator) {
+        this(config, entCurator, new V3ContentCache(0));
+    }
+
+    @Inject
+    public X509V3ExtensionUtil(Configuration config, EntitlementCurator entCurator,
+        V3ContentCache contentCache) {
         // Output everything in UTC
         this.config = config;
         this.entCurator = entCurator;
+        this.contentCache = contentCache;
     }
 
     public Set<X509ExtensionWrapper> getExtensions(Entitlement ent,
@@ -100,11 +110,22 @@ public class X509V3ExtensionUtil extends X509Util {
         List<org.candlepin.model.dto.Product> productModels,
         Entitlement ent, String contentPrefix,
         Map<String, EnvironmentContent> promotedContent) throws IOException {
-        Set<X509ByteExtensionWrapper> toReturn =
-            new LinkedHashSet<X509ByteExtensionWrapper>();
-
         EntitlementBody eb = createEntitlementBodyContent(sku, productModels, ent,
             contentPrefix, promotedContent);
+        return getByteExtensions(eb);
+    }
+
+    /**
+     * Builds the byte extensions from an already assembled entitlement body. This only
+     * works on the body itself, and is safe to call away from the hibernate session.
+     *
+     * @param eb entitlement body, as built by createEntitlementBodyContent
+     * @return the byte extensions for the certificate
+     * @throws IOException if the content could not be encoded
+     */
+    public Set<X509ByteExtensionWrapper> getByteExtensions(EntitlementBody eb) throws IOException {
+        Set<X509ByteExtensionWrapper> toReturn =
+            new LinkedHashSet<X509ByteExtensionWrapper>();
 
         X509ByteExtensionWrapper bodyExtension = new X509ByteExtensionWrapper(OIDUtil.REDHAT_OID + "." +
             OIDUtil.TOPLEVEL_NAMESPACES.get(OIDUtil.ENTITLEMENT_DATA_KEY), false, retreiveContentValue(eb));
@@ -121,13 +142,34 @@ public class X509V3ExtensionUtil extends X509Util {
 
         EntitlementBody map = createEntitlementBody(skuProduct, productModels, ent,
             contentPrefix, promotedContent);
+        return createEntitlementDataPayload(map);
+    }
 
-        String json = toJson(map);
+    /**
+     * Serializes and compresses an already assembled entitlement body. Like
+     * {@link #getByteExtensions(EntitlementBody)}, this does not touch any entity.
+     *
+     * @param body entitlement body, as built by createEntitlementBody
+     * @return the compressed entitlement data payload
+     * @throws IOException if the payload could not be compressed
+     */
+    public byte[] createEntitlementDataPayload(EntitlementBody body) throws IOException {
+        String json = toJson(body);
         return processPayload(json);
     }
 
     private byte[] retreiveContentValue(EntitlementBody eb) throws IOException {
         List<Content> contentList = getContentList(eb);
+        String key = contentCache.getKey(contentList);
+        byte[] value = contentCache.get(key);
+        if (value == null) {
+            value = encodeContent(contentList);
+            contentCache.put(key, value);
+        }
+        return value;
+    }
+
+    private byte[] encodeContent(List<Content> contentList) throws IOException {
         PathNode treeRoot = makePathTree(contentList, new PathNode());
         List<String> nodeStrings = orderStrings(treeRoot);
         if (nodeStrings.size() == 0) {
@@ -761,37 +803,21 @@ public class X509V3ExtensionUtil extends X509Util {
         else {
             baos.write(nodeSize);
         }
-        StringBuffer bits = new StringBuffer();
-        String endNodeLocation = findHuffPath(stringParent, END_NODE);
+        // Look every code up once, rather than searching the tries for each child
+        Map<Object, String> stringCodes = getHuffCodes(stringParent);
+        Map<Object, String> nodeCodes = getHuffCodes(pathNodeParent);
+
+        BitWriter bits = new BitWriter(baos);
+        String endNodeLocation = getHuffCode(stringCodes, END_NODE);
         for (PathNode pn : pathNodes) {
             for (NodePair np : pn.getChildren()) {
-                bits.append(findHuffPath(stringParent, np.getName()));
-                bits.append(findHuffPath(pathNodeParent, np.getConnection()));
-            }
-            bits.append(endNodeLocation);
-            while (bits.length() >= 8) {
-                int next = 0;
-                for (int i = 0; i < 8; i++) {
-                    next = (byte) next << 1;
-                    if (bits.charAt(i) == '1') {
-                        next++;
-                    }
-                }
-                baos.write(next);
-                bits.delete(0, 8);
+                bits.write(getHuffCode(stringCodes, np.getName()));
+                bits.write(getHuffCode(nodeCodes, np.getConnection()));
             }
+            bits.write(endNodeLocation);
         }
+        bits.flush();
 
-        if (bits.length() > 0) {
-            int next = 0;
-            for (int i = 0;  i < 8; i++) {
-                next = (byte) next << 1;
-                if (i < bits.length() && bits.charAt(i) == '1') {
-                    next++;
-                }
-            }
-            baos.write(next);
-        }
         byte[] result = baos.toByteArray();
         if (treeDebug) {
             ByteArrayInputStream bais = new ByteArrayInputStream(result);
@@ -813,6 +839,36 @@ public class X509V3ExtensionUtil extends X509Util {
             (byte) value};
     }
 
+    /**
+     * Builds the code of every value in the trie, the same codes findHuffPath would
+     * return for them.
+     *
+     * @param trie the Huffman trie
+     * @return the code of each value, as a string of '0' and '1'
+     */
+    public Map<Object, String> getHuffCodes(HuffNode trie) {
+        Map<Object, String> codes = new HashMap<Object, String>();
+        addHuffCodes(trie, "", codes);
+        return codes;
+    }
+
+    private void addHuffCodes(HuffNode node, String code, Map<Object, String> codes) {
+        if (node.getValue() != null) {
+            codes.put(node.getValue(), code);
+        }
+        if (node.getLeft() != null) {
+            addHuffCodes(node.getLeft(), code + "0", codes);
+        }
+        if (node.getRight() != null) {
+            addHuffCodes(node.getRight(), code + "1", codes);
+        }
+    }
+
+    private String getHuffCode(Map<Object, String> codes, Object value) {
+        String code = codes.get(value);
+        return code != null ? code : "";
+    }
+
     public String findHuffPath(HuffNode trie, Object need) {
         HuffNode left = trie.getLeft();
         HuffNode right = trie.getRight();
@@ -862,7 +918,7 @@ public class X509V3ExtensionUtil extends X509Util {
             new Deflater(Deflater.BEST_COMPRESSION));
         for (String segment : entries) {
             dos.write(segment.getBytes("UTF-8"));
-            dos.write("\0".getBytes("UTF-8"));
+            dos.write(0);
         }
         dos.finish();
         dos.close();
@@ -888,37 +944,94 @@ public class X509V3ExtensionUtil extends X509Util {
         return nodes;
     }
 
+    /**
+     * Builds the Huffman trie of the given nodes. Clients rebuild the same trie from the
+     * dictionary when reading a certificate, so the shape must not change: the two
+     * lightest nodes are merged first, ties going to the node that was queued first,
+     * and every merged node is queued after the nodes already waiting.
+     *
+     * @param nodesList the leaf nodes, left holding only the root on return
+     * @return the root of the trie
+     */
     public HuffNode makeTrie(List<HuffNode> nodesList) {
         // drop the first node if path node value, it is not needed
         if (nodesList.get(0).getValue() instanceof PathNode) {
             nodesList.remove(0);
         }
-        while (nodesList.size() > 1) {
-            int node1 = findSmallest(-1, nodesList);
-            int node2 = findSmallest(node1, nodesList);
-            HuffNode hn1 = nodesList.get(node1);
-            HuffNode hn2 = nodesList.get(node2);
-            HuffNode merged = mergeNodes(hn1, hn2);
-            nodesList.remove(hn1);
-            nodesList.remove(hn2);
-            nodesList.add(merged);
+
+        if (nodesList.size() > 1) {
+            PriorityQueue<QueuedHuffNode> queue = new PriorityQueue<QueuedHuffNode>(nodesList.size());
+            long sequence = 0;
+            for (HuffNode node : nodesList) {
+                queue.add(new QueuedHuffNode(node, sequence++));
+            }
+            while (queue.size() > 1) {
+                HuffNode hn1 = queue.poll().node;
+                HuffNode hn2 = queue.poll().node;
+                queue.add(new QueuedHuffNode(mergeNodes(hn1, hn2), sequence++));
+            }
+            nodesList.clear();
+            nodesList.add(queue.poll().node);
         }
+
         if (treeDebug) {
             printTrie(nodesList.get(0), 0);
         }
         return nodesList.get(0);
     }
 
-    private int findSmallest(int exclude, List<HuffNode> nodes) {
-        int smallest = -1;
-        for (int index = 0; index < nodes.size(); index++) {
-            if (index == exclude) { continue; }
-            if (smallest == -1 || nodes.get(index).getWeight() <
-                nodes.get(smallest).getWeight()) {
-                smallest = index;
+    /**
+     * A node waiting to be merged, ordered by weight then by queueing order.
+     */
+    private static class QueuedHuffNode implements Comparable<QueuedHuffNode> {
+        private final HuffNode node;
+        private final long sequence;
+
+        QueuedHuffNode(HuffNode node, long sequence) {
+            this.node = node;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(QueuedHuffNode other) {
+            if (node.getWeight() != other.node.getWeight()) {
+                return node.getWeight() < other.node.getWeight() ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    /**
+     * Packs codes into bytes, most significant bit first. The last byte is padded
+     * with zeros.
+     */
+    private static class BitWriter {
+        private final ByteArrayOutputStream out;
+        private int current;
+        private int count;
+
+        BitWriter(ByteArrayOutputStream out) {
+            this.out = out;
+        }
+
+        void write(String code) {
+            for (int i = 0; i < code.length(); i++) {
+                current = (current << 1) | (code.charAt(i) == '1' ? 1 : 0);
+                if (++count == 8) {
+                    out.write(current);
+                    current = 0;
+                    count = 0;
+                }
+            }
+        }
+
+        void flush() {
+            if (count > 0) {
+                out.write(current << (8 - count));
+                current = 0;
+                count = 0;
             }
         }
-        return smallest;
     }
 
     private HuffNode mergeNodes(HuffNode node1, HuffNode node2) {
@@ -1120,12 +1233,12 @@ public class X509V3ExtensionUtil extends X509Util {
             this.weight = weight;
             this.left = left;
             this.right = right;
-            this.id = huffNodeId++;
+            this.id = huffNodeId.getAndIncrement();
         }
         public HuffNode(Object value, int weight) {
             this.value = value;
             this.weight = weight;
-            this.id = huffNodeId++;
+            this.id = huffNodeId.getAndIncrement();
         }
 
         public Object getValue() {
@@ -1168,7 +1281,7 @@ public class X509V3ExtensionUtil extends X509Util {
         private List<PathNode> parents = new ArrayList<PathNode>();
 
         public PathNode() {
-            this.id = pathNodeId++;
+            this.id = pathNodeId.getAndIncrement();
         }
 
         public long getId() {
@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.auth.PrincipalData;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.HornetQBuffers;
+import org.hornetq.api.core.client.ClientConsumer;
+import org.hornetq.api.core.client.ClientMessage;
+import org.hornetq.api.core.client.ClientSession;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BatchListenerWrapperTest
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class BatchListenerWrapperTest {
+
+    @Mock private ClientSession session;
+    @Mock private ClientConsumer consumer;
+
+    private ObjectMapper mapper = new ObjectMapper();
+    private List<List<Event>> batches = new ArrayList<List<Event>>();
+    private BatchListenerWrapper wrapper;
+
+    @Before
+    public void init() throws Exception {
+        BatchEventListener listener = new BatchEventListener() {
+            public void onEvent(Event e) {
+                fail("Events should be handed over in batches");
+            }
+
+            public void onEvents(List<Event> events) {
+                batches.add(events);
+                wrapper.stop();
+            }
+        };
+        wrapper = new BatchListenerWrapper(listener, new EventCodec(mapper), session, consumer, 2);
+    }
+
+    @Test
+    public void waitingMessagesHandledAndAcknowledgedTogether() throws Exception {
+        ClientMessage first = message("1");
+        ClientMessage second = message("2");
+        ClientMessage third = message("3");
+        when(consumer.receive(anyLong())).thenReturn(first);
+        when(consumer.receiveImmediate()).thenReturn(second, third);
+
+        wrapper.run();
+
+        assertEquals(1, batches.size());
+        assertEquals(2, batches.get(0).size());
+        assertEquals("1", batches.get(0).get(0).getEntityId());
+        assertEquals("2", batches.get(0).get(1).getEntityId());
+        verify(first).acknowledge();
+        verify(second).acknowledge();
+        verify(third, never()).acknowledge();
+        verify(session).commit();
+    }
+
+    @Test
+    public void failedBatchRolledBack() throws Exception {
+        wrapper = new BatchListenerWrapper(new BatchEventListener() {
+            public void onEvent(Event e) {
+            }
+
+            public void onEvents(List<Event> events) {
+                wrapper.stop();
+                throw new RuntimeException("Induced failure");
+            }
+        }, new EventCodec(mapper), session, consumer, 2);
+        ClientMessage first = message("1");
+        when(consumer.receive(anyLong())).thenReturn(first);
+
+        wrapper.run();
+
+        verify(first, never()).acknowledge();
+        verify(session, never()).commit();
+        verify(session).rollback();
+    }
+
+    @Test
+    public void failedBatchRetriedOneMessageAtATime() throws Exception {
+        wrapper = new BatchListenerWrapper(new BatchEventListener() {
+            public void onEvent(Event e) {
+            }
+
+            public void onEvents(List<Event> events) {
+                batches.add(events);
+                for (Event event : events) {
+                    if ("2".equals(event.getEntityId())) {
+                        if (events.size() == 1) {
+                            wrapper.stop();
+                        }
+                        throw new RuntimeException("Induced failure");
+                    }
+                }
+            }
+        }, new EventCodec(mapper), session, consumer, 2);
+        ClientMessage first = message("1");
+        ClientMessage second = message("2");
+        // the rolled back messages are delivered again
+        when(consumer.receive(anyLong())).thenReturn(first, first, second);
+        when(consumer.receiveImmediate()).thenReturn(second);
+
+        wrapper.run();
+
+        assertEquals(3, batches.size());
+        assertEquals(2, batches.get(0).size());
+        assertEquals(1, batches.get(1).size());
+        assertEquals("1", batches.get(1).get(0).getEntityId());
+        assertEquals(1, batches.get(2).size());
+        assertEquals("2", batches.get(2).get(0).getEntityId());
+        verify(first).acknowledge();
+        verify(second, never()).acknowledge();
+        verify(session).commit();
+        verify(session, times(2)).rollback();
+        verify(consumer).receiveImmediate();
+    }
+
+    private ClientMessage message(String entityId) throws Exception {
+        Event event = new Event();
+        event.setEntityId(entityId);
+        event.setPrincipal(new PrincipalData("5678", "910112"));
+        final String body = mapper.writeValueAsString(event);
+
+        ClientMessage message = mock(ClientMessage.class);
+        when(message.getBodyBuffer()).thenAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) {
+                HornetQBuffer buffer = HornetQBuffers.dynamicBuffer(256);
+                buffer.writeString(body);
+                return buffer;
+            }
+        });
+        return message;
+    }
+}
@@ -25,6 +25,9 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.Arrays;
+import java.util.List;
+
 
 /**
  * DatabaseListenerTest
@@ -47,6 +50,14 @@ public class DatabaseListenerTest {
         verify(ec).create(event);
     }
 
+    @Test
+    public void onEvents() {
+        List<Event> events = Arrays.asList(event, event);
+        dl.onEvents(events);
+        verify(ec).createAll(events);
+        verify(ec, never()).create(any(Event.class));
+    }
+
     @Test
     public void eventNull() {
         when(ec.create(any(Event.class))).thenThrow(new NullPointerException());
@@ -54,6 +65,18 @@ public class DatabaseListenerTest {
         verify(ec, never()).create(any(Event.class));
     }
 
+    @Test
+    public void nullEventsSkipped() {
+        dl.onEvents(Arrays.asList(event, null, event));
+        verify(ec).createAll(eq(Arrays.asList(event, event)));
+    }
+
+    @Test
+    public void onlyNullEvents() {
+        dl.onEvents(Arrays.asList((Event) null));
+        verify(ec, never()).createAll(anyListOf(Event.class));
+    }
+
     @Test(expected = NullPointerException.class)
     public void curatorNull() {
         DatabaseListener localdl = new DatabaseListener(null);
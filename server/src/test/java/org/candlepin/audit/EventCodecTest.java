@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.auth.PrincipalData;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.HornetQBuffers;
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.api.core.client.ClientMessage;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * EventCodecTest
+ */
+public class EventCodecTest {
+
+    private ObjectMapper mapper;
+    private Event event;
+
+    @Before
+    public void init() {
+        mapper = new ObjectMapper();
+
+        event = new Event();
+        event.setId("10");
+        event.setConsumerId("20");
+        event.setType(Event.Type.MODIFIED);
+        event.setTarget(Event.Target.ENTITLEMENT);
+        event.setPrincipal(new PrincipalData("5678", "910112"));
+        StringBuilder entity = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            entity.append("{\"id\":\"ent").append(i).append("\"}");
+        }
+        event.setNewEntity(entity.toString());
+    }
+
+    @Test
+    public void jsonWrittenAsText() throws Exception {
+        ClientMessage message = message();
+        new EventCodec(mapper).encode(event, message);
+
+        verify(message, never()).putStringProperty(any(SimpleString.class), any(SimpleString.class));
+        Event read = mapper.readValue(message.getBodyBuffer().readString(), Event.class);
+        assertEquals(event.getNewEntity(), read.getNewEntity());
+    }
+
+    @Test
+    public void smileRoundTrip() throws Exception {
+        assertRoundTrip(new EventCodec(mapper, EventCodec.SMILE, 0));
+    }
+
+    @Test
+    public void deflatedJsonRoundTrip() throws Exception {
+        assertRoundTrip(new EventCodec(mapper, EventCodec.JSON, 512));
+    }
+
+    @Test
+    public void deflatedSmileRoundTrip() throws Exception {
+        assertRoundTrip(new EventCodec(mapper, EventCodec.SMILE, 512));
+    }
+
+    @Test
+    public void deflatedBodyIsSmaller() throws Exception {
+        ClientMessage plain = message();
+        new EventCodec(mapper, EventCodec.SMILE, 0).encode(event, plain);
+        ClientMessage deflated = message();
+        new EventCodec(mapper, EventCodec.SMILE, 512).encode(event, deflated);
+
+        assertTrue(deflated.getBodyBuffer().writerIndex() < plain.getBodyBuffer().writerIndex());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownEncoding() {
+        new EventCodec(mapper, "xml", 0);
+    }
+
+    private void assertRoundTrip(EventCodec writer) throws Exception {
+        ClientMessage message = message();
+        writer.encode(event, message);
+
+        // listeners read with a default codec, whatever the sink was configured with
+        Event read = new EventCodec(mapper).decode(message);
+        assertEquals(event.getId(), read.getId());
+        assertEquals(event.getConsumerId(), read.getConsumerId());
+        assertEquals(event.getType(), read.getType());
+        assertEquals(event.getTarget(), read.getTarget());
+        assertEquals(event.getNewEntity(), read.getNewEntity());
+    }
+
+    /*
+     * A message keeping its properties and body in memory.
+     */
+    private ClientMessage message() {
+        final Map<SimpleString, SimpleString> properties = new HashMap<SimpleString, SimpleString>();
+        HornetQBuffer body = HornetQBuffers.dynamicBuffer(1024);
+
+        ClientMessage message = mock(ClientMessage.class);
+        when(message.getBodyBuffer()).thenReturn(body);
+        when(message.putStringProperty(any(SimpleString.class), any(SimpleString.class)))
+            .thenAnswer(new Answer<ClientMessage>() {
+                public ClientMessage answer(InvocationOnMock invocation) {
+                    Object[] args = invocation.getArguments();
+                    properties.put((SimpleString) args[0], (SimpleString) args[1]);
+                    return (ClientMessage) invocation.getMock();
+                }
+            });
+        when(message.getSimpleStringProperty(any(SimpleString.class)))
+            .thenAnswer(new Answer<SimpleString>() {
+                public SimpleString answer(InvocationOnMock invocation) {
+                    return properties.get(invocation.getArguments()[0]);
+                }
+            });
+        return message;
+    }
+}
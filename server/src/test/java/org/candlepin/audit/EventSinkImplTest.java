@@ -30,6 +30,7 @@ import org.candlepin.test.TestUtil;
 
 import com.fasterxml.jackson.core.JsonGenerationException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import org.hornetq.api.core.HornetQBuffers;
 import org.hornetq.api.core.HornetQException;
@@ -38,6 +39,7 @@ import org.hornetq.api.core.client.ClientProducer;
 import org.hornetq.api.core.client.ClientSession;
 import org.hornetq.api.core.client.ClientSessionFactory;
 import org.hornetq.api.core.client.ServerLocator;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -46,6 +48,7 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
 
 /**
  * EventSinkImplTest
@@ -84,6 +87,11 @@ public class EventSinkImplTest {
         o = new Owner("test owner");
     }
 
+    @After
+    public void tearDown() {
+        eventSinkImpl.shutdown();
+    }
+
     /**
      * @return
      * @throws Exception
@@ -96,6 +104,12 @@ public class EventSinkImplTest {
             protected ClientSessionFactory createClientSessionFactory() {
                 return sessionFactory;
             }
+
+            @Override
+            protected ExecutorService createDispatcher() {
+                // Send events on the calling thread, so they are sent once sendEvents returns
+                return MoreExecutors.sameThreadExecutor();
+            }
         };
         sink.initialize();
         return sink;
@@ -151,7 +165,31 @@ public class EventSinkImplTest {
         Event event = mock(Event.class);
 
         eventSinkImpl.queueEvent(event);
+        eventSinkImpl.sendEvents();
+        verify(mockClientSession).commit();
+        verify(mockClientProducer, never()).send(any(ClientMessage.class));
+    }
+
+    @Test
+    public void eventsNotSentUntilRequestCompletes() throws Exception {
+        eventSinkImpl.emitOwnerCreated(o);
+        eventSinkImpl.emitOwnerCreated(o);
+        eventSinkImpl.shutdown();
+        verify(mockClientProducer, never()).send(any(ClientMessage.class));
+
+        eventSinkImpl.sendEvents();
+        verify(mockClientProducer, times(2)).send(any(ClientMessage.class));
+        verify(mockClientSession, times(1)).commit();
+    }
+
+    @Test
+    public void rollbackDropsQueuedEvents() throws Exception {
+        eventSinkImpl.emitOwnerCreated(o);
+        eventSinkImpl.rollback();
+        eventSinkImpl.sendEvents();
+        eventSinkImpl.shutdown();
         verify(mockClientProducer, never()).send(any(ClientMessage.class));
+        verify(mockClientSession, never()).commit();
     }
 
     @Test
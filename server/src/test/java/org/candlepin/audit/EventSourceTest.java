@@ -114,6 +114,42 @@ public class EventSourceTest {
         verify(mockCC).setMessageHandler(any(ListenerWrapper.class));
     }
 
+    @Test
+    public void shouldCreateSessionPerExtraConsumer() throws Exception {
+        EventSource eventSource = createEventSourceStubbedWithFactoryCreation();
+        ClientSession extraSession = mock(ClientSession.class);
+        ClientConsumer mockCC = mock(ClientConsumer.class);
+        when(clientSessionFactory.createSession(eq(true), eq(true), eq(0)))
+            .thenReturn(extraSession);
+        when(clientSession.createConsumer(anyString())).thenReturn(mockCC);
+        when(extraSession.createConsumer(anyString())).thenReturn(mockCC);
+
+        eventSource.registerListener(mock(EventListener.class), 3);
+
+        verify(clientSession, times(1)).createConsumer(anyString());
+        verify(extraSession, times(2)).createConsumer(anyString());
+        verify(extraSession, times(2)).start();
+        verify(mockCC, times(3)).setMessageHandler(any(ListenerWrapper.class));
+    }
+
+    @Test
+    public void shouldReadBatchListenersWithoutMessageHandler() throws Exception {
+        EventSource eventSource = createEventSourceStubbedWithFactoryCreation();
+        ClientSession batchSession = mock(ClientSession.class);
+        ClientConsumer mockCC = mock(ClientConsumer.class);
+        when(clientSessionFactory.createSession(eq(true), eq(false), eq(0)))
+            .thenReturn(batchSession);
+        when(batchSession.createConsumer(anyString())).thenReturn(mockCC);
+
+        eventSource.registerListener(mock(BatchEventListener.class), 1);
+        eventSource.shutDown();
+
+        verify(clientSession, never()).createConsumer(anyString());
+        verify(batchSession).createConsumer(anyString());
+        verify(mockCC, never()).setMessageHandler(any(ListenerWrapper.class));
+        verify(batchSession).close();
+    }
+
     @Test
     public void shouldStopAndCloseSessionOnShutdown() throws Exception {
         EventSource eventSource = createEventSourceStubbedWithFactoryCreation();
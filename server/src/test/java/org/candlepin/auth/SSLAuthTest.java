@@ -18,6 +18,7 @@ import static org.junit.Assert.*;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.*;
 
+import org.candlepin.common.exceptions.GoneException;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.ConsumerType;
@@ -31,8 +32,11 @@ import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.xnap.commons.i18n.I18n;
+import org.xnap.commons.i18n.I18nFactory;
 
+import java.math.BigInteger;
 import java.security.cert.X509Certificate;
+import java.util.Locale;
 
 import javax.inject.Provider;
 import javax.security.auth.x500.X500Principal;
@@ -49,7 +53,8 @@ public class SSLAuthTest {
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
-        this.auth = new SSLAuth(this.consumerCurator, this.deletedConsumerCurator, i18nProvider);
+        this.auth = new SSLAuth(this.consumerCurator, this.deletedConsumerCurator, i18nProvider,
+            new PrincipalCache(30, 100));
     }
 
     /**
@@ -106,12 +111,93 @@ public class SSLAuthTest {
         assertNull(this.auth.getPrincipal(httpRequest));
     }
 
+    @Test
+    public void principalCachedForSameCertificate() throws Exception {
+        Owner owner = new Owner("test owner");
+        Consumer consumer = new Consumer("machine_name", "test user", owner,
+            new ConsumerType(ConsumerTypeEnum.SYSTEM));
+
+        consumer.setUuid("453-44423-235");
+        consumer.setId("consumer-id");
+
+        mockCert("CN=453-44423-235");
+        when(this.consumerCurator.getConsumer("453-44423-235")).thenReturn(consumer);
+        when(this.consumerCurator.find("consumer-id")).thenReturn(consumer);
+
+        Principal first = this.auth.getPrincipal(httpRequest);
+        Principal second = this.auth.getPrincipal(httpRequest);
+        assertEquals(first, second);
+        assertNotSame(first, second);
+        verify(this.consumerCurator, times(1)).getConsumer("453-44423-235");
+        // the consumer is loaded again for every request
+        verify(this.consumerCurator, times(1)).find("consumer-id");
+    }
+
+    @Test
+    public void cachedConsumerGoneIsLookedUpAgain() throws Exception {
+        Owner owner = new Owner("test owner");
+        Consumer consumer = new Consumer("machine_name", "test user", owner,
+            new ConsumerType(ConsumerTypeEnum.SYSTEM));
+        consumer.setUuid("453-44423-235");
+        consumer.setId("consumer-id");
+
+        mockCert("CN=453-44423-235");
+        when(this.consumerCurator.getConsumer("453-44423-235")).thenReturn(consumer);
+        this.auth.getPrincipal(httpRequest);
+
+        when(this.consumerCurator.find("consumer-id")).thenReturn(null);
+        assertNotNull(this.auth.getPrincipal(httpRequest));
+        verify(this.consumerCurator, times(2)).getConsumer("453-44423-235");
+    }
+
+    @Test
+    public void principalNotCachedAcrossCertificates() throws Exception {
+        Owner owner = new Owner("test owner");
+        Consumer consumer = new Consumer("machine_name", "test user", owner,
+            new ConsumerType(ConsumerTypeEnum.SYSTEM));
+
+        consumer.setUuid("453-44423-235");
+        consumer.setId("consumer-id");
+
+        mockCert("CN=453-44423-235");
+        when(this.consumerCurator.getConsumer("453-44423-235")).thenReturn(consumer);
+        this.auth.getPrincipal(httpRequest);
+
+        mockCert("CN=453-44423-235", BigInteger.TEN);
+        this.auth.getPrincipal(httpRequest);
+        verify(this.consumerCurator, times(2)).getConsumer("453-44423-235");
+    }
+
+    @Test
+    public void deletedConsumerCached() throws Exception {
+        when(i18nProvider.get())
+            .thenReturn(I18nFactory.getI18n(getClass(), Locale.US, I18nFactory.FALLBACK));
+        when(this.deletedConsumerCurator.countByConsumerUuid("235-8")).thenReturn(1);
+        mockCert("CN=235-8");
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                this.auth.getPrincipal(httpRequest);
+                fail("Expected GoneException");
+            }
+            catch (GoneException e) {
+                // expected
+            }
+        }
+        verify(this.deletedConsumerCurator, times(1)).countByConsumerUuid("235-8");
+        verify(this.consumerCurator, never()).getConsumer(anyString());
+    }
 
     private void mockCert(String dn) {
+        mockCert(dn, BigInteger.ONE);
+    }
+
+    private void mockCert(String dn, BigInteger serial) {
         X509Certificate idCert =  mock(X509Certificate.class);
         X500Principal principal = new X500Principal(dn);
 
         when(idCert.getSubjectX500Principal()).thenReturn(principal);
+        when(idCert.getSerialNumber()).thenReturn(serial);
         when(this.httpRequest.getAttribute("javax.servlet.request.X509Certificate"))
                 .thenReturn(new X509Certificate[]{idCert});
     }
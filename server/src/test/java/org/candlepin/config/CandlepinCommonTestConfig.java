@@ -40,6 +40,10 @@ public class CandlepinCommonTestConfig extends MapConfiguration {
             setProperty(ConfigProperties.CA_KEY_PASSWORD, "password");
             setProperty(ConfigProperties.SYNC_WORK_DIR, "/tmp");
             setProperty(ConfigProperties.HORNETQ_LARGE_MSG_SIZE, "0");
+            // generate key pairs inline, no background generation during tests
+            setProperty(ConfigProperties.KEYPAIR_RESERVOIR_HIGH, "0");
+            // write check-in times as they happen
+            setProperty(ConfigProperties.CHECKIN_FLUSH_INTERVAL, "0");
         }
         catch (URISyntaxException e) {
             throw new RuntimeException("Error loading cert/key resources!", e);
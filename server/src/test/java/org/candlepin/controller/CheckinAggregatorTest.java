@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.controller;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerCurator;
+
+import com.google.inject.persist.UnitOfWork;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * CheckinAggregatorTest
+ */
+public class CheckinAggregatorTest {
+
+    @Mock private ConsumerCurator consumerCurator;
+    @Mock private UnitOfWork unitOfWork;
+
+    private CheckinAggregator aggregator;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @After
+    public void tearDown() {
+        if (aggregator != null) {
+            aggregator.shutdown();
+        }
+    }
+
+    @Test
+    public void disabledWritesDirectly() {
+        aggregator = new CheckinAggregator(consumerCurator, unitOfWork, 0, 10);
+        Consumer consumer = consumer("c1");
+        Date date = new Date();
+
+        aggregator.checkin(consumer, date);
+        verify(consumerCurator).updateLastCheckin(consumer, date);
+        assertEquals(0, aggregator.getBuffered());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void flushKeepsLatestCheckin() {
+        aggregator = new CheckinAggregator(consumerCurator, unitOfWork, 3600, 10);
+        Date first = new Date(1000);
+        Date second = new Date(2000);
+
+        aggregator.checkin(consumer("c1"), first);
+        aggregator.checkin(consumer("c1"), second);
+        aggregator.checkin(consumer("c2"), first);
+        assertEquals(2, aggregator.getBuffered());
+        verify(consumerCurator, never()).updateLastCheckin(any(Consumer.class), any(Date.class));
+
+        aggregator.flush();
+
+        ArgumentCaptor<Map> captor = ArgumentCaptor.forClass(Map.class);
+        verify(consumerCurator).updateLastCheckins(captor.capture());
+        assertEquals(2, captor.getValue().size());
+        assertEquals(second, captor.getValue().get("c1"));
+        assertEquals(first, captor.getValue().get("c2"));
+        assertEquals(0, aggregator.getBuffered());
+        verify(unitOfWork).begin();
+        verify(unitOfWork).end();
+    }
+
+    @Test
+    public void fullBufferWritesDirectly() {
+        aggregator = new CheckinAggregator(consumerCurator, unitOfWork, 3600, 1);
+        // holding the monitor keeps the early flush from draining the buffer
+        synchronized (aggregator) {
+            aggregator.checkin(consumer("c1"), new Date());
+            Consumer overflow = consumer("c2");
+            Date date = new Date();
+            aggregator.checkin(overflow, date);
+
+            verify(consumerCurator).updateLastCheckin(overflow, date);
+            assertEquals(1, aggregator.getBuffered());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shutdownFlushes() {
+        aggregator = new CheckinAggregator(consumerCurator, unitOfWork, 3600, 10);
+        aggregator.checkin(consumer("c1"), new Date());
+
+        aggregator.shutdown();
+        verify(consumerCurator).updateLastCheckins(anyMap());
+
+        Consumer late = consumer("c2");
+        Date date = new Date();
+        aggregator.checkin(late, date);
+        verify(consumerCurator).updateLastCheckin(late, date);
+    }
+
+    private Consumer consumer(String id) {
+        Consumer consumer = new Consumer();
+        consumer.setId(id);
+        return consumer;
+    }
+}
@@ -33,8 +33,10 @@ import org.candlepin.model.Pool;
 import org.candlepin.model.PoolCurator;
 import org.candlepin.model.Product;
 import org.candlepin.model.SourceSubscription;
+import org.candlepin.service.BaseEntitlementCertServiceAdapter;
 import org.candlepin.service.EntitlementCertServiceAdapter;
 import org.candlepin.test.TestUtil;
+import org.candlepin.util.CertificateSizeException;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -63,7 +65,7 @@ import java.util.Set;
 @RunWith(MockitoJUnitRunner.class)
 public class EntitlementCertificateGeneratorTest {
 
-    @Mock private EntitlementCertServiceAdapter mockEntCertAdapter;
+    @Mock private BaseEntitlementCertServiceAdapter mockEntCertAdapter;
     @Mock private EntitlementCertificateCurator mockEntCertCurator;
     @Mock private EntitlementCurator mockEntitlementCurator;
     @Mock private PoolCurator mockPoolCurator;
@@ -225,8 +227,8 @@ public class EntitlementCertificateGeneratorTest {
         }
 
         when(this.mockEntitlementCurator.listByEnvironment(environment)).thenReturn(entitlements);
-        when(this.mockEntCertAdapter.generateEntitlementCerts(any(Consumer.class), any(Map.class),
-            any(Map.class))).thenReturn(ecMap);
+        when(this.mockEntCertAdapter.generateEntitlementCerts(any(Map.class), any(Map.class)))
+            .thenReturn(ecMap);
 
         this.ecGenerator.regenerateCertificatesOf(environment, Arrays.asList("c1", "c2", "c4"), false);
 
@@ -234,8 +236,10 @@ public class EntitlementCertificateGeneratorTest {
         assertFalse(entitlements.get(1).isDirty());
         assertFalse(entitlements.get(2).isDirty());
 
-        verify(this.mockEntCertAdapter, times(2)).generateEntitlementCerts(any(Consumer.class),
+        // Both affected entitlements are generated together
+        verify(this.mockEntCertAdapter, times(1)).generateEntitlementCerts(
             this.entMapCaptor.capture(), this.productMapCaptor.capture());
+        assertEquals(2, this.entMapCaptor.getValue().size());
 
         verify(this.mockEventSink, times(2)).queueEvent(any(Event.class));
     }
@@ -277,14 +281,14 @@ public class EntitlementCertificateGeneratorTest {
 
         when(this.mockPoolCurator.listAvailableEntitlementPools(any(Consumer.class), eq(owner),
             eq(product.getId()), any(Date.class), anyBoolean())).thenReturn(Arrays.asList(pool));
-        when(this.mockEntCertAdapter.generateEntitlementCerts(any(Consumer.class), any(Map.class),
-            any(Map.class))).thenReturn(ecMap);
+        when(this.mockEntCertAdapter.generateEntitlementCerts(any(Map.class), any(Map.class)))
+            .thenReturn(ecMap);
 
         this.ecGenerator.regenerateCertificatesOf(owner, product.getId(), false);
 
         assertFalse(entitlement.isDirty());
 
-        verify(this.mockEntCertAdapter, times(1)).generateEntitlementCerts(any(Consumer.class),
+        verify(this.mockEntCertAdapter, times(1)).generateEntitlementCerts(
             this.entMapCaptor.capture(), this.productMapCaptor.capture());
 
         verify(this.mockEventSink, times(1)).queueEvent(any(Event.class));
@@ -371,20 +375,58 @@ public class EntitlementCertificateGeneratorTest {
         ecMap.put(pool.getId(), new EntitlementCertificate());
 
         when(this.mockEntitlementCurator.find(eq(entitlement.getId()))).thenReturn(entitlement);
-        when(this.mockEntCertAdapter.generateEntitlementCerts(any(Consumer.class), any(Map.class),
-            any(Map.class))).thenReturn(ecMap);
+        when(this.mockEntCertAdapter.generateEntitlementCerts(any(Map.class), any(Map.class)))
+            .thenReturn(ecMap);
 
         this.ecGenerator.regenerateCertificatesByEntitlementIds(entitlements, false, false);
 
         assertFalse(entitlement.isDirty());
 
-        verify(this.mockEntCertAdapter, times(1)).generateEntitlementCerts(any(Consumer.class),
+        verify(this.mockEntCertAdapter, times(1)).generateEntitlementCerts(
             this.entMapCaptor.capture(), this.productMapCaptor.capture());
 
         verify(this.mockEventSink, times(1)).queueEvent(any(Event.class));
     }
 
+    @Test
+    public void testBatchRegenerationFallsBackWhenCertificateTooLarge() throws Exception {
+        List<Entitlement> entitlements = this.generateEntitlements();
+        EntitlementCertificate existing = new EntitlementCertificate();
+        entitlements.get(0).addCertificate(existing);
+
+        when(this.mockEntCertAdapter.generateEntitlementCerts(any(Map.class), any(Map.class)))
+            .thenThrow(new CertificateSizeException("too large"));
+        when(this.mockEntCertAdapter.generateEntitlementCerts(any(Consumer.class), any(Map.class),
+            any(Map.class))).thenThrow(new CertificateSizeException("too large"));
+
+        this.ecGenerator.regenerateCertificatesOf(entitlements, false);
+
+        // Each entitlement is retried on its own, and keeps its current certificate
+        verify(this.mockEntCertAdapter, times(3)).generateEntitlementCerts(any(Consumer.class),
+            any(Map.class), any(Map.class));
+        assertTrue(entitlements.get(0).getCertificates().contains(existing));
+        verifyZeroInteractions(this.mockEventSink);
+    }
+
+    @Test
+    public void testBatchRegenerationWithOtherAdaptersGoesByConsumer() throws Exception {
+        EntitlementCertServiceAdapter adapter = mock(EntitlementCertServiceAdapter.class);
+        this.ecGenerator = new EntitlementCertificateGenerator(
+            this.mockEntCertCurator, adapter, this.mockEntitlementCurator,
+            this.mockPoolCurator, this.mockEventSink, this.mockEventFactory
+        );
+        List<Entitlement> entitlements = this.generateEntitlements();
+        Consumer consumer = entitlements.get(0).getConsumer();
 
+        when(adapter.generateEntitlementCerts(eq(consumer), any(Map.class), any(Map.class)))
+            .thenReturn(new HashMap<String, EntitlementCertificate>());
 
+        this.ecGenerator.regenerateCertificatesOf(entitlements, false);
 
+        // All three entitlements share a consumer, so they are generated in one call
+        verify(adapter, times(1)).generateEntitlementCerts(eq(consumer),
+            this.entMapCaptor.capture(), this.productMapCaptor.capture());
+        assertEquals(3, this.entMapCaptor.getValue().size());
+        verify(this.mockEventSink, times(3)).queueEvent(any(Event.class));
+    }
 }
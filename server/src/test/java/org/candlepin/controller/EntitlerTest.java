@@ -383,15 +383,15 @@ public class EntitlerTest {
 
         p1.setEntitlements(entitlementSet1);
 
-        when(entitlementCurator.findByPoolAttribute(eq(c), eq("unmapped_guests_only"), eq("true")))
-            .thenReturn(Arrays.asList(new Entitlement[] {e1}));
+        when(entitlementCurator.findInvalidByPoolAttribute(eq(c), eq("unmapped_guests_only"), eq("true"),
+            any(Date.class), eq(-1))).thenReturn(Arrays.asList(new Entitlement[] {e1}));
 
         String[] pids = {product.getId(), "prod2"};
         when(cc.findByUuid(eq("abcd1234"))).thenReturn(c);
         entitler.bindByProducts(pids, "abcd1234", null, null);
         AutobindData data = AutobindData.create(c).forProducts(pids);
         verify(pm).entitleByProducts(eq(data));
-        verify(pm).revokeEntitlement(e1);
+        verify(pm).revokeEntitlements(Arrays.asList(e1));
     }
 
     @Test
@@ -433,13 +433,77 @@ public class EntitlerTest {
 
         p2.setEntitlements(entitlementSet2);
 
-        when(entitlementCurator.findByPoolAttribute(eq("unmapped_guests_only"), eq("true")))
-            .thenReturn(Arrays.asList(new Entitlement[] {e1,  e2}));
+        // Only the lapsed entitlement is selected
+        when(entitlementCurator.findInvalidByPoolAttribute(isNull(Consumer.class),
+            eq("unmapped_guests_only"), eq("true"), any(Date.class), isNull(String.class),
+            eq(EntitlementCurator.INVALID_ENTITLEMENT_BLOCK_SIZE)))
+            .thenReturn(Arrays.asList(new Entitlement[] {e2}));
 
         int total = entitler.revokeUnmappedGuestEntitlements();
         assertEquals(1, total);
 
-        verify(pm).revokeEntitlement(e1);
+        verify(pm).revokeEntitlements(Arrays.asList(e2));
+        verify(pm, never()).revokeEntitlement(any(Entitlement.class));
+    }
+
+    @Test
+    public void testUnmappedGuestRevocationInBlocks() throws Exception {
+        List<Entitlement> fullBlock = createUnmappedGuestEntitlements(0,
+            EntitlementCurator.INVALID_ENTITLEMENT_BLOCK_SIZE);
+        List<Entitlement> lastBlock = createUnmappedGuestEntitlements(
+            EntitlementCurator.INVALID_ENTITLEMENT_BLOCK_SIZE, 2);
+        String lastId = fullBlock.get(fullBlock.size() - 1).getId();
+
+        when(entitlementCurator.findInvalidByPoolAttribute(isNull(Consumer.class),
+            eq("unmapped_guests_only"), eq("true"), any(Date.class), isNull(String.class),
+            eq(EntitlementCurator.INVALID_ENTITLEMENT_BLOCK_SIZE)))
+            .thenReturn(fullBlock);
+        when(entitlementCurator.findInvalidByPoolAttribute(isNull(Consumer.class),
+            eq("unmapped_guests_only"), eq("true"), any(Date.class), eq(lastId),
+            eq(EntitlementCurator.INVALID_ENTITLEMENT_BLOCK_SIZE)))
+            .thenReturn(lastBlock);
+
+        int total = entitler.revokeUnmappedGuestEntitlements();
+        assertEquals(EntitlementCurator.INVALID_ENTITLEMENT_BLOCK_SIZE + 2, total);
+
+        verify(pm).revokeEntitlements(fullBlock);
+        verify(pm).revokeEntitlements(lastBlock);
+    }
+
+    @Test
+    public void testUnmappedGuestRevocationSkipsEntitlementsNotRevoked() throws Exception {
+        // Nothing is deleted, so the same rows would come back from the start every time
+        List<Entitlement> fullBlock = createUnmappedGuestEntitlements(0,
+            EntitlementCurator.INVALID_ENTITLEMENT_BLOCK_SIZE);
+        String lastId = fullBlock.get(fullBlock.size() - 1).getId();
+
+        when(entitlementCurator.findInvalidByPoolAttribute(isNull(Consumer.class),
+            eq("unmapped_guests_only"), eq("true"), any(Date.class), isNull(String.class),
+            eq(EntitlementCurator.INVALID_ENTITLEMENT_BLOCK_SIZE)))
+            .thenReturn(fullBlock);
+        when(entitlementCurator.findInvalidByPoolAttribute(isNull(Consumer.class),
+            eq("unmapped_guests_only"), eq("true"), any(Date.class), eq(lastId),
+            eq(EntitlementCurator.INVALID_ENTITLEMENT_BLOCK_SIZE)))
+            .thenReturn(new ArrayList<Entitlement>());
+
+        assertEquals(EntitlementCurator.INVALID_ENTITLEMENT_BLOCK_SIZE,
+            entitler.revokeUnmappedGuestEntitlements());
+        verify(pm, times(1)).revokeEntitlements(fullBlock);
+    }
+
+    private List<Entitlement> createUnmappedGuestEntitlements(int first, int count) {
+        Owner owner = new Owner("o1");
+        Pool pool = TestUtil.createPool(owner, TestUtil.createProduct());
+        pool.addAttribute(new PoolAttribute("unmapped_guests_only", "true"));
+        Consumer guest = TestUtil.createConsumer(owner);
+
+        List<Entitlement> ents = new ArrayList<Entitlement>();
+        for (int i = first; i < first + count; i++) {
+            Entitlement ent = TestUtil.createEntitlement(owner, guest, pool, null);
+            ent.setId(String.format("ent%05d", i));
+            ents.add(ent);
+        }
+        return ents;
     }
 
     @Test
@@ -488,6 +488,34 @@ public class PoolManagerFunctionalTest extends DatabaseTestFixture {
         assertEquals(4, results.getPageData().size());
     }
 
+    @Test
+    public void testPagedListForConsumerIsFilteredInBatches() {
+        Product p = TestUtil.createProduct("test-product", "Test Product");
+        productCurator.create(p);
+
+        Pool restricted = createPool(o, p, 10L,
+            TestUtil.createDate(2000, 3, 2), TestUtil.createDate(2050, 3, 2));
+        restricted.setRestrictedToUsername("someone else");
+        poolCurator.create(restricted);
+
+        List<Pool> all = poolManager.listAvailableEntitlementPools(parentSystem, null,
+            parentSystem.getOwner(), null, null, null, true, false,
+            new PoolFilterBuilder(), new PageRequest()).getPageData();
+        assertEquals(4, all.size());
+        assertFalse(all.contains(restricted));
+
+        PageRequest pageRequest = new PageRequest();
+        pageRequest.setPage(2);
+        pageRequest.setPerPage(3);
+        Page<List<Pool>> results = poolManager.listAvailableEntitlementPools(parentSystem, null,
+            parentSystem.getOwner(), null, null, null, true, false,
+            new PoolFilterBuilder(), pageRequest);
+
+        assertEquals(Integer.valueOf(4), results.getMaxRecords());
+        assertEquals(1, results.getPageData().size());
+        assertTrue(all.containsAll(results.getPageData()));
+    }
+
     @Test
     public void testListAllForOldGuestExcludesTempPools() {
         Pool pool = createPool(o, virtGuest, 100L,
@@ -74,6 +74,7 @@ import org.candlepin.policy.js.pool.PoolUpdate;
 import org.candlepin.resource.dto.AutobindData;
 import org.candlepin.service.SubscriptionServiceAdapter;
 import org.candlepin.test.TestUtil;
+import org.candlepin.util.Metrics;
 import org.candlepin.util.Util;
 
 import org.junit.Before;
@@ -81,6 +82,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
@@ -92,6 +94,7 @@ import org.xnap.commons.i18n.I18nFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -185,6 +188,14 @@ public class PoolManagerTest {
                 return (Consumer) args[0];
             }
         });
+
+        when(mockProductManager.updateProduct(any(Product.class), any(ProductData.class),
+            any(Owner.class), anyBoolean())).thenAnswer(new Answer<Product>() {
+                @Override
+                public Product answer(InvocationOnMock invocation) throws Throwable {
+                    return (Product) invocation.getArguments()[0];
+                }
+            });
     }
 
     @Test
@@ -299,6 +310,76 @@ public class PoolManagerTest {
         TestUtil.assertPoolsAreEqual(TestUtil.copyFromSub(sub), argPool.getValue());
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testRefreshPoolsSkipsSubscriptionsUnchangedSinceImport() {
+        Owner owner = this.getOwner();
+        Product product = TestUtil.createProduct();
+        product.setLocked(true);
+
+        Subscription sub = TestUtil.createSubscription(owner, product);
+        sub.setId("testing-subid");
+        sub.setImportHash("import-hash");
+
+        Pool p = TestUtil.createPool(product);
+        p.setSourceSubscription(new SourceSubscription(sub.getId(), "master"));
+        p.setOwner(owner);
+
+        mockSubsList(Arrays.asList(sub));
+        mockPoolsList(Arrays.asList(p));
+        Map<String, String> hashes = new HashMap<String, String>();
+        hashes.put(sub.getId(), "import-hash");
+        when(mockPoolCurator.getMasterPoolImportHashes(owner)).thenReturn(hashes);
+        when(mockOwnerCurator.lookupByKey(owner.getKey())).thenReturn(owner);
+        when(mockOwnerProductCurator.getProductById(owner, product.getId())).thenReturn(product);
+
+        Refresher refresher = this.manager.getRefresher(mockSubAdapter).add(owner);
+        refresher.run();
+
+        verify(this.manager, never()).refreshPoolsForMasterPool(any(Pool.class), anyBoolean(),
+            anyBoolean(), any(Set.class));
+        verify(this.manager, never()).updatePoolsForMasterPool(any(List.class), any(Pool.class),
+            anyLong(), anyBoolean(), any(Set.class));
+
+        // Pools on other owners are still cleaned up and missing ones recreated
+        List<Pool> subscriptionPools = Arrays.asList(p);
+        verify(this.manager).removeAndDeletePoolsOnOtherOwners(eq(subscriptionPools), any(Pool.class));
+        verify(this.manager).createAndEnrichPools(any(Pool.class), eq(subscriptionPools));
+        assertEquals(Collections.singleton(sub.getId()), refresher.getUnchangedSubscriptionIds());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testRefreshPoolsUpdatesSubscriptionsChangedSinceImport() {
+        Owner owner = this.getOwner();
+        Product product = TestUtil.createProduct();
+        product.setLocked(true);
+
+        Subscription sub = TestUtil.createSubscription(owner, product);
+        sub.setId("testing-subid");
+        sub.setImportHash("new-import-hash");
+
+        Pool p = TestUtil.createPool(product);
+        p.setSourceSubscription(new SourceSubscription(sub.getId(), "master"));
+        p.setOwner(owner);
+        p.setImportHash("import-hash");
+
+        mockSubsList(Arrays.asList(sub));
+        mockPoolsList(Arrays.asList(p));
+        Map<String, String> hashes = new HashMap<String, String>();
+        hashes.put(sub.getId(), p.getImportHash());
+        when(mockPoolCurator.getMasterPoolImportHashes(owner)).thenReturn(hashes);
+        when(mockOwnerCurator.lookupByKey(owner.getKey())).thenReturn(owner);
+        when(mockOwnerProductCurator.getProductById(owner, product.getId())).thenReturn(product);
+
+        this.manager.getRefresher(mockSubAdapter).add(owner).run();
+
+        ArgumentCaptor<Pool> argPool = ArgumentCaptor.forClass(Pool.class);
+        verify(this.manager).refreshPoolsForMasterPool(argPool.capture(), eq(false), eq(true),
+            any(Set.class));
+        assertEquals("new-import-hash", argPool.getValue().getImportHash());
+    }
+
     @Test
     public void productAttributesCopiedOntoPoolWhenCreatingNewPool() {
         // Why is this test in pool manager? It looks like a pool rules test.
@@ -746,6 +827,7 @@ public class PoolManagerTest {
             anyBoolean())).thenReturn(page);
 
         when(mockPoolCurator.lockAndLoadBatch(any(List.class))).thenReturn(Arrays.asList(pool1));
+        when(mockPoolCurator.loadBatch(anyCollection())).thenReturn(Arrays.asList(pool1));
         when(enforcerMock.preEntitlement(any(Consumer.class), any(Pool.class), anyInt(),
             any(CallerType.class))).thenReturn(result);
 
@@ -769,6 +851,190 @@ public class PoolManagerTest {
         assertEquals(e.size(), 1);
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testBindRefusedWhenConcurrentBindExhaustsPool() throws Exception {
+        final Pool pool1 = TestUtil.createPool(owner, product, 1);
+        pool1.setId("poolId1");
+        Consumer consumer = TestUtil.createConsumer(owner);
+
+        when(mockPoolCurator.loadBatch(anyCollection())).thenReturn(Arrays.asList(pool1));
+        // another bind took the last entitlement while the rules were running
+        when(mockPoolCurator.lockAndLoadBatch(anyCollection())).thenAnswer(new Answer<List<Pool>>() {
+            @Override
+            public List<Pool> answer(InvocationOnMock invocation) throws Throwable {
+                pool1.setConsumed(1L);
+                return Arrays.asList(pool1);
+            }
+        });
+
+        Map<String, Integer> poolQuantities = new HashMap<String, Integer>();
+        poolQuantities.put(pool1.getId(), 1);
+        try {
+            manager.entitleByPools(consumer, poolQuantities);
+            fail();
+        }
+        catch (EntitlementRefusedException e) {
+            assertEquals("rulefailed.no.entitlements.available",
+                e.getResults().get("poolId1").getErrors().get(0).getResourceKey());
+        }
+        verify(entitlementCurator, never()).saveOrUpdateAll(anyCollectionOf(Entitlement.class),
+            anyBoolean());
+        verify(consumerCuratorMock, never()).lockAndLoad(any(Consumer.class));
+        verify(complianceRules, never()).getStatus(any(Consumer.class), any(Date.class),
+            anyBoolean(), anyBoolean());
+        verify(manager, never()).revokeEntitlements(anyListOf(Entitlement.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testBindLocksPoolsBeforePersisting() throws Exception {
+        Pool pool1 = TestUtil.createPool(owner, product, 1);
+        pool1.setId("poolId1");
+        Pool locked = TestUtil.createPool(owner, product, 1);
+        locked.setId("poolId1");
+        Consumer consumer = TestUtil.createConsumer(owner);
+
+        when(mockPoolCurator.loadBatch(anyCollection())).thenReturn(Arrays.asList(pool1));
+        when(mockPoolCurator.lockAndLoadBatch(anyCollection())).thenReturn(Arrays.asList(locked));
+
+        Map<String, Integer> poolQuantities = new HashMap<String, Integer>();
+        poolQuantities.put(pool1.getId(), 1);
+        manager.entitleByPools(consumer, poolQuantities);
+
+        InOrder order = inOrder(mockPoolCurator, consumerCuratorMock, entitlementCurator);
+        order.verify(mockPoolCurator).lockAndLoadBatch(anyCollection());
+        order.verify(consumerCuratorMock).lockAndLoad(any(Consumer.class));
+        order.verify(entitlementCurator).saveOrUpdateAll(anyCollectionOf(Entitlement.class),
+            anyBoolean());
+        // the consumed count is kept on the locked pool
+        assertEquals(Long.valueOf(1), locked.getConsumed());
+        assertEquals(Long.valueOf(0), pool1.getConsumed());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testBindCompletedOnceQuantityGranted() throws Exception {
+        Pool pool1 = TestUtil.createPool(owner, product, 1);
+        pool1.setId("poolId1");
+        Consumer consumer = TestUtil.createConsumer(owner);
+
+        when(mockPoolCurator.loadBatch(anyCollection())).thenReturn(Arrays.asList(pool1));
+        when(mockPoolCurator.lockAndLoadBatch(anyCollection())).thenReturn(Arrays.asList(pool1));
+
+        Map<String, Integer> poolQuantities = new HashMap<String, Integer>();
+        poolQuantities.put(pool1.getId(), 1);
+        manager.entitleByPools(consumer, poolQuantities);
+
+        InOrder order = inOrder(mockPoolCurator, entitlementCurator, mockECGenerator, complianceRules,
+            consumerCuratorMock);
+        order.verify(mockPoolCurator).lockAndLoadBatch(anyCollection());
+        order.verify(entitlementCurator).saveOrUpdateAll(anyCollectionOf(Entitlement.class),
+            anyBoolean());
+        order.verify(mockPoolCurator).flush();
+        // the consumer is locked again by the transaction completing the bind
+        order.verify(consumerCuratorMock).lockAndLoad(any(Consumer.class));
+        order.verify(mockECGenerator).generateEntitlementCertificates(any(Consumer.class), anyMap(),
+            anyMap(), anyBoolean());
+        order.verify(complianceRules).getStatus(any(Consumer.class), any(Date.class),
+            anyBoolean(), anyBoolean());
+        order.verify(consumerCuratorMock).update(any(Consumer.class));
+        verify(consumerCuratorMock, times(2)).lockAndLoad(any(Consumer.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testBindUndoneWhenCompletingFails() throws Exception {
+        Pool pool1 = TestUtil.createPool(owner, product, 1);
+        pool1.setId("poolId1");
+        Consumer consumer = TestUtil.createConsumer(owner);
+
+        when(mockPoolCurator.loadBatch(anyCollection())).thenReturn(Arrays.asList(pool1));
+        when(mockPoolCurator.lockAndLoadBatch(anyCollection())).thenReturn(Arrays.asList(pool1));
+        doThrow(new RuntimeException("signing failed")).when(mockECGenerator)
+            .generateEntitlementCertificates(any(Consumer.class), anyMap(), anyMap(), anyBoolean());
+        doNothing().when(manager).revokeEntitlements(anyListOf(Entitlement.class));
+
+        Map<String, Integer> poolQuantities = new HashMap<String, Integer>();
+        poolQuantities.put(pool1.getId(), 1);
+        try {
+            manager.entitleByPools(consumer, poolQuantities);
+            fail();
+        }
+        catch (RuntimeException e) {
+            assertEquals("signing failed", e.getMessage());
+        }
+
+        Class<List<Entitlement>> listClass = (Class<List<Entitlement>>) (Class) ArrayList.class;
+        ArgumentCaptor<List<Entitlement>> arg = ArgumentCaptor.forClass(listClass);
+        verify(manager).revokeEntitlements(arg.capture());
+        assertEquals(1, arg.getValue().size());
+        assertEquals(pool1, arg.getValue().get(0).getPool());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testAdjustEntitlementQuantityLocksPoolsAfterRules() throws Exception {
+        final Pool pool1 = TestUtil.createPool(owner, product, 2);
+        pool1.setId("poolId1");
+        Consumer consumer = TestUtil.createConsumer(owner);
+        Entitlement entitlement = new Entitlement(pool1, consumer, 1);
+
+        when(mockPoolCurator.loadBatch(anyCollection())).thenReturn(Arrays.asList(pool1));
+        // another bind took the remaining entitlement while the rules were running
+        when(mockPoolCurator.lockAndLoadBatch(anyCollection())).thenAnswer(new Answer<List<Pool>>() {
+            @Override
+            public List<Pool> answer(InvocationOnMock invocation) throws Throwable {
+                pool1.setConsumed(2L);
+                return Arrays.asList(pool1);
+            }
+        });
+
+        try {
+            manager.adjustEntitlementQuantity(consumer, entitlement, 2);
+            fail();
+        }
+        catch (EntitlementRefusedException e) {
+            assertEquals("rulefailed.no.entitlements.available",
+                e.getResults().get("poolId1").getErrors().get(0).getResourceKey());
+        }
+
+        InOrder order = inOrder(mockPoolCurator, enforcerMock);
+        order.verify(mockPoolCurator).loadBatch(anyCollection());
+        order.verify(enforcerMock).preEntitlement(any(Consumer.class),
+            anyCollectionOf(PoolQuantity.class), any(CallerType.class));
+        order.verify(mockPoolCurator).lockAndLoadBatch(anyCollection());
+        verify(entitlementCurator, never()).mergeAll(anyCollectionOf(Entitlement.class), anyBoolean());
+        assertEquals(1, entitlement.getQuantity().intValue());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testPoolContentionMetricsBounded() throws Exception {
+        Consumer consumer = TestUtil.createConsumer(owner);
+        Pool last = null;
+        for (int i = 0; i < 25; i++) {
+            last = TestUtil.createPool(owner, product, 1);
+            last.setId("contendedPool" + i);
+            when(mockPoolCurator.loadBatch(anyCollection())).thenReturn(Arrays.asList(last));
+            when(mockPoolCurator.lockAndLoadBatch(anyCollection())).thenReturn(Arrays.asList(last));
+
+            Map<String, Integer> poolQuantities = new HashMap<String, Integer>();
+            poolQuantities.put(last.getId(), 1);
+            manager.entitleByPools(consumer, poolQuantities);
+        }
+
+        int tracked = 0;
+        for (String name : Metrics.snapshot().keySet()) {
+            if (name.startsWith("pool.reservation.lock_wait.")) {
+                tracked++;
+            }
+        }
+        assertTrue(tracked <= 20);
+        // a pool seen late still has metrics of its own
+        assertEquals(1, Metrics.timer("pool.reservation.lock_wait." + last.getId()).getCount());
+    }
+
     @Test
     public void testEntitlebyProductRetry() throws Exception {
         Product product = TestUtil.createProduct();
@@ -794,6 +1060,7 @@ public class PoolManagerTest {
 
         when(mockPoolCurator.lockAndLoad(any(Pool.class))).thenReturn(pool1);
         when(mockPoolCurator.lockAndLoadBatch(any(List.class))).thenReturn(Arrays.asList(pool1));
+        when(mockPoolCurator.loadBatch(anyCollection())).thenReturn(Arrays.asList(pool1));
         when(enforcerMock.preEntitlement(any(Consumer.class), anyCollectionOf(PoolQuantity.class),
             any(CallerType.class))).thenReturn(resultMap);
 
@@ -996,6 +1263,7 @@ public class PoolManagerTest {
                 .thenReturn(page);
 
         when(mockPoolCurator.lockAndLoadBatch(anyListOf(String.class))).thenReturn(pools);
+        when(mockPoolCurator.loadBatch(anyCollection())).thenReturn(pools);
         when(enforcerMock.preEntitlement(any(Consumer.class), any(Pool.class), anyInt(),
             any(CallerType.class))).thenReturn(result);
 
@@ -2023,6 +2291,7 @@ public class PoolManagerTest {
         assertEquals(3, derivedPool.getConsumed().intValue());
         assertEquals(1, derivedPool.getEntitlements().size());
 
+        when(mockPoolCurator.loadBatch(anyCollection())).thenReturn(Arrays.asList(pool));
         when(mockPoolCurator.lockAndLoadBatch(anyCollection())).thenReturn(Arrays.asList(pool));
 
         when(mockPoolCurator.lookupOversubscribedBySubscriptionIds(anyMap()))
@@ -2092,6 +2361,7 @@ public class PoolManagerTest {
         assertEquals(1, derivedPool2.getEntitlements().size());
         assertEquals(2, derivedPool2.getConsumed().intValue());
 
+        when(mockPoolCurator.loadBatch(anyCollection())).thenReturn(Arrays.asList(pool));
         when(mockPoolCurator.lockAndLoadBatch(anyCollection())).thenReturn(Arrays.asList(pool));
 
         when(mockPoolCurator.lookupOversubscribedBySubscriptionIds(anyMap())).thenReturn(
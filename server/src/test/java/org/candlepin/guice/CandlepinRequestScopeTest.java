@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.guice;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import com.google.inject.Key;
+import com.google.inject.OutOfScopeException;
+import com.google.inject.Provider;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * CandlepinRequestScopeTest
+ */
+public class CandlepinRequestScopeTest {
+
+    private CandlepinRequestScope scope;
+    private RequestScopeExitListener listener;
+    private Provider<RequestScopeExitListener> provider;
+
+    @Before
+    public void init() {
+        scope = new CandlepinRequestScope();
+        listener = mock(RequestScopeExitListener.class);
+        provider = scope.scope(Key.get(RequestScopeExitListener.class),
+            new Provider<RequestScopeExitListener>() {
+                public RequestScopeExitListener get() {
+                    return listener;
+                }
+            });
+    }
+
+    @Test
+    public void exitNotifiesScopedListeners() {
+        scope.enter();
+        assertSame(listener, provider.get());
+        scope.exit();
+
+        verify(listener).onScopeExit();
+    }
+
+    @Test
+    public void exitWithoutListenersCreated() {
+        scope.enter();
+        scope.exit();
+
+        verify(listener, never()).onScopeExit();
+    }
+
+    @Test(expected = OutOfScopeException.class)
+    public void exitLeavesScope() {
+        scope.enter();
+        provider.get();
+        scope.exit();
+
+        provider.get();
+    }
+}
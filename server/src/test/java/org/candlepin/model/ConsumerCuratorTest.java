@@ -24,11 +24,13 @@ import org.candlepin.resource.util.ResourceDateParser;
 import org.candlepin.test.DatabaseTestFixture;
 import org.candlepin.util.Util;
 
+import org.hibernate.Hibernate;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.math.BigInteger;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -358,6 +360,39 @@ public class ConsumerCuratorTest extends DatabaseTestFixture {
         assertTrue(consumer.getLastCheckin().getTime() > date.getTime());
     }
 
+    @Test
+    public void updateLastCheckins() {
+        Consumer c1 = consumerCurator.create(new Consumer("c1", "testUser", owner, ct));
+        Consumer c2 = consumerCurator.create(new Consumer("c2", "testUser", owner, ct));
+        Date d1 = ResourceDateParser.parseDateString("2011-09-26T18:10:50+00:00");
+        Date d2 = ResourceDateParser.parseDateString("2012-03-14T09:26:53+00:00");
+
+        Map<String, Date> checkins = new HashMap<String, Date>();
+        checkins.put(c1.getId(), d1);
+        checkins.put(c2.getId(), d2);
+        assertEquals(2, consumerCurator.updateLastCheckins(checkins));
+
+        consumerCurator.refresh(c1);
+        consumerCurator.refresh(c2);
+        assertEquals(d1.getTime(), c1.getLastCheckin().getTime());
+        assertEquals(d2.getTime(), c2.getLastCheckin().getTime());
+    }
+
+    @Test
+    public void updateLastCheckinsKeepsLaterCheckin() {
+        Consumer consumer = consumerCurator.create(new Consumer("c1", "testUser", owner, ct));
+        Date later = ResourceDateParser.parseDateString("2012-03-14T09:26:53+00:00");
+        Date earlier = ResourceDateParser.parseDateString("2011-09-26T18:10:50+00:00");
+        consumerCurator.updateLastCheckins(Collections.singletonMap(consumer.getId(), later));
+        Date updated = consumer.getUpdated();
+
+        consumerCurator.updateLastCheckins(Collections.singletonMap(consumer.getId(), earlier));
+
+        consumerCurator.refresh(consumer);
+        assertEquals(later.getTime(), consumer.getLastCheckin().getTime());
+        assertEquals(updated.getTime(), consumer.getUpdated().getTime());
+    }
+
     @Test
     public void delete() {
         Consumer consumer = new Consumer("testConsumer", "testUser", owner, ct);
@@ -726,7 +761,7 @@ public class ConsumerCuratorTest extends DatabaseTestFixture {
     }
 
     @Test
-    public void testGetConsumerIdsWithStartedEnts() {
+    public void testGetConsumerUuidsWithStartedEnts() {
         Consumer consumer = new Consumer("testConsumer", "testUser", owner, ct);
         consumerCurator.create(consumer);
         Product prod = this.createProduct("1", "2", owner);
@@ -737,13 +772,13 @@ public class ConsumerCuratorTest extends DatabaseTestFixture {
         ent.setUpdatedOnStart(false);
         entitlementCurator.create(ent);
 
-        List<String> results = consumerCurator.getConsumerIdsWithStartedEnts();
+        List<String> results = consumerCurator.getConsumerUuidsWithStartedEnts(null, new Date());
         assertEquals(1, results.size());
-        assertEquals(consumer.getId(), results.get(0));
+        assertEquals(consumer.getUuid(), results.get(0));
     }
 
     @Test
-    public void testGetConsumerIdsWithStartedEntsAlreadyDone() {
+    public void testGetConsumerUuidsWithStartedEntsAlreadyDone() {
         Consumer consumer = new Consumer("testConsumer", "testUser", owner, ct);
         consumerCurator.create(consumer);
         Product prod = this.createProduct("1", "2", owner);
@@ -755,10 +790,36 @@ public class ConsumerCuratorTest extends DatabaseTestFixture {
         ent.setUpdatedOnStart(true);
         entitlementCurator.create(ent);
 
-        List<String> results = consumerCurator.getConsumerIdsWithStartedEnts();
+        List<String> results = consumerCurator.getConsumerUuidsWithStartedEnts(null, new Date());
         assertTrue(results.isEmpty());
     }
 
+    @Test
+    public void findByUuidsForComplianceFetchesPoolProductsAndAttributes() {
+        Consumer consumer = new Consumer("testConsumer", "testUser", owner, ct);
+        consumerCurator.create(consumer);
+        Product provided = this.createProduct("provided", "Provided", owner);
+        Product prod = new Product("1", "2");
+        prod.setAttribute("sockets", "2");
+        prod = this.createProduct(prod, owner);
+
+        Pool p = createPool(owner, prod, 5L, Util.yesterday(), Util.tomorrow());
+        p.addProvidedProduct(provided);
+        p.setAttribute("virt_only", "false");
+        poolCurator.merge(p);
+        this.createEntitlement(owner, consumer, p, null);
+        em.clear();
+
+        List<Consumer> results = consumerCurator.findByUuidsForCompliance(Arrays.asList(consumer.getUuid()));
+        assertEquals(1, results.size());
+        Pool found = results.get(0).getEntitlements().iterator().next().getPool();
+        assertTrue(Hibernate.isInitialized(found.getProvidedProducts()));
+        assertTrue(Hibernate.isInitialized(found.getDerivedProvidedProducts()));
+        assertTrue(Hibernate.isInitialized(found.getAttributes()));
+        assertEquals(1, found.getProvidedProducts().size());
+        assertEquals("2", found.getProduct().getAttributeValue("sockets"));
+    }
+
     @Test
     public void testConsumerDeleteCascadesToContentTag() {
         Consumer c = new Consumer("testConsumer", "testUser", owner, ct);
@@ -1059,6 +1059,68 @@ public class EntitlementCuratorTest extends DatabaseTestFixture {
         assertThat(results, Matchers.hasItems(e1, e2));
     }
 
+    @Test
+    public void findInvalidEntitlementsByPoolAttribute() {
+        Product product = this.createProduct(owner);
+        Date now = new Date();
+
+        Pool current = TestUtil.createPool(owner, product);
+        current.setStartDate(createDate(2000, 1, 1));
+        current.setEndDate(createDate(2050, 1, 1));
+        current.addAttribute(new PoolAttribute("x", "true"));
+        poolCurator.create(current);
+
+        Pool future = TestUtil.createPool(owner, product);
+        future.setStartDate(createDate(2049, 1, 1));
+        future.setEndDate(createDate(2050, 1, 1));
+        future.addAttribute(new PoolAttribute("x", "true"));
+        poolCurator.create(future);
+
+        Pool expired = TestUtil.createPool(owner, product);
+        expired.setStartDate(createDate(2000, 1, 1));
+        expired.setEndDate(createDate(2001, 1, 1));
+        expired.addAttribute(new PoolAttribute("x", "true"));
+        poolCurator.create(expired);
+
+        Pool noAttribute = TestUtil.createPool(owner, product);
+        noAttribute.setStartDate(createDate(2000, 1, 1));
+        noAttribute.setEndDate(createDate(2001, 1, 1));
+        poolCurator.create(noAttribute);
+
+        Entitlement valid = bind(consumer, current);
+        Entitlement lapsed = createEntitlement(owner, consumer, current,
+            createEntitlementCertificate("key", "certificate"));
+        lapsed.setEndDateOverride(new Date(now.getTime() - 60L * 60L * 1000L));
+        entitlementCurator.create(lapsed);
+        Entitlement overridden = createEntitlement(owner, consumer, expired,
+            createEntitlementCertificate("key", "certificate"));
+        overridden.setEndDateOverride(new Date(now.getTime() + 60L * 60L * 1000L));
+        entitlementCurator.create(overridden);
+        Entitlement notStarted = bind(consumer, future);
+        Entitlement ended = bind(consumer, expired);
+        Entitlement otherPool = bind(consumer, noAttribute);
+
+        List<Entitlement> results = entitlementCurator.findInvalidByPoolAttribute(
+            null, "x", "true", now, -1);
+        assertEquals(3, results.size());
+        assertThat(results, hasItems(lapsed, notStarted, ended));
+        assertThat(results, not(hasItem(valid)));
+        assertThat(results, not(hasItem(overridden)));
+        assertThat(results, not(hasItem(otherPool)));
+
+        assertEquals(1, entitlementCurator.findInvalidByPoolAttribute(
+            consumer, "x", "true", now, 1).size());
+
+        // Blocks follow on from the last id of the previous block
+        List<Entitlement> first = entitlementCurator.findInvalidByPoolAttribute(
+            null, "x", "true", now, null, 2);
+        List<Entitlement> rest = entitlementCurator.findInvalidByPoolAttribute(
+            null, "x", "true", now, first.get(1).getId(), 2);
+        assertEquals(2, first.size());
+        assertEquals(1, rest.size());
+        assertThat(rest, not(hasItems(first.toArray(new Entitlement[0]))));
+    }
+
     private Entitlement bind(Consumer consumer, Pool pool) {
         EntitlementCertificate cert =
             createEntitlementCertificate("key", "certificate");
@@ -28,6 +28,7 @@ import org.candlepin.test.DatabaseTestFixture;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
@@ -108,4 +109,26 @@ public class EventCuratorTest extends DatabaseTestFixture {
         assertEquals(rulesDeletedEvent.getId(), mostRecent.get(2).getId());
     }
 
+    @Test
+    public void testCreateAll() {
+        Consumer newConsumer = new Consumer("consumername", "user", owner,
+            new ConsumerType("system"));
+        consumerTypeCurator.create(newConsumer.getType());
+        consumerCurator.create(newConsumer);
+
+        setupPrincipal(owner, Access.ALL);
+        Event created = eventFactory.consumerCreated(newConsumer);
+        Event modified = eventFactory.getEventBuilder(Event.Target.CONSUMER, Event.Type.MODIFIED)
+            .setNewEntity(newConsumer).setOldEntity(newConsumer).buildEvent();
+
+        eventCurator.createAll(Arrays.asList(created, modified));
+        assertNotNull(created.getId());
+        assertNotNull(modified.getId());
+
+        Event lookedUp = eventCurator.find(modified.getId());
+        assertEquals(Type.MODIFIED, lookedUp.getType());
+        assertEquals(newConsumer.getId(), lookedUp.getEntityId());
+        assertEquals(owner.getId(), lookedUp.getOwnerId());
+        assertEquals(modified.getPrincipalStore(), lookedUp.getPrincipalStore());
+    }
 }
@@ -15,7 +15,9 @@
 package org.candlepin.pinsetter.tasks;
 
 import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
 
+import org.candlepin.guice.CandlepinRequestScope;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerInstalledProduct;
 import org.candlepin.model.ConsumerType;
@@ -29,8 +31,13 @@ import org.candlepin.util.Util;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
 
+import java.util.Date;
+
 import javax.inject.Inject;
 
 /**
@@ -38,14 +45,23 @@ import javax.inject.Inject;
  */
 public class ActiveEntitlementJobTest extends DatabaseTestFixture {
     @Inject private ActiveEntitlementJob job;
+    @Inject private CandlepinRequestScope requestScope;
 
     private Owner owner;
     private ConsumerType ct;
     private Consumer consumer;
     private Product prod;
+    private JobDataMap data;
+    private JobExecutionContext ctx;
 
     @Before
     public void setUp() {
+        data = new JobDataMap();
+        JobDetail detail = mock(JobDetail.class);
+        when(detail.getJobDataMap()).thenReturn(data);
+        ctx = mock(JobExecutionContext.class);
+        when(ctx.getJobDetail()).thenReturn(detail);
+
         owner = new Owner("test-owner", "Test Owner");
         owner = ownerCurator.create(owner);
 
@@ -72,14 +88,36 @@ public class ActiveEntitlementJobTest extends DatabaseTestFixture {
         consumerCurator.refresh(consumer);
         assertFalse("valid".equals(consumer.getEntitlementStatus()));
 
-        job.toExecute(null);
-        consumerCurator.refresh(consumer);
+        job.toExecute(ctx);
+        consumer = consumerCurator.find(consumer.getId());
         assertEquals("valid", consumer.getEntitlementStatus());
 
         // Should have changed
         assertTrue(entitlementCurator.find(ent.getId()).isUpdatedOnStart());
     }
 
+    @Test
+    public void testActiveEntitlementJobOutsideRequestScope() throws JobExecutionException {
+        Pool p = createPool(owner, prod, 5L, Util.yesterday(), Util.tomorrow());
+        Entitlement ent = this.createEntitlement(owner, consumer, p,
+            createEntitlementCertificate("entkey", "ecert"));
+        ent.setUpdatedOnStart(false);
+        entitlementCurator.create(ent);
+
+        // Jobs run after the scope they were created in has been left
+        requestScope.exit();
+        try {
+            job.toExecute(ctx);
+        }
+        finally {
+            requestScope.enter();
+        }
+
+        consumer = consumerCurator.find(consumer.getId());
+        assertEquals("valid", consumer.getEntitlementStatus());
+        assertTrue(entitlementCurator.find(ent.getId()).isUpdatedOnStart());
+    }
+
     @Test
     public void testActiveEntitlementJobNoChange() throws JobExecutionException {
         Pool p = createPool(owner, prod, 5L, Util.yesterday(), Util.tomorrow());
@@ -89,7 +127,7 @@ public class ActiveEntitlementJobTest extends DatabaseTestFixture {
         ent.setUpdatedOnStart(true);
         entitlementCurator.create(ent);
 
-        job.toExecute(null);
+        job.toExecute(ctx);
 
         // Unchanged
         assertTrue(entitlementCurator.find(ent.getId()).isUpdatedOnStart());
@@ -108,12 +146,56 @@ public class ActiveEntitlementJobTest extends DatabaseTestFixture {
         consumerCurator.refresh(consumer);
         assertFalse("valid".equals(consumer.getEntitlementStatus()));
 
-        job.toExecute(null);
-        consumerCurator.refresh(consumer);
+        job.toExecute(ctx);
+        consumer = consumerCurator.find(consumer.getId());
         // still not valid.  Probably not even set, but that doesn't matter
         assertFalse("valid".equals(consumer.getEntitlementStatus()));
 
         // Should not have changed
         assertFalse(entitlementCurator.find(ent.getId()).isUpdatedOnStart());
     }
+
+    @Test
+    public void testActiveEntitlementJobRemembersLastRun() throws JobExecutionException {
+        Date before = new Date();
+        job.toExecute(ctx);
+
+        Date lastRun = (Date) data.get(ActiveEntitlementJob.LAST_RUN);
+        assertNotNull(lastRun);
+        assertFalse(lastRun.before(before));
+    }
+
+    @Test
+    public void testActiveEntitlementJobOnlyChecksPoolsStartedSinceLastRun()
+        throws JobExecutionException {
+        Pool p = createPool(owner, prod, 5L, Util.yesterday(), Util.tomorrow());
+        Entitlement ent = this.createEntitlement(owner, consumer, p,
+            createEntitlementCertificate("entkey", "ecert"));
+        ent.setUpdatedOnStart(false);
+        entitlementCurator.create(ent);
+
+        // Started before the last run, that run took care of it
+        data.put(ActiveEntitlementJob.LAST_RUN, new Date(System.currentTimeMillis() - 60000L));
+        job.toExecute(ctx);
+
+        assertFalse(entitlementCurator.find(ent.getId()).isUpdatedOnStart());
+    }
+
+    @Test
+    public void testActiveEntitlementJobChecksPoolsStartedSinceLastRun()
+        throws JobExecutionException {
+        Pool p = createPool(owner, prod, 5L, new Date(System.currentTimeMillis() - 60000L),
+            Util.tomorrow());
+        Entitlement ent = this.createEntitlement(owner, consumer, p,
+            createEntitlementCertificate("entkey", "ecert"));
+        entitlementCurator.create(ent);
+
+        consumerCurator.refresh(consumer);
+        assertFalse("valid".equals(consumer.getEntitlementStatus()));
+
+        data.put(ActiveEntitlementJob.LAST_RUN, Util.yesterday());
+        job.toExecute(ctx);
+        consumer = consumerCurator.find(consumer.getId());
+        assertEquals("valid", consumer.getEntitlementStatus());
+    }
 }
@@ -14,13 +14,12 @@
  */
 package org.candlepin.pinsetter.tasks;
 
-import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import org.candlepin.common.config.Configuration;
 import org.candlepin.config.ConfigProperties;
-import org.candlepin.util.CrlFileUtil;
+import org.candlepin.util.CrlCache;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -29,8 +28,6 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.quartz.JobExecutionException;
 
-import java.io.File;
-
 
 
 /**
@@ -41,11 +38,11 @@ public class CertificateRevocationListTaskTest {
     private CertificateRevocationListTask task;
 
     @Mock private Configuration config;
-    @Mock private CrlFileUtil crlFileUtil;
+    @Mock private CrlCache crlCache;
 
     @Before
     public void init() {
-        this.task = new CertificateRevocationListTask(config, crlFileUtil);
+        this.task = new CertificateRevocationListTask(config, crlCache);
     }
 
     @Test(expected = JobExecutionException.class)
@@ -57,11 +54,10 @@ public class CertificateRevocationListTaskTest {
     @Test
     public void execute() throws Exception {
         when(config.getString(ConfigProperties.CRL_FILE_PATH)).thenReturn("/tmp/test.crl");
-        when(crlFileUtil.syncCRLWithDB(any(File.class))).thenReturn(true);
 
         task.execute(null);
 
-        verify(crlFileUtil).syncCRLWithDB(any(File.class));
+        verify(crlCache).refresh();
     }
 
 }
@@ -0,0 +1,220 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pinsetter.tasks;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.audit.EventSink;
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.controller.Entitler;
+import org.candlepin.guice.CandlepinRequestScope;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerCurator;
+import org.candlepin.model.JobCurator;
+import org.candlepin.model.OwnerCurator;
+import org.candlepin.pinsetter.core.model.JobStatus;
+import org.candlepin.policy.js.JsRunnerRequestCache;
+import org.candlepin.resource.dto.AutobindData;
+
+import com.google.inject.Key;
+import com.google.inject.Provider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.slf4j.MDC;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HealEntireOrgJobTest
+ */
+public class HealEntireOrgJobTest {
+
+    private Entitler entitler;
+    private CandlepinRequestScope requestScope;
+    private List<String> scopedUuids;
+    private List<JsRunnerRequestCache> caches;
+    private ConsumerCurator consumerCurator;
+    private OwnerCurator ownerCurator;
+    private JobCurator jobCurator;
+    private EventSink sink;
+    private JobStatus status;
+    private JobExecutionContext ctx;
+    private HealEntireOrgJob job;
+
+    @Before
+    public void init() {
+        entitler = mock(Entitler.class);
+        requestScope = new CandlepinRequestScope();
+        scopedUuids = new CopyOnWriteArrayList<String>();
+        caches = new CopyOnWriteArrayList<JsRunnerRequestCache>();
+        final Provider<JsRunnerRequestCache> cacheProvider = requestScope.scope(
+            Key.get(JsRunnerRequestCache.class), new Provider<JsRunnerRequestCache>() {
+                public JsRunnerRequestCache get() {
+                    return new JsRunnerRequestCache();
+                }
+            });
+        // Stands in for the rules runners an Entitler borrows within the current scope
+        Provider<Entitler> entitlerProvider = new Provider<Entitler>() {
+            public Entitler get() {
+                caches.add(cacheProvider.get());
+                scopedUuids.add(MDC.get("requestUuid"));
+                return entitler;
+            }
+        };
+        consumerCurator = mock(ConsumerCurator.class);
+        ownerCurator = mock(OwnerCurator.class);
+        jobCurator = mock(JobCurator.class);
+        sink = mock(EventSink.class);
+
+        Configuration config = mock(Configuration.class);
+        when(config.getInt(ConfigProperties.HEAL_ORG_THREADS)).thenReturn(2);
+        when(config.getInt(ConfigProperties.HEAL_ORG_CHUNK_SIZE)).thenReturn(2);
+
+        // handed out in a different order than they are healed in
+        when(ownerCurator.getConsumerUuids("admin")).thenReturn(
+            Arrays.asList("e", "c", "a", "d", "b"));
+        for (String uuid : Arrays.asList("a", "b", "c", "d", "e")) {
+            Consumer consumer = new Consumer();
+            consumer.setUuid(uuid);
+            when(consumerCurator.getConsumer(uuid)).thenReturn(consumer);
+        }
+
+        JobDetail detail = HealEntireOrgJob.healEntireOrg("admin", new Date());
+        status = mock(JobStatus.class);
+        when(jobCurator.find(detail.getKey().getName())).thenReturn(status);
+
+        ctx = mock(JobExecutionContext.class);
+        when(ctx.getMergedJobDataMap()).thenReturn(detail.getJobDataMap());
+        when(ctx.getJobDetail()).thenReturn(detail);
+
+        job = new HealEntireOrgJob(entitlerProvider, consumerCurator, ownerCurator, jobCurator, sink,
+            config, requestScope);
+    }
+
+    @Test
+    public void healsEveryConsumerInChunks() throws Exception {
+        job.execute(ctx);
+
+        verify(entitler, times(5)).bindByProducts(any(AutobindData.class), eq(true));
+        verify(sink, times(5)).sendEvents();
+        // Progress overtaken by a newer save is not saved
+        verify(jobCurator, atLeastOnce()).merge(status);
+        verify(ctx).setResult("Healed 5 of 5 consumers, 0 failed");
+    }
+
+    @Test
+    public void eachChunkHealedWithinItsOwnScope() throws Exception {
+        job.execute(ctx);
+
+        // One scope for each of the three chunks, each logged under the job
+        assertEquals(3, new HashSet<JsRunnerRequestCache>(caches).size());
+        Set<String> jobUuids = Collections.singleton(ctx.getJobDetail().getKey().getName());
+        assertEquals(jobUuids, new HashSet<String>(scopedUuids));
+    }
+
+    @Test
+    public void failedConsumerDoesNotStopTheOthers() throws Exception {
+        when(consumerCurator.getConsumer("b")).thenThrow(new RuntimeException("gone"));
+
+        job.execute(ctx);
+
+        verify(entitler, times(4)).bindByProducts(any(AutobindData.class), eq(true));
+        verify(sink, times(1)).rollback();
+        verify(ctx).setResult("Healed 4 of 5 consumers, 1 failed");
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void progressRecordsWhereToResume() throws Exception {
+        job.execute(ctx);
+
+        ArgumentCaptor<Object> data = ArgumentCaptor.forClass(Object.class);
+        verify(status, atLeastOnce()).setResultData(data.capture());
+        Map<String, Object> last = (Map<String, Object>) data.getValue();
+        assertEquals(5, last.get(HealEntireOrgJob.CONSUMERS));
+        assertEquals("e", last.get(HealEntireOrgJob.RESUME_AFTER));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void progressCountsOnlyChunksBeforeWhereToResume() throws Exception {
+        // The first chunk finishes last, after the second has recorded its progress
+        final CountDownLatch lastChunkStarted = new CountDownLatch(1);
+        final Consumer first = consumerCurator.getConsumer("a");
+        final Consumer last = consumerCurator.getConsumer("e");
+        when(consumerCurator.getConsumer("a")).thenAnswer(new Answer<Consumer>() {
+            public Consumer answer(InvocationOnMock invocation) throws Throwable {
+                lastChunkStarted.await(10, TimeUnit.SECONDS);
+                return first;
+            }
+        });
+        when(consumerCurator.getConsumer("e")).thenAnswer(new Answer<Consumer>() {
+            public Consumer answer(InvocationOnMock invocation) throws Throwable {
+                lastChunkStarted.countDown();
+                return last;
+            }
+        });
+
+        job.execute(ctx);
+
+        ArgumentCaptor<Object> data = ArgumentCaptor.forClass(Object.class);
+        verify(status, atLeastOnce()).setResultData(data.capture());
+        List<String> uuids = Arrays.asList("a", "b", "c", "d", "e");
+        for (Object value : data.getAllValues()) {
+            Map<String, Object> saved = (Map<String, Object>) value;
+            int counted = (Integer) saved.get(HealEntireOrgJob.HEALED_CONSUMERS) +
+                (Integer) saved.get(HealEntireOrgJob.FAILED_CONSUMERS);
+            assertEquals(uuids.indexOf(saved.get(HealEntireOrgJob.RESUME_AFTER)) + 1, counted);
+        }
+        verify(ctx).setResult("Healed 5 of 5 consumers, 0 failed");
+    }
+
+    @Test
+    public void recoveredJobResumesAfterRecordedProgress() throws Exception {
+        Map<String, Object> progress = new HashMap<String, Object>();
+        progress.put(HealEntireOrgJob.CONSUMERS, 5);
+        progress.put(HealEntireOrgJob.HEALED_CONSUMERS, 1);
+        progress.put(HealEntireOrgJob.FAILED_CONSUMERS, 1);
+        progress.put(HealEntireOrgJob.RESUME_AFTER, "b");
+        when(status.getResultData()).thenReturn(progress);
+        when(ctx.isRecovering()).thenReturn(true);
+
+        job.execute(ctx);
+
+        verify(consumerCurator, never()).getConsumer("a");
+        verify(consumerCurator, never()).getConsumer("b");
+        verify(entitler, times(3)).bindByProducts(any(AutobindData.class), eq(true));
+        verify(ctx).setResult("Healed 4 of 5 consumers, 1 failed");
+    }
+}
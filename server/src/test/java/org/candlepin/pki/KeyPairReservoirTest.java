@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pki;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+
+/**
+ * KeyPairReservoirTest
+ */
+public class KeyPairReservoirTest {
+
+    private PKIUtility pki;
+
+    @Before
+    public void init() throws Exception {
+        pki = mock(PKIUtility.class);
+        when(pki.generateNewKeyPair()).thenAnswer(new Answer<KeyPair>() {
+            public KeyPair answer(InvocationOnMock invocation) {
+                return new KeyPair(mock(PublicKey.class), mock(PrivateKey.class));
+            }
+        });
+    }
+
+    @Test
+    public void disabledReservoirGeneratesInline() throws Exception {
+        KeyPairReservoir reservoir = new KeyPairReservoir(pki, 0, 0, 1);
+        assertNotNull(reservoir.take());
+        assertNotNull(reservoir.take());
+
+        verify(pki, times(2)).generateNewKeyPair();
+        assertEquals(0, reservoir.getDepth());
+    }
+
+    @Test
+    public void emptyReservoirFallsBackAndRefills() throws Exception {
+        KeyPairReservoir reservoir = new KeyPairReservoir(pki, 2, 5, 2);
+        assertNotNull(reservoir.take());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (reservoir.getDepth() < 5 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        // concurrent workers may overshoot the high watermark by one each
+        assertTrue(reservoir.getDepth() >= 5);
+
+        KeyPair first = reservoir.take();
+        assertNotSame(first, reservoir.take());
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pki;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.cert.Certificate;
+import java.util.Arrays;
+
+/**
+ * SignatureVerifierTest
+ */
+public class SignatureVerifierTest {
+
+    private KeyPair signer;
+    private KeyPair other;
+    private byte[] data = "consumer_export.zip contents".getBytes();
+
+    @Before
+    public void init() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        signer = generator.generateKeyPair();
+        other = generator.generateKeyPair();
+    }
+
+    @Test
+    public void verifiesAgainstAnyCertificate() throws Exception {
+        SignatureVerifier verifier = new SignatureVerifier(
+            Arrays.asList(cert(other), cert(signer)));
+        verifier.write(data, 0, 10);
+        verifier.write(data, 10, data.length - 10);
+
+        assertTrue(verifier.verify(sign(data)));
+    }
+
+    @Test
+    public void rejectsChangedData() throws Exception {
+        SignatureVerifier verifier = new SignatureVerifier(Arrays.asList(cert(signer)));
+        verifier.write(data);
+        verifier.write('!');
+
+        assertFalse(verifier.verify(sign(data)));
+    }
+
+    @Test
+    public void rejectsMalformedSignature() throws Exception {
+        SignatureVerifier verifier = new SignatureVerifier(Arrays.asList(cert(signer)));
+        verifier.write(data);
+
+        assertFalse(verifier.verify("not a signature".getBytes()));
+    }
+
+    @Test
+    public void verifiesGeneratedSignature() throws Exception {
+        SignatureGenerator generator = new SignatureGenerator(signer.getPrivate());
+        generator.write(data, 0, 10);
+        generator.write(data, 10, data.length - 10);
+
+        SignatureVerifier verifier = new SignatureVerifier(Arrays.asList(cert(signer)));
+        verifier.write(data);
+        assertTrue(verifier.verify(generator.sign()));
+    }
+
+    private byte[] sign(byte[] content) throws Exception {
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(signer.getPrivate());
+        signature.update(content);
+        return signature.sign();
+    }
+
+    private Certificate cert(KeyPair pair) {
+        Certificate cert = mock(Certificate.class);
+        when(cert.getPublicKey()).thenReturn(pair.getPublic());
+        return cert;
+    }
+}
@@ -15,16 +15,20 @@
 package org.candlepin.policy;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerType;
 import org.candlepin.model.GuestId;
 import org.candlepin.model.Owner;
 import org.candlepin.model.Pool;
+import org.candlepin.model.PoolFilterBuilder;
 import org.candlepin.model.Product;
+import org.candlepin.policy.criteria.CriteriaRules;
 import org.candlepin.test.DatabaseTestFixture;
 import org.candlepin.test.TestUtil;
 
+import org.hibernate.criterion.Criterion;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -187,6 +191,62 @@ public class CriteriaRulesTest extends DatabaseTestFixture {
             null, false);
         assertEquals(1, results.size());
     }
-}
 
+    @Test
+    public void preEntitlementCriteriaFilterRestrictedPools() {
+        ConsumerType type = new ConsumerType(ConsumerType.ConsumerTypeEnum.SYSTEM);
+        consumerTypeCurator.create(type);
+        Consumer c = new Consumer("test-consumer", "test-user", owner, type);
+        consumerCurator.create(c);
+
+        Product targetProduct = this.createProduct(owner);
+        Pool userPool = this.createPool(owner, targetProduct, 1L, new Date(), new Date());
+        userPool.setRestrictedToUsername("test-user");
+        poolCurator.merge(userPool);
+        Pool otherUserPool = this.createPool(owner, targetProduct, 1L, new Date(), new Date());
+        otherUserPool.setRestrictedToUsername("other-user");
+        poolCurator.merge(otherUserPool);
+        Pool hostPool = this.createPool(owner, targetProduct, 1L, new Date(), new Date());
+        hostPool.setAttribute("requires_host", "HOSTUUID");
+        poolCurator.merge(hostPool);
+        Pool typedPool = this.createPool(owner, targetProduct, 1L, new Date(), new Date());
+        typedPool.setAttribute("requires_consumer_type", "person");
+        poolCurator.merge(typedPool);
+
+        PoolFilterBuilder filters = new PoolFilterBuilder();
+        for (Criterion criterion : CriteriaRules.preEntitlementCriteria(c)) {
+            filters.addCriteria(criterion);
+        }
+
+        List<Pool> results = poolCurator.listAvailableEntitlementPools(c, null,
+            (Collection<String>) null, null, null, false, filters, null, false).getPageData();
+        assertEquals(1, results.size());
+        assertEquals(userPool.getId(), results.get(0).getId());
+    }
+
+    @Test
+    public void notPhysicalOnlyPoolLeavesProductAttributeToRules() {
+        consumer = this.createConsumer(owner);
+        Product physicalProduct = TestUtil.createProduct();
+        physicalProduct.setAttribute("physical_only", "true");
+        physicalProduct = this.createProduct(physicalProduct, owner);
+
+        Pool productPool = this.createPool(owner, physicalProduct, 1L, new Date(), new Date());
+        Pool overriddenPool = this.createPool(owner, physicalProduct, 1L, new Date(), new Date());
+        overriddenPool.setAttribute("physical_only", "false");
+        poolCurator.merge(overriddenPool);
+        Pool physicalPool = this.createPool(owner, this.createProduct(owner), 1L, new Date(),
+            new Date());
+        physicalPool.setAttribute("physical_only", "True");
+        poolCurator.merge(physicalPool);
+
+        PoolFilterBuilder filters = new PoolFilterBuilder();
+        filters.addCriteria(CriteriaRules.notPhysicalOnlyPool());
 
+        List<Pool> results = poolCurator.listAvailableEntitlementPools(consumer, null,
+            (Collection<String>) null, null, null, false, filters, null, false).getPageData();
+        assertEquals(2, results.size());
+        assertTrue(results.contains(productPool));
+        assertTrue(results.contains(overriddenPool));
+    }
+}
@@ -14,6 +14,8 @@
  */
 package org.candlepin.policy.js;
 
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -24,6 +26,7 @@ import java.util.Date;
 import org.candlepin.model.Rules;
 import org.candlepin.model.Rules.RulesSourceEnum;
 import org.candlepin.model.RulesCurator;
+import org.candlepin.util.Metrics;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -66,6 +69,8 @@ public class JsRunnerProviderTest {
         verify(mockedCache).setUpdated(time1);
         provider.get();
         verify(mockedCache, times(2)).getUpdated();
+        // Runners only register with the cache once they borrow a scope
+        verify(mockedCache, never()).addRunner(any(JsRunner.class));
         verifyNoMoreInteractions(mockedCache);
     }
 
@@ -99,4 +104,51 @@ public class JsRunnerProviderTest {
         verify(rulesCurator, times(3)).getUpdated();
     }
 
+    @Test
+    public void releasedScopesAreReused() {
+        when(rules.getRules()).thenReturn(
+            "function test_name_space() { return Test; }\n" +
+            "var Test = { value: function() { return typeof arg === 'undefined' ? null : arg; } };");
+        provider.compileRules(true);
+
+        JsRunnerRequestCache cache = new JsRunnerRequestCache();
+        when(cacheProvider.get()).thenReturn(cache);
+
+        JsRunner runner = provider.get();
+        runner.init("test_name_space");
+        ArgumentJsContext args = new ArgumentJsContext();
+        args.put("arg", "first");
+        Assert.assertEquals("first", runner.runJsFunction(String.class, "value", args));
+        cache.releaseRunners();
+
+        long hits = Metrics.counter("jsrunner.pool.hit").getCount();
+        JsRunner other = provider.get();
+        other.init("test_name_space");
+        Assert.assertEquals(hits + 1, Metrics.counter("jsrunner.pool.hit").getCount());
+
+        // Arguments from the previous request must not leak into the reused scope
+        Assert.assertNull(other.invokeRule("value"));
+    }
+
+    @Test
+    public void recompileDropsPooledScopes() {
+        when(rules.getRules()).thenReturn(
+            "function test_name_space() { return Test; }\n" +
+            "var Test = { value: function() { return 'old'; } };");
+        provider.compileRules(true);
+        when(cacheProvider.get()).thenReturn(new JsRunnerRequestCache());
+
+        JsRunner runner = provider.get();
+        runner.init("test_name_space");
+
+        when(rules.getRules()).thenReturn(
+            "function test_name_space() { return Test; }\n" +
+            "var Test = { value: function() { return 'new'; } };");
+        provider.compileRules(true);
+        runner.release();
+
+        JsRunner other = provider.get();
+        other.init("test_name_space");
+        Assert.assertEquals("new", other.invokeRule("value"));
+    }
 }
@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js;
+
+import static org.mockito.Mockito.*;
+
+import org.junit.Test;
+
+/**
+ * JsRunnerRequestCacheTest
+ */
+public class JsRunnerRequestCacheTest {
+
+    @Test
+    public void releasedRunnersAreNoLongerTracked() {
+        JsRunnerRequestCache cache = new JsRunnerRequestCache();
+        JsRunner runner = mock(JsRunner.class);
+        cache.addRunner(runner);
+
+        cache.releaseRunners();
+        cache.releaseRunners();
+
+        verify(runner, times(1)).release();
+    }
+
+    @Test
+    public void runnersBorrowingAgainAreTrackedAgain() {
+        JsRunnerRequestCache cache = new JsRunnerRequestCache();
+        JsRunner runner = mock(JsRunner.class);
+        cache.addRunner(runner);
+        cache.releaseRunners();
+
+        cache.addRunner(runner);
+        cache.onScopeExit();
+
+        verify(runner, times(2)).release();
+    }
+
+    @Test
+    public void runnersReleasedEarlyAreNotReleasedAgain() {
+        JsRunnerRequestCache cache = new JsRunnerRequestCache();
+        JsRunner runner = mock(JsRunner.class);
+        cache.addRunner(runner);
+
+        cache.removeRunner(runner);
+        cache.onScopeExit();
+
+        verify(runner, never()).release();
+    }
+}
@@ -109,15 +109,19 @@ public class ComplianceRulesTest {
         when(rulesCuratorMock.getRules()).thenReturn(rules);
         when(cacheProvider.get()).thenReturn(cache);
         provider = new JsRunnerProvider(rulesCuratorMock, cacheProvider);
-        compliance = new ComplianceRules(provider.get(),
-            entCurator, new StatusReasonMessageGenerator(i18n), eventSink,
-            consumerCurator);
+        compliance = createComplianceRules(provider.get(), entCurator,
+            new StatusReasonMessageGenerator(i18n), eventSink, consumerCurator);
         owner = new Owner("test");
         activeGuestAttrs = new HashMap<String, String>();
         activeGuestAttrs.put("virtWhoType", "libvirt");
         activeGuestAttrs.put("active", "1");
     }
 
+    protected ComplianceRules createComplianceRules(JsRunner jsRunner, EntitlementCurator entCurator,
+        StatusReasonMessageGenerator generator, EventSink eventSink, ConsumerCurator consumerCurator) {
+        return new ComplianceRules(jsRunner, entCurator, generator, eventSink, consumerCurator);
+    }
+
     /*
      * Make sure additive properties coming back from the javascript do not break when
      * we deserialize.
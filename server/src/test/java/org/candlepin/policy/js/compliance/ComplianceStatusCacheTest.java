@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.compliance;
+
+import static org.junit.Assert.*;
+
+import org.candlepin.model.Consumer;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.Owner;
+import org.candlepin.model.Pool;
+import org.candlepin.test.TestUtil;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Date;
+
+/**
+ * ComplianceStatusCacheTest
+ */
+public class ComplianceStatusCacheTest {
+
+    private ComplianceStatusCache cache;
+    private Consumer consumer;
+    private Entitlement ent;
+    private Date now;
+
+    @Before
+    public void setUp() {
+        cache = new ComplianceStatusCache(true, 100, 600);
+        Owner owner = new Owner("test");
+        consumer = TestUtil.createConsumer(owner);
+        consumer.setId("consumer-id");
+
+        Pool pool = TestUtil.createPool(owner, TestUtil.createProduct());
+        pool.setStartDate(TestUtil.createDate(2000, 1, 1));
+        pool.setEndDate(TestUtil.createDate(2050, 1, 1));
+        ent = TestUtil.createEntitlement(owner, consumer, pool, null);
+        ent.setId("ent-id");
+        now = new Date();
+    }
+
+    @Test
+    public void cachedStatusIsReused() {
+        ComplianceStatus status = new ComplianceStatus(now);
+        status.addCompliantProduct("p1", ent);
+        cache.put(consumer, "hash", "5.0", now, false, status);
+
+        Date later = new Date(now.getTime() + 1000);
+        ComplianceStatus cached = cache.get(consumer, "hash", "5.0", later, false);
+        assertNotNull(cached);
+        assertNotSame(status, cached);
+        assertEquals(later, cached.getDate());
+        assertSame(ent, cached.getCompliantProducts().get("p1").iterator().next());
+    }
+
+    @Test
+    public void changedInputsMiss() {
+        cache.put(consumer, "hash", "5.0", now, false, new ComplianceStatus(now));
+        assertNull(cache.get(consumer, "other", "5.0", now, false));
+    }
+
+    @Test
+    public void changedRulesMiss() {
+        cache.put(consumer, "hash", "5.0", now, false, new ComplianceStatus(now));
+        assertNull(cache.get(consumer, "hash", "5.1", now, false));
+    }
+
+    @Test
+    public void compliantUntilFlagIsPartOfTheKey() {
+        cache.put(consumer, "hash", "5.0", now, false, new ComplianceStatus(now));
+        assertNull(cache.get(consumer, "hash", "5.0", now, true));
+    }
+
+    @Test
+    public void expiresAtNextEntitlementBoundary() {
+        cache.put(consumer, "hash", "5.0", now, false, new ComplianceStatus(now));
+        assertNull(cache.get(consumer, "hash", "5.0", TestUtil.createDate(2050, 1, 2), false));
+    }
+
+    @Test
+    public void nextChangeIsEarliestFutureDate() {
+        Date compliantUntil = TestUtil.createDate(2040, 1, 1);
+        assertEquals(compliantUntil,
+            ComplianceStatusCache.getNextChange(consumer.getEntitlements(), compliantUntil, now));
+        assertEquals(TestUtil.createDate(2050, 1, 1),
+            ComplianceStatusCache.getNextChange(consumer.getEntitlements(), null, now));
+    }
+
+    @Test
+    public void disabledCacheNeverHits() {
+        cache = new ComplianceStatusCache(false, 100, 600);
+        cache.put(consumer, "hash", "5.0", now, false, new ComplianceStatus(now));
+        assertNull(cache.get(consumer, "hash", "5.0", now, false));
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.compliance;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.model.Consumer;
+import org.candlepin.model.Entitlement;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+
+/**
+ * DifferentialComplianceEngineTest
+ */
+public class DifferentialComplianceEngineTest {
+
+    private ComplianceEngine trusted;
+    private ComplianceEngine candidate;
+    private DifferentialComplianceEngine engine;
+    private Consumer consumer;
+
+    @Before
+    public void setUp() {
+        trusted = mock(ComplianceEngine.class);
+        candidate = mock(ComplianceEngine.class);
+        engine = new DifferentialComplianceEngine(trusted, candidate);
+        consumer = new Consumer();
+    }
+
+    @Test
+    public void identicalStatusesHaveNoDifferences() {
+        Date now = new Date();
+        assertTrue(DifferentialComplianceEngine.compare(status(now, "p1"), status(now, "p1")).isEmpty());
+    }
+
+    @Test
+    public void reportsDifferences() {
+        Date now = new Date();
+        ComplianceStatus expected = status(now, "p1");
+        ComplianceStatus actual = status(now, "p2");
+        actual.setCompliantUntil(now);
+
+        assertEquals(2, DifferentialComplianceEngine.compare(expected, actual).size());
+    }
+
+    @Test
+    public void trustedResultIsReturnedOnMismatch() {
+        Date now = new Date();
+        ComplianceStatus expected = status(now, "p1");
+        when(trusted.getStatus(eq(consumer), any(Collection.class), eq(now), eq(false)))
+            .thenReturn(expected);
+        when(candidate.getStatus(eq(consumer), any(Collection.class), eq(now), eq(false)))
+            .thenReturn(status(now, "p2"));
+
+        assertSame(expected, engine.getStatus(consumer, Collections.<Entitlement>emptyList(), now, false));
+    }
+
+    @Test
+    public void candidateFailureIsIgnored() {
+        Date now = new Date();
+        ComplianceStatus expected = status(now, "p1");
+        when(trusted.getStatus(eq(consumer), any(Collection.class), eq(now), eq(true)))
+            .thenReturn(expected);
+        when(candidate.getStatus(eq(consumer), any(Collection.class), eq(now), eq(true)))
+            .thenThrow(new RuntimeException("boom"));
+
+        assertSame(expected, engine.getStatus(consumer, Collections.<Entitlement>emptyList(), now, true));
+    }
+
+    private ComplianceStatus status(Date date, String nonCompliantProduct) {
+        ComplianceStatus status = new ComplianceStatus(date);
+        status.addNonCompliantProduct(nonCompliantProduct);
+        return status;
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.compliance;
+
+import static org.junit.Assert.*;
+
+import org.candlepin.audit.EventSink;
+import org.candlepin.config.CandlepinCommonTestConfig;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.ConsumerCurator;
+import org.candlepin.model.EntitlementCurator;
+import org.candlepin.policy.js.JsRunner;
+import org.candlepin.util.Metrics;
+
+import org.junit.After;
+import org.junit.Before;
+
+/**
+ * DifferentialComplianceRulesTest
+ *
+ * Runs every compliance scenario with the differential engine, so the native
+ * Java engine has to agree with the javascript rules on each of them.
+ */
+public class DifferentialComplianceRulesTest extends ComplianceRulesTest {
+
+    private long mismatches;
+    private long failures;
+
+    @Before
+    public void recordCounts() {
+        mismatches = Metrics.counter("compliance.differential.mismatches").getCount();
+        failures = Metrics.counter("compliance.differential.failures").getCount();
+    }
+
+    @After
+    public void enginesAgree() {
+        assertEquals(failures, Metrics.counter("compliance.differential.failures").getCount());
+        assertEquals(mismatches, Metrics.counter("compliance.differential.mismatches").getCount());
+    }
+
+    @Override
+    protected ComplianceRules createComplianceRules(JsRunner jsRunner, EntitlementCurator entCurator,
+        StatusReasonMessageGenerator generator, EventSink eventSink, ConsumerCurator consumerCurator) {
+        CandlepinCommonTestConfig config = new CandlepinCommonTestConfig();
+        config.setProperty(ConfigProperties.COMPLIANCE_ENGINE, ComplianceEngine.Type.DIFFERENTIAL);
+        return new ComplianceRules(jsRunner, entCurator, generator, eventSink, consumerCurator, config);
+    }
+}
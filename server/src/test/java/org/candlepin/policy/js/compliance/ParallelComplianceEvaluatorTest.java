@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.compliance;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerInstalledProduct;
+import org.candlepin.model.ConsumerType;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.Rules;
+import org.candlepin.model.RulesCurator;
+import org.candlepin.policy.js.JsRunner;
+import org.candlepin.policy.js.JsRunnerProvider;
+import org.candlepin.policy.js.JsRunnerRequestCache;
+import org.candlepin.policy.js.JsonJsContext;
+import org.candlepin.policy.js.RulesObjectMapper;
+import org.candlepin.util.Util;
+
+import com.google.inject.Provider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * ParallelComplianceEvaluatorTest
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ParallelComplianceEvaluatorTest {
+
+    @Mock private RulesCurator rulesCurator;
+    @Mock private Provider<JsRunnerRequestCache> cacheProvider;
+    @Mock private JsRunnerRequestCache cache;
+
+    private JsRunnerProvider provider;
+
+    @Before
+    public void setUp() {
+        InputStream is = this.getClass().getResourceAsStream(RulesCurator.DEFAULT_RULES_FILE);
+        when(rulesCurator.getUpdated()).thenReturn(new Date());
+        when(rulesCurator.getRules()).thenReturn(new Rules(Util.readFile(is)));
+        when(cacheProvider.get()).thenReturn(cache);
+        provider = new JsRunnerProvider(rulesCurator, cacheProvider);
+    }
+
+    @Test
+    public void matchesSerialEvaluationInOrder() {
+        Date now = new Date();
+        List<JsonJsContext> contexts = new ArrayList<JsonJsContext>();
+        List<ComplianceStatus> expected = new ArrayList<ComplianceStatus>();
+
+        JsRunner runner = provider.get();
+        runner.init("compliance_name_space");
+        JsComplianceEngine serial = new JsComplianceEngine(runner, RulesObjectMapper.instance());
+
+        for (int i = 0; i < 10; i++) {
+            Consumer consumer = new Consumer();
+            consumer.setType(new ConsumerType(ConsumerType.ConsumerTypeEnum.SYSTEM));
+            for (int p = 0; p <= i; p++) {
+                consumer.addInstalledProduct(new ConsumerInstalledProduct("product" + p, "Product"));
+            }
+
+            contexts.add(JsComplianceEngine.createStatusContext(RulesObjectMapper.instance(),
+                consumer, new ArrayList<Entitlement>(), now, true).prepare());
+            expected.add(serial.getStatus(consumer, new ArrayList<Entitlement>(), now, true));
+        }
+
+        List<ComplianceStatus> results = new ParallelComplianceEvaluator(provider, 3).evaluate(contexts);
+        assertEquals(expected.size(), results.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getStatus(), results.get(i).getStatus());
+            assertEquals(expected.get(i).getNonCompliantProducts(),
+                results.get(i).getNonCompliantProducts());
+        }
+    }
+
+    @Test
+    public void runnersReleasedOnceEvaluated() {
+        List<JsonJsContext> contexts = new ArrayList<JsonJsContext>();
+        for (int i = 0; i < 6; i++) {
+            Consumer consumer = new Consumer();
+            consumer.setType(new ConsumerType(ConsumerType.ConsumerTypeEnum.SYSTEM));
+            contexts.add(JsComplianceEngine.createStatusContext(RulesObjectMapper.instance(),
+                consumer, new ArrayList<Entitlement>(), new Date(), true).prepare());
+        }
+
+        new ParallelComplianceEvaluator(provider, 3).evaluate(contexts);
+
+        verify(cache, times(3)).addRunner(any(JsRunner.class));
+        verify(cache, times(3)).removeRunner(any(JsRunner.class));
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.compliance.hash;
+
+import static org.junit.Assert.*;
+
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerType;
+import org.candlepin.model.ConsumerType.ConsumerTypeEnum;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.Owner;
+import org.candlepin.model.Pool;
+import org.candlepin.model.Product;
+import org.candlepin.test.TestUtil;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Date;
+
+/**
+ * ComplianceInputHasherTest
+ */
+public class ComplianceInputHasherTest {
+
+    private Consumer consumer;
+    private Product product;
+    private Product provided;
+    private Pool pool;
+    private Entitlement ent;
+    private String initialHash;
+
+    @Before
+    public void setUp() {
+        Owner owner = new Owner("test-owner", "Test Owner");
+        consumer = TestUtil.createConsumer(new ConsumerType(ConsumerTypeEnum.SYSTEM), owner);
+        consumer.setUuid("consumer-uuid");
+
+        product = TestUtil.createProduct("sku", "SKU");
+        product.setAttribute("sockets", "2");
+        provided = TestUtil.createProduct("provided", "Provided");
+        provided.setAttribute("arch", "x86_64");
+
+        pool = TestUtil.createPool(owner, product);
+        pool.setId("pool-id");
+        pool.addProvidedProduct(provided);
+        pool.setUpdated(new Date(1000L));
+        ent = TestUtil.createEntitlement(owner, consumer, pool, null);
+        ent.setId("ent-id");
+        ent.setQuantity(1);
+
+        initialHash = new ComplianceInputHasher(consumer).hash();
+    }
+
+    @Test
+    public void ensureSameHashWithNoChanges() {
+        assertEquals(initialHash, new ComplianceInputHasher(consumer).hash());
+    }
+
+    @Test
+    public void ensureDifferentHashWhenProductAttributesChange() {
+        product.setAttribute("sockets", "4");
+        assertNotEquals(initialHash, new ComplianceInputHasher(consumer).hash());
+    }
+
+    @Test
+    public void ensureDifferentHashWhenProvidedProductAttributesChange() {
+        provided.setAttribute("arch", "ppc64");
+        assertNotEquals(initialHash, new ComplianceInputHasher(consumer).hash());
+    }
+
+    @Test
+    public void ensureDifferentHashWhenEntitlementQuantityChanges() {
+        ent.setQuantity(2);
+        assertNotEquals(initialHash, new ComplianceInputHasher(consumer).hash());
+    }
+
+    @Test
+    public void ensureDifferentHashWhenPoolUpdated() {
+        pool.setUpdated(new Date(2000L));
+        assertNotEquals(initialHash, new ComplianceInputHasher(consumer).hash());
+    }
+
+    @Test
+    public void ensureDifferentHashWhenPoolAttributesChange() {
+        pool.setAttribute("virt_only", "true");
+        assertNotEquals(initialHash, new ComplianceInputHasher(consumer).hash());
+    }
+
+    @Test
+    public void ensureDifferentHashWhenConsumerTypeChanges() {
+        consumer.setType(new ConsumerType(ConsumerTypeEnum.HYPERVISOR));
+        assertNotEquals(initialHash, new ComplianceInputHasher(consumer).hash());
+    }
+}
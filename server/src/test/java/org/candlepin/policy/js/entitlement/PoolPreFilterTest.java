@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.entitlement;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerType;
+import org.candlepin.model.ConsumerType.ConsumerTypeEnum;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.Pool;
+import org.candlepin.model.Product;
+import org.candlepin.policy.ValidationResult;
+import org.candlepin.test.TestUtil;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PoolPreFilterTest
+ */
+public class PoolPreFilterTest extends EntitlementRulesTestFixture {
+
+    @Test
+    public void poolsWithRulesOnlyAttributesGoToTheRules() {
+        Pool pool = pool("cores", "4");
+        assertFalse(new PoolPreFilter(consumer, null).canValidate(pool));
+        assertTrue(new PoolPreFilter(consumer, null).canValidate(pool("sockets", "4")));
+    }
+
+    @Test
+    public void archMismatchWarns() {
+        consumer.setFact("uname.machine", "x86_64");
+        ValidationResult result = new PoolPreFilter(consumer, null).validate(pool("arch", "ppc64"));
+        assertEquals(1, result.getWarnings().size());
+        assertEquals("rulewarning.architecture.mismatch",
+            result.getWarnings().get(0).getResourceKey());
+    }
+
+    @Test
+    public void requiresHostWithoutHostFails() {
+        consumer.setFact("virt.uuid", "guest-uuid");
+        ValidationResult result = new PoolPreFilter(consumer, null)
+            .validate(pool("requires_host", "host-uuid"));
+        assertEquals("virt.guest.host.does.not.match.pool.owner",
+            result.getErrors().get(0).getResourceKey());
+    }
+
+    @Test
+    public void matchesRulesForPhysicalSystem() {
+        consumer.setFact("uname.machine", "x86_64");
+        consumer.setFact("cpu.cpu_socket(s)", "4");
+        assertFilteredLikeRules();
+    }
+
+    @Test
+    public void matchesRulesForGuest() {
+        consumer.setFact("virt.is_guest", "true");
+        consumer.setFact("virt.uuid", "guest-uuid");
+        Consumer host = new Consumer("host", "test user", owner, consumer.getType());
+        host.setUuid("host-uuid");
+        when(consumerCurator.getHost(eq("guest-uuid"), eq(owner))).thenReturn(host);
+        assertFilteredLikeRules();
+    }
+
+    @Test
+    public void matchesRulesForDistributor() {
+        consumer.setType(new ConsumerType(ConsumerTypeEnum.CANDLEPIN));
+        assertFilteredLikeRules();
+    }
+
+    @Test
+    public void matchesRulesForPersonConsumer() {
+        consumer.setType(new ConsumerType(ConsumerTypeEnum.PERSON));
+        assertFilteredLikeRules();
+    }
+
+    private void assertFilteredLikeRules() {
+        List<Pool> pools = new ArrayList<Pool>();
+        pools.add(pool("arch", "x86_64"));
+        pools.add(pool("arch", "ppc64,s390x"));
+        pools.add(pool("sockets", "2"));
+        pools.add(pool("sockets", "8"));
+        pools.add(pool("virt_only", "true"));
+        pools.add(pool("physical_only", "true"));
+        pools.add(pool("requires_host", "host-uuid"));
+        pools.add(pool("requires_consumer_type", "person"));
+        pools.add(pool("requires_consumer_type", "system"));
+        pools.add(pool("instance_multiplier", "2"));
+        pools.add(pool("ram", "2"));
+
+        Pool entitled = pool("multi-entitlement", "no");
+        consumer.addEntitlement(new Entitlement(entitled, consumer, 1));
+        pools.add(entitled);
+
+        Pool restricted = pool("sockets", "4");
+        restricted.setRestrictedToUsername("someone else");
+        pools.add(restricted);
+
+        for (boolean showAll : new boolean[] {true, false}) {
+            when(config.getBoolean(eq(ConfigProperties.POOL_FILTER_JAVA_CHECKS), anyBoolean()))
+                .thenReturn(false);
+            List<Pool> expected = enforcer.filterPools(consumer, pools, showAll);
+
+            when(config.getBoolean(eq(ConfigProperties.POOL_FILTER_JAVA_CHECKS), anyBoolean()))
+                .thenReturn(true);
+            assertEquals(expected, enforcer.filterPools(consumer, pools, showAll));
+        }
+    }
+
+    private Pool pool(String attribute, String value) {
+        Product product = TestUtil.createProduct();
+        product.setAttribute(attribute, value);
+        return createPool(owner, product);
+    }
+}
@@ -74,6 +74,8 @@ import org.candlepin.service.UserServiceAdapter;
 import org.candlepin.test.TestUtil;
 import org.candlepin.util.ServiceLevelValidator;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import org.hibernate.mapping.Collection;
 import org.junit.Before;
 import org.junit.Test;
@@ -85,6 +87,7 @@ import org.quartz.JobDetail;
 import org.xnap.commons.i18n.I18n;
 import org.xnap.commons.i18n.I18nFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
 import java.math.BigInteger;
@@ -92,6 +95,7 @@ import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
@@ -99,6 +103,7 @@ import java.util.Map;
 import java.util.Set;
 
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 /**
  * ConsumerResourceTest
@@ -604,7 +609,7 @@ public class ConsumerResourceTest {
     }
 
     @Test
-    public void testGetComplianceStatusList() {
+    public void testGetComplianceStatusList() throws IOException {
         Consumer c = mock(Consumer.class);
         Consumer c2 = mock(Consumer.class);
         when(c.getUuid()).thenReturn("1");
@@ -617,11 +622,12 @@ public class ConsumerResourceTest {
         List<String> uuids = new ArrayList<String>();
         uuids.add("1");
         uuids.add("2");
-        when(mockedConsumerCurator.findByUuids(eq(uuids))).thenReturn(consumers);
+        when(mockedConsumerCurator.findByUuidsForCompliance(eq(uuids))).thenReturn(consumers);
 
-        ComplianceStatus status = new ComplianceStatus();
-        when(mockedComplianceRules.getStatus(any(Consumer.class), any(Date.class)))
-            .thenReturn(status);
+        Map<String, ComplianceStatus> statuses = new HashMap<String, ComplianceStatus>();
+        statuses.put("1", new ComplianceStatus());
+        statuses.put("2", new ComplianceStatus());
+        when(mockedComplianceRules.getStatuses(eq(consumers))).thenReturn(statuses);
 
         ConsumerResource cr = new ConsumerResource(mockedConsumerCurator, null,
             null, null, null, null, null, i18n, null, null, null,
@@ -629,10 +635,56 @@ public class ConsumerResourceTest {
             null, null, null, new CandlepinCommonTestConfig(), null, null, null,
             consumerBindUtil);
 
-        Map<String, ComplianceStatus> results = cr.getComplianceStatusList(uuids);
+        Response response = cr.getComplianceStatusList(uuids);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(stream);
+
+        Map<?, ?> results = new ObjectMapper().readValue(stream.toByteArray(), Map.class);
         assertEquals(2, results.size());
         assertTrue(results.containsKey("1"));
         assertTrue(results.containsKey("2"));
+        verify(mockedConsumerCurator).evictAll(eq(consumers));
+    }
+
+    @Test
+    public void testGetComplianceStatusListReportsDuplicatesOnce() throws IOException {
+        Consumer c = mock(Consumer.class);
+        when(c.getUuid()).thenReturn("1");
+        List<Consumer> consumers = Arrays.asList(c);
+
+        when(mockedConsumerCurator.findByUuidsForCompliance(eq(Arrays.asList("1"))))
+            .thenReturn(consumers);
+        Map<String, ComplianceStatus> statuses = new HashMap<String, ComplianceStatus>();
+        statuses.put("1", new ComplianceStatus());
+        when(mockedComplianceRules.getStatuses(eq(consumers))).thenReturn(statuses);
+
+        ConsumerResource cr = new ConsumerResource(mockedConsumerCurator, null,
+            null, null, null, null, null, i18n, null, null, null,
+            null, null, null, null, null, null, null, null, mockedComplianceRules,
+            null, null, null, new CandlepinCommonTestConfig(), null, null, null,
+            consumerBindUtil);
+
+        Response response = cr.getComplianceStatusList(Arrays.asList("1", "1"));
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(stream);
+
+        String json = stream.toString();
+        assertEquals(json.indexOf("\"1\""), json.lastIndexOf("\"1\""));
+        verify(mockedConsumerCurator).findByUuidsForCompliance(eq(Arrays.asList("1")));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testGetComplianceStatusListFailsBeforeStreaming() {
+        when(mockedConsumerCurator.findByUuidsForCompliance(any(List.class)))
+            .thenThrow(new RuntimeException("db down"));
+
+        ConsumerResource cr = new ConsumerResource(mockedConsumerCurator, null,
+            null, null, null, null, null, i18n, null, null, null,
+            null, null, null, null, null, null, null, null, mockedComplianceRules,
+            null, null, null, new CandlepinCommonTestConfig(), null, null, null,
+            consumerBindUtil);
+
+        cr.getComplianceStatusList(Arrays.asList("1"));
     }
 
     @Test
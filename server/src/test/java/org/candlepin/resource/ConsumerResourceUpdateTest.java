@@ -827,6 +827,8 @@ public class ConsumerResourceUpdateTest {
         Date then = new Date(now.getTime() + 10000L);
         updated.setLastCheckin(then);
         resource.updateConsumer(c.getUuid(), updated);
+
+        verify(consumerCurator).updateLastCheckin(eq(c), eq(then));
     }
 
     private Consumer createConsumerWithGuests(String ... guestIds) {
@@ -16,6 +16,7 @@ package org.candlepin.resource;
 
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -25,8 +26,10 @@ import org.candlepin.config.ConfigProperties;
 import org.candlepin.model.CertificateSerial;
 import org.candlepin.model.CertificateSerialCurator;
 import org.candlepin.pki.PKIUtility;
+import org.candlepin.util.CrlCache;
 import org.candlepin.util.CrlFileUtil;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.After;
 import org.junit.Test;
@@ -35,9 +38,17 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import java.io.File;
+import java.net.URL;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+
 
 
 /**
@@ -53,6 +64,7 @@ public class CrlResourceTest {
     @Mock private CrlFileUtil crlFileUtil;
     @Mock private CertificateSerialCurator certSerialCurator;
     @Mock private PKIUtility pkiUtility;
+    @Mock private Request request;
 
     @Before
     public void init() throws Exception {
@@ -60,7 +72,7 @@ public class CrlResourceTest {
 
         when(config.getString(ConfigProperties.CRL_FILE_PATH)).thenReturn(this.testFile.getAbsolutePath());
         this.resource = new CrlResource(
-            this.config, this.crlFileUtil, this.pkiUtility, this.certSerialCurator
+            new CrlCache(this.config, this.crlFileUtil, this.pkiUtility), this.certSerialCurator
         );
     }
 
@@ -73,21 +85,74 @@ public class CrlResourceTest {
 
     @Test
     public void testGetCurrentCrl() throws Exception {
-        Object response = this.resource.getCurrentCrl(null);
+        Response response = this.resource.getCurrentCrl(null, request);
 
-        assertTrue(response != null);
+        assertEquals(200, response.getStatus());
+        assertNotNull(response.getEntity());
+        assertNotNull(response.getMetadata().getFirst("ETag"));
         verify(crlFileUtil).syncCRLWithDB(any(File.class));
     }
 
     @Test
     public void testGetCurrentCrlWithNoFile() throws Exception {
         this.cleanup();
-        Object response = this.resource.getCurrentCrl(null);
+        Response response = this.resource.getCurrentCrl(null, request);
 
         assertTrue(response != null);
         verify(crlFileUtil).syncCRLWithDB(any(File.class));
     }
 
+    @Test
+    public void testGetCurrentCrlNotModified() throws Exception {
+        FileUtils.copyURLToFile(getClass().getClassLoader().getResource("crl.pem"), this.testFile);
+        when(request.evaluatePreconditions(any(Date.class), any(EntityTag.class)))
+            .thenReturn(Response.notModified());
+        Response response = this.resource.getCurrentCrl(null, request);
+
+        assertEquals(304, response.getStatus());
+        assertNull(response.getEntity());
+    }
+
+    @Test
+    public void testGetCurrentCrlNotModifiedWithoutThisUpdate() throws Exception {
+        when(request.evaluatePreconditions(any(EntityTag.class))).thenReturn(Response.notModified());
+        Response response = this.resource.getCurrentCrl(null, request);
+
+        assertEquals(304, response.getStatus());
+        assertNull(response.getMetadata().getFirst("Last-Modified"));
+    }
+
+    @Test
+    public void testGetCurrentCrlLastModifiedIsThisUpdate() throws Exception {
+        URL pem = getClass().getClassLoader().getResource("crl.pem");
+        FileUtils.copyURLToFile(pem, this.testFile);
+        X509CRL crl = (X509CRL) CertificateFactory.getInstance("X.509").generateCRL(pem.openStream());
+
+        Response response = this.resource.getCurrentCrl(null, request);
+
+        assertEquals(200, response.getStatus());
+        assertEquals(crl.getThisUpdate().getTime() / 1000 * 1000,
+            ((Date) response.getMetadata().getFirst("Last-Modified")).getTime());
+    }
+
+    @Test
+    public void testGetCurrentCrlServesSnapshot() throws Exception {
+        when(config.getInt(ConfigProperties.CRL_MAX_AGE)).thenReturn(3600);
+        Response first = this.resource.getCurrentCrl(null, request);
+        Response second = this.resource.getCurrentCrl(null, request);
+
+        assertEquals(first.getMetadata().getFirst("ETag"), second.getMetadata().getFirst("ETag"));
+        verify(crlFileUtil, times(1)).syncCRLWithDB(any(File.class));
+    }
+
+    @Test
+    public void testGetCurrentCrlSyncsExpiredSnapshot() throws Exception {
+        this.resource.getCurrentCrl(null, request);
+        this.resource.getCurrentCrl(null, request);
+
+        verify(crlFileUtil, times(2)).syncCRLWithDB(any(File.class));
+    }
+
     @Test
     @SuppressWarnings("unchecked")
     public void testUnrevokeWithArguments() throws Exception {
@@ -55,6 +55,7 @@ import org.candlepin.model.PermissionBlueprint;
 import org.candlepin.model.Pool;
 import org.candlepin.model.Product;
 import org.candlepin.model.Release;
+import org.candlepin.model.ResultList;
 import org.candlepin.model.Role;
 import org.candlepin.model.UeberCertificateGenerator;
 import org.candlepin.model.UpstreamConsumer;
@@ -62,6 +63,7 @@ import org.candlepin.model.activationkeys.ActivationKey;
 import org.candlepin.model.activationkeys.ActivationKeyCurator;
 import org.candlepin.model.dto.Subscription;
 import org.candlepin.policy.EntitlementRefusedException;
+import org.candlepin.resteasy.JsonProvider;
 import org.candlepin.resteasy.parameter.CandlepinParam;
 import org.candlepin.resteasy.parameter.CandlepinParameterUnmarshaller;
 import org.candlepin.resteasy.parameter.KeyValueParameter;
@@ -75,8 +77,14 @@ import org.candlepin.util.ContentOverrideValidator;
 import org.candlepin.util.ServiceLevelValidator;
 import org.candlepin.util.Util;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import org.hamcrest.core.IsEqual;
 import org.hibernate.exception.ConstraintViolationException;
+import org.jboss.resteasy.core.Dispatcher;
+import org.jboss.resteasy.mock.MockDispatcherFactory;
+import org.jboss.resteasy.mock.MockHttpRequest;
+import org.jboss.resteasy.mock.MockHttpResponse;
 import org.jboss.resteasy.plugins.providers.atom.Entry;
 import org.jboss.resteasy.plugins.providers.atom.Feed;
 import org.jboss.resteasy.plugins.providers.multipart.InputPart;
@@ -90,6 +98,7 @@ import org.junit.rules.ExpectedException;
 import org.mockito.Mockito;
 import org.xnap.commons.i18n.I18n;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.lang.annotation.Annotation;
@@ -109,6 +118,7 @@ import java.util.Set;
 import javax.inject.Inject;
 import javax.persistence.PersistenceException;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 /**
  * OwnerResourceTest
@@ -772,6 +782,82 @@ public class OwnerResourceTest extends DatabaseTestFixture {
         assertEquals(2, results.size());
     }
 
+    @Test
+    public void unpagedConsumerListIsStreamedAndEvicted() throws IOException {
+        Consumer c = TestUtil.createConsumer(owner);
+        consumerTypeCurator.create(c.getType());
+        consumerCurator.create(c);
+
+        List<Consumer> consumers = ownerResource.listConsumers(owner.getKey(), null,
+            null, null, null, null, null, null, null, null);
+        assertTrue(consumers instanceof ResultList);
+        List<?> results = readStreamedList(consumers);
+
+        assertEquals(1, results.size());
+        assertEquals(c.getUuid(), ((Map<?, ?>) results.get(0)).get("uuid"));
+        assertFalse(consumerCurator.currentSession().contains(c));
+    }
+
+    @Test
+    public void unpagedConsumerListOpensNoTransactionUntilWritten() throws IOException {
+        Consumer c = TestUtil.createConsumer(owner);
+        consumerTypeCurator.create(c.getType());
+        consumerCurator.create(c);
+
+        List<Consumer> consumers = ownerResource.listConsumers(owner.getKey(), null,
+            null, null, null, null, null, null, null, null);
+        assertFalse(entityManager().getTransaction().isActive());
+
+        assertEquals(1, readStreamedList(consumers).size());
+        assertFalse(entityManager().getTransaction().isActive());
+    }
+
+    @Test
+    public void unpagedConsumerListForHeadRequestLeavesNoTransaction() throws Exception {
+        Owner headOwner = ownerCurator.create(new Owner("head_owner"));
+        Consumer c = TestUtil.createConsumer(headOwner);
+        consumerTypeCurator.create(c.getType());
+        consumerCurator.create(c);
+
+        // RESTEasy does not write the entity of a HEAD response
+        MockHttpRequest request = MockHttpRequest.create("HEAD", "/owners/head_owner/consumers");
+        MockHttpResponse response = new MockHttpResponse();
+        Dispatcher dispatcher = MockDispatcherFactory.createDispatcher();
+        dispatcher.getProviderFactory().registerProviderInstance(new JsonProvider(false));
+        dispatcher.getRegistry().addSingletonResource(ownerResource);
+        dispatcher.invoke(request, response);
+
+        assertEquals(200, response.getStatus());
+        assertEquals(0, response.getOutput().length);
+        assertFalse(entityManager().getTransaction().isActive());
+    }
+
+    @Test
+    public void unpagedEntitlementListNeverWrittenLeavesNoTransaction() {
+        Product prod = this.createProduct(owner);
+        Pool pool = poolCurator.create(TestUtil.createPool(owner, prod));
+        Consumer c = TestUtil.createConsumer(owner);
+        consumerTypeCurator.create(c.getType());
+        consumerCurator.create(c);
+        entitlementCurator.create(TestUtil.createEntitlement(owner, c, pool, null));
+
+        // A filter failing before serialization leaves the entity unwritten
+        List<Entitlement> ents = ownerResource.ownerEntitlements(owner.getKey(), null, null,
+            null, null);
+        assertTrue(ents instanceof ResultList);
+        assertFalse(entityManager().getTransaction().isActive());
+
+        ((ResultList<Entitlement>) ents).close();
+        assertFalse(entityManager().getTransaction().isActive());
+    }
+
+    private List<?> readStreamedList(List<?> list) throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        new JsonProvider(false).writeTo(list, List.class, List.class, new Annotation[0],
+            MediaType.APPLICATION_JSON_TYPE, new MultivaluedMapImpl<String, Object>(), stream);
+        return new ObjectMapper().readValue(stream.toByteArray(), List.class);
+    }
+
     @Test
     public void consumerListPoolsGetCalculatedAttributes() {
         Product p = this.createProduct(owner);
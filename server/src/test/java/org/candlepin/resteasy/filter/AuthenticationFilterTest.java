@@ -30,8 +30,8 @@ import org.candlepin.common.auth.SecurityHole;
 import org.candlepin.common.exceptions.BadRequestException;
 import org.candlepin.common.exceptions.NotAuthorizedException;
 import org.candlepin.config.ConfigProperties;
+import org.candlepin.controller.CheckinAggregator;
 import org.candlepin.model.ConsumerCurator;
-import org.candlepin.model.DeletedConsumerCurator;
 import org.candlepin.model.User;
 import org.candlepin.service.UserServiceAdapter;
 import org.candlepin.test.DatabaseTestFixture;
@@ -67,7 +67,7 @@ import javax.ws.rs.container.ResourceInfo;
  */
 @RunWith(JukitoRunner.class)
 public class AuthenticationFilterTest extends DatabaseTestFixture {
-    @Inject private DeletedConsumerCurator deletedConsumerCurator;
+    @Inject private CheckinAggregator checkinAggregator;
     @Inject private Provider<UserServiceAdapter> usaProvider;
     @Inject private Injector injector;
 
@@ -103,7 +103,7 @@ public class AuthenticationFilterTest extends DatabaseTestFixture {
         config.setProperty(ConfigProperties.BASIC_AUTHENTICATION, "true");
         config.setProperty(ConfigProperties.TRUSTED_AUTHENTICATION, "true");
 
-        interceptor = new AuthenticationFilter(config, consumerCurator, deletedConsumerCurator, injector);
+        interceptor = new AuthenticationFilter(config, checkinAggregator, injector);
         interceptor.setHttpServletRequest(mockHttpServletRequest);
     }
 
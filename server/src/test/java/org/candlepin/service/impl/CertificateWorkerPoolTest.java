@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.service.impl;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * CertificateWorkerPoolTest
+ */
+public class CertificateWorkerPoolTest {
+
+    @Test
+    public void resultsKeepTaskOrder() throws Exception {
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+        for (int i = 0; i < 20; i++) {
+            final int value = i;
+            tasks.add(new Callable<Integer>() {
+                public Integer call() throws Exception {
+                    Thread.sleep((20 - value) % 3);
+                    return value;
+                }
+            });
+        }
+
+        List<Integer> results = new CertificateWorkerPool(4).invokeAll(tasks);
+        assertEquals(20, results.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(Integer.valueOf(i), results.get(i));
+        }
+    }
+
+    @Test(expected = GeneralSecurityException.class)
+    public void taskFailuresAreRethrown() throws Exception {
+        List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+        for (int i = 0; i < 3; i++) {
+            final boolean fail = i == 1;
+            tasks.add(new Callable<String>() {
+                public String call() throws Exception {
+                    if (fail) {
+                        throw new GeneralSecurityException("signing failed");
+                    }
+                    return "cert";
+                }
+            });
+        }
+
+        new CertificateWorkerPool(2).invokeAll(tasks);
+    }
+}
@@ -1657,6 +1657,27 @@ public class DefaultEntitlementCertServiceAdapterTest {
         assertTrue(!cert.getCert().contains("ENTITLEMENT DATA"));
     }
 
+    @Test
+    public void tooManyContentSetsDoesNotStoreSerials() throws Exception {
+        KeyPair keyPair = new BouncyCastlePKIUtility(null, null, null).generateNewKeyPair();
+        when(keyPairCurator.getConsumerKeyPair(any(Consumer.class))).thenReturn(keyPair);
+
+        product.setProductContent(null);
+        for (Content content : generateContent(X509ExtensionUtil.V1_CONTENT_LIMIT + 1, "TestContent")) {
+            product.addContent(content, false);
+        }
+
+        try {
+            certServiceAdapter.generateEntitlementCert(entitlement, product);
+            fail("Expected a CertificateSizeException");
+        }
+        catch (CertificateSizeException e) {
+            // expected
+        }
+
+        verify(serialCurator, never()).saveOrUpdateAll(anyMap());
+    }
+
     @Test
     public void testContentExtension() throws IOException {
         Set<Product> products = new HashSet<Product>();
@@ -49,6 +49,7 @@ import org.candlepin.model.Pool;
 import org.candlepin.model.Product;
 import org.candlepin.model.dto.Subscription;
 import org.candlepin.pki.PKIUtility;
+import org.candlepin.pki.SignatureVerifier;
 import org.candlepin.pki.impl.BouncyCastlePKIUtility;
 import org.candlepin.pki.impl.DefaultSubjectKeyIdentifierWriter;
 import org.candlepin.service.SubscriptionServiceAdapter;
@@ -67,6 +68,7 @@ import org.junit.rules.TemporaryFolder;
 import org.xnap.commons.i18n.I18n;
 import org.xnap.commons.i18n.I18nFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -77,6 +79,8 @@ import java.io.PrintStream;
 import java.io.Reader;
 import java.net.URISyntaxException;
 import java.security.Security;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -84,6 +88,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -350,13 +355,16 @@ public class ImporterTest {
 
     @Test(expected = ImportConflictException.class)
     public void testImportBadSignature()
-        throws IOException, ImporterException {
+        throws Exception {
         PKIUtility pki = mock(PKIUtility.class);
         Importer i = new Importer(null, null, null, null, null, null, null,
             pki, config, null, null, null, i18n, null, null);
         Owner owner = mock(Owner.class);
         ConflictOverrides co = mock(ConflictOverrides.class);
 
+        // Mock a failed signature check:
+        when(pki.createCASignatureVerifier()).thenReturn(mock(SignatureVerifier.class));
+
         File archive = new File(folder.getRoot(), "file.zip");
         ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive));
         out.putNextEntry(new ZipEntry("signature"));
@@ -371,6 +379,41 @@ public class ImporterTest {
         i.loadExport(owner, archive, co);
     }
 
+    @Test(expected = ImportConflictException.class)
+    public void testImportBadSignatureReportedBeforeTruncatedConsumerZip()
+        throws Exception {
+        PKIUtility pki = mock(PKIUtility.class);
+        Importer i = new Importer(null, null, null, null, null, null, null,
+            pki, config, null, null, null, i18n, null, null);
+        Owner owner = mock(Owner.class);
+        ConflictOverrides co = mock(ConflictOverrides.class);
+
+        // Mock a failed signature check:
+        when(pki.createCASignatureVerifier()).thenReturn(mock(SignatureVerifier.class));
+
+        // Cut off halfway through its only entry, which fails with an EOFException
+        ByteArrayOutputStream zipped = new ByteArrayOutputStream();
+        ZipOutputStream cezip = new ZipOutputStream(zipped);
+        cezip.putNextEntry(new ZipEntry("export/meta.json"));
+        byte[] data = new byte[4096];
+        new Random(0).nextBytes(data);
+        cezip.write(data);
+        cezip.close();
+        File ceArchive = new File(folder.getRoot(), "consumer_export.zip");
+        FileOutputStream fos = new FileOutputStream(ceArchive);
+        fos.write(Arrays.copyOf(zipped.toByteArray(), 2048));
+        fos.close();
+
+        File archive = new File(folder.getRoot(), "file.zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive));
+        out.putNextEntry(new ZipEntry("signature"));
+        out.write("This is the placeholder for the signature file".getBytes());
+        addFileToArchive(out, ceArchive);
+        out.close();
+
+        i.loadExport(owner, archive, co);
+    }
+
     @Test
     public void testImportBadConsumerZip() throws Exception {
         PKIUtility pki = mock(PKIUtility.class);
@@ -380,8 +423,9 @@ public class ImporterTest {
         ConflictOverrides co = mock(ConflictOverrides.class);
 
         // Mock a passed signature check:
-        when(pki.verifySHA256WithRSAHashAgainstCACerts(any(File.class),
-            any(byte [].class))).thenReturn(true);
+        SignatureVerifier verifier = mock(SignatureVerifier.class);
+        when(pki.createCASignatureVerifier()).thenReturn(verifier);
+        when(verifier.verify(any(byte [].class))).thenReturn(true);
 
         File archive = new File(folder.getRoot(), "file.zip");
         ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive));
@@ -415,8 +459,9 @@ public class ImporterTest {
         ConflictOverrides co = mock(ConflictOverrides.class);
 
         // Mock a passed signature check:
-        when(pki.verifySHA256WithRSAHashAgainstCACerts(any(File.class),
-            any(byte [].class))).thenReturn(true);
+        SignatureVerifier verifier = mock(SignatureVerifier.class);
+        when(pki.createCASignatureVerifier()).thenReturn(verifier);
+        when(verifier.verify(any(byte [].class))).thenReturn(true);
 
         File archive = new File(folder.getRoot(), "file.zip");
         ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive));
@@ -462,7 +507,7 @@ public class ImporterTest {
         importFiles.put(ImportFile.META.fileName(), null);
 
         try {
-            i.importObjects(owner, importFiles, co);
+            i.importObjects(owner, importFiles, co, new HashSet<String>());
         }
         catch (ImporterException e) {
             assertEquals(e.getMessage(), i18n.tr("The archive does not contain the " +
@@ -483,7 +528,7 @@ public class ImporterTest {
         importFiles.put(ImportFile.CONSUMER_TYPE.fileName(), null);
 
         try {
-            i.importObjects(owner, importFiles, co);
+            i.importObjects(owner, importFiles, co, new HashSet<String>());
         }
         catch (ImporterException e) {
             assertEquals(e.getMessage(), i18n.tr("The archive does not contain the " +
@@ -504,7 +549,7 @@ public class ImporterTest {
         importFiles.put(ImportFile.CONSUMER.fileName(), null);
 
         try {
-            i.importObjects(owner, importFiles, co);
+            i.importObjects(owner, importFiles, co, new HashSet<String>());
         }
         catch (ImporterException e) {
             assertEquals(e.getMessage(), i18n.tr("The archive does not contain the " +
@@ -541,7 +586,7 @@ public class ImporterTest {
         importFiles.put(ImportFile.UPSTREAM_CONSUMER.fileName(), mock(File.class));
 
         try {
-            i.importObjects(owner, importFiles, co);
+            i.importObjects(owner, importFiles, co, new HashSet<String>());
         }
         catch (RuntimeException e) {
             assertEquals(e.getMessage(), "Done with the test");
@@ -569,6 +614,7 @@ public class ImporterTest {
         PoolManager pm = mock(PoolManager.class);
         Refresher refresher = mock(Refresher.class);
         when(pm.getRefresher(any(SubscriptionServiceAdapter.class))).thenReturn(refresher);
+        when(refresher.getUnchangedSubscriptionIds()).thenReturn(Collections.singleton("subId"));
 
         Map<String, File> importFiles = new HashMap<String, File>();
         File ruleDir = mock(File.class);
@@ -616,11 +662,13 @@ public class ImporterTest {
 
         Importer i = new Importer(ctc, null, ri, oc, null, null, pm,
             null, config, emc, null, null, i18n, null, null);
-        List<Subscription> subscriptions = i.importObjects(owner, importFiles, co);
+        Set<String> unchangedSubs = new HashSet<String>();
+        List<Subscription> subscriptions = i.importObjects(owner, importFiles, co, unchangedSubs);
 
         assertEquals(1, subscriptions.size());
         assertEquals("prodId", subscriptions.get(0).getProduct().getId());
         assertEquals(2, subscriptions.get(0).getQuantity().longValue());
+        assertEquals(Collections.singleton("subId"), unchangedSubs);
 
     }
 
@@ -635,7 +683,7 @@ public class ImporterTest {
         importFiles.put(ImportFile.ENTITLEMENTS.fileName(), null);
 
         try {
-            i.importObjects(owner, importFiles, co);
+            i.importObjects(owner, importFiles, co, new HashSet<String>());
         }
         catch (ImporterException e) {
             assertEquals(e.getMessage(), i18n.tr("The archive does not contain the " +
@@ -808,7 +856,7 @@ public class ImporterTest {
             .lookupByTypeAndOwner(any(String.class), any(Owner.class));
 
         try {
-            i.importObjects(owner, importFiles, co);
+            i.importObjects(owner, importFiles, co, new HashSet<String>());
         }
         catch (RuntimeException e) {
             assertEquals(e.getMessage(), "Done with the test");
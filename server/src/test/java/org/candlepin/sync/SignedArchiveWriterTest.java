@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.sync;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.pki.PKIUtility;
+import org.candlepin.pki.SignatureGenerator;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * SignedArchiveWriterTest
+ */
+public class SignedArchiveWriterTest {
+
+    private PKIUtility pki;
+    private KeyPair key;
+    private File file;
+
+    @Before
+    public void init() throws Exception {
+        file = File.createTempFile("export", ".zip");
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        key = generator.generateKeyPair();
+        pki = mock(PKIUtility.class);
+        when(pki.createCASignatureGenerator()).thenAnswer(new Answer<SignatureGenerator>() {
+            public SignatureGenerator answer(InvocationOnMock invocation) throws Exception {
+                return new SignatureGenerator(key.getPrivate());
+            }
+        });
+    }
+
+    @After
+    public void cleanup() {
+        file.delete();
+    }
+
+    @Test
+    public void innerZipSignedAsWritten() throws Exception {
+        SignedArchiveWriter archive = new SignedArchiveWriter(pki, file, "outer", "inner");
+        Writer writer = archive.newEntry("export/meta.json");
+        writer.write("{\"version\":\"1\"}");
+        writer.close();
+        // more than the inner zip buffers at once
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            large.append(i).append(',');
+        }
+        archive.addEntry("export/rules/default-rules.js",
+            new ByteArrayInputStream(large.toString().getBytes("UTF-8")));
+        assertEquals(file, archive.finish());
+
+        Map<String, byte[]> outer = read(new FileInputStream(file));
+        assertEquals(2, outer.size());
+        byte[] inner = outer.get(SignedArchiveWriter.CONSUMER_EXPORT);
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initVerify(key.getPublic());
+        signature.update(inner);
+        assertTrue(signature.verify(outer.get(SignedArchiveWriter.SIGNATURE)));
+
+        Map<String, byte[]> entries = read(new ByteArrayInputStream(inner));
+        assertEquals("{\"version\":\"1\"}", new String(entries.get("export/meta.json"), "UTF-8"));
+        assertEquals(large.toString(),
+            new String(entries.get("export/rules/default-rules.js"), "UTF-8"));
+    }
+
+    @Test
+    public void abortLeavesNothingToSign() throws Exception {
+        SignatureGenerator generator = mock(SignatureGenerator.class);
+        reset(pki);
+        when(pki.createCASignatureGenerator()).thenReturn(generator);
+
+        SignedArchiveWriter archive = new SignedArchiveWriter(pki, file, "outer", "inner");
+        archive.addEntry("export/large", new ByteArrayInputStream(new byte[1024 * 1024]));
+        archive.abort();
+
+        verify(generator, never()).sign();
+    }
+
+    private Map<String, byte[]> read(InputStream in) throws IOException {
+        Map<String, byte[]> entries = new HashMap<String, byte[]>();
+        ZipInputStream zis = new ZipInputStream(in);
+        try {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                entries.put(entry.getName(), IOUtils.toByteArray(zis));
+            }
+        }
+        finally {
+            zis.close();
+        }
+        return entries;
+    }
+}
@@ -23,8 +23,11 @@ import org.candlepin.policy.ValidationResult;
 import org.candlepin.policy.js.entitlement.Enforcer;
 import org.candlepin.policy.js.entitlement.PreUnbindHelper;
 
+import org.hibernate.criterion.Criterion;
+
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -66,6 +69,11 @@ public class EnforcerForTesting implements Enforcer {
         return pools;
     }
 
+    @Override
+    public List<Criterion> filterCriteria(Consumer consumer, boolean showAll) {
+        return new LinkedList<Criterion>();
+    }
+
     @Override
     public Map<String, ValidationResult> preEntitlement(Consumer consumer,
         Collection<PoolQuantity> entitlementPoolQuantities, CallerType caller) {
@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+/**
+ * MetricsTest
+ */
+public class MetricsTest {
+
+    @Test
+    public void countersAreSharedByName() {
+        Metrics.Counter counter = Metrics.counter("metricstest.shared");
+        counter.inc();
+        Metrics.counter("metricstest.shared").add(2);
+        assertEquals(3, counter.getCount());
+    }
+
+    @Test
+    public void timerTracksCountAndMax() {
+        Metrics.Timer timer = Metrics.timer("metricstest.timer");
+        timer.update(10);
+        timer.update(30);
+        timer.update(20);
+        assertEquals(3, timer.getCount());
+        assertEquals(60, timer.getTotalNanos());
+        assertEquals(30, timer.getMaxNanos());
+    }
+
+    @Test
+    public void snapshotIncludesGauges() {
+        Metrics.gauge("metricstest.gauge", new Metrics.Gauge() {
+            public Number getValue() {
+                return 42;
+            }
+        });
+        Map<String, Object> snapshot = Metrics.snapshot();
+        assertEquals(42, snapshot.get("metricstest.gauge"));
+    }
+
+    @Test
+    public void removedMetricStartsAfresh() {
+        Metrics.counter("metricstest.removed").inc();
+        Metrics.remove("metricstest.removed");
+        assertFalse(Metrics.snapshot().containsKey("metricstest.removed"));
+        assertEquals(0, Metrics.counter("metricstest.removed").getCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nameTypeMismatch() {
+        Metrics.counter("metricstest.mismatch");
+        Metrics.timer("metricstest.mismatch");
+    }
+}
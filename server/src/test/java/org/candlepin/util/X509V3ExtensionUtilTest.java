@@ -28,17 +28,22 @@ import org.candlepin.model.Pool;
 import org.candlepin.model.Product;
 import org.candlepin.model.ProductContent;
 import org.candlepin.model.Owner;
+import org.candlepin.model.dto.EntitlementBody;
+import org.candlepin.pki.X509ByteExtensionWrapper;
 import org.candlepin.test.TestUtil;
+import org.candlepin.util.X509V3ExtensionUtil.HuffNode;
 import org.candlepin.util.X509V3ExtensionUtil.NodePair;
 import org.candlepin.util.X509V3ExtensionUtil.PathNode;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 
@@ -185,4 +190,100 @@ public class X509V3ExtensionUtilTest {
         assertEquals("OS", resultBrandType);
     }
 
+    @Test
+    public void contentSectionIsSharedBetweenEqualPaths() throws Exception {
+        util = new X509V3ExtensionUtil(config, ec, new V3ContentCache(1024 * 1024));
+
+        byte[] first = contentValue(util.getByteExtensions(contentBody("/prefix/a", "/prefix/b")));
+        byte[] second = contentValue(util.getByteExtensions(contentBody("/prefix/a", "/prefix/b")));
+        byte[] other = contentValue(util.getByteExtensions(contentBody("/prefix/a", "/prefix/c")));
+
+        assertSame(first, second);
+        assertNotSame(first, other);
+        List<String> urls = util.hydrateContentPackage(first);
+        assertEquals(2, urls.size());
+        assertTrue(urls.containsAll(Arrays.asList("/prefix/a", "/prefix/b")));
+    }
+
+    @Test
+    public void trieMatchesLinearScanConstruction() {
+        List<HuffNode> nodes = new ArrayList<HuffNode>();
+        for (int i = 0; i < 500; i++) {
+            // plenty of equal weights, the tie breaking must not change
+            nodes.add(util.new HuffNode("segment" + i, 1 + (i % 7) * (i % 3)));
+        }
+
+        HuffNode trie = util.makeTrie(new ArrayList<HuffNode>(nodes));
+        HuffNode expected = makeTrieByScanning(new ArrayList<HuffNode>(nodes));
+
+        Map<Object, String> codes = util.getHuffCodes(trie);
+        for (HuffNode node : nodes) {
+            assertEquals(util.findHuffPath(expected, node.getValue()), codes.get(node.getValue()));
+        }
+    }
+
+    @Test
+    public void largeContentSetRoundTrip() throws Exception {
+        List<String> paths = new ArrayList<String>();
+        String[] arches = {"x86_64", "i386", "ppc64", "s390x"};
+        String[] repos = {"os", "debug", "source/SRPMS", "optional/os", "supplementary/os"};
+        for (int release = 5; release <= 7; release++) {
+            for (String arch : arches) {
+                for (String repo : repos) {
+                    for (int minor = 0; minor < 20; minor++) {
+                        paths.add("/content/dist/rhel/server/" + release + "/" + release + "." + minor +
+                            "/" + arch + "/" + repo);
+                    }
+                }
+            }
+        }
+
+        byte[] value = contentValue(util.getByteExtensions(
+            contentBody(paths.toArray(new String[paths.size()]))));
+        List<String> urls = util.hydrateContentPackage(value);
+        assertEquals(paths.size(), urls.size());
+        assertEquals(new HashSet<String>(paths), new HashSet<String>(urls));
+    }
+
+    /*
+     * The original construction, which clients still use to rebuild the trie.
+     */
+    private HuffNode makeTrieByScanning(List<HuffNode> nodes) {
+        while (nodes.size() > 1) {
+            HuffNode hn1 = removeSmallest(nodes);
+            HuffNode hn2 = removeSmallest(nodes);
+            nodes.add(util.new HuffNode(null, hn1.getWeight() + hn2.getWeight(), hn1, hn2));
+        }
+        return nodes.get(0);
+    }
+
+    private HuffNode removeSmallest(List<HuffNode> nodes) {
+        int smallest = 0;
+        for (int i = 1; i < nodes.size(); i++) {
+            if (nodes.get(i).getWeight() < nodes.get(smallest).getWeight()) {
+                smallest = i;
+            }
+        }
+        return nodes.remove(smallest);
+    }
+
+    private EntitlementBody contentBody(String ... paths) {
+        List<org.candlepin.model.dto.Content> contents =
+            new ArrayList<org.candlepin.model.dto.Content>();
+        for (String path : paths) {
+            org.candlepin.model.dto.Content content = new org.candlepin.model.dto.Content();
+            content.setPath(path);
+            contents.add(content);
+        }
+
+        org.candlepin.model.dto.Product product = new org.candlepin.model.dto.Product();
+        product.setContent(contents);
+        EntitlementBody body = new EntitlementBody();
+        body.setProducts(Arrays.asList(product));
+        return body;
+    }
+
+    private byte[] contentValue(Set<X509ByteExtensionWrapper> extensions) {
+        return extensions.iterator().next().getValue();
+    }
 }